@@ -0,0 +1,97 @@
+package com.terista.space.core;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fields read from an APK's binary AndroidManifest.xml by {@link ApkManifestParser}.
+ * Holds only what the install path needs; the full PackageInfo is loaded at launch.
+ */
+public class ApkManifest implements Serializable {
+    
+    private String packageName;
+    private int versionCode;
+    private String versionName;
+    private String label;
+    private int labelResId;
+    private String applicationClassName;
+    private final List<String> activities = new ArrayList<>();
+    private final List<String> services = new ArrayList<>();
+    private final List<String> receivers = new ArrayList<>();
+    private final List<String> providers = new ArrayList<>();
+    private final List<String> requestedPermissions = new ArrayList<>();
+    private final List<String> permissions = new ArrayList<>();
+    private final List<byte[]> signatures = new ArrayList<>();
+    private byte[] signingInfo;
+    
+    public String getPackageName() { return packageName; }
+    void setPackageName(String packageName) { this.packageName = packageName; }
+    
+    public int getVersionCode() { return versionCode; }
+    void setVersionCode(int versionCode) { this.versionCode = versionCode; }
+    
+    public String getVersionName() { return versionName; }
+    void setVersionName(String versionName) { this.versionName = versionName; }
+    
+    /**
+     * @return Literal application label, or null if the label is a resource reference
+     */
+    public String getLabel() { return label; }
+    void setLabel(String label) { this.label = label; }
+    
+    /**
+     * @return Resource ID of the application label, or 0 if absent or literal
+     */
+    public int getLabelResId() { return labelResId; }
+    void setLabelResId(int labelResId) { this.labelResId = labelResId; }
+    
+    public String getApplicationClassName() { return applicationClassName; }
+    void setApplicationClassName(String applicationClassName) { this.applicationClassName = applicationClassName; }
+    
+    public List<String> getActivities() { return Collections.unmodifiableList(activities); }
+    public List<String> getServices() { return Collections.unmodifiableList(services); }
+    public List<String> getReceivers() { return Collections.unmodifiableList(receivers); }
+    public List<String> getProviders() { return Collections.unmodifiableList(providers); }
+    
+    /**
+     * @return Names from &lt;uses-permission&gt;
+     */
+    public List<String> getRequestedPermissions() { return Collections.unmodifiableList(requestedPermissions); }
+    
+    /**
+     * @return Names from &lt;permission&gt;, the permissions the package defines
+     */
+    public List<String> getPermissions() { return Collections.unmodifiableList(permissions); }
+    
+    /**
+     * @return Encoded signing certificates, as Signature.toByteArray(); empty until recorded at install
+     */
+    public List<byte[]> getSignatures() { return Collections.unmodifiableList(signatures); }
+    
+    /**
+     * @return SigningInfo marshalled by this OS release, or null if not recorded
+     */
+    public byte[] getSigningInfo() { return signingInfo; }
+    void setSigningInfo(byte[] signingInfo) { this.signingInfo = signingInfo; }
+    
+    void addActivity(String className) { activities.add(className); }
+    void addService(String className) { services.add(className); }
+    void addReceiver(String className) { receivers.add(className); }
+    void addProvider(String className) { providers.add(className); }
+    void addRequestedPermission(String name) { requestedPermissions.add(name); }
+    void addPermission(String name) { permissions.add(name); }
+    void addSignature(byte[] signature) { signatures.add(signature); }
+    
+    @Override
+    public String toString() {
+        return "ApkManifest{" +
+                "packageName='" + packageName + '\'' +
+                ", versionCode=" + versionCode +
+                ", versionName='" + versionName + '\'' +
+                ", activities=" + activities.size() +
+                ", services=" + services.size() +
+                '}';
+    }
+}
\ No newline at end of file
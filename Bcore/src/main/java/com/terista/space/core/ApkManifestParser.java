@@ -0,0 +1,778 @@
+package com.terista.space.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming reader for the binary AndroidManifest.xml inside an APK.
+ *
+ * The APK is memory-mapped, the zip central directory is scanned for the
+ * manifest entry, and the binary XML is walked once, decoding only the
+ * strings needed for the package, version, label and component names.
+ * A label given as a string resource is looked up in resources.arsc, and the
+ * signing certificates are read from the APK signing block (or the v1
+ * signature files), so installing never needs the platform's archive parser.
+ * Pure Java, so it runs on a plain JVM as well as on device.
+ */
+public final class ApkManifestParser {
+    
+    private static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+    private static final String RESOURCES_ENTRY = "resources.arsc";
+    
+    // Zip records
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_DIR_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+    
+    // APK signing block, between the last entry and the central directory
+    private static final long SIGNING_BLOCK_MAGIC_LO = 0x20676953204b5041L; // "APK Sig "
+    private static final long SIGNING_BLOCK_MAGIC_HI = 0x3234206b636f6c42L; // "Block 42"
+    private static final int SIGNATURE_SCHEME_V2_ID = 0x7109871a;
+    private static final int SIGNATURE_SCHEME_V3_ID = 0xf05368c0;
+    private static final String V1_SIGNATURE_DIR = "META-INF/";
+    
+    // Binary XML and resource table chunks
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_XML_TYPE = 0x0003;
+    private static final int RES_XML_START_ELEMENT_TYPE = 0x0102;
+    private static final int RES_XML_RESOURCE_MAP_TYPE = 0x0180;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int RES_TABLE_TYPE_TYPE = 0x0201;
+    private static final int UTF8_FLAG = 1 << 8;
+    
+    // ResTable_type flags and entries
+    private static final int TYPE_FLAG_SPARSE = 0x01;
+    private static final int TYPE_FLAG_OFFSET16 = 0x02;
+    private static final int ENTRY_FLAG_COMPLEX = 0x0001;
+    private static final int ENTRY_FLAG_COMPACT = 0x0008;
+    // References followed before giving up, e.g. @string/app_name pointing at @string/brand
+    private static final int MAX_REFERENCE_DEPTH = 4;
+    
+    // Typed values
+    private static final int TYPE_REFERENCE = 0x01;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_DEC = 0x10;
+    private static final int TYPE_INT_HEX = 0x11;
+    
+    // android:* attribute resource IDs
+    private static final int ATTR_LABEL = 0x01010001;
+    private static final int ATTR_NAME = 0x01010003;
+    private static final int ATTR_VERSION_CODE = 0x0101021b;
+    private static final int ATTR_VERSION_NAME = 0x0101021c;
+    
+    private ApkManifestParser() {}
+    
+    /**
+     * Parse the manifest of an APK file
+     * @param apkPath Path to the APK
+     * @return Parsed manifest fields
+     * @throws IOException if the file is not a readable APK or the manifest is malformed
+     */
+    public static ApkManifest parse(String apkPath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(apkPath), "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer apk = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            apk.order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer xml = readEntry(apk, MANIFEST_ENTRY);
+            if (xml == null) {
+                throw new IOException(MANIFEST_ENTRY + " not found");
+            }
+            ApkManifest manifest = parseManifest(xml);
+            try {
+                for (byte[] signature : readSignatures(apk)) {
+                    manifest.addSignature(signature);
+                }
+            } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                // Unsigned or unreadable signatures only cost GET_SIGNATURES
+            }
+            if (manifest.getLabel() == null && manifest.getLabelResId() != 0) {
+                ByteBuffer table = readEntry(apk, RESOURCES_ENTRY);
+                if (table != null) {
+                    try {
+                        manifest.setLabel(resolveString(table, manifest.getLabelResId()));
+                    } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                        // An unreadable table only costs the label; the caller falls back for it
+                    }
+                }
+            }
+            return manifest;
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed APK: " + apkPath, e);
+        }
+    }
+    
+    /**
+     * Decode a binary AndroidManifest.xml that has already been extracted
+     * @param xml Binary XML, little-endian
+     * @return Parsed manifest fields
+     * @throws IOException if the document is malformed
+     */
+    public static ApkManifest parseManifest(ByteBuffer xml) throws IOException {
+        try {
+            return new XmlWalker(xml.order(ByteOrder.LITTLE_ENDIAN)).walk();
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed binary manifest", e);
+        }
+    }
+    
+    /**
+     * Look up a string resource in a compiled resource table. The value for
+     * the default configuration is preferred; otherwise the first
+     * configuration that defines the entry is used.
+     * @param table Contents of resources.arsc
+     * @param resId Resource ID, e.g. the manifest's label reference
+     * @return String value, or null if the table has no string for the ID
+     * @throws IOException if the table is malformed
+     */
+    public static String resolveString(ByteBuffer table, int resId) throws IOException {
+        try {
+            return new ResourceTable(table.order(ByteOrder.LITTLE_ENDIAN)).resolveString(resId);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed resource table", e);
+        }
+    }
+    
+    /**
+     * Read the signing certificates of an APK without verifying them: the
+     * first certificate of each v3 or v2 signer, or of each v1 signature file
+     * when the APK has no signing block
+     * @param apkPath Path to the APK
+     * @return Encoded certificates, as Signature.toByteArray(); empty if unsigned
+     * @throws IOException if the file is not a readable APK or its signatures are malformed
+     */
+    public static List<byte[]> readSignatures(String apkPath) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(apkPath), "r");
+             FileChannel channel = file.getChannel()) {
+            MappedByteBuffer apk = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            apk.order(ByteOrder.LITTLE_ENDIAN);
+            return readSignatures(apk);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed APK: " + apkPath, e);
+        }
+    }
+    
+    private static List<byte[]> readSignatures(ByteBuffer apk) throws IOException {
+        int eocd = findEndOfCentralDirectory(apk);
+        ByteBuffer block = signingBlock(apk, apk.getInt(eocd + 16));
+        if (block != null) {
+            ByteBuffer signers = signingBlockValue(block, SIGNATURE_SCHEME_V3_ID);
+            if (signers != null) {
+                // Further v3 signers only cover other platform versions with the same lineage
+                return signerCertificates(signers, 1);
+            }
+            signers = signingBlockValue(block, SIGNATURE_SCHEME_V2_ID);
+            if (signers != null) {
+                return signerCertificates(signers, Integer.MAX_VALUE);
+            }
+        }
+        return v1Certificates(apk, eocd);
+    }
+    
+    /**
+     * @return ID-value pairs of the signing block, or null if the APK has none
+     */
+    private static ByteBuffer signingBlock(ByteBuffer apk, int centralDirectory) throws IOException {
+        if (centralDirectory < 32 || apk.getLong(centralDirectory - 16) != SIGNING_BLOCK_MAGIC_LO
+                || apk.getLong(centralDirectory - 8) != SIGNING_BLOCK_MAGIC_HI) {
+            return null;
+        }
+        long size = apk.getLong(centralDirectory - 24);
+        long start = centralDirectory - size - 8;
+        if (size < 24 || start < 0 || apk.getLong((int) start) != size) {
+            throw new IOException("Corrupt APK signing block");
+        }
+        return slice(apk, (int) start + 8, centralDirectory - 24);
+    }
+    
+    private static ByteBuffer signingBlockValue(ByteBuffer pairs, int id) throws IOException {
+        ByteBuffer block = pairs.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        while (block.remaining() >= 12) {
+            long length = block.getLong();
+            if (length < 4 || length > block.remaining()) {
+                throw new IOException("Corrupt APK signing block entry");
+            }
+            int start = block.position();
+            if (block.getInt() == id) {
+                return slice(block, start + 4, start + (int) length);
+            }
+            block.position(start + (int) length);
+        }
+        return null;
+    }
+    
+    private static List<byte[]> signerCertificates(ByteBuffer value, int maxSigners) throws IOException {
+        List<byte[]> certificates = new ArrayList<>();
+        ByteBuffer signers = lengthPrefixed(value.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        while (signers.hasRemaining() && certificates.size() < maxSigners) {
+            ByteBuffer signedData = lengthPrefixed(lengthPrefixed(signers));
+            lengthPrefixed(signedData); // digests
+            ByteBuffer signerCertificates = lengthPrefixed(signedData);
+            if (signerCertificates.hasRemaining()) {
+                ByteBuffer certificate = lengthPrefixed(signerCertificates);
+                byte[] encoded = new byte[certificate.remaining()];
+                certificate.get(encoded);
+                certificates.add(encoded);
+            }
+        }
+        return certificates;
+    }
+    
+    private static List<byte[]> v1Certificates(ByteBuffer apk, int eocd) throws IOException {
+        List<byte[]> certificates = new ArrayList<>();
+        int entryCount = apk.getShort(eocd + 10) & 0xFFFF;
+        int offset = apk.getInt(eocd + 16);
+        for (int i = 0; i < entryCount; i++) {
+            if (apk.getInt(offset) != CENTRAL_DIR_SIGNATURE) {
+                throw new IOException("Corrupt central directory");
+            }
+            int nameLength = apk.getShort(offset + 28) & 0xFFFF;
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = apk.get(offset + 46 + j);
+            }
+            String entryName = new String(name, StandardCharsets.UTF_8);
+            String upper = entryName.toUpperCase(Locale.ROOT);
+            if (upper.startsWith(V1_SIGNATURE_DIR) && upper.indexOf('/', V1_SIGNATURE_DIR.length()) < 0
+                    && (upper.endsWith(".RSA") || upper.endsWith(".DSA") || upper.endsWith(".EC"))) {
+                ByteBuffer data = readEntryData(apk, entryName, apk.getInt(offset + 42),
+                        apk.getShort(offset + 10) & 0xFFFF, apk.getInt(offset + 20), apk.getInt(offset + 24));
+                byte[] signatureFile = new byte[data.remaining()];
+                data.get(signatureFile);
+                try {
+                    // PKCS#7 SignedData; the signer's certificate comes first in practice
+                    Collection<? extends Certificate> chain = CertificateFactory.getInstance("X.509")
+                            .generateCertificates(new ByteArrayInputStream(signatureFile));
+                    if (!chain.isEmpty()) {
+                        certificates.add(chain.iterator().next().getEncoded());
+                    }
+                } catch (CertificateException e) {
+                    throw new IOException("Corrupt signature file " + entryName, e);
+                }
+            }
+            offset += 46 + nameLength + (apk.getShort(offset + 30) & 0xFFFF) + (apk.getShort(offset + 32) & 0xFFFF);
+        }
+        return certificates;
+    }
+    
+    private static ByteBuffer lengthPrefixed(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt signer length: " + length);
+        }
+        ByteBuffer value = slice(buffer, buffer.position(), buffer.position() + length);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    private static ByteBuffer slice(ByteBuffer buffer, int start, int end) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(start).limit(end);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * @return Uncompressed entry data, or null if the archive has no such entry
+     */
+    private static ByteBuffer readEntry(ByteBuffer apk, String entryName) throws IOException {
+        byte[] name = entryName.getBytes(StandardCharsets.US_ASCII);
+        int eocd = findEndOfCentralDirectory(apk);
+        int entryCount = apk.getShort(eocd + 10) & 0xFFFF;
+        int offset = apk.getInt(eocd + 16);
+        
+        for (int i = 0; i < entryCount; i++) {
+            if (apk.getInt(offset) != CENTRAL_DIR_SIGNATURE) {
+                throw new IOException("Corrupt central directory");
+            }
+            int method = apk.getShort(offset + 10) & 0xFFFF;
+            int compressedSize = apk.getInt(offset + 20);
+            int uncompressedSize = apk.getInt(offset + 24);
+            int nameLength = apk.getShort(offset + 28) & 0xFFFF;
+            int extraLength = apk.getShort(offset + 30) & 0xFFFF;
+            int commentLength = apk.getShort(offset + 32) & 0xFFFF;
+            int localHeader = apk.getInt(offset + 42);
+            
+            if (nameEquals(apk, offset + 46, nameLength, name)) {
+                return readEntryData(apk, entryName, localHeader, method, compressedSize, uncompressedSize);
+            }
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        return null;
+    }
+    
+    private static int findEndOfCentralDirectory(ByteBuffer apk) throws IOException {
+        int limit = apk.limit();
+        int stop = Math.max(0, limit - EOCD_MIN_SIZE - MAX_COMMENT_SIZE);
+        for (int offset = limit - EOCD_MIN_SIZE; offset >= stop; offset--) {
+            if (apk.getInt(offset) == EOCD_SIGNATURE) {
+                return offset;
+            }
+        }
+        throw new IOException("Not a zip archive");
+    }
+    
+    private static boolean nameEquals(ByteBuffer apk, int offset, int length, byte[] name) {
+        if (length != name.length) return false;
+        for (int i = 0; i < length; i++) {
+            if (apk.get(offset + i) != name[i]) return false;
+        }
+        return true;
+    }
+    
+    private static ByteBuffer readEntryData(ByteBuffer apk, String entryName, int localHeader, int method,
+                                            int compressedSize, int uncompressedSize) throws IOException {
+        if (apk.getInt(localHeader) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Corrupt local header for " + entryName);
+        }
+        int nameLength = apk.getShort(localHeader + 26) & 0xFFFF;
+        int extraLength = apk.getShort(localHeader + 28) & 0xFFFF;
+        int dataStart = localHeader + 30 + nameLength + extraLength;
+        
+        ByteBuffer data = apk.duplicate();
+        data.position(dataStart).limit(dataStart + compressedSize);
+        
+        if (method == METHOD_STORED) {
+            return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (method != METHOD_DEFLATED) {
+            throw new IOException("Unsupported compression method: " + method);
+        }
+        
+        byte[] compressed = new byte[compressedSize];
+        data.get(compressed);
+        byte[] inflated = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            int total = 0;
+            while (total < uncompressedSize && !inflater.finished()) {
+                int n = inflater.inflate(inflated, total, uncompressedSize - total);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                total += n;
+            }
+            if (total != uncompressedSize) {
+                throw new IOException("Truncated " + entryName);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt " + entryName, e);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(inflated).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Single pass over the binary XML chunks
+     */
+    private static final class XmlWalker {
+        
+        private final ByteBuffer xml;
+        private final ApkManifest manifest = new ApkManifest();
+        
+        private StringPool strings;
+        private int resourceMap = -1;
+        private int resourceMapCount;
+        
+        XmlWalker(ByteBuffer xml) {
+            this.xml = xml;
+        }
+        
+        ApkManifest walk() throws IOException {
+            if ((xml.getShort(0) & 0xFFFF) != RES_XML_TYPE) {
+                throw new IOException("Not a binary XML document");
+            }
+            int end = Math.min(xml.limit(), xml.getInt(4));
+            int chunk = xml.getShort(2) & 0xFFFF;
+            
+            while (chunk + 8 <= end) {
+                int type = xml.getShort(chunk) & 0xFFFF;
+                int size = xml.getInt(chunk + 4);
+                if (size < 8) {
+                    throw new IOException("Invalid chunk size " + size + " at " + chunk);
+                }
+                switch (type) {
+                    case RES_STRING_POOL_TYPE:
+                        strings = new StringPool(xml, chunk);
+                        break;
+                    case RES_XML_RESOURCE_MAP_TYPE:
+                        resourceMap = chunk + (xml.getShort(chunk + 2) & 0xFFFF);
+                        resourceMapCount = (size - (xml.getShort(chunk + 2) & 0xFFFF)) / 4;
+                        break;
+                    case RES_XML_START_ELEMENT_TYPE:
+                        readStartElement(chunk);
+                        break;
+                    default:
+                        break;
+                }
+                chunk += size;
+            }
+            
+            if (manifest.getPackageName() == null) {
+                throw new IOException("Manifest has no package attribute");
+            }
+            return manifest;
+        }
+        
+        private void readStartElement(int chunk) {
+            int ext = chunk + (xml.getShort(chunk + 2) & 0xFFFF);
+            String element = string(xml.getInt(ext + 4));
+            if (element == null) return;
+            
+            int attributeStart = xml.getShort(ext + 8) & 0xFFFF;
+            int attributeSize = xml.getShort(ext + 10) & 0xFFFF;
+            int attributeCount = xml.getShort(ext + 12) & 0xFFFF;
+            
+            switch (element) {
+                case "manifest":
+                    for (int i = 0; i < attributeCount; i++) {
+                        int attr = ext + attributeStart + i * attributeSize;
+                        int nameIndex = xml.getInt(attr + 4);
+                        int resId = attributeResId(nameIndex);
+                        if (resId == ATTR_VERSION_CODE || (resId == 0 && "versionCode".equals(string(nameIndex)))) {
+                            manifest.setVersionCode(intValue(attr));
+                        } else if (resId == ATTR_VERSION_NAME || (resId == 0 && "versionName".equals(string(nameIndex)))) {
+                            manifest.setVersionName(stringValue(attr));
+                        } else if (resId == 0 && "package".equals(string(nameIndex))) {
+                            manifest.setPackageName(stringValue(attr));
+                        }
+                    }
+                    break;
+                case "application":
+                    for (int i = 0; i < attributeCount; i++) {
+                        int attr = ext + attributeStart + i * attributeSize;
+                        int nameIndex = xml.getInt(attr + 4);
+                        if (isAttribute(nameIndex, ATTR_LABEL, "label")) {
+                            if (xml.get(attr + 15) == TYPE_REFERENCE) {
+                                manifest.setLabelResId(xml.getInt(attr + 16));
+                            } else {
+                                manifest.setLabel(stringValue(attr));
+                            }
+                        } else if (isAttribute(nameIndex, ATTR_NAME, "name")) {
+                            manifest.setApplicationClassName(className(stringValue(attr)));
+                        }
+                    }
+                    break;
+                case "activity":
+                case "activity-alias":
+                case "service":
+                case "receiver":
+                case "provider":
+                    // Unnamed elements, e.g. <queries><provider android:authorities=...>, declare no component
+                    String name = componentName(ext, attributeStart, attributeSize, attributeCount);
+                    if (name != null) {
+                        addComponent(element, name);
+                    }
+                    break;
+                case "uses-permission":
+                case "permission":
+                    String permission = attributeString(ext, attributeStart, attributeSize, attributeCount, ATTR_NAME, "name");
+                    if (permission != null) {
+                        if (element.equals("permission")) {
+                            manifest.addPermission(permission);
+                        } else {
+                            manifest.addRequestedPermission(permission);
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        
+        private void addComponent(String element, String name) {
+            switch (element) {
+                case "service":
+                    manifest.addService(name);
+                    break;
+                case "receiver":
+                    manifest.addReceiver(name);
+                    break;
+                case "provider":
+                    manifest.addProvider(name);
+                    break;
+                default:
+                    manifest.addActivity(name);
+                    break;
+            }
+        }
+        
+        private String componentName(int ext, int attributeStart, int attributeSize, int attributeCount) {
+            String name = attributeString(ext, attributeStart, attributeSize, attributeCount, ATTR_NAME, "name");
+            return name != null ? className(name) : null;
+        }
+        
+        private String attributeString(int ext, int attributeStart, int attributeSize, int attributeCount,
+                                       int resId, String name) {
+            for (int i = 0; i < attributeCount; i++) {
+                int attr = ext + attributeStart + i * attributeSize;
+                if (isAttribute(xml.getInt(attr + 4), resId, name)) {
+                    return stringValue(attr);
+                }
+            }
+            return null;
+        }
+        
+        private String className(String name) {
+            String packageName = manifest.getPackageName();
+            if (name == null || packageName == null) return name;
+            if (name.startsWith(".")) return packageName + name;
+            if (name.indexOf('.') < 0) return packageName + "." + name;
+            return name;
+        }
+        
+        private boolean isAttribute(int nameIndex, int resId, String name) {
+            int mapped = attributeResId(nameIndex);
+            return mapped != 0 ? mapped == resId : name.equals(string(nameIndex));
+        }
+        
+        private int attributeResId(int nameIndex) {
+            if (resourceMap < 0 || nameIndex < 0 || nameIndex >= resourceMapCount) return 0;
+            return xml.getInt(resourceMap + nameIndex * 4);
+        }
+        
+        private String stringValue(int attr) {
+            int raw = xml.getInt(attr + 8);
+            if (raw >= 0) return string(raw);
+            return xml.get(attr + 15) == TYPE_STRING ? string(xml.getInt(attr + 16)) : null;
+        }
+        
+        private int intValue(int attr) {
+            int type = xml.get(attr + 15) & 0xFF;
+            if (type == TYPE_INT_DEC || type == TYPE_INT_HEX) {
+                return xml.getInt(attr + 16);
+            }
+            String raw = stringValue(attr);
+            try {
+                return raw != null ? Integer.parseInt(raw) : 0;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        
+        private String string(int index) {
+            return strings != null ? strings.get(index) : null;
+        }
+    }
+    
+    /**
+     * ResStringPool chunk; strings are decoded on first use and kept
+     */
+    private static final class StringPool {
+        
+        private final ByteBuffer buffer;
+        private final int count;
+        private final int offsets;
+        private final int data;
+        private final boolean utf8;
+        private final String[] decoded;
+        
+        StringPool(ByteBuffer buffer, int chunk) {
+            this.buffer = buffer;
+            int headerSize = buffer.getShort(chunk + 2) & 0xFFFF;
+            count = buffer.getInt(chunk + 8);
+            utf8 = (buffer.getInt(chunk + 16) & UTF8_FLAG) != 0;
+            data = chunk + buffer.getInt(chunk + 20);
+            offsets = chunk + headerSize;
+            decoded = new String[count];
+        }
+        
+        String get(int index) {
+            if (index < 0 || index >= count) return null;
+            String cached = decoded[index];
+            if (cached == null) {
+                cached = decode(data + buffer.getInt(offsets + index * 4));
+                decoded[index] = cached;
+            }
+            return cached;
+        }
+        
+        private String decode(int offset) {
+            if (utf8) {
+                // UTF-16 length, then UTF-8 byte length, each 1 or 2 bytes
+                offset += (buffer.get(offset) & 0x80) != 0 ? 2 : 1;
+                int length = buffer.get(offset) & 0xFF;
+                if ((length & 0x80) != 0) {
+                    length = ((length & 0x7F) << 8) | (buffer.get(offset + 1) & 0xFF);
+                    offset += 2;
+                } else {
+                    offset += 1;
+                }
+                byte[] bytes = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buffer.get(offset + i);
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            
+            int length = buffer.getShort(offset) & 0xFFFF;
+            offset += 2;
+            if ((length & 0x8000) != 0) {
+                length = ((length & 0x7FFF) << 16) | (buffer.getShort(offset) & 0xFFFF);
+                offset += 2;
+            }
+            char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = buffer.getChar(offset + i * 2);
+            }
+            return new String(chars);
+        }
+    }
+    
+    /**
+     * Lookups in a compiled resources.arsc: the global string pool plus, per
+     * package, the type chunks holding one entry table per configuration
+     */
+    private static final class ResourceTable {
+        
+        private final ByteBuffer table;
+        private StringPool strings;
+        
+        ResourceTable(ByteBuffer table) {
+            this.table = table;
+        }
+        
+        String resolveString(int resId) throws IOException {
+            if ((table.getShort(0) & 0xFFFF) != RES_TABLE_TYPE) {
+                throw new IOException("Not a resource table");
+            }
+            for (int depth = 0; depth < MAX_REFERENCE_DEPTH; depth++) {
+                long value = findValue(resId);
+                if (value == -1) {
+                    return null;
+                }
+                int type = (int) (value >>> 32);
+                int data = (int) value;
+                if (type == TYPE_STRING) {
+                    return strings != null ? strings.get(data) : null;
+                }
+                if (type != TYPE_REFERENCE) {
+                    return null;
+                }
+                resId = data;
+            }
+            return null;
+        }
+        
+        /**
+         * @return Value type in the high and data in the low 32 bits, or -1 if not found
+         */
+        private long findValue(int resId) {
+            int packageId = resId >>> 24;
+            int typeId = (resId >>> 16) & 0xFF;
+            int entryIndex = resId & 0xFFFF;
+            int end = Math.min(table.limit(), table.getInt(4));
+            int chunk = table.getShort(2) & 0xFFFF;
+            while (chunk + 8 <= end) {
+                int type = table.getShort(chunk) & 0xFFFF;
+                int size = table.getInt(chunk + 4);
+                if (size < 8) {
+                    return -1;
+                }
+                if (type == RES_STRING_POOL_TYPE && strings == null) {
+                    strings = new StringPool(table, chunk);
+                } else if (type == RES_TABLE_PACKAGE_TYPE && table.getInt(chunk + 8) == packageId) {
+                    return findInPackage(chunk, size, typeId, entryIndex);
+                }
+                chunk += size;
+            }
+            return -1;
+        }
+        
+        private long findInPackage(int pkg, int pkgSize, int typeId, int entryIndex) {
+            int end = pkg + pkgSize;
+            int chunk = pkg + (table.getShort(pkg + 2) & 0xFFFF);
+            long fallback = -1;
+            while (chunk + 8 <= end) {
+                int size = table.getInt(chunk + 4);
+                if (size < 8) {
+                    break;
+                }
+                if ((table.getShort(chunk) & 0xFFFF) == RES_TABLE_TYPE_TYPE && (table.get(chunk + 8) & 0xFF) == typeId) {
+                    long value = entryValue(chunk, entryIndex);
+                    if (value != -1) {
+                        // ResTable_config: size, imsi, then the locale; zero is the default configuration
+                        if (table.getInt(chunk + 20 + 8) == 0) {
+                            return value;
+                        }
+                        if (fallback == -1) {
+                            fallback = value;
+                        }
+                    }
+                }
+                chunk += size;
+            }
+            return fallback;
+        }
+        
+        private long entryValue(int typeChunk, int entryIndex) {
+            int flags = table.get(typeChunk + 9) & 0xFF;
+            int entryCount = table.getInt(typeChunk + 12);
+            int entriesStart = typeChunk + table.getInt(typeChunk + 16);
+            int offsets = typeChunk + (table.getShort(typeChunk + 2) & 0xFFFF);
+            
+            int offset = -1;
+            if ((flags & TYPE_FLAG_SPARSE) != 0) {
+                // Sorted (entry index, offset / 4) pairs
+                int low = 0;
+                int high = entryCount - 1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    int index = table.getShort(offsets + mid * 4) & 0xFFFF;
+                    if (index < entryIndex) {
+                        low = mid + 1;
+                    } else if (index > entryIndex) {
+                        high = mid - 1;
+                    } else {
+                        offset = (table.getShort(offsets + mid * 4 + 2) & 0xFFFF) * 4;
+                        break;
+                    }
+                }
+            } else if (entryIndex < entryCount) {
+                if ((flags & TYPE_FLAG_OFFSET16) != 0) {
+                    int raw = table.getShort(offsets + entryIndex * 2) & 0xFFFF;
+                    offset = raw != 0xFFFF ? raw * 4 : -1;
+                } else {
+                    offset = table.getInt(offsets + entryIndex * 4);
+                }
+            }
+            if (offset < 0) {
+                return -1;
+            }
+            
+            int entry = entriesStart + offset;
+            int entryFlags = table.getShort(entry + 2) & 0xFFFF;
+            if ((entryFlags & ENTRY_FLAG_COMPACT) != 0) {
+                // Compact entry: value type in the high byte of the flags, data inline
+                return ((long) (entryFlags >>> 8) << 32) | (table.getInt(entry + 4) & 0xFFFFFFFFL);
+            }
+            if ((entryFlags & ENTRY_FLAG_COMPLEX) != 0) {
+                return -1;
+            }
+            // Res_value after the entry header: size, res0, dataType, data
+            int value = entry + (table.getShort(entry) & 0xFFFF);
+            return ((long) (table.get(value + 3) & 0xFF) << 32) | (table.getInt(value + 4) & 0xFFFFFFFFL);
+        }
+    }
+}
\ No newline at end of file
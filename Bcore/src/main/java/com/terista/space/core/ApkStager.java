@@ -0,0 +1,21 @@
+package com.terista.space.core;
+
+import java.io.IOException;
+
+/**
+ * Places an APK into the virtual space before it is registered, e.g. by
+ * linking it from a content-addressed store so identical APKs share storage.
+ */
+public interface ApkStager {
+    
+    /**
+     * @param apkPath APK to install from
+     * @return Path the app should be registered with; may be apkPath itself
+     */
+    String stage(String apkPath, String packageName, int versionCode) throws IOException;
+    
+    /**
+     * Called once no installed app refers to a path returned by {@link #stage}
+     */
+    void release(String stagedPath);
+}
\ No newline at end of file
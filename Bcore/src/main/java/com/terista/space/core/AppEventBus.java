@@ -0,0 +1,86 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Publishes {@link VirtualAppEvent}s to registered listeners.
+ *
+ * Events are numbered and handed to the delivery executor under one lock,
+ * so a FIFO executor (such as the main thread handler) delivers them in
+ * sequence order. Listeners that fall behind, or that register after
+ * startup, resync from {@link #snapshot(AppRegistry)} and continue from its
+ * sequence number.
+ */
+public class AppEventBus {
+    
+    private static final String TAG = "AppEventBus";
+    
+    private final Executor deliveryExecutor;
+    private final CopyOnWriteArrayList<VirtualAppEvent.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object publishLock = new Object();
+    private volatile long sequence = 0;
+    
+    public AppEventBus(Executor deliveryExecutor) {
+        this.deliveryExecutor = deliveryExecutor;
+    }
+    
+    public void addListener(VirtualAppEvent.Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+    
+    public void removeListener(VirtualAppEvent.Listener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Number and deliver an event
+     * @param type Event type
+     * @param app Affected app
+     */
+    public void publish(VirtualAppEvent.Type type, VirtualApp app) {
+        synchronized (publishLock) {
+            VirtualAppEvent event = new VirtualAppEvent(sequence + 1, type, app);
+            sequence = event.getSequence();
+            for (VirtualAppEvent.Listener listener : listeners) {
+                deliveryExecutor.execute(() -> {
+                    try {
+                        listener.onEvent(event);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Listener failed on " + event, e);
+                    }
+                });
+            }
+        }
+    }
+    
+    /**
+     * @return Sequence number of the last published event, 0 if none
+     */
+    public long getSequence() {
+        return sequence;
+    }
+    
+    /**
+     * Capture the installed apps together with a sequence number to resume from.
+     * The sequence is read before the app list, so events published in between
+     * may be delivered again; listeners must apply events idempotently.
+     */
+    public Snapshot snapshot(AppRegistry registry) {
+        long current = sequence;
+        return new Snapshot(current, registry.getAll());
+    }
+    
+    public static final class Snapshot {
+        public final long sequence;
+        public final List<VirtualApp> apps;
+        
+        Snapshot(long sequence, List<VirtualApp> apps) {
+            this.sequence = sequence;
+            this.apps = apps;
+        }
+    }
+}
\ No newline at end of file
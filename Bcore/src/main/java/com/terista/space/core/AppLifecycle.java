@@ -0,0 +1,84 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Stops virtual apps and handles process death: finds the app in the
+ * registry, kills its entries in the process table and publishes the run
+ * state change. Kept apart from {@link VirtualEngine} so these paths can run
+ * without the native bridge.
+ */
+public class AppLifecycle {
+    
+    private static final String TAG = "AppLifecycle";
+    
+    private final AppRegistry registry;
+    private final VirtualProcessManager processManager;
+    private final AppEventBus eventBus;
+    
+    public AppLifecycle(AppRegistry registry, VirtualProcessManager processManager, AppEventBus eventBus) {
+        this.registry = registry;
+        this.processManager = processManager;
+        this.eventBus = eventBus;
+    }
+    
+    /**
+     * Stop a package in every user it is installed for
+     * @return true if the package is installed for any user
+     */
+    public boolean stop(String packageName) {
+        List<VirtualApp> apps = registry.getByPackage(packageName);
+        if (apps.isEmpty()) {
+            return false;
+        }
+        processManager.killAppProcesses(packageName);
+        for (VirtualApp app : apps) {
+            markStopped(app, VirtualAppEvent.Type.STOPPED);
+        }
+        return true;
+    }
+    
+    /**
+     * Stop a package for one user, leaving other users' instances running
+     * @return true if the package is installed for the user
+     */
+    public boolean stop(String packageName, int userId) {
+        VirtualApp app = registry.get(userId, packageName);
+        if (app == null) {
+            return false;
+        }
+        processManager.killAppProcesses(packageName, userId);
+        markStopped(app, VirtualAppEvent.Type.STOPPED);
+        return true;
+    }
+    
+    /**
+     * Remove a process that exited on its own and mark its app crashed
+     * @param processId Virtual process ID
+     * @return true if the process was live
+     */
+    public boolean onProcessDied(int processId) {
+        VirtualProcessManager.VirtualProcess process = processManager.getProcess(processId);
+        if (process == null) {
+            return false;
+        }
+        
+        Log.w(TAG, "Virtual process died: PID=" + processId + ", package=" + process.packageName);
+        processManager.killProcess(processId);
+        VirtualApp app = registry.get(process.userId, process.packageName);
+        if (app != null && app.getProcessId() == processId) {
+            markStopped(app, VirtualAppEvent.Type.CRASHED);
+        }
+        return true;
+    }
+    
+    private void markStopped(VirtualApp app, VirtualAppEvent.Type reason) {
+        boolean wasRunning = app.isRunning();
+        registry.markStopped(app);
+        if (wasRunning) {
+            eventBus.publish(reason, app);
+        }
+    }
+}
\ No newline at end of file
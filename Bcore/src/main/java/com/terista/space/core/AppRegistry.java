@@ -0,0 +1,310 @@
+package com.terista.space.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single registry of installed virtual apps, keyed by (userId, packageName).
+ *
+ * Writers build an immutable {@link Snapshot} holding the primary map, the
+ * per-user index, the flat app list and the running index, and publish it
+ * with one volatile write, so the indexes can never disagree. Only the
+ * per-user lists of users a write touches are rebuilt; batches go through
+ * {@link #putAll} to publish once. Readers never lock or copy:
+ * {@link #getAll()} and {@link #getByUser(int)} return lists straight from
+ * the current snapshot. Per-user lists are sorted by package name, so they
+ * can be paged with the last package name seen as a cursor.
+ * Running state changes only swap the running index and share the rest.
+ */
+public class AppRegistry {
+    
+    private final Object writeLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    
+    /**
+     * Add or replace an app. A replaced running app's runtime state carries over.
+     * @param app App to register
+     * @return Previously registered app for the same user and package, or null
+     */
+    public VirtualApp put(VirtualApp app) {
+        return putAll(Collections.singletonList(app)).get(0);
+    }
+    
+    /**
+     * Add or replace many apps, publishing one snapshot
+     * @param batch Apps to register
+     * @return Previously registered app for each batch entry, in order, null where there was none
+     */
+    public List<VirtualApp> putAll(Collection<VirtualApp> batch) {
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            Map<Key, VirtualApp> apps = new HashMap<>(current.apps);
+            Set<Integer> users = new HashSet<>();
+            List<VirtualApp> replaced = new ArrayList<>(batch.size());
+            for (VirtualApp app : batch) {
+                VirtualApp previous = apps.put(Key.of(app), app);
+                if (previous != null && previous != app && previous.isRunning()) {
+                    app.setProcessId(previous.getProcessId());
+                    app.setRunning(true);
+                }
+                users.add(app.getUserId());
+                replaced.add(previous);
+            }
+            snapshot = current.withApps(apps, users, current.running);
+            return replaced;
+        }
+    }
+    
+    /**
+     * Remove an app, dropping it from the running index too
+     * @return Removed app, or null if it was not registered
+     */
+    public VirtualApp remove(int userId, String packageName) {
+        Key key = new Key(userId, packageName);
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            if (!current.apps.containsKey(key)) {
+                return null;
+            }
+            Map<Key, VirtualApp> apps = new HashMap<>(current.apps);
+            VirtualApp removed = apps.remove(key);
+            Set<Key> running = current.running;
+            if (running.contains(key)) {
+                running = new HashSet<>(running);
+                running.remove(key);
+            }
+            snapshot = current.withApps(apps, Collections.singleton(userId), running);
+            return removed;
+        }
+    }
+    
+    public VirtualApp get(int userId, String packageName) {
+        return snapshot.apps.get(new Key(userId, packageName));
+    }
+    
+    /**
+     * @return Every user's copy of a package, empty if it is not installed
+     */
+    public List<VirtualApp> getByPackage(String packageName) {
+        Snapshot current = snapshot;
+        List<VirtualApp> result = new ArrayList<>(1);
+        for (Integer userId : current.byUser.keySet()) {
+            VirtualApp app = current.apps.get(new Key(userId, packageName));
+            if (app != null) {
+                result.add(app);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Return the package data already shared by another user for the same APK build, if any
+     * @param installedPackage Freshly parsed package data
+     * @return Existing shared instance, or the argument if none matches
+     */
+    public InstalledPackage intern(InstalledPackage installedPackage) {
+        for (VirtualApp app : getByPackage(installedPackage.getPackageName())) {
+            if (app.getInstalledPackage().isSameBuild(installedPackage)) {
+                return app.getInstalledPackage();
+            }
+        }
+        return installedPackage;
+    }
+    
+    public boolean containsPackage(String packageName) {
+        return !getByPackage(packageName).isEmpty();
+    }
+    
+    /**
+     * @return Immutable list of all installed apps; not copied per call
+     */
+    public List<VirtualApp> getAll() {
+        return snapshot.all;
+    }
+    
+    /**
+     * @return Immutable list of one user's apps in package name order; not copied per call
+     */
+    public List<VirtualApp> getByUser(int userId) {
+        List<VirtualApp> apps = snapshot.byUser.get(userId);
+        return apps != null ? apps : Collections.emptyList();
+    }
+    
+    /**
+     * One page of a user's apps in package name order. Paging by name rather
+     * than by index stays consistent while apps are installed or removed.
+     * @param after Package name the previous page ended with, or null for the first page
+     * @param limit Maximum number of apps
+     * @return Immutable view of the current snapshot; not copied per call
+     */
+    public List<VirtualApp> getByUser(int userId, String after, int limit) {
+        List<VirtualApp> apps = getByUser(userId);
+        int from = after != null ? indexAfter(apps, after) : 0;
+        return apps.subList(from, (int) Math.min(apps.size(), (long) from + Math.max(limit, 0)));
+    }
+    
+    public Set<Integer> getUserIds() {
+        return snapshot.byUser.keySet();
+    }
+    
+    public List<VirtualApp> getRunning() {
+        Snapshot current = snapshot;
+        List<VirtualApp> result = new ArrayList<>(current.running.size());
+        for (Key key : current.running) {
+            result.add(current.apps.get(key));
+        }
+        return result;
+    }
+    
+    /**
+     * Record that an app's process has started
+     * @return false if the app is no longer registered
+     */
+    public boolean markRunning(VirtualApp app, int processId) {
+        return setRunning(app, true, processId);
+    }
+    
+    /**
+     * Record that an app's process has stopped
+     */
+    public void markStopped(VirtualApp app) {
+        setRunning(app, false, -1);
+    }
+    
+    private boolean setRunning(VirtualApp app, boolean running, int processId) {
+        Key key = Key.of(app);
+        synchronized (writeLock) {
+            app.setProcessId(processId);
+            app.setRunning(running);
+            Snapshot current = snapshot;
+            VirtualApp registered = current.apps.get(key);
+            if (registered == null) {
+                return false;
+            }
+            // The caller may hold a copy the registry has since replaced
+            registered.setProcessId(processId);
+            registered.setRunning(running);
+            if (current.running.contains(key) != running) {
+                Set<Key> index = new HashSet<>(current.running);
+                if (running) {
+                    index.add(key);
+                } else {
+                    index.remove(key);
+                }
+                snapshot = current.withRunning(index);
+            }
+            return true;
+        }
+    }
+    
+    public int size() {
+        return snapshot.apps.size();
+    }
+    
+    public void clear() {
+        synchronized (writeLock) {
+            snapshot = Snapshot.EMPTY;
+        }
+    }
+    
+    // First index whose package name sorts after the given one
+    private static int indexAfter(List<VirtualApp> apps, String packageName) {
+        int low = 0;
+        int high = apps.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (apps.get(mid).getPackageName().compareTo(packageName) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    /**
+     * Primary key: one entry per package per virtual user
+     */
+    public static final class Key {
+        public final int userId;
+        public final String packageName;
+        
+        public Key(int userId, String packageName) {
+            this.userId = userId;
+            this.packageName = packageName;
+        }
+        
+        static Key of(VirtualApp app) {
+            return new Key(app.getUserId(), app.getPackageName());
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return userId == other.userId && packageName.equals(other.packageName);
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * userId + packageName.hashCode();
+        }
+        
+        @Override
+        public String toString() {
+            return userId + ":" + packageName;
+        }
+    }
+    
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(),
+                Collections.emptyList(), Collections.emptySet());
+        static final Comparator<VirtualApp> BY_PACKAGE = Comparator.comparing(VirtualApp::getPackageName);
+        
+        final Map<Key, VirtualApp> apps;
+        final Map<Integer, List<VirtualApp>> byUser;
+        final List<VirtualApp> all;
+        final Set<Key> running;
+        
+        private Snapshot(Map<Key, VirtualApp> apps, Map<Integer, List<VirtualApp>> byUser,
+                         List<VirtualApp> all, Set<Key> running) {
+            this.apps = apps;
+            this.byUser = byUser;
+            this.all = all;
+            this.running = running;
+        }
+        
+        /**
+         * @param apps New primary map, owned by the snapshot from here on
+         * @param changedUsers Users whose lists must be rebuilt; the others are shared
+         */
+        Snapshot withApps(Map<Key, VirtualApp> apps, Set<Integer> changedUsers, Set<Key> running) {
+            Map<Integer, List<VirtualApp>> rebuilt = new HashMap<>();
+            for (VirtualApp app : apps.values()) {
+                if (changedUsers.contains(app.getUserId())) {
+                    rebuilt.computeIfAbsent(app.getUserId(), k -> new ArrayList<>()).add(app);
+                }
+            }
+            Map<Integer, List<VirtualApp>> users = new HashMap<>(byUser);
+            users.keySet().removeAll(changedUsers);
+            for (Map.Entry<Integer, List<VirtualApp>> entry : rebuilt.entrySet()) {
+                entry.getValue().sort(BY_PACKAGE);
+                users.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+            }
+            return new Snapshot(Collections.unmodifiableMap(apps), Collections.unmodifiableMap(users),
+                    Collections.unmodifiableList(new ArrayList<>(apps.values())), Collections.unmodifiableSet(running));
+        }
+        
+        Snapshot withRunning(Set<Key> running) {
+            return new Snapshot(apps, byUser, all, Collections.unmodifiableSet(running));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,374 @@
+package com.terista.space.core;
+
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of installed virtual apps.
+ *
+ * Layout: an 8-byte header (magic, schema version) followed by records of
+ * [payload length][CRC32][payload]. A payload starts with an op code, the
+ * user ID and the package name; PUT records carry the remaining app fields.
+ * Strings are stored as a 32-bit byte length (-1 for null) and UTF-8 bytes;
+ * schema 1 journals used 16-bit lengths and are rewritten on restore.
+ * Restore memory-maps the file and scans only the record keys. Surviving PUT
+ * records are not decoded: each restored package reads its remaining fields
+ * from the mapping the first time one is asked for. A torn tail from an
+ * interrupted write is discarded. When the journal holds too many superseded
+ * records it is rewritten with one record per live app.
+ */
+public class AppRegistryStore {
+    
+    private static final String TAG = "AppRegistryStore";
+    
+    private static final int MAGIC = 0x54534152; // "TSAR"
+    private static final short SCHEMA_VERSION = 2;
+    // Schema 1 stored string lengths as shorts, which wrapped above 32767 bytes
+    private static final short SCHEMA_SHORT_STRINGS = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    
+    private static final int COMPACT_MIN_RECORDS = 64;
+    
+    private final File file;
+    private int journalRecords;
+    // Keys ("userId:packageName") with a live PUT in the journal
+    private final Set<String> liveKeys = new HashSet<>();
+    
+    public AppRegistryStore(File file) {
+        this.file = file;
+    }
+    
+    /**
+     * Replay the journal
+     * @return Apps that were installed when the journal was last written
+     */
+    public synchronized List<VirtualApp> restore() {
+        journalRecords = 0;
+        liveKeys.clear();
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            return new ArrayList<>();
+        }
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            
+            if (buffer.getInt(0) != MAGIC) {
+                Log.e(TAG, "Not a registry file, ignoring: " + file);
+                return new ArrayList<>();
+            }
+            short version = buffer.getShort(4);
+            if (version != SCHEMA_VERSION && version != SCHEMA_SHORT_STRINGS) {
+                Log.e(TAG, "Unsupported registry schema " + version + ", ignoring: " + file);
+                return new ArrayList<>();
+            }
+            int lengthSize = version == SCHEMA_SHORT_STRINGS ? 2 : 4;
+            
+            // Pass 1: keys only, remembering the offset of the latest PUT per app
+            Map<String, Integer> latest = new HashMap<>();
+            int offset = HEADER_SIZE;
+            int limit = buffer.limit();
+            CRC32 crc = new CRC32();
+            while (offset + RECORD_HEADER_SIZE <= limit) {
+                int length = buffer.getInt(offset);
+                int checksum = buffer.getInt(offset + 4);
+                int payload = offset + RECORD_HEADER_SIZE;
+                if (length <= 0 || payload + length > limit || checksum != checksum(crc, buffer, payload, length)) {
+                    break;
+                }
+                
+                byte op = buffer.get(payload);
+                int userId = buffer.getInt(payload + 1);
+                String key = key(userId, readString(buffer, payload + 5, lengthSize));
+                if (op == OP_PUT) {
+                    latest.put(key, payload);
+                } else {
+                    latest.remove(key);
+                }
+                journalRecords++;
+                offset = payload + length;
+            }
+            
+            if (offset != limit) {
+                Log.w(TAG, "Discarding torn registry tail at offset " + offset);
+                channel.truncate(offset);
+            }
+            
+            // Pass 2: wrap the surviving records without decoding them. Users whose records
+            // hold identical package bytes share one package, compared as raw slices.
+            List<VirtualApp> apps = new ArrayList<>(latest.size());
+            Map<ByteBuffer, InstalledPackage> shared = new HashMap<>();
+            for (Map.Entry<String, Integer> entry : latest.entrySet()) {
+                int payload = entry.getValue();
+                int userId = buffer.getInt(payload + 1);
+                // Package name, then apkPath, label, versionCode, versionName and the install time
+                int fields = skipString(buffer, payload + 5, lengthSize);
+                int versionCodeOffset = skipString(buffer, skipString(buffer, fields, lengthSize), lengthSize);
+                int installTimeOffset = skipString(buffer, versionCodeOffset + 4, lengthSize);
+                
+                ByteBuffer packageBytes = buffer.duplicate();
+                packageBytes.position(payload + 5).limit(installTimeOffset);
+                packageBytes = packageBytes.slice();
+                InstalledPackage installedPackage = shared.get(packageBytes);
+                if (installedPackage == null) {
+                    installedPackage = new InstalledPackage(readString(buffer, payload + 5, lengthSize),
+                            new RecordDecoder(buffer, fields, lengthSize));
+                    shared.put(packageBytes, installedPackage);
+                }
+                apps.add(new VirtualApp(installedPackage, userId, buffer.getLong(installTimeOffset)));
+                liveKeys.add(entry.getKey());
+            }
+            Log.i(TAG, "Restored " + apps.size() + " apps from " + journalRecords + " records");
+            if (version == SCHEMA_SHORT_STRINGS) {
+                // Appends use the current layout, so the old records cannot stay in the file
+                compact(apps);
+            }
+            return apps;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Failed to restore registry: " + file, e);
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Record an installed or updated app
+     */
+    public synchronized void appendPut(VirtualApp app) {
+        append(encode(OP_PUT, app.getUserId(), app.getPackageName(), app));
+        liveKeys.add(key(app.getUserId(), app.getPackageName()));
+    }
+    
+    /**
+     * Record an uninstalled app
+     */
+    public synchronized void appendRemove(int userId, String packageName) {
+        append(encode(OP_REMOVE, userId, packageName, null));
+        liveKeys.remove(key(userId, packageName));
+    }
+    
+    /**
+     * @return true if superseded records dominate the journal
+     */
+    public synchronized boolean needsCompaction() {
+        return journalRecords > COMPACT_MIN_RECORDS && journalRecords > liveKeys.size() * 2;
+    }
+    
+    /**
+     * Compact if {@link #needsCompaction()}. The app list is read under the
+     * store lock, so an install or uninstall that updates the registry before
+     * appending its record is either in the list or appended after the rewrite.
+     * @param apps Supplies the currently installed apps
+     */
+    public synchronized void compactIfNeeded(Supplier<? extends Collection<VirtualApp>> apps) {
+        if (needsCompaction()) {
+            compact(apps.get());
+        }
+    }
+    
+    /**
+     * Rewrite the journal with one PUT record per app, replacing the file atomically
+     * @param apps Currently installed apps
+     */
+    public synchronized void compact(Collection<VirtualApp> apps) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(header());
+            for (VirtualApp app : apps) {
+                out.write(encode(OP_PUT, app.getUserId(), app.getPackageName(), app));
+            }
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to compact registry", e);
+            temp.delete();
+            return;
+        }
+        
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace registry with compacted copy");
+            temp.delete();
+            return;
+        }
+        syncDirectory(file.getParentFile());
+        journalRecords = apps.size();
+        liveKeys.clear();
+        for (VirtualApp app : apps) {
+            liveKeys.add(key(app.getUserId(), app.getPackageName()));
+        }
+        Log.i(TAG, "Registry compacted to " + apps.size() + " records");
+    }
+    
+    public File getFile() { return file; }
+    
+    private void append(byte[] record) {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        
+        boolean fresh = !file.exists() || file.length() < HEADER_SIZE;
+        try (FileOutputStream out = new FileOutputStream(file, !fresh)) {
+            if (fresh) {
+                out.write(header());
+            }
+            out.write(record);
+            out.getFD().sync();
+            journalRecords++;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append registry record", e);
+            return;
+        }
+        if (fresh) {
+            syncDirectory(parent);
+        }
+    }
+    
+    /**
+     * Make a new or renamed directory entry durable; syncing the file alone does not
+     */
+    private static void syncDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileDescriptor fd = Os.open(dir.getPath(), OsConstants.O_RDONLY, 0);
+            try {
+                Os.fsync(fd);
+            } finally {
+                Os.close(fd);
+            }
+        } catch (ErrnoException e) {
+            Log.w(TAG, "Failed to sync registry directory: " + dir, e);
+        }
+    }
+    
+    private static String key(int userId, String packageName) {
+        return userId + ":" + packageName;
+    }
+    
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(SCHEMA_VERSION).putShort((short) 0).array();
+    }
+    
+    private static byte[] encode(byte op, int userId, String packageName, VirtualApp app) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            DataOutputStream payload = new DataOutputStream(bytes);
+            payload.writeByte(op);
+            payload.writeInt(userId);
+            writeString(payload, packageName);
+            if (op == OP_PUT) {
+                writeString(payload, app.getApkPath());
+                writeString(payload, app.getAppName());
+                payload.writeInt(app.getVersionCode());
+                writeString(payload, app.getVersionName());
+                payload.writeLong(app.getInstallTime());
+            }
+            payload.flush();
+            
+            byte[] data = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            return ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length)
+                    .putInt(data.length)
+                    .putInt((int) crc.getValue())
+                    .put(data)
+                    .array();
+        } catch (IOException e) {
+            // ByteArrayOutputStream does not throw
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Decodes a restored package's fields from its PUT record in the mapped journal.
+     * The mapping stays valid after the file is compacted or appended to.
+     */
+    private static final class RecordDecoder implements InstalledPackage.Decoder {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int lengthSize;
+        
+        RecordDecoder(ByteBuffer buffer, int offset, int lengthSize) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.lengthSize = lengthSize;
+        }
+        
+        @Override
+        public void decode(InstalledPackage target) {
+            int position = offset;
+            String apkPath = readString(buffer, position, lengthSize);
+            position = skipString(buffer, position, lengthSize);
+            String appName = readString(buffer, position, lengthSize);
+            position = skipString(buffer, position, lengthSize);
+            int versionCode = buffer.getInt(position);
+            String versionName = readString(buffer, position + 4, lengthSize);
+            target.setFields(appName, apkPath, versionCode, versionName);
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer, int offset, int lengthSize) {
+        int length = readLength(buffer, offset, lengthSize);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + lengthSize + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static int skipString(ByteBuffer buffer, int offset, int lengthSize) {
+        return offset + lengthSize + Math.max(0, readLength(buffer, offset, lengthSize));
+    }
+    
+    private static int readLength(ByteBuffer buffer, int offset, int lengthSize) {
+        return lengthSize == 2 ? buffer.getShort(offset) : buffer.getInt(offset);
+    }
+    
+    private static int checksum(CRC32 crc, ByteBuffer buffer, int offset, int length) {
+        crc.reset();
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset).limit(offset + length);
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
\ No newline at end of file
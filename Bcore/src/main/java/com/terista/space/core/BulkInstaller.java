@@ -0,0 +1,238 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged install pipeline for many APKs: parallel parse, dedupe by package
+ * (highest version wins), parallel staging, register, then label lookups
+ * for the apps whose manifest label could not be read.
+ *
+ * Work runs on a caller-owned executor so concurrent bulk installs share one
+ * bounded pool.
+ */
+public class BulkInstaller {
+    
+    private static final String TAG = "BulkInstaller";
+    private final ExecutorService executor;
+    private final Steps steps;
+    
+    /**
+     * The per-APK work of an install. Calls may come from several worker threads at once.
+     */
+    public interface Steps {
+        /**
+         * @return Manifest fields, or null if the APK is missing or unreadable
+         */
+        ApkManifest parse(String apkPath);
+        
+        /**
+         * @return Path to register the app with
+         */
+        String stage(String apkPath, ApkManifest manifest);
+        
+        /**
+         * Look up a label the manifest parser could not resolve
+         * @return Label, never null
+         */
+        String resolveLabel(ApkManifest manifest, String installPath);
+        
+        VirtualApp create(ApkManifest manifest, String installPath, int userId, String label);
+        
+        void register(List<VirtualApp> apps);
+        
+        void persist(List<VirtualApp> apps);
+    }
+    
+    public BulkInstaller(ExecutorService executor, Steps steps) {
+        this.executor = executor;
+        this.steps = steps;
+    }
+    
+    /**
+     * Listener callbacks are invoked from worker threads.
+     * @param apkPaths APK files to install
+     * @param userId Virtual user ID
+     * @param listener Progress and failure listener, may be null
+     * @return Installed apps, per-item failures and throughput
+     */
+    public Result install(List<String> apkPaths, int userId, Listener listener) {
+        long startTime = System.nanoTime();
+        Listener callbacks = listener != null ? listener : new Listener() {};
+        Result result = new Result(apkPaths.size());
+        List<Future<?>> submitted = new ArrayList<>();
+        try {
+            // Stage 1: parse in parallel
+            List<Future<ApkManifest>> parsing = new ArrayList<>(apkPaths.size());
+            for (String apkPath : apkPaths) {
+                parsing.add(submit(submitted, () -> steps.parse(apkPath)));
+            }
+            
+            ApkManifest[] manifests = new ApkManifest[apkPaths.size()];
+            for (int i = 0; i < apkPaths.size(); i++) {
+                String apkPath = apkPaths.get(i);
+                try {
+                    manifests[i] = parsing.get(i).get();
+                    if (manifests[i] == null) {
+                        result.fail(apkPath, "Failed to parse APK", callbacks);
+                    }
+                } catch (ExecutionException e) {
+                    result.fail(apkPath, "Failed to parse APK: " + e.getCause(), callbacks);
+                }
+                callbacks.onProgress(Stage.PARSE, i + 1, apkPaths.size());
+            }
+            
+            // Stage 2: dedupe by package, keeping the highest version
+            Map<String, Integer> unique = new LinkedHashMap<>();
+            for (int i = 0; i < manifests.length; i++) {
+                if (manifests[i] == null) continue;
+                Integer existing = unique.get(manifests[i].getPackageName());
+                if (existing == null || manifests[i].getVersionCode() > manifests[existing].getVersionCode()) {
+                    unique.put(manifests[i].getPackageName(), i);
+                    if (existing != null) {
+                        result.fail(apkPaths.get(existing), "Superseded by " + apkPaths.get(i), callbacks);
+                    }
+                } else {
+                    result.fail(apkPaths.get(i), "Superseded by " + apkPaths.get(existing), callbacks);
+                }
+            }
+            
+            // Stage 3: stage APKs in parallel, then register; unresolved labels use the package name for now
+            List<Integer> winners = new ArrayList<>(unique.values());
+            List<Future<String>> staging = new ArrayList<>(winners.size());
+            for (int index : winners) {
+                staging.add(submit(submitted, () -> steps.stage(apkPaths.get(index), manifests[index])));
+            }
+            String[] installPaths = new String[winners.size()];
+            VirtualApp[] apps = new VirtualApp[winners.size()];
+            for (int i = 0; i < winners.size(); i++) {
+                int index = winners.get(i);
+                try {
+                    installPaths[i] = staging.get(i).get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Failed to stage APK, installing in place: " + apkPaths.get(index), e.getCause());
+                    installPaths[i] = apkPaths.get(index);
+                }
+                ApkManifest manifest = manifests[index];
+                String label = manifest.getLabel() != null ? manifest.getLabel() : manifest.getPackageName();
+                apps[i] = steps.create(manifest, installPaths[i], userId, label);
+            }
+            steps.register(Arrays.asList(apps));
+            callbacks.onProgress(Stage.REGISTER, apps.length, apps.length);
+            
+            // Stage 4: look up the labels the parser could not resolve; failures keep the package name
+            List<Integer> unlabelled = new ArrayList<>();
+            for (int i = 0; i < apps.length; i++) {
+                if (manifests[winners.get(i)].getLabel() == null) {
+                    unlabelled.add(i);
+                }
+            }
+            AtomicInteger labelled = new AtomicInteger(0);
+            List<Future<VirtualApp>> labelling = new ArrayList<>(unlabelled.size());
+            for (int slot : unlabelled) {
+                ApkManifest manifest = manifests[winners.get(slot)];
+                labelling.add(submit(submitted, () -> {
+                    String label = steps.resolveLabel(manifest, installPaths[slot]);
+                    callbacks.onProgress(Stage.POST_PROCESS, labelled.incrementAndGet(), unlabelled.size());
+                    return label.equals(apps[slot].getAppName()) ? null : apps[slot].withAppName(label);
+                }));
+            }
+            List<VirtualApp> relabelled = new ArrayList<>();
+            for (int i = 0; i < unlabelled.size(); i++) {
+                try {
+                    VirtualApp app = labelling.get(i).get();
+                    if (app != null) {
+                        apps[unlabelled.get(i)] = app;
+                        relabelled.add(app);
+                    }
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Failed to load label", e.getCause());
+                }
+            }
+            if (!relabelled.isEmpty()) {
+                steps.register(relabelled);
+            }
+            
+            // Journal once labels are known so restored apps need no resource lookups
+            steps.persist(Arrays.asList(apps));
+            result.installed.addAll(Arrays.asList(apps));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.e(TAG, "Bulk install interrupted");
+        } finally {
+            // Only an interrupted install leaves work behind; the pool is shared
+            for (Future<?> future : submitted) {
+                future.cancel(true);
+            }
+        }
+        
+        result.elapsedNanos = System.nanoTime() - startTime;
+        Log.i(TAG, "Bulk install finished: " + result);
+        return result;
+    }
+    
+    private <T> Future<T> submit(List<Future<?>> submitted, Callable<T> task) {
+        Future<T> future = executor.submit(task);
+        submitted.add(future);
+        return future;
+    }
+    
+    public enum Stage {
+        PARSE,
+        REGISTER,
+        POST_PROCESS
+    }
+    
+    /**
+     * Progress and failure callbacks for {@link #install}
+     */
+    public interface Listener {
+        default void onProgress(Stage stage, int completed, int total) {}
+        default void onItemFailed(String apkPath, String reason) {}
+    }
+    
+    public static class Result {
+        public final int requested;
+        public final List<VirtualApp> installed = new ArrayList<>();
+        public final Map<String, String> failures = new LinkedHashMap<>();
+        public long elapsedNanos;
+        
+        Result(int requested) {
+            this.requested = requested;
+        }
+        
+        void fail(String apkPath, String reason, Listener listener) {
+            failures.put(apkPath, reason);
+            listener.onItemFailed(apkPath, reason);
+        }
+        
+        /**
+         * @return Pipeline throughput over all requested APKs
+         */
+        public double getApksPerSecond() {
+            return elapsedNanos > 0 ? requested * 1e9 / elapsedNanos : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "BulkInstallResult{" +
+                    "requested=" + requested +
+                    ", installed=" + installed.size() +
+                    ", failed=" + failures.size() +
+                    ", elapsedMs=" + elapsedNanos / 1_000_000 +
+                    ", apksPerSecond=" + String.format(Locale.US, "%.1f", getApksPerSecond()) +
+                    '}';
+        }
+    }
+}
\ No newline at end of file
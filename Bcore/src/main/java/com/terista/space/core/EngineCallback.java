@@ -0,0 +1,14 @@
+package com.terista.space.core;
+
+/**
+ * Completion callback for asynchronous {@link VirtualEngine} operations.
+ * Always invoked on the main thread.
+ */
+public interface EngineCallback<T> {
+    
+    /**
+     * @param result Operation result, or null if it failed with an exception
+     * @param error Exception thrown by the operation, or null on completion
+     */
+    void onComplete(T result, Throwable error);
+}
\ No newline at end of file
@@ -0,0 +1,226 @@
+package com.terista.space.core;
+
+import android.os.Process;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Always-on span timers and counters for the engine's hot paths.
+ *
+ * Usage: {@code long start = metrics.begin(); ... metrics.end("app.install", start);}
+ * Timers and counters accumulate in LongAdders, so recording never takes a
+ * lock. Each finished span is also written to a fixed-size ring buffer that
+ * can be exported as Chrome trace JSON (loadable in Perfetto or
+ * chrome://tracing). When disabled, {@link #begin()} returns 0 and
+ * {@link #end(String, long)} returns immediately.
+ */
+public class EngineMetrics {
+    
+    private static final int DEFAULT_TRACE_CAPACITY = 4096;
+    
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<TraceEvent> traceBuffer;
+    private final AtomicLong traceCursor = new AtomicLong(0);
+    private final long originNanos = System.nanoTime();
+    private volatile boolean enabled = true;
+    
+    public EngineMetrics() {
+        this(DEFAULT_TRACE_CAPACITY);
+    }
+    
+    public EngineMetrics(int traceCapacity) {
+        this.traceBuffer = new AtomicReferenceArray<>(traceCapacity);
+    }
+    
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public boolean isEnabled() { return enabled; }
+    
+    /**
+     * @return Span start timestamp, or 0 when disabled
+     */
+    public long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Finish a span started with {@link #begin()}
+     * @param name Span name, e.g. "activity.launchApp"
+     * @param startNanos Value returned by {@link #begin()}
+     */
+    public void end(String name, long startNanos) {
+        if (startNanos == 0 || !enabled) return;
+        
+        long endNanos = System.nanoTime();
+        long duration = endNanos - startNanos;
+        timerOf(name).record(duration);
+        
+        int slot = (int) (traceCursor.getAndIncrement() % traceBuffer.length());
+        traceBuffer.set(slot, new TraceEvent(name, Thread.currentThread().getId(), startNanos - originNanos, duration));
+    }
+    
+    public void increment(String name) {
+        add(name, 1);
+    }
+    
+    public void add(String name, long delta) {
+        if (!enabled) return;
+        LongAdder counter = counters.get(name);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(name, k -> new LongAdder());
+        }
+        counter.add(delta);
+    }
+    
+    /**
+     * @return Point-in-time copy of all counters and timers
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            counterValues.put(entry.getKey(), entry.getValue().sum());
+        }
+        Map<String, TimerStats> timerValues = new TreeMap<>();
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            timerValues.put(entry.getKey(), entry.getValue().stats());
+        }
+        return new Snapshot(counterValues, timerValues);
+    }
+    
+    public void reset() {
+        counters.clear();
+        timers.clear();
+        for (int i = 0; i < traceBuffer.length(); i++) {
+            traceBuffer.set(i, null);
+        }
+        traceCursor.set(0);
+    }
+    
+    /**
+     * Write the buffered spans and current counter values as Chrome trace JSON
+     * @param file Destination file
+     */
+    public void writeChromeTrace(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeChromeTrace(writer);
+        }
+    }
+    
+    public void writeChromeTrace(Writer writer) throws IOException {
+        int pid = Process.myPid();
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        
+        for (int i = 0; i < traceBuffer.length(); i++) {
+            TraceEvent event = traceBuffer.get(i);
+            if (event == null) continue;
+            if (!first) writer.write(',');
+            first = false;
+            writer.write("{\"name\":\"" + escape(event.name) + "\",\"cat\":\"engine\",\"ph\":\"X\"" +
+                    ",\"ts\":" + micros(event.startNanos) + ",\"dur\":" + micros(event.durationNanos) +
+                    ",\"pid\":" + pid + ",\"tid\":" + event.threadId + "}");
+        }
+        
+        String now = micros(System.nanoTime() - originNanos);
+        for (Map.Entry<String, Long> counter : snapshot().counters.entrySet()) {
+            if (!first) writer.write(',');
+            first = false;
+            writer.write("{\"name\":\"" + escape(counter.getKey()) + "\",\"ph\":\"C\",\"ts\":" + now +
+                    ",\"pid\":" + pid + ",\"args\":{\"value\":" + counter.getValue() + "}}");
+        }
+        writer.write("]}");
+    }
+    
+    private Timer timerOf(String name) {
+        Timer timer = timers.get(name);
+        return timer != null ? timer : timers.computeIfAbsent(name, k -> new Timer());
+    }
+    
+    private static String micros(long nanos) {
+        return (nanos / 1000) + "." + String.format(Locale.US, "%03d", nanos % 1000);
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+    
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+        
+        TimerStats stats() {
+            return new TimerStats(count.sum(), totalNanos.sum(), maxNanos.get());
+        }
+    }
+    
+    private static final class TraceEvent {
+        final String name;
+        final long threadId;
+        final long startNanos;
+        final long durationNanos;
+        
+        TraceEvent(String name, long threadId, long startNanos, long durationNanos) {
+            this.name = name;
+            this.threadId = threadId;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+    
+    public static final class TimerStats {
+        public final long count;
+        public final long totalNanos;
+        public final long maxNanos;
+        
+        TimerStats(long count, long totalNanos, long maxNanos) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+        
+        public long getMeanNanos() {
+            return count > 0 ? totalNanos / count : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "count=" + count + ", meanUs=" + getMeanNanos() / 1000 + ", maxUs=" + maxNanos / 1000;
+        }
+    }
+    
+    public static final class Snapshot {
+        public final Map<String, Long> counters;
+        public final Map<String, TimerStats> timers;
+        
+        Snapshot(Map<String, Long> counters, Map<String, TimerStats> timers) {
+            this.counters = Collections.unmodifiableMap(counters);
+            this.timers = Collections.unmodifiableMap(timers);
+        }
+        
+        @Override
+        public String toString() {
+            return "Metrics{counters=" + counters + ", timers=" + timers + '}';
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.terista.space.core;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * Immutable, user-independent data parsed from an installed APK.
+ * One instance is shared by every user the package is installed for;
+ * per-user state lives in {@link VirtualApp}.
+ * Packages restored from the registry journal carry only their name until
+ * another field is read.
+ */
+public final class InstalledPackage implements Serializable {
+    
+    private final String packageName;
+    private String label;
+    private String apkPath;
+    private int versionCode;
+    private String versionName;
+    // Non-null until the fields above have been decoded from it
+    private transient volatile Decoder decoder;
+    
+    /**
+     * Fills in the fields of a package from where they are stored
+     */
+    interface Decoder {
+        void decode(InstalledPackage target);
+    }
+    
+    public InstalledPackage(String packageName, String label, String apkPath, int versionCode, String versionName) {
+        this.packageName = packageName;
+        this.label = label;
+        this.apkPath = apkPath;
+        this.versionCode = versionCode;
+        this.versionName = versionName;
+    }
+    
+    /**
+     * Package whose remaining fields are decoded on first access
+     */
+    InstalledPackage(String packageName, Decoder decoder) {
+        this.packageName = packageName;
+        this.decoder = decoder;
+    }
+    
+    /**
+     * Called by a {@link Decoder}
+     */
+    void setFields(String label, String apkPath, int versionCode, String versionName) {
+        this.label = label;
+        this.apkPath = apkPath;
+        this.versionCode = versionCode;
+        this.versionName = versionName;
+    }
+    
+    private void decode() {
+        if (decoder == null) {
+            return;
+        }
+        synchronized (this) {
+            Decoder pending = decoder;
+            if (pending != null) {
+                pending.decode(this);
+                // The volatile write publishes the fields
+                decoder = null;
+            }
+        }
+    }
+    
+    public InstalledPackage withLabel(String label) {
+        decode();
+        return new InstalledPackage(packageName, label, apkPath, versionCode, versionName);
+    }
+    
+    /**
+     * @return true if both describe the same APK build, so one can stand in for the other
+     */
+    public boolean isSameBuild(InstalledPackage other) {
+        return other != null
+                && getVersionCode() == other.getVersionCode()
+                && packageName.equals(other.packageName)
+                && getApkPath().equals(other.getApkPath());
+    }
+    
+    public String getPackageName() { return packageName; }
+    public String getLabel() { decode(); return label; }
+    public String getApkPath() { decode(); return apkPath; }
+    public int getVersionCode() { decode(); return versionCode; }
+    public String getVersionName() { decode(); return versionName; }
+    
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        decode();
+        out.defaultWriteObject();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Measurement harness for virtual app launch latency.
+ *
+ * Runs repeated launch/stop cycles for an installed app, once with the
+ * process pool disabled and once with it enabled, and reports p50/p99 of the
+ * time spent inside {@link VirtualActivityManager#launchApp}. Pool refills
+ * happen between iterations and are not counted.
+ */
+public class LaunchLatencyProbe {
+    
+    private static final String TAG = "LaunchLatencyProbe";
+    
+    private final VirtualEngine engine;
+    
+    public LaunchLatencyProbe(VirtualEngine engine) {
+        this.engine = engine;
+    }
+    
+    /**
+     * Measure launch latency with and without the process pool
+     * @param packageName Installed package to launch
+     * @param userId Virtual user ID
+     * @param iterations Launch/stop cycles per mode
+     * @return Report with both distributions, or null if the app is not installed
+     */
+    public Report measure(String packageName, int userId, int iterations) {
+        VirtualApp app = engine.getVirtualApp(packageName, userId);
+        if (app == null) {
+            Log.e(TAG, "Virtual app not found: " + packageName);
+            return null;
+        }
+        
+        VirtualProcessPool pool = engine.getProcessPool();
+        boolean poolWasEnabled = pool.isEnabled();
+        try {
+            pool.setEnabled(false);
+            Stats cold = run(app, userId, iterations, false);
+            
+            pool.setEnabled(true);
+            Stats pooled = run(app, userId, iterations, true);
+            
+            Report report = new Report(cold, pooled);
+            Log.i(TAG, "Launch latency for " + packageName + ": " + report);
+            return report;
+        } finally {
+            pool.setEnabled(poolWasEnabled);
+        }
+    }
+    
+    private Stats run(VirtualApp app, int userId, int iterations, boolean pooled) {
+        long[] samples = new long[iterations];
+        int count = 0;
+        
+        for (int i = 0; i < iterations; i++) {
+            if (pooled) {
+                engine.getProcessPool().fill();
+            }
+            
+            long start = System.nanoTime();
+            boolean launched = engine.getActivityManager().launchApp(app, userId);
+            long elapsed = System.nanoTime() - start;
+            
+            if (launched) {
+                samples[count++] = elapsed;
+                engine.stopVirtualApp(app.getPackageName(), userId);
+            }
+        }
+        
+        return Stats.of(Arrays.copyOf(samples, count));
+    }
+    
+    public static class Stats {
+        public final int samples;
+        public final long p50Nanos;
+        public final long p99Nanos;
+        
+        Stats(int samples, long p50Nanos, long p99Nanos) {
+            this.samples = samples;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+        }
+        
+        static Stats of(long[] samples) {
+            if (samples.length == 0) {
+                return new Stats(0, 0, 0);
+            }
+            Arrays.sort(samples);
+            return new Stats(samples.length, percentile(samples, 50), percentile(samples, 99));
+        }
+        
+        private static long percentile(long[] sorted, int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+        
+        @Override
+        public String toString() {
+            return "n=" + samples + ", p50=" + p50Nanos / 1000 + "us, p99=" + p99Nanos / 1000 + "us";
+        }
+    }
+    
+    public static class Report {
+        public final Stats withoutPool;
+        public final Stats withPool;
+        
+        Report(Stats withoutPool, Stats withPool) {
+            this.withoutPool = withoutPool;
+            this.withPool = withPool;
+        }
+        
+        @Override
+        public String toString() {
+            return "without pool {" + withoutPool + "}, with pool {" + withPool + "}";
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Count of installed package changes, shared by every process of the app
+ * through a memory-mapped file. The engine process bumps it after each
+ * install, update, uninstall and index rewrite; virtual app processes, which
+ * the engine's event bus does not reach, compare it against the value their
+ * caches were filled at.
+ */
+public final class PackageChangeCounter {
+    
+    private static final String TAG = "PackageChangeCounter";
+    
+    private static final int SIZE = 8;
+    
+    // Null if the file could not be mapped; callers then see no changes
+    private final MappedByteBuffer counter;
+    
+    public PackageChangeCounter(File file) {
+        this.counter = map(file);
+    }
+    
+    private static MappedByteBuffer map(File file) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create counter directory: " + dir);
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            // Never shrink it: other processes may have it mapped
+            if (raf.length() < SIZE) {
+                raf.setLength(SIZE);
+            }
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to map package change counter: " + file, e);
+            return null;
+        }
+    }
+    
+    /**
+     * @return Current count; only its changes are meaningful
+     */
+    public long get() {
+        return counter != null ? counter.getLong(0) : 0;
+    }
+    
+    /**
+     * Record a change (engine process only, so increments are not lost)
+     */
+    public synchronized void increment() {
+        if (counter != null) {
+            counter.putLong(0, counter.getLong(0) + 1);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,287 @@
+package com.terista.space.core;
+
+import android.content.pm.ActivityInfo;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ComponentInfo;
+import android.content.pm.PackageInfo;
+import android.content.pm.PermissionInfo;
+import android.content.pm.ProviderInfo;
+import android.content.pm.ServiceInfo;
+import android.content.pm.Signature;
+import android.content.pm.SigningInfo;
+import android.os.Build;
+import android.os.Parcel;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Persisted index of the manifest fields of each installed APK, so component
+ * metadata can be rebuilt without parsing the APK again.
+ *
+ * One small file per APK path, written at install time: a header (magic,
+ * schema version, OS release), the APK path, size and modification time it
+ * was taken from, then the {@link ApkManifest} fields. An entry whose APK
+ * has since changed is treated as missing, and so is one written by another
+ * OS release, since the SigningInfo it holds is in that release's parcel format.
+ */
+public class PackageIndex {
+    
+    private static final String TAG = "PackageIndex";
+    
+    private static final int MAGIC = 0x54535049; // "TSPI"
+    private static final short SCHEMA_VERSION = 2;
+    private static final String SUFFIX = ".idx";
+    // Certificates and signing info are a few kilobytes
+    private static final int MAX_BLOB_SIZE = 1024 * 1024;
+    
+    private final File dir;
+    
+    public PackageIndex(File dir) {
+        this.dir = dir;
+    }
+    
+    /**
+     * Record the manifest of an installed APK, replacing any previous entry
+     * @return true if the entry was written
+     */
+    public boolean write(String apkPath, ApkManifest manifest) {
+        File apk = new File(apkPath);
+        File file = fileFor(apkPath);
+        File temp = new File(file.getPath() + ".tmp");
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create index directory: " + dir);
+            return false;
+        }
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(SCHEMA_VERSION);
+            out.writeInt(Build.VERSION.SDK_INT);
+            out.writeUTF(apkPath);
+            out.writeLong(apk.length());
+            out.writeLong(apk.lastModified());
+            
+            out.writeUTF(manifest.getPackageName());
+            out.writeInt(manifest.getVersionCode());
+            writeNullable(out, manifest.getVersionName());
+            writeNullable(out, manifest.getLabel());
+            out.writeInt(manifest.getLabelResId());
+            writeNullable(out, manifest.getApplicationClassName());
+            writeList(out, manifest.getActivities());
+            writeList(out, manifest.getServices());
+            writeList(out, manifest.getReceivers());
+            writeList(out, manifest.getProviders());
+            writeList(out, manifest.getRequestedPermissions());
+            writeList(out, manifest.getPermissions());
+            out.writeInt(manifest.getSignatures().size());
+            for (byte[] signature : manifest.getSignatures()) {
+                writeBytes(out, signature);
+            }
+            out.writeBoolean(manifest.getSigningInfo() != null);
+            if (manifest.getSigningInfo() != null) {
+                writeBytes(out, manifest.getSigningInfo());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write index for " + apkPath, e);
+            temp.delete();
+            return false;
+        }
+        
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace index for " + apkPath);
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return The indexed manifest, or null if there is no entry or the APK changed since it was written
+     */
+    public ApkManifest read(String apkPath) {
+        File file = fileFor(apkPath);
+        if (!file.exists()) {
+            return null;
+        }
+        
+        File apk = new File(apkPath);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != SCHEMA_VERSION || in.readInt() != Build.VERSION.SDK_INT) {
+                return null;
+            }
+            // Names are hashed, so check the entry belongs to this path
+            if (!apkPath.equals(in.readUTF()) || in.readLong() != apk.length() || in.readLong() != apk.lastModified()) {
+                return null;
+            }
+            
+            ApkManifest manifest = new ApkManifest();
+            manifest.setPackageName(in.readUTF());
+            manifest.setVersionCode(in.readInt());
+            manifest.setVersionName(readNullable(in));
+            manifest.setLabel(readNullable(in));
+            manifest.setLabelResId(in.readInt());
+            manifest.setApplicationClassName(readNullable(in));
+            for (int i = in.readInt(); i > 0; i--) manifest.addActivity(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addService(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addReceiver(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addProvider(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addRequestedPermission(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addPermission(in.readUTF());
+            for (int i = in.readInt(); i > 0; i--) manifest.addSignature(readBytes(in));
+            if (in.readBoolean()) {
+                manifest.setSigningInfo(readBytes(in));
+            }
+            return manifest;
+        } catch (IOException e) {
+            Log.w(TAG, "Unreadable index for " + apkPath, e);
+            return null;
+        }
+    }
+    
+    /**
+     * PackageInfo with every component, permission and signature the index
+     * records. Components share one ApplicationInfo.
+     */
+    public static PackageInfo buildPackageInfo(ApkManifest manifest, String apkPath, String label) {
+        ApplicationInfo applicationInfo = new ApplicationInfo();
+        applicationInfo.packageName = manifest.getPackageName();
+        applicationInfo.className = manifest.getApplicationClassName();
+        applicationInfo.labelRes = manifest.getLabelResId();
+        applicationInfo.nonLocalizedLabel = manifest.getLabel() != null ? manifest.getLabel() : label;
+        applicationInfo.sourceDir = apkPath;
+        applicationInfo.publicSourceDir = apkPath;
+        
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = manifest.getPackageName();
+        packageInfo.versionCode = manifest.getVersionCode();
+        packageInfo.versionName = manifest.getVersionName();
+        packageInfo.applicationInfo = applicationInfo;
+        packageInfo.activities = components(manifest.getActivities(), applicationInfo, ActivityInfo::new, ActivityInfo[]::new);
+        packageInfo.receivers = components(manifest.getReceivers(), applicationInfo, ActivityInfo::new, ActivityInfo[]::new);
+        packageInfo.services = components(manifest.getServices(), applicationInfo, ServiceInfo::new, ServiceInfo[]::new);
+        packageInfo.providers = components(manifest.getProviders(), applicationInfo, ProviderInfo::new, ProviderInfo[]::new);
+        
+        // Like PackageManager, absent lists stay null rather than empty
+        List<String> requested = manifest.getRequestedPermissions();
+        if (!requested.isEmpty()) {
+            packageInfo.requestedPermissions = requested.toArray(new String[0]);
+        }
+        List<String> defined = manifest.getPermissions();
+        if (!defined.isEmpty()) {
+            packageInfo.permissions = new PermissionInfo[defined.size()];
+            for (int i = 0; i < defined.size(); i++) {
+                PermissionInfo permission = new PermissionInfo();
+                permission.name = defined.get(i);
+                permission.packageName = manifest.getPackageName();
+                packageInfo.permissions[i] = permission;
+            }
+        }
+        List<byte[]> signatures = manifest.getSignatures();
+        if (!signatures.isEmpty()) {
+            packageInfo.signatures = new Signature[signatures.size()];
+            for (int i = 0; i < signatures.size(); i++) {
+                packageInfo.signatures[i] = new Signature(signatures.get(i));
+            }
+        }
+        if (manifest.getSigningInfo() != null) {
+            packageInfo.signingInfo = unmarshalSigningInfo(manifest.getSigningInfo());
+        }
+        return packageInfo;
+    }
+    
+    /**
+     * @return SigningInfo in this OS release's parcel format, for {@link ApkManifest#getSigningInfo()}
+     */
+    public static byte[] marshalSigningInfo(SigningInfo signingInfo) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            signingInfo.writeToParcel(parcel, 0);
+            return parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+    }
+    
+    private static SigningInfo unmarshalSigningInfo(byte[] bytes) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(bytes, 0, bytes.length);
+            parcel.setDataPosition(0);
+            return SigningInfo.CREATOR.createFromParcel(parcel);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unreadable signing info", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+    
+    private static <T extends ComponentInfo> T[] components(List<String> names, ApplicationInfo applicationInfo,
+                                                            Supplier<T> factory, IntFunction<T[]> arrayFactory) {
+        if (names.isEmpty()) {
+            return null;
+        }
+        T[] components = arrayFactory.apply(names.size());
+        for (int i = 0; i < components.length; i++) {
+            T component = factory.get();
+            component.name = names.get(i);
+            component.packageName = applicationInfo.packageName;
+            component.applicationInfo = applicationInfo;
+            components[i] = component;
+        }
+        return components;
+    }
+    
+    public void remove(String apkPath) {
+        fileFor(apkPath).delete();
+    }
+    
+    private File fileFor(String apkPath) {
+        String name = new File(apkPath).getName();
+        return new File(dir, name + "-" + Integer.toHexString(apkPath.hashCode()) + SUFFIX);
+    }
+    
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_BLOB_SIZE) {
+            throw new IOException("Corrupt entry, blob of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+    
+    private static void writeList(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.terista.space.core;
+
+import android.content.pm.PackageInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-bounded LRU cache of component metadata, keyed by APK path.
+ * Only recently launched apps keep their PackageInfo resident; everything
+ * else is rebuilt from its {@link PackageIndex} entry on the next miss.
+ * Writers of an entry invalidate its path.
+ */
+public class PackageMetadataCache {
+    
+    /**
+     * Builds the full PackageInfo for an APK on a cache miss
+     */
+    public interface Loader {
+        PackageInfo load(String apkPath);
+    }
+    
+    private final int maxEntries;
+    private final Map<String, PackageInfo> entries;
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    
+    public PackageMetadataCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, PackageInfo>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PackageInfo> eldest) {
+                return size() > PackageMetadataCache.this.maxEntries;
+            }
+        };
+    }
+    
+    /**
+     * Get cached metadata, loading it on a miss. Loading runs outside the lock,
+     * so concurrent misses for the same APK may both parse; the first result wins.
+     * @param apkPath Installed APK path
+     * @param loader Parser used on a miss
+     * @return Package info, or null if the loader failed
+     */
+    public PackageInfo get(String apkPath, Loader loader) {
+        synchronized (entries) {
+            PackageInfo cached = entries.get(apkPath);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        
+        misses.incrementAndGet();
+        PackageInfo loaded = loader.load(apkPath);
+        if (loaded == null) {
+            return null;
+        }
+        synchronized (entries) {
+            PackageInfo existing = entries.get(apkPath);
+            if (existing != null) {
+                return existing;
+            }
+            entries.put(apkPath, loaded);
+            return loaded;
+        }
+    }
+    
+    public void invalidate(String apkPath) {
+        synchronized (entries) {
+            entries.remove(apkPath);
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public int getMaxEntries() { return maxEntries; }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+}
\ No newline at end of file
@@ -0,0 +1,163 @@
+package com.terista.space.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates virtual process IDs from a fixed set of recyclable slots.
+ *
+ * Each ID encodes a slot index in its low bits and the slot's generation in
+ * the high bits. Releasing an ID bumps the generation and pushes the slot onto
+ * a lock-free free list, so a handle kept past its release no longer matches
+ * and can be detected with {@link #isLive(int)}. Because slots are dense,
+ * registries can index plain arrays with {@link #slotOf(int)}.
+ */
+public final class ProcessIdAllocator {
+    
+    public static final int INVALID_ID = -1;
+    public static final int SLOT_BITS = 16;
+    public static final int MAX_CAPACITY = 1 << SLOT_BITS;
+    
+    private static final int SLOT_MASK = MAX_CAPACITY - 1;
+    // 15 generation bits keep every encoded ID positive
+    private static final int MAX_GENERATION = 0x7FFF;
+    private static final int EMPTY = -1;
+    
+    private final int capacity;
+    private final AtomicIntegerArray generations;
+    private final AtomicIntegerArray nextFree;
+    // Free list head: ABA stamp in the high word, slot index (or EMPTY) in the low word
+    private final AtomicLong freeHead = new AtomicLong(pack(0, EMPTY));
+    private final AtomicInteger highWater = new AtomicInteger(0);
+    private final AtomicInteger liveCount = new AtomicInteger(0);
+    
+    public ProcessIdAllocator(int capacity) {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Capacity must be in [1, " + MAX_CAPACITY + "]: " + capacity);
+        }
+        this.capacity = capacity;
+        this.generations = new AtomicIntegerArray(capacity);
+        this.nextFree = new AtomicIntegerArray(capacity);
+    }
+    
+    /**
+     * Allocate a process ID, reusing a released slot when one is available
+     * @return New process ID or {@link #INVALID_ID} if all slots are in use
+     */
+    public int allocate() {
+        int slot = popFree();
+        if (slot == EMPTY) {
+            slot = claimFreshSlot();
+            if (slot == EMPTY) {
+                return INVALID_ID;
+            }
+            generations.set(slot, 1);
+        }
+        liveCount.incrementAndGet();
+        return encode(slot, generations.get(slot));
+    }
+    
+    /**
+     * Release a process ID so its slot can be reused
+     * @param id Process ID returned by {@link #allocate()}
+     * @return true if the ID was live and is now released, false if stale
+     */
+    public boolean release(int id) {
+        if (id < 0) return false;
+        
+        int slot = slotOf(id);
+        if (slot >= highWater.get()) return false;
+        
+        int generation = generationOf(id);
+        int nextGeneration = generation == MAX_GENERATION ? 1 : generation + 1;
+        // Only the first release of a given handle wins, so double releases are harmless
+        if (!generations.compareAndSet(slot, generation, nextGeneration)) {
+            return false;
+        }
+        
+        liveCount.decrementAndGet();
+        pushFree(slot);
+        return true;
+    }
+    
+    /**
+     * Check whether an ID still refers to the current occupant of its slot
+     * @param id Process ID
+     * @return true if the ID has not been released
+     */
+    public boolean isLive(int id) {
+        if (id < 0) return false;
+        int slot = slotOf(id);
+        return slot < highWater.get() && generations.get(slot) == generationOf(id);
+    }
+    
+    public int capacity() { return capacity; }
+    
+    public int liveCount() { return liveCount.get(); }
+    
+    /**
+     * Number of slots handed out at least once; registries only need to scan this far
+     */
+    public int highWaterMark() { return Math.min(highWater.get(), capacity); }
+    
+    public static int slotOf(int id) {
+        return id & SLOT_MASK;
+    }
+    
+    public static int generationOf(int id) {
+        return id >>> SLOT_BITS;
+    }
+    
+    private static int encode(int slot, int generation) {
+        return (generation << SLOT_BITS) | slot;
+    }
+    
+    private int claimFreshSlot() {
+        while (true) {
+            int slot = highWater.get();
+            if (slot >= capacity) {
+                return EMPTY;
+            }
+            if (highWater.compareAndSet(slot, slot + 1)) {
+                return slot;
+            }
+        }
+    }
+    
+    private int popFree() {
+        while (true) {
+            long head = freeHead.get();
+            int slot = slotPart(head);
+            if (slot == EMPTY) {
+                return EMPTY;
+            }
+            int next = nextFree.get(slot);
+            if (freeHead.compareAndSet(head, pack(stampPart(head) + 1, next))) {
+                return slot;
+            }
+        }
+    }
+    
+    private void pushFree(int slot) {
+        while (true) {
+            long head = freeHead.get();
+            nextFree.set(slot, slotPart(head));
+            if (freeHead.compareAndSet(head, pack(stampPart(head) + 1, slot))) {
+                return;
+            }
+        }
+    }
+    
+    private static long pack(int stamp, int slot) {
+        return ((long) stamp << 32) | (slot & 0xFFFFFFFFL);
+    }
+    
+    private static int stampPart(long head) {
+        return (int) (head >>> 32);
+    }
+    
+    private static int slotPart(long head) {
+        return (int) head;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package com.terista.space.core;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on a shared executor while keeping tasks with the same key in
+ * submission order. Tasks with different keys run in parallel.
+ */
+public class SerialTaskQueue {
+    
+    private final Executor executor;
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+    
+    public SerialTaskQueue(Executor executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Queue a task behind any pending task with the same key
+     * @param key Serialization key, e.g. a package name
+     * @param task Task to run
+     * @return Future completed with the task's result or failure
+     */
+    public <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        
+        CompletableFuture<Void> tail = tails.compute(key, (k, previous) -> {
+            CompletableFuture<?> start = previous == null
+                    ? CompletableFuture.completedFuture(null)
+                    : previous.handle((r, e) -> null);
+            return start.thenRunAsync(() -> {
+                try {
+                    result.complete(task.call());
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                }
+            }, executor);
+        });
+        
+        tail.whenComplete((r, e) -> {
+            tails.remove(key, tail);
+            // Only reached with an error if the executor rejected the task
+            if (e != null) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * @return Number of keys with queued or running tasks
+     */
+    public int pendingKeys() {
+        return tails.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,76 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records the duration and thread of each engine startup stage
+ */
+public class StartupTrace {
+    
+    private static final String TAG = "StartupTrace";
+    
+    private final long originNanos = System.nanoTime();
+    private final List<Stage> stages = Collections.synchronizedList(new ArrayList<>());
+    
+    /**
+     * Start timing a stage; call {@link Stage#end()} when it completes
+     * @param name Stage name
+     * @return Running stage
+     */
+    public Stage begin(String name) {
+        return new Stage(name, Thread.currentThread().getName(), System.nanoTime() - originNanos);
+    }
+    
+    public List<Stage> getStages() {
+        synchronized (stages) {
+            return new ArrayList<>(stages);
+        }
+    }
+    
+    /**
+     * @return Nanoseconds from trace creation to the end of the last finished stage
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (Stage stage : getStages()) {
+            total = Math.max(total, stage.startNanos + stage.durationNanos);
+        }
+        return total;
+    }
+    
+    public void log() {
+        for (Stage stage : getStages()) {
+            Log.i(TAG, stage.toString());
+        }
+        Log.i(TAG, "Startup total: " + getTotalNanos() / 1_000 + "us");
+    }
+    
+    public final class Stage {
+        public final String name;
+        public final String thread;
+        /** Offset from trace creation */
+        public final long startNanos;
+        public volatile long durationNanos = -1;
+        
+        Stage(String name, String thread, long startNanos) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+        }
+        
+        public void end() {
+            if (durationNanos >= 0) return;
+            durationNanos = System.nanoTime() - originNanos - startNanos;
+            stages.add(this);
+        }
+        
+        @Override
+        public String toString() {
+            return name + " [" + thread + "] +" + startNanos / 1_000 + "us, took " + durationNanos / 1_000 + "us";
+        }
+    }
+}
\ No newline at end of file
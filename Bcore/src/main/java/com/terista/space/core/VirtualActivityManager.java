@@ -18,18 +18,40 @@ public class VirtualActivityManager {
     }
     
     public boolean launchApp(VirtualApp app, int userId) {
+        EngineMetrics metrics = engine.getMetricsRecorder();
+        long start = metrics.begin();
         try {
             Log.i(TAG, "Launching virtual app: " + app.getPackageName());
             
-            // Create virtual process
-            int processId = engine.generateProcessId();
-            if (!engine.getNativeBridge().createVirtualProcess(app.getPackageName(), userId)) {
-                Log.e(TAG, "Failed to create virtual process");
+            // Full package parsing is deferred from install to first launch
+            if (engine.getAppManager().loadPackageInfo(app) == null) {
+                Log.e(TAG, "Failed to load package info: " + app.getPackageName());
                 return false;
             }
             
-            app.setProcessId(processId);
-            app.setRunning(true);
+            // Prefer a pre-created process; fall back to creating one on this thread
+            VirtualProcessManager.VirtualProcess process = engine.getProcessPool().acquire(app.getPackageName(), userId);
+            if (process != null) {
+                metrics.increment("activity.launch.pooled");
+            } else {
+                metrics.increment("activity.launch.cold");
+                process = engine.getProcessManager().startProcess(app.getPackageName(), userId);
+                if (process == null) {
+                    Log.e(TAG, "Failed to create virtual process");
+                    return false;
+                }
+            }
+            
+            // Package-specific setup, now that the process knows its package
+            VirtualProcessManager.Initializer initializer = engine.getProcessInitializer();
+            if (initializer != null && !initializer.prepare(process)) {
+                Log.e(TAG, "Failed to initialize virtual process: PID=" + process.processId);
+                engine.getProcessManager().killProcess(process.processId);
+                return false;
+            }
+            
+            engine.getAppRegistry().markRunning(app, process.processId);
+            engine.getEventBus().publish(VirtualAppEvent.Type.STARTED, app);
             
             Log.i(TAG, "Virtual app launched successfully: " + app.getPackageName());
             return true;
@@ -37,6 +59,8 @@ public class VirtualActivityManager {
         } catch (Exception e) {
             Log.e(TAG, "Failed to launch virtual app", e);
             return false;
+        } finally {
+            metrics.end("activity.launchApp", start);
         }
     }
     
@@ -1,62 +1,72 @@
 package com.terista.space.core;
 
-import android.content.pm.ApplicationInfo;
-import android.content.pm.PackageInfo;
 import java.io.Serializable;
 
 /**
- * Represents a virtual app installed in the virtual environment
+ * Represents a virtual app installed for one virtual user.
+ *
+ * Package data parsed from the APK is held in a shared {@link InstalledPackage};
+ * this object only adds the user, install time and runtime state, so cloning a
+ * package into another user costs a few dozen bytes. Component metadata
+ * (activities, services, ApplicationInfo) is loaded on demand from the
+ * persisted {@link PackageIndex} through
+ * {@link VirtualAppManager#loadPackageInfo(VirtualApp)}.
  */
 public class VirtualApp implements Serializable {
     
-    private String packageName;
-    private String appName;
-    private String apkPath;
-    private int userId;
-    private long installTime;
-    private ApplicationInfo applicationInfo;
-    private PackageInfo packageInfo;
-    private int versionCode;
-    private String versionName;
-    private boolean isRunning;
-    private int processId;
+    private final InstalledPackage installedPackage;
+    private final int userId;
+    private final long installTime;
+    
+    // Runtime state
+    private volatile boolean isRunning;
+    private volatile int processId;
     
     public VirtualApp(String packageName, String apkPath, int userId) {
-        this.packageName = packageName;
-        this.apkPath = apkPath;
+        this(packageName, packageName, apkPath, userId, System.currentTimeMillis(), 0, null);
+    }
+    
+    public VirtualApp(String packageName, String appName, String apkPath, int userId,
+                      long installTime, int versionCode, String versionName) {
+        this(new InstalledPackage(packageName, appName, apkPath, versionCode, versionName), userId, installTime);
+    }
+    
+    public VirtualApp(InstalledPackage installedPackage, int userId, long installTime) {
+        this.installedPackage = installedPackage;
         this.userId = userId;
-        this.installTime = System.currentTimeMillis();
+        this.installTime = installTime;
         this.isRunning = false;
         this.processId = -1;
     }
     
-    // Getters and setters
-    public String getPackageName() { return packageName; }
-    public void setPackageName(String packageName) { this.packageName = packageName; }
-    
-    public String getAppName() { return appName; }
-    public void setAppName(String appName) { this.appName = appName; }
+    /**
+     * @return Copy of this app with a different display label, in the same runtime state
+     */
+    public VirtualApp withAppName(String appName) {
+        VirtualApp copy = new VirtualApp(installedPackage.withLabel(appName), userId, installTime);
+        copy.isRunning = isRunning;
+        copy.processId = processId;
+        return copy;
+    }
     
-    public String getApkPath() { return apkPath; }
-    public void setApkPath(String apkPath) { this.apkPath = apkPath; }
+    /**
+     * Clone this app into another user, sharing the parsed package data
+     * @param userId Target virtual user ID
+     * @return New per-user app record in the stopped state
+     */
+    public VirtualApp forUser(int userId) {
+        return new VirtualApp(installedPackage, userId, System.currentTimeMillis());
+    }
     
+    // Getters
+    public InstalledPackage getInstalledPackage() { return installedPackage; }
+    public String getPackageName() { return installedPackage.getPackageName(); }
+    public String getAppName() { return installedPackage.getLabel(); }
+    public String getApkPath() { return installedPackage.getApkPath(); }
     public int getUserId() { return userId; }
-    public void setUserId(int userId) { this.userId = userId; }
-    
     public long getInstallTime() { return installTime; }
-    public void setInstallTime(long installTime) { this.installTime = installTime; }
-    
-    public ApplicationInfo getApplicationInfo() { return applicationInfo; }
-    public void setApplicationInfo(ApplicationInfo applicationInfo) { this.applicationInfo = applicationInfo; }
-    
-    public PackageInfo getPackageInfo() { return packageInfo; }
-    public void setPackageInfo(PackageInfo packageInfo) { this.packageInfo = packageInfo; }
-    
-    public int getVersionCode() { return versionCode; }
-    public void setVersionCode(int versionCode) { this.versionCode = versionCode; }
-    
-    public String getVersionName() { return versionName; }
-    public void setVersionName(String versionName) { this.versionName = versionName; }
+    public int getVersionCode() { return installedPackage.getVersionCode(); }
+    public String getVersionName() { return installedPackage.getVersionName(); }
     
     public boolean isRunning() { return isRunning; }
     public void setRunning(boolean running) { isRunning = running; }
@@ -67,8 +77,8 @@ public class VirtualApp implements Serializable {
     @Override
     public String toString() {
         return "VirtualApp{" +
-                "packageName='" + packageName + '\'' +
-                ", appName='" + appName + '\'' +
+                "packageName='" + getPackageName() + '\'' +
+                ", appName='" + getAppName() + '\'' +
                 ", userId=" + userId +
                 ", isRunning=" + isRunning +
                 '}';
@@ -0,0 +1,55 @@
+package com.terista.space.core;
+
+/**
+ * A change to the set of installed virtual apps or to one app's run state.
+ * Sequence numbers are assigned by {@link AppEventBus} and increase by one per
+ * event, so a listener that sees a gap knows it missed events and should resync.
+ */
+public final class VirtualAppEvent {
+    
+    public enum Type {
+        INSTALLED,
+        UPDATED,
+        UNINSTALLED,
+        STARTED,
+        STOPPED,
+        CRASHED
+    }
+    
+    public interface Listener {
+        void onEvent(VirtualAppEvent event);
+    }
+    
+    private final long sequence;
+    private final Type type;
+    private final VirtualApp app;
+    private final long timestamp;
+    
+    VirtualAppEvent(long sequence, Type type, VirtualApp app) {
+        this.sequence = sequence;
+        this.type = type;
+        this.app = app;
+        this.timestamp = System.currentTimeMillis();
+    }
+    
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public long getTimestamp() { return timestamp; }
+    
+    /**
+     * @return The affected app; for {@link Type#UNINSTALLED} the app as it was before removal
+     */
+    public VirtualApp getApp() { return app; }
+    public String getPackageName() { return app.getPackageName(); }
+    public int getUserId() { return app.getUserId(); }
+    
+    @Override
+    public String toString() {
+        return "VirtualAppEvent{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", packageName='" + app.getPackageName() + '\'' +
+                ", userId=" + app.getUserId() +
+                '}';
+    }
+}
\ No newline at end of file
@@ -1,12 +1,25 @@
 package com.terista.space.core;
 
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
+import android.content.pm.PackageItemInfo;
 import android.content.pm.PackageManager;
+import android.os.Build;
 import android.util.Log;
 
 import java.io.File;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Virtual App Manager - handles virtual app installation and management
@@ -14,63 +27,434 @@ import java.util.concurrent.ConcurrentHashMap;
 public class VirtualAppManager {
     
     private static final String TAG = "VirtualAppManager";
+    private static final int MAX_INSTALL_THREADS = 4;
+    private static final String REGISTRY_FILE = "virtual/installed_apps.reg";
+    private static final String PACKAGE_INDEX_DIR = "virtual/package_index";
+    private static final String CHANGE_COUNTER_FILE = "virtual/package_changes";
+    private static final int METADATA_CACHE_SIZE = 16;
     private final VirtualEngine engine;
-    private final ConcurrentHashMap<String, VirtualApp> installedApps = new ConcurrentHashMap<>();
+    private final AppRegistryStore registryStore;
+    private final PackageIndex packageIndex;
+    private final PackageMetadataCache metadataCache = new PackageMetadataCache(METADATA_CACHE_SIZE);
+    private final PackageChangeCounter changeCounter;
+    // Change count the metadata cache was filled at, for changes made by another process
+    private volatile long seenChanges;
+    private final ThreadPoolExecutor installExecutor;
+    private final BulkInstaller bulkInstaller;
+    private volatile ApkStager apkStager;
     
     public VirtualAppManager(VirtualEngine engine) {
         this.engine = engine;
+        this.registryStore = new AppRegistryStore(new File(engine.getHostContext().getFilesDir(), REGISTRY_FILE));
+        this.packageIndex = new PackageIndex(new File(engine.getHostContext().getFilesDir(), PACKAGE_INDEX_DIR));
+        this.changeCounter = new PackageChangeCounter(new File(engine.getHostContext().getFilesDir(), CHANGE_COUNTER_FILE));
+        this.seenChanges = changeCounter.get();
+        
+        // One bounded pool for every bulk install; idle threads exit between installs
+        int threads = Math.max(1, Math.min(MAX_INSTALL_THREADS, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger threadCount = new AtomicInteger(0);
+        installExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "AppInstall-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        installExecutor.allowCoreThreadTimeOut(true);
+        bulkInstaller = new BulkInstaller(installExecutor, new InstallSteps());
+    }
+    
+    /**
+     * Re-register apps recorded in the persistent registry without re-parsing their APKs
+     * @return Number of apps restored
+     */
+    public int restoreApps() {
+        List<VirtualApp> apps = registryStore.restore();
+        engine.getAppRegistry().putAll(apps);
+        // Entries from an older schema or OS release are rebuilt off the startup path
+        installExecutor.execute(() -> indexStale(apps));
+        return apps.size();
+    }
+    
+    private void indexStale(List<VirtualApp> apps) {
+        PackageManager pm = engine.getHostContext().getPackageManager();
+        Set<String> seen = new HashSet<>();
+        for (VirtualApp app : apps) {
+            String apkPath = app.getApkPath();
+            if (!seen.add(apkPath) || packageIndex.read(apkPath) != null || !new File(apkPath).exists()) {
+                continue;
+            }
+            ApkManifest manifest = parseApk(pm, apkPath);
+            if (manifest != null) {
+                indexApk(apkPath, manifest);
+            } else {
+                Log.w(TAG, "Failed to reindex APK: " + apkPath);
+            }
+        }
     }
     
     public boolean installApp(String apkPath, int userId) {
+        ApkManifest manifest = readManifest(apkPath);
+        return manifest != null && installApp(apkPath, manifest, userId);
+    }
+    
+    /**
+     * Read only the manifest fields needed to register an app, without installing it
+     * @param apkPath Path to APK file
+     * @return Manifest, or null if the APK is missing or unparseable
+     */
+    public ApkManifest readManifest(String apkPath) {
+        if (!new File(apkPath).exists()) {
+            Log.e(TAG, "APK file not found: " + apkPath);
+            return null;
+        }
+        ApkManifest manifest = parseApk(engine.getHostContext().getPackageManager(), apkPath);
+        if (manifest == null) {
+            Log.e(TAG, "Failed to parse APK: " + apkPath);
+        }
+        return manifest;
+    }
+    
+    /**
+     * Install an APK whose manifest was already read by {@link #readManifest}
+     * @param apkPath Path to APK file
+     * @param manifest Manifest of the APK
+     * @param userId Virtual user ID
+     * @return true if installed
+     */
+    public boolean installApp(String apkPath, ApkManifest manifest, int userId) {
+        EngineMetrics metrics = engine.getMetricsRecorder();
+        long start = metrics.begin();
         try {
-            File apkFile = new File(apkPath);
-            if (!apkFile.exists()) {
-                Log.e(TAG, "APK file not found: " + apkPath);
-                return false;
-            }
-            
-            // Parse APK to get package info
             PackageManager pm = engine.getHostContext().getPackageManager();
-            PackageInfo packageInfo = pm.getPackageArchiveInfo(apkPath, PackageManager.GET_ACTIVITIES | PackageManager.GET_SERVICES);
             
-            if (packageInfo == null) {
-                Log.e(TAG, "Failed to parse APK: " + apkPath);
-                return false;
-            }
-            
-            String packageName = packageInfo.packageName;
-            
-            // Create virtual app
-            VirtualApp virtualApp = new VirtualApp(packageName, apkPath, userId);
-            virtualApp.setPackageInfo(packageInfo);
-            virtualApp.setApplicationInfo(packageInfo.applicationInfo);
-            virtualApp.setVersionCode(packageInfo.versionCode);
-            virtualApp.setVersionName(packageInfo.versionName);
-            
-            if (packageInfo.applicationInfo != null && packageInfo.applicationInfo.loadLabel(pm) != null) {
-                virtualApp.setAppName(packageInfo.applicationInfo.loadLabel(pm).toString());
-            } else {
-                virtualApp.setAppName(packageName);
-            }
+            // Create virtual app from the staged copy, if any
+            String installPath = stageApk(apkPath, manifest);
+            indexApk(installPath, manifest);
+            VirtualApp virtualApp = createVirtualApp(manifest, installPath, userId, resolveLabel(pm, manifest, installPath));
             
             // Install in virtual environment
-            installedApps.put(packageName, virtualApp);
-            engine.addVirtualApp(virtualApp);
+            registerApp(virtualApp);
+            persistApp(virtualApp);
             
-            Log.i(TAG, "Virtual app installed: " + packageName);
+            Log.i(TAG, "Virtual app installed: " + virtualApp.getPackageName());
+            metrics.increment("app.install.success");
             return true;
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to install virtual app", e);
             return false;
+        } finally {
+            metrics.end("app.install", start);
+        }
+    }
+    
+    /**
+     * Install many APKs through the staged {@link BulkInstaller} pipeline on
+     * the shared install pool. Listener callbacks are invoked from worker threads.
+     * @param apkPaths APK files to install
+     * @param userId Virtual user ID
+     * @param listener Progress and failure listener, may be null
+     * @return Installed apps, per-item failures and throughput
+     */
+    public BulkInstaller.Result installApps(List<String> apkPaths, int userId, BulkInstaller.Listener listener) {
+        return bulkInstaller.install(apkPaths, userId, listener);
+    }
+    
+    /**
+     * Load the PackageInfo (components and permissions) for an installed app
+     * from the persisted package index. Results are held in a bounded LRU
+     * cache rather than on the app itself.
+     * @param app Installed virtual app
+     * @return Package info, or null if the APK can no longer be parsed
+     */
+    public PackageInfo loadPackageInfo(VirtualApp app) {
+        dropChangedMetadata();
+        return metadataCache.get(app.getApkPath(), apkPath -> {
+            ApkManifest manifest = packageIndex.read(apkPath);
+            if (manifest == null) {
+                // Installed before the index existed, or the APK changed: index it now
+                manifest = parseApk(engine.getHostContext().getPackageManager(), apkPath);
+                if (manifest == null) {
+                    Log.e(TAG, "Failed to parse APK: " + apkPath);
+                    return null;
+                }
+                indexApk(apkPath, manifest);
+            }
+            return PackageIndex.buildPackageInfo(manifest, apkPath, app.getAppName());
+        });
+    }
+    
+    /**
+     * PackageInfo of an installed app from the package index alone. Never
+     * parses the APK, so it can be called while answering a binder call.
+     * @param app Installed virtual app
+     * @return Package info, or null if the app has no current index entry
+     */
+    public PackageInfo getIndexedPackageInfo(VirtualApp app) {
+        dropChangedMetadata();
+        return metadataCache.get(app.getApkPath(), apkPath -> {
+            ApkManifest manifest = packageIndex.read(apkPath);
+            return manifest != null ? PackageIndex.buildPackageInfo(manifest, apkPath, app.getAppName()) : null;
+        });
+    }
+    
+    /**
+     * Index entries may have been rewritten by the engine process since this one cached them
+     */
+    private void dropChangedMetadata() {
+        long changes = changeCounter.get();
+        if (changes != seenChanges) {
+            seenChanges = changes;
+            metadataCache.clear();
+        }
+    }
+    
+    /**
+     * Write the index entry. The parser reads the signing certificates along
+     * with the manifest; the SigningInfo, which only the platform can build,
+     * is added in the background.
+     */
+    private void indexApk(String apkPath, ApkManifest manifest) {
+        if (manifest.getSignatures().isEmpty()) {
+            // Manifests from the PackageManager fallback
+            try {
+                for (byte[] signature : ApkManifestParser.readSignatures(apkPath)) {
+                    manifest.addSignature(signature);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "No signing certificates for " + apkPath, e);
+            }
+        }
+        packageIndex.write(apkPath, manifest);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && manifest.getSigningInfo() == null) {
+            installExecutor.execute(() -> indexSigningInfo(apkPath));
+        }
+    }
+    
+    /**
+     * The platform verifies the whole APK to build a SigningInfo, so this is
+     * kept off the install path; GET_SIGNING_CERTIFICATES reports none until it is done
+     */
+    private void indexSigningInfo(String apkPath) {
+        ApkManifest manifest = packageIndex.read(apkPath);
+        if (manifest == null || manifest.getSigningInfo() != null) {
+            // Removed, replaced, or already done for another user
+            return;
+        }
+        PackageInfo signed = engine.getHostContext().getPackageManager()
+                .getPackageArchiveInfo(apkPath, PackageManager.GET_SIGNING_CERTIFICATES);
+        if (signed == null || signed.signingInfo == null) {
+            Log.w(TAG, "No signing info for " + apkPath);
+            return;
+        }
+        manifest.setSigningInfo(PackageIndex.marshalSigningInfo(signed.signingInfo));
+        if (new File(apkPath).exists() && packageIndex.write(apkPath, manifest)) {
+            metadataCache.invalidate(apkPath);
+            changeCounter.increment();
+        }
+    }
+    
+    
+    public PackageMetadataCache getMetadataCache() { return metadataCache; }
+    
+    /**
+     * @return Changes on every install, update, uninstall and index rewrite, in any process's view
+     */
+    public PackageChangeCounter getChangeCounter() { return changeCounter; }
+    
+    /**
+     * Route installs through a stager, e.g. a deduplicating blob store.
+     * Apps installed earlier keep their original paths.
+     * @param stager Stager to use, or null to register APKs in place
+     */
+    public void setApkStager(ApkStager stager) {
+        this.apkStager = stager;
+    }
+    
+    /**
+     * @return Path to register the app with; the original path if staging is off or fails
+     */
+    private String stageApk(String apkPath, ApkManifest manifest) {
+        ApkStager stager = apkStager;
+        if (stager == null) {
+            return apkPath;
+        }
+        try {
+            String staged = stager.stage(apkPath, manifest.getPackageName(), manifest.getVersionCode());
+            return staged != null ? staged : apkPath;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to stage APK, installing in place: " + apkPath, e);
+            return apkPath;
         }
     }
     
+    /**
+     * Let the stager reclaim a staged APK once no user of the package refers to it
+     */
+    private void releaseApkIfUnused(String packageName, String apkPath) {
+        for (VirtualApp app : engine.getAppRegistry().getByPackage(packageName)) {
+            if (app.getApkPath().equals(apkPath)) {
+                return;
+            }
+        }
+        packageIndex.remove(apkPath);
+        ApkStager stager = apkStager;
+        if (stager != null) {
+            stager.release(apkPath);
+        }
+    }
+    
+    private ApkManifest parseApk(PackageManager pm, String apkPath) {
+        try {
+            return ApkManifestParser.parse(apkPath);
+        } catch (IOException e) {
+            Log.w(TAG, "Manifest parse failed, falling back to PackageManager: " + apkPath, e);
+        }
+        
+        // Ask for everything the package index records, so the fallback can be indexed too
+        PackageInfo packageInfo = pm.getPackageArchiveInfo(apkPath, PackageManager.GET_ACTIVITIES
+                | PackageManager.GET_SERVICES | PackageManager.GET_RECEIVERS | PackageManager.GET_PROVIDERS
+                | PackageManager.GET_PERMISSIONS);
+        if (packageInfo == null) {
+            return null;
+        }
+        ApkManifest manifest = new ApkManifest();
+        manifest.setPackageName(packageInfo.packageName);
+        manifest.setVersionCode(packageInfo.versionCode);
+        manifest.setVersionName(packageInfo.versionName);
+        if (packageInfo.applicationInfo != null) {
+            manifest.setLabelResId(packageInfo.applicationInfo.labelRes);
+            if (packageInfo.applicationInfo.nonLocalizedLabel != null) {
+                manifest.setLabel(packageInfo.applicationInfo.nonLocalizedLabel.toString());
+            }
+            manifest.setApplicationClassName(packageInfo.applicationInfo.className);
+        }
+        addNames(packageInfo.activities, manifest::addActivity);
+        addNames(packageInfo.services, manifest::addService);
+        addNames(packageInfo.receivers, manifest::addReceiver);
+        addNames(packageInfo.providers, manifest::addProvider);
+        addNames(packageInfo.permissions, manifest::addPermission);
+        if (packageInfo.requestedPermissions != null) {
+            for (String permission : packageInfo.requestedPermissions) {
+                manifest.addRequestedPermission(permission);
+            }
+        }
+        return manifest;
+    }
+    
+    private static void addNames(PackageItemInfo[] items, Consumer<String> sink) {
+        if (items != null) {
+            for (PackageItemInfo item : items) {
+                sink.accept(item.name);
+            }
+        }
+    }
+    
+    private VirtualApp createVirtualApp(ApkManifest manifest, String apkPath, int userId, String label) {
+        InstalledPackage installedPackage = new InstalledPackage(manifest.getPackageName(), label, apkPath,
+                manifest.getVersionCode(), manifest.getVersionName());
+        // Reinstalling the same build for another user shares the existing package data
+        return new VirtualApp(engine.getAppRegistry().intern(installedPackage), userId, System.currentTimeMillis());
+    }
+    
+    /**
+     * Clone an installed app into other users, sharing its parsed package data
+     * @param packageName Package to clone
+     * @param sourceUserId User the package is installed for
+     * @param targetUserIds Users to clone into
+     * @return Number of clones created
+     */
+    public int cloneApp(String packageName, int sourceUserId, List<Integer> targetUserIds) {
+        AppRegistry registry = engine.getAppRegistry();
+        VirtualApp source = registry.get(sourceUserId, packageName);
+        if (source == null) {
+            Log.e(TAG, "Cannot clone, not installed: " + packageName + " for user " + sourceUserId);
+            return 0;
+        }
+        
+        List<VirtualApp> clones = new ArrayList<>(targetUserIds.size());
+        for (int userId : targetUserIds) {
+            if (userId != sourceUserId && registry.get(userId, packageName) == null) {
+                clones.add(source.forUser(userId));
+            }
+        }
+        registry.putAll(clones);
+        changeCounter.increment();
+        for (VirtualApp clone : clones) {
+            persistApp(clone);
+            engine.getEventBus().publish(VirtualAppEvent.Type.INSTALLED, clone);
+        }
+        Log.i(TAG, "Cloned " + packageName + " into " + clones.size() + " users");
+        return clones.size();
+    }
+    
+    private String resolveLabel(PackageManager pm, ApkManifest manifest, String apkPath) {
+        CharSequence label = manifest.getLabel();
+        
+        // The parser already resolved resource labels from resources.arsc; this only
+        // runs for tables it could not read. Flags 0 skips component parsing.
+        if (label == null && manifest.getLabelResId() != 0) {
+            PackageInfo packageInfo = pm.getPackageArchiveInfo(apkPath, 0);
+            if (packageInfo != null && packageInfo.applicationInfo != null) {
+                attachSource(packageInfo, apkPath);
+                label = packageInfo.applicationInfo.loadLabel(pm);
+            }
+        }
+        return label != null ? label.toString() : manifest.getPackageName();
+    }
+    
+    private static void attachSource(PackageInfo packageInfo, String apkPath) {
+        ApplicationInfo applicationInfo = packageInfo.applicationInfo;
+        if (applicationInfo != null) {
+            applicationInfo.sourceDir = apkPath;
+            applicationInfo.publicSourceDir = apkPath;
+        }
+    }
+    
+    private void registerApp(VirtualApp virtualApp) {
+        registerApps(Collections.singletonList(virtualApp));
+    }
+    
+    /**
+     * Register a batch with one registry publish, then announce each app
+     */
+    private void registerApps(List<VirtualApp> apps) {
+        List<VirtualApp> replaced = engine.getAppRegistry().putAll(apps);
+        for (int i = 0; i < apps.size(); i++) {
+            VirtualApp virtualApp = apps.get(i);
+            VirtualApp previous = replaced.get(i);
+            // A reinstall rewrites the index entry, even at the same path
+            metadataCache.invalidate(virtualApp.getApkPath());
+            engine.getEventBus().publish(previous == null ? VirtualAppEvent.Type.INSTALLED : VirtualAppEvent.Type.UPDATED, virtualApp);
+            if (previous != null && !previous.getApkPath().equals(virtualApp.getApkPath())) {
+                metadataCache.invalidate(previous.getApkPath());
+                releaseApkIfUnused(previous.getPackageName(), previous.getApkPath());
+            }
+        }
+        changeCounter.increment();
+    }
+    
+    private void persistApp(VirtualApp virtualApp) {
+        registryStore.appendPut(virtualApp);
+        compactRegistryIfNeeded();
+    }
+    
+    private void compactRegistryIfNeeded() {
+        // Registry changes precede their journal records, so snapshotting under the store lock cannot resurrect an app
+        AppRegistry registry = engine.getAppRegistry();
+        registryStore.compactIfNeeded(registry::getAll);
+    }
+    
     public boolean uninstallApp(String packageName, int userId) {
         try {
-            VirtualApp app = installedApps.remove(packageName);
+            VirtualApp app = engine.getAppRegistry().remove(userId, packageName);
             if (app != null) {
-                engine.removeVirtualApp(packageName);
+                registryStore.appendRemove(userId, packageName);
+                metadataCache.invalidate(app.getApkPath());
+                releaseApkIfUnused(packageName, app.getApkPath());
+                changeCounter.increment();
+                engine.getEventBus().publish(VirtualAppEvent.Type.UNINSTALLED, app);
+                compactRegistryIfNeeded();
                 Log.i(TAG, "Virtual app uninstalled: " + packageName);
                 return true;
             }
@@ -81,11 +465,53 @@ public class VirtualAppManager {
         }
     }
     
-    public VirtualApp getApp(String packageName) {
-        return installedApps.get(packageName);
+    public VirtualApp getApp(String packageName, int userId) {
+        return engine.getAppRegistry().get(userId, packageName);
+    }
+    
+    /**
+     * Bulk install steps backed by this manager
+     */
+    private final class InstallSteps implements BulkInstaller.Steps {
+        private final PackageManager pm = engine.getHostContext().getPackageManager();
+        
+        @Override
+        public ApkManifest parse(String apkPath) {
+            return new File(apkPath).exists() ? parseApk(pm, apkPath) : null;
+        }
+        
+        @Override
+        public String stage(String apkPath, ApkManifest manifest) {
+            String installPath = stageApk(apkPath, manifest);
+            indexApk(installPath, manifest);
+            return installPath;
+        }
+        
+        @Override
+        public String resolveLabel(ApkManifest manifest, String installPath) {
+            return VirtualAppManager.this.resolveLabel(pm, manifest, installPath);
+        }
+        
+        @Override
+        public VirtualApp create(ApkManifest manifest, String installPath, int userId, String label) {
+            return createVirtualApp(manifest, installPath, userId, label);
+        }
+        
+        @Override
+        public void register(List<VirtualApp> apps) {
+            registerApps(apps);
+        }
+        
+        @Override
+        public void persist(List<VirtualApp> apps) {
+            for (VirtualApp app : apps) {
+                persistApp(app);
+            }
+        }
     }
     
     public void shutdown() {
-        installedApps.clear();
+        installExecutor.shutdownNow();
+        metadataCache.clear();
     }
 }
\ No newline at end of file
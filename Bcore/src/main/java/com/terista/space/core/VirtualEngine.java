@@ -3,16 +3,22 @@ package com.terista.space.core;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Process;
 import android.util.Log;
 
 import com.terista.space.native.NativeBridge;
 import com.terista.space.reflection.ReflectionClass;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * Core virtual engine that manages the entire virtualization system.
@@ -24,6 +30,9 @@ public class VirtualEngine {
     private static final String TAG = "VirtualEngine";
     private static VirtualEngine instance;
     private static final Object LOCK = new Object();
+    private static final int MAX_VIRTUAL_PROCESSES = 4096;
+    private static final int PROCESS_POOL_SIZE = 2;
+    private static final int ENGINE_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
     
     private Context hostContext;
     private NativeBridge nativeBridge;
@@ -32,14 +41,36 @@ public class VirtualEngine {
     private VirtualActivityManager activityManager;
     private VirtualServiceManager serviceManager;
     private VirtualProcessManager processManager;
+    private VirtualProcessPool processPool;
+    private AppLifecycle lifecycle;
+    private volatile VirtualProcessManager.Initializer processInitializer;
+    private volatile ApkStager apkStager;
     
-    private final ConcurrentHashMap<String, VirtualApp> virtualApps = new ConcurrentHashMap<>();
-    private final AtomicInteger nextProcessId = new AtomicInteger(10000);
+    private final AppRegistry appRegistry = new AppRegistry();
+    private final ProcessIdAllocator processIds = new ProcessIdAllocator(MAX_VIRTUAL_PROCESSES);
+    private final ThreadPoolExecutor engineExecutor;
+    private final SerialTaskQueue packageQueue;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AppEventBus eventBus = new AppEventBus(mainHandler::post);
+    private final EngineMetrics metrics = new EngineMetrics();
     
-    private boolean initialized = false;
-    private boolean hooksInstalled = false;
+    private volatile boolean initialized = false;
+    private volatile boolean hooksInstalled = false;
+    private volatile boolean initStarted = false;
+    private volatile CompletableFuture<Boolean> readyFuture = new CompletableFuture<>();
+    private volatile StartupTrace startupTrace;
     
-    private VirtualEngine() {}
+    private VirtualEngine() {
+        AtomicInteger threadCount = new AtomicInteger(0);
+        engineExecutor = new ThreadPoolExecutor(ENGINE_THREADS, ENGINE_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "VirtualEngine-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        engineExecutor.allowCoreThreadTimeOut(true);
+        packageQueue = new SerialTaskQueue(engineExecutor);
+    }
     
     public static VirtualEngine getInstance() {
         if (instance == null) {
@@ -53,48 +84,193 @@ public class VirtualEngine {
     }
     
     /**
-     * Initialize the virtual engine
+     * Initialize the virtual engine on the calling thread
      * @param context Host application context
      * @return true if initialization successful
      */
     public boolean initialize(Context context) {
-        if (initialized) {
+        return startInitialization(context, false).join();
+    }
+    
+    /**
+     * Initialize the virtual engine in two stages. The core stage (managers and
+     * registries) runs on the calling thread; native bridge setup, registry restore
+     * and hook installation run on a background thread.
+     * @param context Host application context
+     * @return Future completed with true once the engine is ready, false if initialization failed
+     */
+    public CompletableFuture<Boolean> initializeAsync(Context context) {
+        return startInitialization(context, true);
+    }
+    
+    private synchronized CompletableFuture<Boolean> startInitialization(Context context, boolean background) {
+        if (initStarted) {
             Log.w(TAG, "VirtualEngine already initialized");
-            return true;
+            return readyFuture;
         }
+        initStarted = true;
+        startupTrace = new StartupTrace();
+        // A failed attempt leaves its completed future for late waiters; a retry starts a fresh one
+        if (readyFuture.isDone()) {
+            readyFuture = new CompletableFuture<>();
+        }
+        CompletableFuture<Boolean> ready = readyFuture;
         
         Log.i(TAG, "Initializing VirtualEngine...");
         
-        this.hostContext = context.getApplicationContext();
+        StartupTrace.Stage stage = startupTrace.begin("core");
+        long start = metrics.begin();
+        boolean coreReady = initializeCore(context);
+        metrics.end("engine.initialize.core", start);
+        stage.end();
+        if (!coreReady) {
+            failInitialization();
+            return ready;
+        }
         
+        if (background) {
+            Thread thread = new Thread(this::initializeRuntime, "VirtualEngine-init");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            initializeRuntime();
+        }
+        return ready;
+    }
+    
+    /**
+     * Core stage: cheap, Java-only setup that screens can rely on immediately
+     */
+    private boolean initializeCore(Context context) {
         try {
-            // Initialize native bridge
-            nativeBridge = NativeBridge.getInstance();
-            if (!nativeBridge.safeInitialize(hostContext)) {
-                Log.e(TAG, "Failed to initialize native bridge");
-                return false;
-            }
+            this.hostContext = context.getApplicationContext();
             
             // Initialize managers
             appManager = new VirtualAppManager(this);
+            appManager.setApkStager(apkStager);
             packageManager = new VirtualPackageManager(this);
             activityManager = new VirtualActivityManager(this);
-            serviceManager = new VirtualServiceManager(this);
-            processManager = new VirtualProcessManager(this);
+            serviceManager = new VirtualServiceManager();
+            processManager = new VirtualProcessManager(processIds, metrics, new VirtualProcessManager.NativeProcesses() {
+                // The bridge is only loaded in the runtime stage, so read it per call
+                @Override
+                public boolean create(String packageName, int userId) {
+                    return nativeBridge.createVirtualProcess(packageName, userId);
+                }
+                
+                @Override
+                public void kill(int processId) {
+                    nativeBridge.killVirtualProcess(processId);
+                }
+            });
+            processPool = new VirtualProcessPool(this, PROCESS_POOL_SIZE);
+            lifecycle = new AppLifecycle(appRegistry, processManager, eventBus);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to initialize VirtualEngine core", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Runtime stage: native library, persisted apps and system hooks
+     */
+    private void initializeRuntime() {
+        long start = metrics.begin();
+        try {
+            // Initialize native bridge; first use loads the native library
+            StartupTrace.Stage stage = startupTrace.begin("native_bridge");
+            long nativeStart = metrics.begin();
+            nativeBridge = NativeBridge.getInstance();
+            boolean nativeReady = nativeBridge.safeInitialize(hostContext);
+            metrics.end("native.initialize", nativeStart);
+            stage.end();
+            if (!nativeReady) {
+                Log.e(TAG, "Failed to initialize native bridge");
+                failInitialization();
+                return;
+            }
+            
+            // Restore installed apps from the persistent registry
+            stage = startupTrace.begin("restore_apps");
+            int restored = appManager.restoreApps();
+            stage.end();
+            Log.i(TAG, "Restored " + restored + " installed virtual apps");
             
             // Install hooks
-            if (!installSystemHooks()) {
+            stage = startupTrace.begin("install_hooks");
+            boolean hooksReady = installSystemHooks();
+            stage.end();
+            if (!hooksReady) {
                 Log.e(TAG, "Failed to install system hooks");
-                return false;
+                failInitialization();
+                return;
             }
             
+            // Pre-create blank processes in the background for fast launches
+            processPool.scheduleRefill();
+            
             initialized = true;
             Log.i(TAG, "VirtualEngine initialized successfully");
-            return true;
+            startupTrace.log();
+            readyFuture.complete(true);
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to initialize VirtualEngine", e);
-            return false;
+            failInitialization();
+        } finally {
+            metrics.end("engine.initialize.runtime", start);
+        }
+    }
+    
+    /**
+     * Report failure to waiters and allow a later retry. The failed future stays
+     * current, so callbacks registered after the failure still hear about it.
+     */
+    private synchronized void failInitialization() {
+        initStarted = false;
+        readyFuture.complete(false);
+    }
+    
+    /**
+     * Block until initialization has finished
+     * @return true if the engine is ready, false if initialization failed or was never started
+     */
+    private boolean awaitReady() {
+        CompletableFuture<Boolean> ready = readyFuture;
+        return initStarted ? ready.join() : initialized;
+    }
+    
+    /**
+     * Block until initialization has finished
+     * @throws IllegalStateException if initialization failed or was never started
+     */
+    private void requireReady() {
+        if (!awaitReady()) {
+            throw new IllegalStateException("VirtualEngine not initialized");
+        }
+    }
+    
+    /**
+     * Set the per-process setup a launched process goes through once it is
+     * bound to its package, e.g. sandbox initialization. Pooled and freshly
+     * created processes both run it.
+     * @param initializer Setup to run on the launching thread, or null for none
+     */
+    public void setProcessInitializer(VirtualProcessManager.Initializer initializer) {
+        this.processInitializer = initializer;
+    }
+    
+    /**
+     * Set where installs put their APKs, e.g. a deduplicating blob store.
+     * Call before initializing the engine so the first install already uses it.
+     * @param stager Stager to use, or null to register APKs in place
+     */
+    public void setApkStager(ApkStager stager) {
+        this.apkStager = stager;
+        VirtualAppManager manager = appManager;
+        if (manager != null) {
+            manager.setApkStager(stager);
         }
     }
     
@@ -107,8 +283,8 @@ public class VirtualEngine {
         Log.i(TAG, "Shutting down VirtualEngine...");
         
         try {
-            // Stop all virtual apps
-            for (VirtualApp app : virtualApps.values()) {
+            // Stop all running virtual apps
+            for (VirtualApp app : appRegistry.getRunning()) {
                 stopVirtualApp(app.getPackageName());
             }
             
@@ -116,6 +292,7 @@ public class VirtualEngine {
             uninstallSystemHooks();
             
             // Cleanup managers
+            if (processPool != null) processPool.shutdown();
             if (processManager != null) processManager.shutdown();
             if (serviceManager != null) serviceManager.shutdown();
             if (activityManager != null) activityManager.shutdown();
@@ -127,8 +304,12 @@ public class VirtualEngine {
                 nativeBridge.cleanup();
             }
             
-            virtualApps.clear();
+            appRegistry.clear();
             initialized = false;
+            synchronized (this) {
+                initStarted = false;
+                readyFuture = new CompletableFuture<>();
+            }
             
             Log.i(TAG, "VirtualEngine shutdown completed");
             
@@ -159,6 +340,24 @@ public class VirtualEngine {
         }
     }
     
+    /**
+     * Install a batch of virtual apps through the parallel install pipeline
+     * @param apkPaths Paths to APK files
+     * @param userId Virtual user ID
+     * @param listener Progress and failure listener, may be null
+     * @return Result with installed apps and per-item failures, or null if not initialized
+     */
+    public BulkInstaller.Result installVirtualApps(List<String> apkPaths, int userId,
+                                                   BulkInstaller.Listener listener) {
+        if (!initialized) {
+            Log.e(TAG, "VirtualEngine not initialized");
+            return null;
+        }
+        
+        Log.i(TAG, "Installing " + apkPaths.size() + " virtual apps");
+        return appManager.installApps(apkPaths, userId, listener);
+    }
+    
     /**
      * Uninstall a virtual app
      * @param packageName Package name to uninstall
@@ -174,7 +373,8 @@ public class VirtualEngine {
         Log.i(TAG, "Uninstalling virtual app: " + packageName);
         
         try {
-            stopVirtualApp(packageName);
+            stopVirtualApp(packageName, userId);
+            serviceManager.stopUserServices(packageName, userId);
             return appManager.uninstallApp(packageName, userId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to uninstall virtual app", e);
@@ -182,6 +382,24 @@ public class VirtualEngine {
         }
     }
     
+    /**
+     * Clone an installed app into other virtual users. Clones share the
+     * source's parsed package data and get their own per-user state.
+     * @param packageName Package to clone
+     * @param sourceUserId User the package is installed for
+     * @param targetUserIds Users to clone into; users that already have the package are skipped
+     * @return Number of clones created
+     */
+    public int cloneVirtualApp(String packageName, int sourceUserId, List<Integer> targetUserIds) {
+        if (!initialized) {
+            Log.e(TAG, "VirtualEngine not initialized");
+            return 0;
+        }
+        
+        Log.i(TAG, "Cloning virtual app " + packageName + " into " + targetUserIds.size() + " users");
+        return appManager.cloneApp(packageName, sourceUserId, targetUserIds);
+    }
+    
     /**
      * Launch a virtual app
      * @param packageName Package name to launch
@@ -197,9 +415,9 @@ public class VirtualEngine {
         Log.i(TAG, "Launching virtual app: " + packageName);
         
         try {
-            VirtualApp app = virtualApps.get(packageName);
+            VirtualApp app = appRegistry.get(userId, packageName);
             if (app == null) {
-                Log.e(TAG, "Virtual app not found: " + packageName);
+                Log.e(TAG, "Virtual app not found: " + packageName + " for user " + userId);
                 return false;
             }
             
@@ -211,7 +429,7 @@ public class VirtualEngine {
     }
     
     /**
-     * Stop a virtual app
+     * Stop a virtual app in every user it is installed for
      * @param packageName Package name to stop
      * @return true if stop successful
      */
@@ -221,33 +439,224 @@ public class VirtualEngine {
         Log.i(TAG, "Stopping virtual app: " + packageName);
         
         try {
-            VirtualApp app = virtualApps.get(packageName);
-            if (app != null) {
-                processManager.killAppProcesses(packageName);
-                return true;
-            }
+            return lifecycle.stop(packageName);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to stop virtual app", e);
             return false;
+        }
+    }
+    
+    /**
+     * Stop a virtual app for one user, leaving other users' instances running
+     * @param packageName Package name to stop
+     * @param userId Virtual user ID
+     * @return true if stop successful
+     */
+    public boolean stopVirtualApp(String packageName, int userId) {
+        if (!initialized) return false;
+        
+        Log.i(TAG, "Stopping virtual app: " + packageName + " for user " + userId);
+        
+        try {
+            return lifecycle.stop(packageName, userId);
         } catch (Exception e) {
             Log.e(TAG, "Failed to stop virtual app", e);
             return false;
         }
     }
     
+    /**
+     * Report that a virtual process exited without being stopped by the engine.
+     * The owning app is marked stopped and a {@link VirtualAppEvent.Type#CRASHED} event is published.
+     * @param processId Virtual process ID
+     */
+    public void onVirtualProcessDied(int processId) {
+        if (!initialized) return;
+        lifecycle.onProcessDied(processId);
+    }
+    
+    /**
+     * Install a virtual app on the engine executor. The manifest is read first,
+     * then the install is ordered after pending operations on the same package and user.
+     * @param apkPath Path to APK file
+     * @param userId Virtual user ID
+     * @return Future completed with the installation result, or exceptionally if the engine failed to initialize
+     */
+    public CompletableFuture<Boolean> installVirtualAppAsync(String apkPath, int userId) {
+        return CompletableFuture.supplyAsync(() -> {
+            requireReady();
+            return appManager.readManifest(apkPath);
+        }, engineExecutor).thenCompose(manifest -> {
+            if (manifest == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return packageQueue.submit(queueKey(manifest.getPackageName(), userId), () -> {
+                Log.i(TAG, "Installing virtual app: " + apkPath);
+                try {
+                    return appManager.installApp(apkPath, manifest, userId);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to install virtual app", e);
+                    return false;
+                }
+            });
+        });
+    }
+    
+    /**
+     * Uninstall a virtual app on the engine executor, ordered after pending operations on the same package and user
+     * @param packageName Package name to uninstall
+     * @param userId Virtual user ID
+     * @return Future completed with the uninstallation result, or exceptionally if the engine failed to initialize
+     */
+    public CompletableFuture<Boolean> uninstallVirtualAppAsync(String packageName, int userId) {
+        return packageQueue.submit(queueKey(packageName, userId), () -> {
+            requireReady();
+            return uninstallVirtualApp(packageName, userId);
+        });
+    }
+    
+    /**
+     * Launch a virtual app on the engine executor, ordered after pending operations on the same package and user
+     * @param packageName Package name to launch
+     * @param userId Virtual user ID
+     * @return Future completed with the launch result, or exceptionally if the engine failed to initialize
+     */
+    public CompletableFuture<Boolean> launchVirtualAppAsync(String packageName, int userId) {
+        return packageQueue.submit(queueKey(packageName, userId), () -> {
+            requireReady();
+            return launchVirtualApp(packageName, userId);
+        });
+    }
+    
+    /**
+     * Stop a virtual app on the engine executor, ordered after pending operations on the same package and user
+     * @param packageName Package name to stop
+     * @param userId Virtual user ID
+     * @return Future completed with the stop result, or exceptionally if the engine failed to initialize
+     */
+    public CompletableFuture<Boolean> stopVirtualAppAsync(String packageName, int userId) {
+        return packageQueue.submit(queueKey(packageName, userId), () -> {
+            requireReady();
+            return stopVirtualApp(packageName, userId);
+        });
+    }
+    
+    public void installVirtualApp(String apkPath, int userId, EngineCallback<Boolean> callback) {
+        deliver(installVirtualAppAsync(apkPath, userId), callback);
+    }
+    
+    public void uninstallVirtualApp(String packageName, int userId, EngineCallback<Boolean> callback) {
+        deliver(uninstallVirtualAppAsync(packageName, userId), callback);
+    }
+    
+    public void launchVirtualApp(String packageName, int userId, EngineCallback<Boolean> callback) {
+        deliver(launchVirtualAppAsync(packageName, userId), callback);
+    }
+    
+    public void stopVirtualApp(String packageName, int userId, EngineCallback<Boolean> callback) {
+        deliver(stopVirtualAppAsync(packageName, userId), callback);
+    }
+    
+    private static String queueKey(String packageName, int userId) {
+        return userId + ":" + packageName;
+    }
+    
+    /**
+     * @return Point-in-time copy of engine counters and span timers
+     */
+    public EngineMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
+    }
+    
+    /**
+     * Write recent spans and counters as Chrome trace JSON, viewable in Perfetto
+     * @param file Destination file
+     * @return true if the trace was written
+     */
+    public boolean exportTrace(File file) {
+        try {
+            metrics.writeChromeTrace(file);
+            Log.i(TAG, "Trace written to " + file);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write trace", e);
+            return false;
+        }
+    }
+    
+    /**
+     * Notify when initialization finishes, on the main thread. After a failed
+     * attempt the callback receives false right away, until a retry starts.
+     * @param callback Receives true if the engine is ready, false if initialization failed
+     */
+    public void whenReady(EngineCallback<Boolean> callback) {
+        deliver(readyFuture, callback);
+    }
+    
+    /**
+     * Post the outcome of a future to the main thread
+     */
+    private <T> void deliver(CompletableFuture<T> future, EngineCallback<T> callback) {
+        if (callback == null) return;
+        future.whenComplete((result, error) -> mainHandler.post(() -> callback.onComplete(result, error)));
+    }
+    
     /**
      * Get list of installed virtual apps
-     * @return List of virtual apps
+     * @return Immutable snapshot of all users' virtual apps
      */
     public List<VirtualApp> getInstalledApps() {
-        return new ArrayList<>(virtualApps.values());
+        return appRegistry.getAll();
+    }
+    
+    /**
+     * Capture the installed apps with the event sequence number they reflect.
+     * Listeners resync from this and then apply events with higher sequence numbers.
+     * @return Snapshot of all users' apps
+     */
+    public AppEventBus.Snapshot getInstalledAppsSnapshot() {
+        return eventBus.snapshot(appRegistry);
+    }
+    
+    /**
+     * Subscribe to install, uninstall and run state changes. Events are delivered on the main thread.
+     * @param listener Listener to add
+     */
+    public void addAppEventListener(VirtualAppEvent.Listener listener) {
+        eventBus.addListener(listener);
+    }
+    
+    public void removeAppEventListener(VirtualAppEvent.Listener listener) {
+        eventBus.removeListener(listener);
+    }
+    
+    /**
+     * Get installed virtual apps for one user
+     * @param userId Virtual user ID
+     * @return Immutable snapshot of the user's virtual apps
+     */
+    public List<VirtualApp> getInstalledApps(int userId) {
+        return appRegistry.getByUser(userId);
     }
     
     /**
      * Get virtual app by package name
      * @param packageName Package name
+     * @param userId Virtual user ID
+     * @return Virtual app or null if not found
+     */
+    public VirtualApp getVirtualApp(String packageName, int userId) {
+        return appRegistry.get(userId, packageName);
+    }
+    
+    /**
+     * Get virtual app by package name from any user it is installed for
+     * @param packageName Package name
      * @return Virtual app or null if not found
      */
     public VirtualApp getVirtualApp(String packageName) {
-        return virtualApps.get(packageName);
+        List<VirtualApp> apps = appRegistry.getByPackage(packageName);
+        return apps.isEmpty() ? null : apps.get(0);
     }
     
     /**
@@ -255,25 +664,41 @@ public class VirtualEngine {
      * @param app Virtual app to add
      */
     public void addVirtualApp(VirtualApp app) {
-        virtualApps.put(app.getPackageName(), app);
+        appRegistry.put(app);
     }
     
     /**
      * Remove virtual app from registry
      * @param packageName Package name to remove
+     * @param userId Virtual user ID
      */
-    public void removeVirtualApp(String packageName) {
-        virtualApps.remove(packageName);
+    public void removeVirtualApp(String packageName, int userId) {
+        appRegistry.remove(userId, packageName);
     }
     
     /**
-     * Generate next virtual process ID
-     * @return New process ID
+     * Generate next virtual process ID, recycling released slots
+     * @return New process ID or {@link ProcessIdAllocator#INVALID_ID} if the table is full
      */
     public int generateProcessId() {
-        return nextProcessId.getAndIncrement();
+        return processIds.allocate();
     }
     
+    /**
+     * Return a process ID to the allocator once its process is gone
+     * @param processId Process ID to release
+     * @return true if the ID was live, false if it was stale or already released
+     */
+    public boolean releaseProcessId(int processId) {
+        return processIds.release(processId);
+    }
+    
+    public ProcessIdAllocator getProcessIdAllocator() { return processIds; }
+    public AppRegistry getAppRegistry() { return appRegistry; }
+    public AppEventBus getEventBus() { return eventBus; }
+    public EngineMetrics getMetricsRecorder() { return metrics; }
+    public VirtualProcessManager.Initializer getProcessInitializer() { return processInitializer; }
+    
     // Getters for managers
     public Context getHostContext() { return hostContext; }
     public NativeBridge getNativeBridge() { return nativeBridge; }
@@ -282,8 +707,12 @@ public class VirtualEngine {
     public VirtualActivityManager getActivityManager() { return activityManager; }
     public VirtualServiceManager getServiceManager() { return serviceManager; }
     public VirtualProcessManager getProcessManager() { return processManager; }
+    public VirtualProcessPool getProcessPool() { return processPool; }
+    public AppLifecycle getLifecycle() { return lifecycle; }
     
     public boolean isInitialized() { return initialized; }
+    public CompletableFuture<Boolean> getReadyFuture() { return readyFuture; }
+    public StartupTrace getStartupTrace() { return startupTrace; }
     public boolean areHooksInstalled() { return hooksInstalled; }
     
     /**
@@ -295,9 +724,13 @@ public class VirtualEngine {
         
         Log.i(TAG, "Installing system hooks...");
         
+        long start = metrics.begin();
         try {
             // Install binder hooks
-            if (!nativeBridge.hookBinder()) {
+            long hookStart = metrics.begin();
+            boolean hooked = nativeBridge.hookBinder();
+            metrics.end("native.hookBinder", hookStart);
+            if (!hooked) {
                 Log.e(TAG, "Failed to install binder hooks");
                 return false;
             }
@@ -312,6 +745,8 @@ public class VirtualEngine {
         } catch (Exception e) {
             Log.e(TAG, "Failed to install system hooks", e);
             return false;
+        } finally {
+            metrics.end("engine.installSystemHooks", start);
         }
     }
     
@@ -1,46 +1,255 @@
 package com.terista.space.core;
 
+import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.util.Log;
 import com.terista.space.reflection.ReflectionClass;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.List;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 @ReflectionClass
 public class VirtualPackageManager {
     
     private static final String TAG = "VirtualPackageManager";
+    
+    /** Query flag: only apps whose process is running */
+    public static final int QUERY_RUNNING = 0x1;
+    /** Query flag: only apps whose process is not running */
+    public static final int QUERY_STOPPED = 0x2;
+    
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    
+    // Every part getVirtualPackageInfo can fill in
+    private static final int ALL_FLAGS = PackageManager.GET_ACTIVITIES | PackageManager.GET_RECEIVERS
+            | PackageManager.GET_SERVICES | PackageManager.GET_PROVIDERS | PackageManager.GET_PERMISSIONS
+            | PackageManager.GET_SIGNATURES | PackageManager.GET_SIGNING_CERTIFICATES | PackageManager.GET_GIDS;
+    
     private final VirtualEngine engine;
-    private final ConcurrentHashMap<String, PackageInfo> virtualPackages = new ConcurrentHashMap<>();
+    // Supplementary groups of this process, read once
+    private volatile int[] processGids;
     
     public VirtualPackageManager(VirtualEngine engine) {
         this.engine = engine;
     }
     
-    public void addVirtualPackage(String packageName, PackageInfo packageInfo) {
-        virtualPackages.put(packageName, packageInfo);
+    /**
+     * Package info for an installed virtual app, backed by the app registry
+     * @param packageName Package name
+     * @param userId Virtual user ID
+     * @return Package info, or null if not installed or unparseable
+     */
+    public PackageInfo getVirtualPackageInfo(String packageName, int userId) {
+        VirtualApp app = engine.getAppRegistry().get(userId, packageName);
+        return app != null ? engine.getAppManager().loadPackageInfo(app) : null;
     }
     
     public PackageInfo getVirtualPackageInfo(String packageName) {
-        return virtualPackages.get(packageName);
+        VirtualApp app = engine.getVirtualApp(packageName);
+        return app != null ? engine.getAppManager().loadPackageInfo(app) : null;
+    }
+    
+    /**
+     * Package info for an installed virtual app with only the parts the flags
+     * ask for, built from the app registry and the package index. The APK is
+     * never parsed, so this is safe to call while answering a binder call.
+     * @param flags PackageManager.GET_* flags; components, permissions, signatures,
+     *              signing info and gids are honoured
+     * @return New package info; its arrays are shared with the cached index entry
+     */
+    public PackageInfo getVirtualPackageInfo(VirtualApp app, int flags) {
+        int[] gids = null;
+        if ((flags & PackageManager.GET_GIDS) != 0) {
+            gids = processGids;
+            if (gids == null) {
+                gids = readProcessGids();
+                processGids = gids;
+            }
+        }
+        return buildPackageInfo(app, engine.getAppManager().getIndexedPackageInfo(app), flags, gids);
+    }
+    
+    /**
+     * @param indexed Everything the package index records, or null if the app is not indexed yet
+     * @param gids Groups to report for GET_GIDS
+     */
+    static PackageInfo buildPackageInfo(VirtualApp app, PackageInfo indexed, int flags, int[] gids) {
+        PackageInfo packageInfo = new PackageInfo();
+        packageInfo.packageName = app.getPackageName();
+        // versionCode is all the index records, so there is no long version code to carry
+        packageInfo.versionCode = app.getVersionCode();
+        packageInfo.versionName = app.getVersionName();
+        packageInfo.firstInstallTime = app.getInstallTime();
+        packageInfo.lastUpdateTime = app.getInstallTime();
+        if ((flags & PackageManager.GET_GIDS) != 0) {
+            packageInfo.gids = gids;
+        }
+        if (indexed == null) {
+            // Until the index entry is rebuilt, only what the registry records
+            ApplicationInfo applicationInfo = new ApplicationInfo();
+            applicationInfo.packageName = app.getPackageName();
+            applicationInfo.nonLocalizedLabel = app.getAppName();
+            applicationInfo.sourceDir = app.getApkPath();
+            applicationInfo.publicSourceDir = app.getApkPath();
+            packageInfo.applicationInfo = applicationInfo;
+            return packageInfo;
+        }
+        
+        packageInfo.applicationInfo = indexed.applicationInfo;
+        if ((flags & PackageManager.GET_ACTIVITIES) != 0) {
+            packageInfo.activities = indexed.activities;
+        }
+        if ((flags & PackageManager.GET_RECEIVERS) != 0) {
+            packageInfo.receivers = indexed.receivers;
+        }
+        if ((flags & PackageManager.GET_SERVICES) != 0) {
+            packageInfo.services = indexed.services;
+        }
+        if ((flags & PackageManager.GET_PROVIDERS) != 0) {
+            packageInfo.providers = indexed.providers;
+        }
+        // Like PackageManager, GET_PERMISSIONS covers both defined and requested permissions
+        if ((flags & PackageManager.GET_PERMISSIONS) != 0) {
+            packageInfo.permissions = indexed.permissions;
+            packageInfo.requestedPermissions = indexed.requestedPermissions;
+        }
+        if ((flags & PackageManager.GET_SIGNATURES) != 0) {
+            packageInfo.signatures = indexed.signatures;
+        }
+        if ((flags & PackageManager.GET_SIGNING_CERTIFICATES) != 0) {
+            packageInfo.signingInfo = indexed.signingInfo;
+        }
+        return packageInfo;
+    }
+    
+    /**
+     * Virtual apps run in this process, so they have its supplementary groups.
+     * Read from /proc rather than asked of the system, which a binder handler cannot do.
+     */
+    private static int[] readProcessGids() {
+        try (BufferedReader reader = new BufferedReader(new FileReader("/proc/self/status"))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (!line.startsWith("Groups:")) {
+                    continue;
+                }
+                String groups = line.substring("Groups:".length()).trim();
+                if (groups.isEmpty()) {
+                    return new int[0];
+                }
+                String[] fields = groups.split("\\s+");
+                int[] gids = new int[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    gids[i] = Integer.parseInt(fields[i]);
+                }
+                return gids;
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.w(TAG, "Failed to read process groups", e);
+        }
+        return new int[0];
+    }
+    
+    /**
+     * Every package of a user, fully loaded. With many apps prefer
+     * {@link #queryPackages} or {@link #iteratePackages}, which do not
+     * hold all PackageInfos at once.
+     */
+    public List<PackageInfo> getAllVirtualPackages(int userId) {
+        List<PackageInfo> packages = new ArrayList<>(engine.getAppRegistry().getByUser(userId).size());
+        Iterator<PackageInfo> iterator = iteratePackages(userId, ALL_FLAGS);
+        while (iterator.hasNext()) {
+            packages.add(iterator.next());
+        }
+        return packages;
     }
     
-    public List<PackageInfo> getAllVirtualPackages() {
-        return new ArrayList<>(virtualPackages.values());
+    /**
+     * One page of a user's apps in package name order, without loading any PackageInfo
+     * @param queryFlags {@link #QUERY_RUNNING}, {@link #QUERY_STOPPED}, or 0 for all apps
+     * @param cursor {@link PackagePage#nextCursor} of the previous page, or null to start
+     * @param limit Maximum number of apps in the page
+     */
+    public PackagePage queryPackages(int userId, int queryFlags, String cursor, int limit) {
+        // Everything after the cursor in one registry snapshot; a view, not a copy
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        List<VirtualApp> remaining = engine.getAppRegistry().getByUser(userId, cursor, Integer.MAX_VALUE);
+        if ((queryFlags & (QUERY_RUNNING | QUERY_STOPPED)) == 0) {
+            List<VirtualApp> apps = remaining.subList(0, Math.min(limit, remaining.size()));
+            return new PackagePage(apps, apps.size() < remaining.size() ? lastPackageName(apps) : null);
+        }
+        List<VirtualApp> apps = new ArrayList<>(Math.min(limit, remaining.size()));
+        for (VirtualApp app : remaining) {
+            if (!matches(app, queryFlags)) {
+                continue;
+            }
+            if (apps.size() == limit) {
+                return new PackagePage(Collections.unmodifiableList(apps), lastPackageName(apps));
+            }
+            apps.add(app);
+        }
+        return new PackagePage(Collections.unmodifiableList(apps), null);
+    }
+    
+    /**
+     * Stream a user's packages in package name order, building each one's
+     * PackageInfo only when it is reached
+     * @param flags PackageManager.GET_* flags, see {@link #getVirtualPackageInfo(VirtualApp, int)}
+     */
+    public Iterator<PackageInfo> iteratePackages(int userId, int flags) {
+        Iterator<VirtualApp> apps = engine.getAppRegistry().getByUser(userId).iterator();
+        return new Iterator<PackageInfo>() {
+            @Override
+            public boolean hasNext() {
+                return apps.hasNext();
+            }
+            
+            @Override
+            public PackageInfo next() {
+                return getVirtualPackageInfo(apps.next(), flags);
+            }
+        };
+    }
+    
+    private static boolean matches(VirtualApp app, int queryFlags) {
+        boolean running = app.isRunning();
+        return running ? (queryFlags & QUERY_RUNNING) != 0 : (queryFlags & QUERY_STOPPED) != 0;
+    }
+    
+    private static String lastPackageName(List<VirtualApp> apps) {
+        return apps.get(apps.size() - 1).getPackageName();
     }
     
     public boolean isVirtualPackage(String packageName) {
-        return virtualPackages.containsKey(packageName);
+        return engine.getAppRegistry().containsPackage(packageName);
     }
     
-    public void removeVirtualPackage(String packageName) {
-        virtualPackages.remove(packageName);
+    public boolean isVirtualPackage(String packageName, int userId) {
+        return engine.getAppRegistry().get(userId, packageName) != null;
     }
     
     public void shutdown() {
-        virtualPackages.clear();
+    }
+    
+    /**
+     * Result of {@link #queryPackages}
+     */
+    public static final class PackagePage {
+        /** Immutable, at most the requested limit */
+        public final List<VirtualApp> apps;
+        /** Cursor for the next page, null if this page is the last */
+        public final String nextCursor;
+        
+        PackagePage(List<VirtualApp> apps, String nextCursor) {
+            this.apps = apps;
+            this.nextCursor = nextCursor;
+        }
     }
 }
\ No newline at end of file
@@ -3,7 +3,7 @@ package com.terista.space.core;
 import android.util.Log;
 import com.terista.space.reflection.ReflectionClass;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -11,59 +11,152 @@ import java.util.HashSet;
 public class VirtualProcessManager {
     
     private static final String TAG = "VirtualProcessManager";
-    private final VirtualEngine engine;
-    private final ConcurrentHashMap<Integer, VirtualProcess> runningProcesses = new ConcurrentHashMap<>();
+    private final ProcessIdAllocator processIds;
+    private final EngineMetrics metrics;
+    private final NativeProcesses nativeProcesses;
+    // Indexed by PID slot; stale PIDs are rejected by comparing the stored process ID
+    private final AtomicReferenceArray<VirtualProcess> runningProcesses;
     
-    public VirtualProcessManager(VirtualEngine engine) {
-        this.engine = engine;
+    /**
+     * Native side of a process's lifecycle; the engine implements it over NativeBridge
+     */
+    public interface NativeProcesses {
+        boolean create(String packageName, int userId);
+        void kill(int processId);
     }
     
-    public VirtualProcess createProcess(String packageName, int userId) {
-        int processId = engine.generateProcessId();
-        VirtualProcess process = new VirtualProcess(processId, packageName, userId);
-        runningProcesses.put(processId, process);
+    /**
+     * Per-process setup run once a process is bound to its package, e.g. sandbox initialization
+     */
+    public interface Initializer {
+        boolean prepare(VirtualProcess process);
+    }
+    
+    public VirtualProcessManager(ProcessIdAllocator processIds, EngineMetrics metrics, NativeProcesses nativeProcesses) {
+        this.processIds = processIds;
+        this.metrics = metrics;
+        this.nativeProcesses = nativeProcesses;
+        this.runningProcesses = new AtomicReferenceArray<>(processIds.capacity());
+    }
+    
+    /**
+     * Create the native process for a package and register it. The PID is
+     * allocated first, so a full process table never leaves a native process
+     * behind without an ID to kill it by.
+     * @return Registered process, or null if the table is full or the native side failed
+     */
+    public VirtualProcess startProcess(String packageName, int userId) {
+        int processId = processIds.allocate();
+        if (processId == ProcessIdAllocator.INVALID_ID) {
+            Log.e(TAG, "Process table full, cannot create process for: " + packageName);
+            return null;
+        }
         
-        Log.i(TAG, "Virtual process created: PID=" + processId + ", package=" + packageName);
+        long nativeStart = metrics.begin();
+        boolean created = nativeProcesses.create(packageName, userId);
+        metrics.end("native.createVirtualProcess", nativeStart);
+        if (!created) {
+            Log.e(TAG, "Failed to create native process for: " + packageName);
+            processIds.release(processId);
+            return null;
+        }
+        
+        VirtualProcess process = new VirtualProcess(processId, packageName, userId);
+        runningProcesses.set(ProcessIdAllocator.slotOf(processId), process);
+        Log.i(TAG, "Virtual process started: PID=" + processId + ", package=" + packageName);
         return process;
     }
     
+    /**
+     * Register a process whose PID was allocated elsewhere, e.g. by the process pool
+     * @param process Process to register
+     */
+    public void adoptProcess(VirtualProcess process) {
+        runningProcesses.set(ProcessIdAllocator.slotOf(process.processId), process);
+        Log.i(TAG, "Virtual process assigned: PID=" + process.processId + ", package=" + process.packageName);
+    }
+    
     public boolean killProcess(int processId) {
-        VirtualProcess process = runningProcesses.remove(processId);
-        if (process != null) {
-            process.isAlive = false;
-            engine.getNativeBridge().killVirtualProcess(processId);
-            Log.i(TAG, "Virtual process killed: PID=" + processId);
-            return true;
+        long start = metrics.begin();
+        VirtualProcess process = getProcess(processId);
+        if (process == null || !runningProcesses.compareAndSet(ProcessIdAllocator.slotOf(processId), process, null)) {
+            return false;
         }
-        return false;
+        
+        process.isAlive = false;
+        long nativeStart = metrics.begin();
+        nativeProcesses.kill(processId);
+        metrics.end("native.killVirtualProcess", nativeStart);
+        processIds.release(processId);
+        metrics.end("process.kill", start);
+        Log.i(TAG, "Virtual process killed: PID=" + processId);
+        return true;
     }
     
     public void killAppProcesses(String packageName) {
-        Set<Integer> toKill = new HashSet<>();
-        for (VirtualProcess process : runningProcesses.values()) {
-            if (packageName.equals(process.packageName)) {
-                toKill.add(process.processId);
+        int limit = processIds.highWaterMark();
+        for (int slot = 0; slot < limit; slot++) {
+            VirtualProcess process = runningProcesses.get(slot);
+            if (process != null && packageName.equals(process.packageName)) {
+                killProcess(process.processId);
             }
         }
-        
-        for (Integer pid : toKill) {
-            killProcess(pid);
+    }
+    
+    /**
+     * Kill one user's processes for a package, leaving other users untouched
+     */
+    public void killAppProcesses(String packageName, int userId) {
+        int limit = processIds.highWaterMark();
+        for (int slot = 0; slot < limit; slot++) {
+            VirtualProcess process = runningProcesses.get(slot);
+            if (process != null && process.userId == userId && packageName.equals(process.packageName)) {
+                killProcess(process.processId);
+            }
         }
     }
     
     public VirtualProcess getProcess(int processId) {
-        return runningProcesses.get(processId);
+        if (!processIds.isLive(processId)) {
+            return null;
+        }
+        VirtualProcess process = runningProcesses.get(ProcessIdAllocator.slotOf(processId));
+        return process != null && process.processId == processId ? process : null;
     }
     
     public Set<VirtualProcess> getAllProcesses() {
-        return new HashSet<>(runningProcesses.values());
+        Set<VirtualProcess> processes = new HashSet<>();
+        int limit = processIds.highWaterMark();
+        for (int slot = 0; slot < limit; slot++) {
+            VirtualProcess process = runningProcesses.get(slot);
+            if (process != null) {
+                processes.add(process);
+            }
+        }
+        return processes;
+    }
+    
+    public Set<VirtualProcess> getProcesses(int userId) {
+        Set<VirtualProcess> processes = new HashSet<>();
+        int limit = processIds.highWaterMark();
+        for (int slot = 0; slot < limit; slot++) {
+            VirtualProcess process = runningProcesses.get(slot);
+            if (process != null && process.userId == userId) {
+                processes.add(process);
+            }
+        }
+        return processes;
     }
     
     public void shutdown() {
-        for (VirtualProcess process : runningProcesses.values()) {
-            process.isAlive = false;
+        int limit = processIds.highWaterMark();
+        for (int slot = 0; slot < limit; slot++) {
+            VirtualProcess process = runningProcesses.getAndSet(slot, null);
+            if (process != null) {
+                process.isAlive = false;
+                processIds.release(process.processId);
+            }
         }
-        runningProcesses.clear();
     }
     
     public static class VirtualProcess {
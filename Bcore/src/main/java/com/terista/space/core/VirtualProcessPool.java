@@ -0,0 +1,171 @@
+package com.terista.space.core;
+
+import android.util.Log;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-created blank virtual processes.
+ *
+ * Blank processes are created on a background thread, then bound to a
+ * package when an app launches, so the launch itself only pays for taking a
+ * process off the queue. The pool refills itself after every assignment.
+ * Package-specific setup such as the sandbox runs after binding, see
+ * {@link VirtualProcessManager.Initializer}.
+ */
+public class VirtualProcessPool {
+    
+    private static final String TAG = "VirtualProcessPool";
+    
+    /**
+     * Placeholder identity used while a process is waiting in the pool
+     */
+    public static final String BLANK_PACKAGE = ":blank";
+    public static final int BLANK_USER = -1;
+    
+    private final VirtualEngine engine;
+    private final int targetSize;
+    private final ConcurrentLinkedQueue<VirtualProcessManager.VirtualProcess> idleProcesses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+    private final AtomicBoolean refillScheduled = new AtomicBoolean(false);
+    private final ExecutorService refillExecutor;
+    
+    private volatile boolean enabled = true;
+    private volatile boolean shutdown = false;
+    
+    public VirtualProcessPool(VirtualEngine engine, int targetSize) {
+        this.engine = engine;
+        this.targetSize = targetSize;
+        this.refillExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "VirtualProcessPool");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Take a pre-created process and bind it to a package
+     * @param packageName Package to bind
+     * @param userId Virtual user ID
+     * @return Registered process, or null if the pool is empty or disabled
+     */
+    public VirtualProcessManager.VirtualProcess acquire(String packageName, int userId) {
+        if (!enabled || shutdown) return null;
+        
+        VirtualProcessManager.VirtualProcess process = idleProcesses.poll();
+        if (process == null) {
+            scheduleRefill();
+            return null;
+        }
+        idleCount.decrementAndGet();
+        
+        process.packageName = packageName;
+        process.userId = userId;
+        process.startTime = System.currentTimeMillis();
+        engine.getProcessManager().adoptProcess(process);
+        
+        scheduleRefill();
+        return process;
+    }
+    
+    /**
+     * Refill the pool in the background if it is below its target size
+     */
+    public void scheduleRefill() {
+        if (!enabled || shutdown || idleCount.get() >= targetSize) return;
+        if (refillScheduled.compareAndSet(false, true)) {
+            refillExecutor.execute(() -> {
+                try {
+                    fill();
+                } finally {
+                    refillScheduled.set(false);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Synchronously create blank processes until the pool reaches its target size.
+     * Callers are serialized with the background refill so the pool never overshoots.
+     * @return Number of processes added
+     */
+    public synchronized int fill() {
+        int added = 0;
+        while (enabled && !shutdown && idleCount.get() < targetSize) {
+            VirtualProcessManager.VirtualProcess process = createBlankProcess();
+            if (process == null) break;
+            if (!enabled || shutdown) {
+                // Drained while this one was being created
+                discard(process);
+                break;
+            }
+            idleProcesses.offer(process);
+            idleCount.incrementAndGet();
+            added++;
+        }
+        return added;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            scheduleRefill();
+        } else {
+            drain();
+        }
+    }
+    
+    public boolean isEnabled() { return enabled; }
+    
+    public int getIdleCount() { return idleCount.get(); }
+    
+    public int getTargetSize() { return targetSize; }
+    
+    public void shutdown() {
+        shutdown = true;
+        refillExecutor.shutdownNow();
+        drain();
+    }
+    
+    private VirtualProcessManager.VirtualProcess createBlankProcess() {
+        // Allocate the PID first: a native process created without one could never be killed
+        int processId = engine.generateProcessId();
+        if (processId == ProcessIdAllocator.INVALID_ID) {
+            Log.w(TAG, "Process table full, pool not refilled");
+            return null;
+        }
+        
+        EngineMetrics metrics = engine.getMetricsRecorder();
+        long start = metrics.begin();
+        boolean created = engine.getNativeBridge().createVirtualProcess(BLANK_PACKAGE, BLANK_USER);
+        metrics.end("native.createVirtualProcess", start);
+        if (!created) {
+            Log.e(TAG, "Failed to pre-create virtual process");
+            engine.releaseProcessId(processId);
+            return null;
+        }
+        
+        VirtualProcessManager.VirtualProcess process =
+                new VirtualProcessManager.VirtualProcess(processId, BLANK_PACKAGE, BLANK_USER);
+        Log.d(TAG, "Pre-created virtual process: PID=" + processId);
+        return process;
+    }
+    
+    private void drain() {
+        VirtualProcessManager.VirtualProcess process;
+        while ((process = idleProcesses.poll()) != null) {
+            idleCount.decrementAndGet();
+            discard(process);
+        }
+    }
+    
+    private void discard(VirtualProcessManager.VirtualProcess process) {
+        process.isAlive = false;
+        engine.getNativeBridge().killVirtualProcess(process.processId);
+        engine.releaseProcessId(process.processId);
+    }
+}
\ No newline at end of file
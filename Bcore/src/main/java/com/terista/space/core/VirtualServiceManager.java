@@ -11,20 +11,16 @@ import java.util.HashSet;
 public class VirtualServiceManager {
     
     private static final String TAG = "VirtualServiceManager";
-    private final VirtualEngine engine;
-    private final ConcurrentHashMap<String, VirtualService> runningServices = new ConcurrentHashMap<>();
+    // Each virtual user has its own service namespace, keyed by service name
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, VirtualService>> runningServices = new ConcurrentHashMap<>();
     
-    public VirtualServiceManager(VirtualEngine engine) {
-        this.engine = engine;
-    }
-    
-    public boolean startService(String packageName, String serviceName) {
+    public boolean startService(String packageName, String serviceName, int userId) {
         try {
-            VirtualService service = new VirtualService(packageName, serviceName);
-            runningServices.put(serviceName, service);
+            VirtualService service = new VirtualService(packageName, serviceName, userId);
+            servicesOf(userId).put(serviceName, service);
             service.isRunning = true;
             
-            Log.i(TAG, "Virtual service started: " + serviceName);
+            Log.i(TAG, "Virtual service started: " + serviceName + " for user " + userId);
             return true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to start service", e);
@@ -32,40 +28,64 @@ public class VirtualServiceManager {
         }
     }
     
-    public boolean stopService(String serviceName) {
-        VirtualService service = runningServices.remove(serviceName);
+    public boolean stopService(String serviceName, int userId) {
+        ConcurrentHashMap<String, VirtualService> services = runningServices.get(userId);
+        VirtualService service = services != null ? services.remove(serviceName) : null;
         if (service != null) {
             service.isRunning = false;
-            Log.i(TAG, "Virtual service stopped: " + serviceName);
+            Log.i(TAG, "Virtual service stopped: " + serviceName + " for user " + userId);
             return true;
         }
         return false;
     }
     
-    public VirtualService getRunningService(String serviceName) {
-        return runningServices.get(serviceName);
+    /**
+     * Stop every service a package runs for one user
+     */
+    public void stopUserServices(String packageName, int userId) {
+        ConcurrentHashMap<String, VirtualService> services = runningServices.get(userId);
+        if (services == null) return;
+        for (VirtualService service : services.values()) {
+            if (packageName.equals(service.packageName)) {
+                stopService(service.serviceName, userId);
+            }
+        }
+    }
+    
+    public VirtualService getRunningService(String serviceName, int userId) {
+        ConcurrentHashMap<String, VirtualService> services = runningServices.get(userId);
+        return services != null ? services.get(serviceName) : null;
     }
     
-    public Set<String> getRunningServices() {
-        return new HashSet<>(runningServices.keySet());
+    public Set<String> getRunningServices(int userId) {
+        ConcurrentHashMap<String, VirtualService> services = runningServices.get(userId);
+        return services != null ? new HashSet<>(services.keySet()) : new HashSet<>();
     }
     
     public void shutdown() {
-        for (VirtualService service : runningServices.values()) {
-            service.isRunning = false;
+        for (ConcurrentHashMap<String, VirtualService> services : runningServices.values()) {
+            for (VirtualService service : services.values()) {
+                service.isRunning = false;
+            }
         }
         runningServices.clear();
     }
     
+    private ConcurrentHashMap<String, VirtualService> servicesOf(int userId) {
+        return runningServices.computeIfAbsent(userId, k -> new ConcurrentHashMap<>());
+    }
+    
     public static class VirtualService {
         public String packageName;
         public String serviceName;
+        public int userId;
         public int processId;
         public boolean isRunning;
         
-        public VirtualService(String packageName, String serviceName) {
+        public VirtualService(String packageName, String serviceName, int userId) {
             this.packageName = packageName;
             this.serviceName = serviceName;
+            this.userId = userId;
             this.isRunning = false;
         }
     }
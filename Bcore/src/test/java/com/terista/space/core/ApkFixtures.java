@@ -0,0 +1,422 @@
+package com.terista.space.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds small APK fixtures on the fly: a zip holding a binary
+ * AndroidManifest.xml, optionally a resources.arsc for resource labels and
+ * signatures, and filler standing in for classes.dex. The chunk layouts follow what aapt2
+ * writes, so the parser sees the same structures as in real APKs.
+ */
+public final class ApkFixtures {
+    
+    /** Resource ID of @string/app_name in generated resource tables */
+    public static final int APP_NAME_RES_ID = 0x7f010000;
+    /** Resource ID of @string/brand, which app_name refers to when {@link Spec#labelIndirect} is set */
+    public static final int BRAND_RES_ID = 0x7f010001;
+    
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+    // Attribute names mapped to android:* resource IDs; they lead the string pool
+    private static final String[] MAPPED_ATTRIBUTES = {"label", "name", "versionCode", "versionName"};
+    private static final int[] MAPPED_IDS = {0x01010001, 0x01010003, 0x0101021b, 0x0101021c};
+    
+    private static final int TYPE_REFERENCE = 0x01;
+    private static final int TYPE_STRING = 0x03;
+    private static final int TYPE_INT_DEC = 0x10;
+    
+    /**
+     * What to put in a fixture. Fields left null are omitted from the manifest.
+     */
+    public static final class Spec {
+        public String packageName = "com.example.app";
+        public int versionCode = 1;
+        public String versionName = "1.0";
+        /** Literal label; ignored when {@link #labels} is set */
+        public String label;
+        /** String resource values for the label by locale, "" for the default configuration */
+        public Map<String, String> labels;
+        /** Make @string/app_name a reference to @string/brand holding the value */
+        public boolean labelIndirect;
+        public String applicationClass;
+        public List<String> activities = new ArrayList<>();
+        public List<String> services = new ArrayList<>();
+        public List<String> receivers = new ArrayList<>();
+        public List<String> providers = new ArrayList<>();
+        public List<String> requestedPermissions = new ArrayList<>();
+        public List<String> permissions = new ArrayList<>();
+        /** Add &lt;queries&gt; with an unnamed &lt;provider android:authorities&gt; */
+        public boolean queriesProvider;
+        public boolean utf8;
+        public boolean storeManifest;
+        /** Bytes of filler before the manifest, like the dex files of a real APK */
+        public int fillerSize = 4096;
+        /** PKCS#7 block written as META-INF/CERT.RSA */
+        public byte[] v1SignatureFile;
+        /** Signing block scheme ID, and the certificate of each signer in it */
+        public int signingSchemeId;
+        public List<byte[]> signerCertificates = new ArrayList<>();
+        
+        public Spec label(String label) {
+            this.label = label;
+            return this;
+        }
+        
+        public Spec resourceLabel(String locale, String value) {
+            if (labels == null) {
+                labels = new LinkedHashMap<>();
+            }
+            labels.put(locale, value);
+            return this;
+        }
+    }
+    
+    private ApkFixtures() {}
+    
+    /**
+     * Write a fixture APK into a directory
+     * @return The APK file
+     */
+    public static File write(File dir, String fileName, Spec spec) throws IOException {
+        File apk = new File(dir, fileName);
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk))) {
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(new byte[spec.fillerSize]);
+            zip.closeEntry();
+            putEntry(zip, "AndroidManifest.xml", manifest(spec), spec.storeManifest);
+            if (spec.labels != null) {
+                // aapt2 stores resources.arsc uncompressed so it can be mapped
+                putEntry(zip, "resources.arsc", resourceTable(spec), true);
+            }
+            if (spec.v1SignatureFile != null) {
+                putEntry(zip, "META-INF/CERT.RSA", spec.v1SignatureFile, false);
+            }
+        }
+        if (!spec.signerCertificates.isEmpty()) {
+            insertSigningBlock(apk, spec.signingSchemeId, spec.signerCertificates);
+        }
+        return apk;
+    }
+    
+    /**
+     * Insert an APK signing block before the central directory. Only the
+     * layout is real: digests are empty and signatures are left out.
+     */
+    private static void insertSigningBlock(File apk, int schemeId, List<byte[]> certificates) throws IOException {
+        Chunks signers = new Chunks();
+        for (byte[] certificate : certificates) {
+            byte[] certificateList = lengthPrefixed(lengthPrefixed(certificate));
+            byte[] signedData = new Chunks().add(lengthPrefixed(new byte[0])).add(certificateList).toByteArray();
+            signers.add(lengthPrefixed(new Chunks().add(lengthPrefixed(signedData))
+                    .add(lengthPrefixed(new byte[0])).add(lengthPrefixed(new byte[0])).toByteArray()));
+        }
+        byte[] value = lengthPrefixed(signers.toByteArray());
+        
+        ByteBuffer block = ByteBuffer.allocate(8 + 8 + 4 + value.length + 8 + 16).order(ByteOrder.LITTLE_ENDIAN);
+        long size = block.capacity() - 8;
+        block.putLong(size).putLong(4 + value.length).putInt(schemeId).put(value).putLong(size);
+        block.put("APK Sig Block 42".getBytes(StandardCharsets.US_ASCII));
+        
+        byte[] zip = Files.readAllBytes(apk.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = zip.length - 22;
+        int centralDirectory = buffer.getInt(eocd + 16);
+        buffer.putInt(eocd + 16, centralDirectory + block.capacity());
+        try (FileOutputStream out = new FileOutputStream(apk)) {
+            out.write(zip, 0, centralDirectory);
+            out.write(block.array());
+            out.write(zip, centralDirectory, zip.length - centralDirectory);
+        }
+    }
+    
+    private static byte[] lengthPrefixed(byte[] data) {
+        return ByteBuffer.allocate(4 + data.length).order(ByteOrder.LITTLE_ENDIAN).putInt(data.length).put(data).array();
+    }
+    
+    private static void putEntry(ZipOutputStream zip, String name, byte[] data, boolean stored) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        if (stored) {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(entry);
+        zip.write(data);
+        zip.closeEntry();
+    }
+    
+    /**
+     * Binary XML for the spec's manifest
+     */
+    public static byte[] manifest(Spec spec) {
+        Xml xml = new Xml(spec.utf8);
+        xml.start("manifest",
+                xml.stringAttr(null, "package", spec.packageName),
+                xml.intAttr(ANDROID_NS, "versionCode", spec.versionCode),
+                spec.versionName != null ? xml.stringAttr(ANDROID_NS, "versionName", spec.versionName) : null);
+        if (spec.queriesProvider) {
+            xml.start("queries");
+            xml.start("provider", xml.stringAttr(ANDROID_NS, "authorities", spec.packageName + ".other"));
+            xml.end("provider");
+            xml.end("queries");
+        }
+        component(xml, "permission", spec.permissions);
+        component(xml, "uses-permission", spec.requestedPermissions);
+        int[] label = null;
+        if (spec.labels != null) {
+            label = xml.referenceAttr(ANDROID_NS, "label", APP_NAME_RES_ID);
+        } else if (spec.label != null) {
+            label = xml.stringAttr(ANDROID_NS, "label", spec.label);
+        }
+        xml.start("application", label,
+                spec.applicationClass != null ? xml.stringAttr(ANDROID_NS, "name", spec.applicationClass) : null);
+        component(xml, "activity", spec.activities);
+        component(xml, "service", spec.services);
+        component(xml, "receiver", spec.receivers);
+        component(xml, "provider", spec.providers);
+        xml.end("application");
+        xml.end("manifest");
+        return xml.toByteArray();
+    }
+    
+    private static void component(Xml xml, String element, List<String> names) {
+        for (String name : names) {
+            xml.start(element, xml.stringAttr(ANDROID_NS, "name", name));
+            xml.end(element);
+        }
+    }
+    
+    /**
+     * resources.arsc with one package (0x7f) and one string type holding
+     * app_name and brand, with a type chunk per label locale
+     */
+    public static byte[] resourceTable(Spec spec) {
+        List<String> values = new ArrayList<>(spec.labels.values());
+        
+        Chunks pkg = new Chunks();
+        byte[] typeStrings = stringPool(Arrays.asList("string"), spec.utf8);
+        byte[] keyStrings = stringPool(Arrays.asList("app_name", "brand"), spec.utf8);
+        int headerSize = 8 + 4 + 256 + 5 * 4;
+        
+        // Type spec: entry count then one configuration mask per entry
+        ByteBuffer typeSpec = chunk(0x0202, 16, 16 + 2 * 4);
+        typeSpec.put((byte) 1).put((byte) 0).putShort((short) 0).putInt(2).putInt(0).putInt(0);
+        
+        List<byte[]> types = new ArrayList<>();
+        int valueIndex = 0;
+        for (String locale : spec.labels.keySet()) {
+            types.add(typeChunk(locale, spec.labelIndirect, valueIndex++));
+        }
+        
+        int size = headerSize + typeStrings.length + keyStrings.length + typeSpec.capacity();
+        for (byte[] type : types) size += type.length;
+        ByteBuffer header = header(0x0200, headerSize, size);
+        header.putInt(0x7f);
+        char[] name = new char[128];
+        spec.packageName.getChars(0, Math.min(127, spec.packageName.length()), name, 0);
+        for (char c : name) header.putChar(c);
+        header.putInt(headerSize).putInt(1).putInt(headerSize + typeStrings.length).putInt(2).putInt(0);
+        pkg.add(header.array()).add(typeStrings).add(keyStrings).add(typeSpec.array());
+        for (byte[] type : types) pkg.add(type);
+        
+        byte[] globalStrings = stringPool(values, spec.utf8);
+        byte[] packageChunk = pkg.toByteArray();
+        ByteBuffer table = header(0x0002, 12, 12 + globalStrings.length + packageChunk.length);
+        table.putInt(1);
+        return new Chunks().add(table.array()).add(globalStrings).add(packageChunk).toByteArray();
+    }
+    
+    /**
+     * One configuration of the string type. app_name holds global string
+     * valueIndex, or refers to brand which holds it.
+     */
+    private static byte[] typeChunk(String locale, boolean indirect, int valueIndex) {
+        int configSize = 64;
+        int headerSize = 20 + configSize;
+        int entryCount = 2;
+        int entrySize = 8 + 8;
+        int entriesStart = headerSize + entryCount * 4;
+        ByteBuffer type = chunk(0x0201, headerSize, entriesStart + entryCount * entrySize);
+        type.put((byte) 1).put((byte) 0).putShort((short) 0).putInt(entryCount).putInt(entriesStart);
+        // ResTable_config: size, imsi, locale (language, country), rest zero
+        type.putInt(configSize).putInt(0);
+        byte[] language = locale.getBytes(StandardCharsets.US_ASCII);
+        type.put(language.length > 0 ? language[0] : 0).put(language.length > 1 ? language[1] : 0).putShort((short) 0);
+        type.position(headerSize);
+        type.putInt(0).putInt(entrySize);
+        
+        // app_name
+        type.putShort((short) 8).putShort((short) 0).putInt(0);
+        if (indirect) {
+            type.putShort((short) 8).put((byte) 0).put((byte) TYPE_REFERENCE).putInt(BRAND_RES_ID);
+        } else {
+            type.putShort((short) 8).put((byte) 0).put((byte) TYPE_STRING).putInt(valueIndex);
+        }
+        // brand
+        type.putShort((short) 8).putShort((short) 0).putInt(1);
+        type.putShort((short) 8).put((byte) 0).put((byte) TYPE_STRING).putInt(valueIndex);
+        return type.array();
+    }
+    
+    private static ByteBuffer chunk(int type, int headerSize, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) type).putShort((short) headerSize).putInt(size);
+        return buffer;
+    }
+    
+    /**
+     * Header of a chunk whose children are appended separately
+     */
+    private static ByteBuffer header(int type, int headerSize, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) type).putShort((short) headerSize).putInt(size);
+        return buffer;
+    }
+    
+    static byte[] stringPool(List<String> strings, boolean utf8) {
+        Chunks data = new Chunks();
+        int[] offsets = new int[strings.size()];
+        int position = 0;
+        for (int i = 0; i < strings.size(); i++) {
+            offsets[i] = position;
+            byte[] encoded = encode(strings.get(i), utf8);
+            data.add(encoded);
+            position += encoded.length;
+        }
+        int padding = (4 - position % 4) % 4;
+        data.add(new byte[padding]);
+        int headerSize = 28;
+        int stringsStart = headerSize + 4 * strings.size();
+        ByteBuffer pool = chunk(0x0001, headerSize, stringsStart + position + padding);
+        pool.putInt(strings.size()).putInt(0).putInt(utf8 ? 1 << 8 : 0).putInt(stringsStart).putInt(0);
+        for (int offset : offsets) pool.putInt(offset);
+        pool.put(data.toByteArray());
+        return pool.array();
+    }
+    
+    private static byte[] encode(String value, boolean utf8) {
+        if (utf8) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 5);
+            putUtf8Length(buffer, value.length());
+            putUtf8Length(buffer, bytes.length);
+            buffer.put(bytes).put((byte) 0);
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 + value.length() * 2 + 2).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); i++) buffer.putChar(value.charAt(i));
+        buffer.putShort((short) 0);
+        return buffer.array();
+    }
+    
+    private static void putUtf8Length(ByteBuffer buffer, int length) {
+        if (length > 0x7F) {
+            buffer.put((byte) (0x80 | (length >> 8))).put((byte) length);
+        } else {
+            buffer.put((byte) length);
+        }
+    }
+    
+    /**
+     * Binary XML writer: interns strings as elements are added and lays out
+     * the string pool and resource map in front of the nodes at the end
+     */
+    private static final class Xml {
+        
+        private final boolean utf8;
+        private final List<String> strings = new ArrayList<>(Arrays.asList(MAPPED_ATTRIBUTES));
+        private final Chunks nodes = new Chunks();
+        
+        Xml(boolean utf8) {
+            this.utf8 = utf8;
+        }
+        
+        int intern(String value) {
+            int index = strings.indexOf(value);
+            if (index < 0) {
+                strings.add(value);
+                index = strings.size() - 1;
+            }
+            return index;
+        }
+        
+        int[] stringAttr(String ns, String name, String value) {
+            int index = intern(value);
+            return new int[] {ns != null ? intern(ns) : -1, intern(name), index, TYPE_STRING, index};
+        }
+        
+        int[] intAttr(String ns, String name, int value) {
+            return new int[] {ns != null ? intern(ns) : -1, intern(name), -1, TYPE_INT_DEC, value};
+        }
+        
+        int[] referenceAttr(String ns, String name, int resId) {
+            return new int[] {ns != null ? intern(ns) : -1, intern(name), -1, TYPE_REFERENCE, resId};
+        }
+        
+        void start(String element, int[]... attributes) {
+            List<int[]> present = new ArrayList<>();
+            for (int[] attribute : attributes) {
+                if (attribute != null) present.add(attribute);
+            }
+            ByteBuffer node = chunk(0x0102, 16, 16 + 20 + present.size() * 20);
+            node.putInt(1).putInt(-1);
+            node.putInt(-1).putInt(intern(element)).putShort((short) 20).putShort((short) 20)
+                    .putShort((short) present.size()).putShort((short) 0).putShort((short) 0).putShort((short) 0);
+            for (int[] attribute : present) {
+                node.putInt(attribute[0]).putInt(attribute[1]).putInt(attribute[2])
+                        .putShort((short) 8).put((byte) 0).put((byte) attribute[3]).putInt(attribute[4]);
+            }
+            nodes.add(node.array());
+        }
+        
+        void end(String element) {
+            ByteBuffer node = chunk(0x0103, 16, 24);
+            node.putInt(1).putInt(-1).putInt(-1).putInt(intern(element));
+            nodes.add(node.array());
+        }
+        
+        byte[] toByteArray() {
+            byte[] pool = stringPool(strings, utf8);
+            ByteBuffer resourceMap = chunk(0x0180, 8, 8 + MAPPED_IDS.length * 4);
+            for (int id : MAPPED_IDS) resourceMap.putInt(id);
+            byte[] body = nodes.toByteArray();
+            ByteBuffer document = chunk(0x0003, 8, 8 + pool.length + resourceMap.capacity() + body.length);
+            document.put(pool).put(resourceMap.array()).put(body);
+            return document.array();
+        }
+    }
+    
+    private static final class Chunks {
+        private final List<byte[]> parts = new ArrayList<>();
+        private int size;
+        
+        Chunks add(byte[] part) {
+            parts.add(part);
+            size += part.length;
+            return this;
+        }
+        
+        byte[] toByteArray() {
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] part : parts) buffer.put(part);
+            return buffer.array();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,236 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.cert.CertificateFactory;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class ApkManifestParserTest {
+    
+    // PKCS#7 SignedData holding one self-signed certificate, as in META-INF/CERT.RSA
+    private static final String V1_SIGNATURE_FILE = "MIIBqQYJKoZIhvcNAQcCoIIBmjCCAZYCAQExADALBgkqhkiG9w0BBwGgggF+MIIBejCCASGgAwIBAgIUD6emCGeGyPbZ/imKL5uMVE9ZnK0wCgYIKoZIzj0EAwIwEjEQMA4GA1UEAwwHZml4dHVyZTAgFw0yNjEwMTkwMTU2MTFaGA8yMDU0MDMwNjAxNTYxMVowEjEQMA4GA1UEAwwHZml4dHVyZTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABG3bUW31NOrb895D0VlXd8YVw4swsdht5UNCUY2db0rUTemvF3e2TaQaoX5xz5JAbjvtU2QhS8X3TyaL69Cs6S+jUzBRMB0GA1UdDgQWBBStARsUTYjtp5U9mRknVA27C/wuIzAfBgNVHSMEGDAWgBStARsUTYjtp5U9mRknVA27C/wuIzAPBgNVHRMBAf8EBTADAQH/MAoGCCqGSM49BAMCA0cAMEQCIEnT1Ql7+/aSYizr6siIckx3ud8xp7jumXj7/lmA8KqrAiAubwk2Pw0et2VbLr5892Zj/nDcm0Hy0xzsHMUjdCUclTEA";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ApkFixtures.Spec spec() {
+        ApkFixtures.Spec spec = new ApkFixtures.Spec();
+        spec.packageName = "com.example.app";
+        spec.versionCode = 42;
+        spec.versionName = "1.2.3";
+        spec.applicationClass = ".App";
+        spec.activities = Arrays.asList(".MainActivity", "SettingsActivity");
+        spec.services = Collections.singletonList("SyncService");
+        spec.receivers = Collections.singletonList("com.other.Receiver");
+        spec.providers = Collections.singletonList(".DataProvider");
+        return spec;
+    }
+    
+    private ApkManifest parse(ApkFixtures.Spec spec) throws IOException {
+        File apk = ApkFixtures.write(folder.getRoot(), "fixture.apk", spec);
+        return ApkManifestParser.parse(apk.getPath());
+    }
+    
+    @Test
+    public void readsPackageVersionAndComponents() throws IOException {
+        ApkManifest manifest = parse(spec().label("My App"));
+        
+        assertEquals("com.example.app", manifest.getPackageName());
+        assertEquals(42, manifest.getVersionCode());
+        assertEquals("1.2.3", manifest.getVersionName());
+        assertEquals("My App", manifest.getLabel());
+        assertEquals(0, manifest.getLabelResId());
+        assertEquals("com.example.app.App", manifest.getApplicationClassName());
+        assertEquals(Arrays.asList("com.example.app.MainActivity", "com.example.app.SettingsActivity"),
+                manifest.getActivities());
+        assertEquals(Collections.singletonList("com.example.app.SyncService"), manifest.getServices());
+        assertEquals(Collections.singletonList("com.other.Receiver"), manifest.getReceivers());
+        assertEquals(Collections.singletonList("com.example.app.DataProvider"), manifest.getProviders());
+    }
+    
+    @Test
+    public void readsPermissions() throws IOException {
+        ApkFixtures.Spec spec = spec().label("My App");
+        spec.permissions = Collections.singletonList("com.example.app.permission.SYNC");
+        spec.requestedPermissions = Arrays.asList("android.permission.INTERNET", "com.example.app.permission.SYNC");
+        ApkManifest manifest = parse(spec);
+        
+        assertEquals(Collections.singletonList("com.example.app.permission.SYNC"), manifest.getPermissions());
+        assertEquals(Arrays.asList("android.permission.INTERNET", "com.example.app.permission.SYNC"),
+                manifest.getRequestedPermissions());
+        // Permission names are not class names
+        assertEquals(1, manifest.getServices().size());
+    }
+    
+    @Test
+    public void readsUtf8StringPoolsAndStoredManifests() throws IOException {
+        for (boolean utf8 : new boolean[] {false, true}) {
+            for (boolean stored : new boolean[] {false, true}) {
+                ApkFixtures.Spec spec = spec().label("\u00dcn\u00efcode \u00c4pp");
+                spec.utf8 = utf8;
+                spec.storeManifest = stored;
+                ApkManifest manifest = parse(spec);
+                assertEquals("com.example.app", manifest.getPackageName());
+                assertEquals("\u00dcn\u00efcode \u00c4pp", manifest.getLabel());
+                assertEquals(2, manifest.getActivities().size());
+            }
+        }
+    }
+    
+    @Test
+    public void resolvesResourceLabelFromDefaultConfiguration() throws IOException {
+        for (boolean utf8 : new boolean[] {false, true}) {
+            ApkFixtures.Spec spec = spec().resourceLabel("fr", "Mon Appli").resourceLabel("", "My App");
+            spec.utf8 = utf8;
+            ApkManifest manifest = parse(spec);
+            assertEquals(ApkFixtures.APP_NAME_RES_ID, manifest.getLabelResId());
+            assertEquals("My App", manifest.getLabel());
+        }
+    }
+    
+    @Test
+    public void fallsBackToAnyConfigurationWithoutDefault() throws IOException {
+        ApkManifest manifest = parse(spec().resourceLabel("fr", "Mon Appli"));
+        assertEquals("Mon Appli", manifest.getLabel());
+    }
+    
+    @Test
+    public void followsLabelReferences() throws IOException {
+        ApkFixtures.Spec spec = spec().resourceLabel("", "Brand Name");
+        spec.labelIndirect = true;
+        assertEquals("Brand Name", parse(spec).getLabel());
+    }
+    
+    @Test
+    public void leavesUnresolvableLabelNull() throws IOException {
+        // Resource label without a resources.arsc in the archive
+        ApkFixtures.Spec spec = spec().resourceLabel("", "My App");
+        byte[] manifestXml = ApkFixtures.manifest(spec);
+        File apk = folder.newFile("no-resources.apk");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk))) {
+            zip.putNextEntry(new ZipEntry("AndroidManifest.xml"));
+            zip.write(manifestXml);
+            zip.closeEntry();
+        }
+        ApkManifest manifest = ApkManifestParser.parse(apk.getPath());
+        assertEquals(ApkFixtures.APP_NAME_RES_ID, manifest.getLabelResId());
+        assertNull(manifest.getLabel());
+    }
+    
+    @Test
+    public void skipsUnnamedQueriesProviders() throws IOException {
+        ApkFixtures.Spec spec = spec().label("My App");
+        spec.queriesProvider = true;
+        assertEquals(Collections.singletonList("com.example.app.DataProvider"), parse(spec).getProviders());
+    }
+    
+    @Test
+    public void readsSignerCertificatesFromSigningBlock() throws IOException {
+        byte[] first = {0x30, 0x03, 0x02, 0x01, 0x01};
+        byte[] second = {0x30, 0x03, 0x02, 0x01, 0x02};
+        ApkFixtures.Spec spec = spec().label("My App");
+        spec.signingSchemeId = 0x7109871a;
+        spec.signerCertificates = Arrays.asList(first, second);
+        ApkManifest manifest = parse(spec);
+        assertEquals("com.example.app", manifest.getPackageName());
+        assertEquals(2, manifest.getSignatures().size());
+        assertArrayEquals(first, manifest.getSignatures().get(0));
+        assertArrayEquals(second, manifest.getSignatures().get(1));
+        
+        // v3 takes precedence, and only its first signer counts
+        spec.signingSchemeId = 0xf05368c0;
+        manifest = parse(spec);
+        assertEquals(1, manifest.getSignatures().size());
+        assertArrayEquals(first, manifest.getSignatures().get(0));
+    }
+    
+    @Test
+    public void readsV1SignerCertificate() throws Exception {
+        byte[] signatureFile = Base64.getDecoder().decode(V1_SIGNATURE_FILE);
+        byte[] certificate = CertificateFactory.getInstance("X.509")
+                .generateCertificates(new ByteArrayInputStream(signatureFile)).iterator().next().getEncoded();
+        ApkFixtures.Spec spec = spec().label("My App");
+        spec.v1SignatureFile = signatureFile;
+        File apk = ApkFixtures.write(folder.getRoot(), "v1.apk", spec);
+        assertEquals(1, ApkManifestParser.readSignatures(apk.getPath()).size());
+        assertArrayEquals(certificate, ApkManifestParser.readSignatures(apk.getPath()).get(0));
+        assertArrayEquals(certificate, ApkManifestParser.parse(apk.getPath()).getSignatures().get(0));
+    }
+    
+    @Test
+    public void unsignedApksHaveNoSignatures() throws IOException {
+        assertTrue(parse(spec().label("My App")).getSignatures().isEmpty());
+        
+        // A corrupt signing block costs the signatures, not the install
+        ApkFixtures.Spec spec = spec().label("My App");
+        spec.signingSchemeId = 0x7109871a;
+        spec.signerCertificates = Collections.singletonList(new byte[16]);
+        File apk = ApkFixtures.write(folder.getRoot(), "corrupt.apk", spec);
+        byte[] zip = Files.readAllBytes(apk.toPath());
+        byte[] schemeId = {0x1a, (byte) 0x87, 0x09, 0x71};
+        for (int i = 0; i + 8 <= zip.length; i++) {
+            if (zip[i] == schemeId[0] && Arrays.equals(Arrays.copyOfRange(zip, i, i + 4), schemeId)) {
+                // Signer sequence length far beyond the block
+                zip[i + 4] = zip[i + 5] = zip[i + 6] = (byte) 0xFF;
+                zip[i + 7] = 0x7F;
+                break;
+            }
+        }
+        Files.write(apk.toPath(), zip);
+        ApkManifest manifest = ApkManifestParser.parse(apk.getPath());
+        assertEquals("com.example.app", manifest.getPackageName());
+        assertTrue(manifest.getSignatures().isEmpty());
+        try {
+            ApkManifestParser.readSignatures(apk.getPath());
+            fail("Expected IOException for a corrupt signing block");
+        } catch (IOException expected) {
+            // indexApk logs it and indexes the app unsigned
+        }
+    }
+    
+    @Test
+    public void rejectsArchivesWithoutManifest() throws IOException {
+        File apk = folder.newFile("empty.apk");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(apk))) {
+            zip.putNextEntry(new ZipEntry("classes.dex"));
+            zip.write(new byte[16]);
+            zip.closeEntry();
+        }
+        expectIOException(apk);
+    }
+    
+    @Test
+    public void rejectsFilesThatAreNotZips() throws IOException {
+        File apk = folder.newFile("garbage.apk");
+        try (FileOutputStream out = new FileOutputStream(apk)) {
+            out.write(new byte[256]);
+        }
+        expectIOException(apk);
+    }
+    
+    private static void expectIOException(File apk) {
+        try {
+            ApkManifestParser.parse(apk.getPath());
+            fail("Expected IOException for " + apk.getName());
+        } catch (IOException expected) {
+            // Callers fall back to PackageManager
+        }
+    }
+}
\ No newline at end of file
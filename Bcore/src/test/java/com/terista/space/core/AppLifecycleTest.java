@@ -0,0 +1,103 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AppLifecycleTest {
+    
+    private final AppRegistry registry = new AppRegistry();
+    private final List<VirtualAppEvent> events = new ArrayList<>();
+    private final List<Integer> killed = new ArrayList<>();
+    private VirtualProcessManager processManager;
+    private AppLifecycle lifecycle;
+    
+    @Before
+    public void setUp() {
+        processManager = new VirtualProcessManager(new ProcessIdAllocator(16), new EngineMetrics(),
+                new VirtualProcessManager.NativeProcesses() {
+                    @Override
+                    public boolean create(String packageName, int userId) {
+                        return true;
+                    }
+                    
+                    @Override
+                    public void kill(int processId) {
+                        killed.add(processId);
+                    }
+                });
+        AppEventBus eventBus = new AppEventBus(Runnable::run);
+        eventBus.addListener(events::add);
+        lifecycle = new AppLifecycle(registry, processManager, eventBus);
+    }
+    
+    private VirtualApp launch(String packageName, int userId) {
+        VirtualApp app = registry.get(userId, packageName);
+        if (app == null) {
+            app = new VirtualApp(packageName, "/data/app/" + packageName + ".apk", userId);
+            registry.put(app);
+        }
+        registry.markRunning(app, processManager.startProcess(packageName, userId).processId);
+        return registry.get(userId, packageName);
+    }
+    
+    @Test
+    public void stopForOneUserLeavesOtherUsersRunning() {
+        int owner = launch("com.a", 0).getProcessId();
+        int clone = launch("com.a", 10).getProcessId();
+        
+        assertTrue(lifecycle.stop("com.a", 0));
+        assertFalse(registry.get(0, "com.a").isRunning());
+        assertTrue(registry.get(10, "com.a").isRunning());
+        assertEquals(Arrays.asList(owner), killed);
+        assertNull(processManager.getProcess(owner));
+        assertEquals(clone, processManager.getProcess(clone).processId);
+        assertEquals(1, events.size());
+        assertEquals(VirtualAppEvent.Type.STOPPED, events.get(0).getType());
+    }
+    
+    @Test
+    public void stopWithoutUserStopsEveryUser() {
+        launch("com.a", 0);
+        launch("com.a", 10);
+        launch("com.b", 0);
+        
+        assertTrue(lifecycle.stop("com.a"));
+        assertFalse(lifecycle.stop("com.missing"));
+        assertEquals(2, killed.size());
+        assertEquals(2, events.size());
+        assertTrue(registry.get(0, "com.b").isRunning());
+    }
+    
+    @Test
+    public void processDeathMarksTheAppCrashedOnce() {
+        int processId = launch("com.a", 0).getProcessId();
+        
+        assertTrue(lifecycle.onProcessDied(processId));
+        assertFalse(lifecycle.onProcessDied(processId));
+        assertFalse(registry.get(0, "com.a").isRunning());
+        assertEquals(1, events.size());
+        assertEquals(VirtualAppEvent.Type.CRASHED, events.get(0).getType());
+    }
+    
+    @Test
+    public void deathOfAReplacedProcessLeavesTheAppRunning() {
+        int first = launch("com.a", 0).getProcessId();
+        processManager.killProcess(first);
+        VirtualProcessManager.VirtualProcess stale = processManager.startProcess("com.a", 0);
+        int current = launch("com.a", 0).getProcessId();
+        
+        assertTrue(lifecycle.onProcessDied(stale.processId));
+        assertEquals(current, registry.get(0, "com.a").getProcessId());
+        assertTrue(registry.get(0, "com.a").isRunning());
+        assertTrue(events.isEmpty());
+    }
+}
\ No newline at end of file
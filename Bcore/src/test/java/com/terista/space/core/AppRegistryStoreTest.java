@@ -0,0 +1,181 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+public class AppRegistryStoreTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File file;
+    private AppRegistryStore store;
+    
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "virtual/installed_apps.reg");
+        store = new AppRegistryStore(file);
+    }
+    
+    private static VirtualApp app(String packageName, int userId) {
+        return new VirtualApp(packageName, "Label " + packageName, "/data/app/" + packageName + ".apk",
+                userId, 1000L + userId, 7, "1.7");
+    }
+    
+    private static Map<String, VirtualApp> byKey(List<VirtualApp> apps) {
+        Map<String, VirtualApp> map = new HashMap<>();
+        for (VirtualApp app : apps) {
+            map.put(app.getUserId() + ":" + app.getPackageName(), app);
+        }
+        return map;
+    }
+    
+    @Test
+    public void restoresLatestRecordPerApp() {
+        store.appendPut(app("com.a", 0));
+        store.appendPut(app("com.b", 0));
+        store.appendPut(app("com.a", 0).withAppName("Renamed"));
+        store.appendRemove(0, "com.b");
+        
+        Map<String, VirtualApp> restored = byKey(new AppRegistryStore(file).restore());
+        assertEquals(1, restored.size());
+        VirtualApp app = restored.get("0:com.a");
+        assertEquals("Renamed", app.getAppName());
+        assertEquals("/data/app/com.a.apk", app.getApkPath());
+        assertEquals(7, app.getVersionCode());
+        assertEquals("1.7", app.getVersionName());
+        assertEquals(1000L, app.getInstallTime());
+    }
+    
+    @Test
+    public void sharesPackageDataAcrossUsers() {
+        store.appendPut(app("com.a", 0));
+        store.appendPut(app("com.a", 10));
+        
+        List<VirtualApp> restored = new AppRegistryStore(file).restore();
+        assertEquals(2, restored.size());
+        assertSame(restored.get(0).getInstalledPackage(), restored.get(1).getInstalledPackage());
+        assertEquals("Label com.a", restored.get(1).getAppName());
+    }
+    
+    @Test
+    public void replacingAnAppDoesNotCountAsLive() {
+        for (int i = 0; i < 100; i++) {
+            store.appendPut(app("com.a", 0).withAppName("Label " + i));
+        }
+        assertTrue(store.needsCompaction());
+        
+        store.compactIfNeeded(() -> Collections.singletonList(app("com.a", 0)));
+        assertFalse(store.needsCompaction());
+        assertEquals(1, new AppRegistryStore(file).restore().size());
+    }
+    
+    @Test
+    public void compactionKeepsOnlySuppliedApps() {
+        List<VirtualApp> installed = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            VirtualApp app = app("com.app" + i, 0);
+            store.appendPut(app);
+            store.appendPut(app);
+            installed.add(app);
+        }
+        store.appendRemove(0, "com.app0");
+        installed.remove(0);
+        assertTrue(store.needsCompaction());
+        
+        store.compactIfNeeded(() -> installed);
+        Map<String, VirtualApp> restored = byKey(new AppRegistryStore(file).restore());
+        assertEquals(39, restored.size());
+        assertFalse(restored.containsKey("0:com.app0"));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+    
+    @Test
+    public void discardsTornTail() throws IOException {
+        store.appendPut(app("com.a", 0));
+        long intact = file.length();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        }
+        
+        assertEquals(1, new AppRegistryStore(file).restore().size());
+        assertEquals(intact, file.length());
+    }
+    
+    @Test
+    public void ignoresForeignFiles() throws IOException {
+        file.getParentFile().mkdirs();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write("not a registry".getBytes("US-ASCII"));
+        }
+        assertTrue(new AppRegistryStore(file).restore().isEmpty());
+    }
+    
+    @Test
+    public void roundTripsStringsLongerThanAShort() {
+        char[] label = new char[40000];
+        Arrays.fill(label, 'x');
+        store.appendPut(new VirtualApp("com.a", new String(label), "/data/app/com.a.apk", 0, 1L, 1, null));
+        
+        VirtualApp restored = new AppRegistryStore(file).restore().get(0);
+        assertEquals(40000, restored.getAppName().length());
+        assertEquals("/data/app/com.a.apk", restored.getApkPath());
+        assertNull(restored.getVersionName());
+    }
+    
+    @Test
+    public void migratesShortLengthJournal() throws IOException {
+        file.getParentFile().mkdirs();
+        // A schema 1 PUT record: 16-bit string lengths
+        ByteBuffer record = ByteBuffer.allocate(256)
+                .put((byte) 1).putInt(0)
+                .put(shortString("com.a")).put(shortString("/data/app/com.a.apk")).put(shortString("A"))
+                .putInt(3).put(shortString("1.3")).putLong(5L);
+        byte[] payload = record.array();
+        int length = record.position();
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, length);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(ByteBuffer.allocate(8).putInt(0x54534152).putShort((short) 1).array());
+            out.write(ByteBuffer.allocate(8).putInt(length).putInt((int) crc.getValue()).array());
+            out.write(payload, 0, length);
+        }
+        
+        VirtualApp restored = new AppRegistryStore(file).restore().get(0);
+        assertEquals("/data/app/com.a.apk", restored.getApkPath());
+        assertEquals(3, restored.getVersionCode());
+        
+        AppRegistryStore reopened = new AppRegistryStore(file);
+        reopened.appendPut(app("com.b", 0));
+        Map<String, VirtualApp> apps = byKey(new AppRegistryStore(file).restore());
+        assertEquals("A", apps.get("0:com.a").getAppName());
+        assertEquals("1.3", apps.get("0:com.a").getVersionName());
+        assertTrue(apps.containsKey("0:com.b"));
+    }
+    
+    private static byte[] shortString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(2 + bytes.length).putShort((short) bytes.length).put(bytes).array();
+    }
+}
\ No newline at end of file
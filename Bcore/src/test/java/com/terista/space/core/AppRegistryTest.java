@@ -0,0 +1,104 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class AppRegistryTest {
+    
+    private final AppRegistry registry = new AppRegistry();
+    
+    private static VirtualApp app(String packageName, int userId) {
+        return new VirtualApp(packageName, "/data/app/" + packageName + ".apk", userId);
+    }
+    
+    @Test
+    public void putAllReportsReplacedAppsInBatchOrder() {
+        VirtualApp old = app("com.b", 0);
+        registry.put(old);
+        
+        List<VirtualApp> replaced = registry.putAll(Arrays.asList(app("com.a", 0), app("com.b", 0), app("com.c", 10)));
+        assertEquals(3, replaced.size());
+        assertNull(replaced.get(0));
+        assertSame(old, replaced.get(1));
+        assertNull(replaced.get(2));
+        assertEquals(3, registry.size());
+    }
+    
+    @Test
+    public void userListsStaySortedAcrossIncrementalWrites() {
+        registry.putAll(Arrays.asList(app("com.c", 0), app("com.a", 0), app("com.z", 10)));
+        List<VirtualApp> otherUser = registry.getByUser(10);
+        registry.put(app("com.b", 0));
+        
+        List<String> names = new ArrayList<>();
+        for (VirtualApp app : registry.getByUser(0)) {
+            names.add(app.getPackageName());
+        }
+        assertEquals(Arrays.asList("com.a", "com.b", "com.c"), names);
+        // Untouched users keep their list
+        assertSame(otherUser, registry.getByUser(10));
+        
+        registry.remove(10, "com.z");
+        assertTrue(registry.getByUser(10).isEmpty());
+        assertFalse(registry.getUserIds().contains(10));
+    }
+    
+    @Test
+    public void pagesByPackageName() {
+        List<VirtualApp> apps = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            apps.add(app("com.app" + i, 0));
+        }
+        registry.putAll(apps);
+        
+        List<VirtualApp> page = registry.getByUser(0, "com.app3", 4);
+        assertEquals(4, page.size());
+        assertEquals("com.app4", page.get(0).getPackageName());
+        assertEquals("com.app7", page.get(3).getPackageName());
+    }
+    
+    @Test
+    public void runningIndexFollowsReplaceAndRemove() {
+        VirtualApp app = app("com.a", 0);
+        registry.put(app);
+        assertTrue(registry.markRunning(app, 42));
+        
+        VirtualApp update = app("com.a", 0);
+        registry.put(update);
+        assertTrue(update.isRunning());
+        assertEquals(42, update.getProcessId());
+        assertSame(update, registry.getRunning().get(0));
+        
+        registry.remove(0, "com.a");
+        assertTrue(registry.getRunning().isEmpty());
+    }
+    
+    @Test
+    public void markRunningIgnoresUnregisteredApps() {
+        assertFalse(registry.markRunning(app("com.a", 0), 42));
+        assertTrue(registry.getRunning().isEmpty());
+    }
+    
+    @Test
+    public void markStoppedUpdatesRegisteredCopy() {
+        VirtualApp app = app("com.a", 0);
+        registry.put(app);
+        VirtualApp stale = app("com.a", 0);
+        registry.markRunning(stale, 42);
+        assertTrue(app.isRunning());
+        
+        registry.markStopped(stale);
+        assertFalse(app.isRunning());
+        assertEquals(-1, app.getProcessId());
+        assertTrue(registry.getRunning().isEmpty());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,30 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+public class PackageChangeCounterTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void separateMappingsSeeEachOthersChanges() {
+        // One mapping per process in practice
+        File file = new File(folder.getRoot(), "virtual/package_changes");
+        PackageChangeCounter engine = new PackageChangeCounter(file);
+        PackageChangeCounter app = new PackageChangeCounter(file);
+        long start = app.get();
+        engine.increment();
+        engine.increment();
+        assertEquals(start + 2, app.get());
+        
+        // Mapping an existing counter keeps its value
+        assertEquals(start + 2, new PackageChangeCounter(file).get());
+    }
+}
\ No newline at end of file
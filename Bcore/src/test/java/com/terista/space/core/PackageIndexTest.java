@@ -0,0 +1,116 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.pm.PackageInfo;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class PackageIndexTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private PackageIndex index;
+    private File apk;
+    
+    @Before
+    public void setUp() throws IOException {
+        index = new PackageIndex(new File(folder.getRoot(), "package_index"));
+        ApkFixtures.Spec spec = new ApkFixtures.Spec().label("My App");
+        spec.packageName = "com.example.app";
+        spec.versionCode = 3;
+        spec.applicationClass = ".App";
+        spec.activities = Arrays.asList(".MainActivity", ".SettingsActivity");
+        spec.services = Collections.singletonList(".SyncService");
+        spec.receivers = Collections.singletonList(".BootReceiver");
+        spec.providers = Collections.singletonList(".DataProvider");
+        spec.requestedPermissions = Collections.singletonList("android.permission.INTERNET");
+        spec.permissions = Collections.singletonList("com.example.app.permission.SYNC");
+        apk = ApkFixtures.write(folder.getRoot(), "base.apk", spec);
+    }
+    
+    @Test
+    public void roundTripsManifest() throws IOException {
+        ApkManifest parsed = ApkManifestParser.parse(apk.getPath());
+        assertTrue(index.write(apk.getPath(), parsed));
+        
+        ApkManifest indexed = index.read(apk.getPath());
+        assertEquals(parsed.getPackageName(), indexed.getPackageName());
+        assertEquals(parsed.getVersionCode(), indexed.getVersionCode());
+        assertEquals(parsed.getVersionName(), indexed.getVersionName());
+        assertEquals(parsed.getLabel(), indexed.getLabel());
+        assertEquals(parsed.getApplicationClassName(), indexed.getApplicationClassName());
+        assertEquals(parsed.getActivities(), indexed.getActivities());
+        assertEquals(parsed.getServices(), indexed.getServices());
+        assertEquals(parsed.getReceivers(), indexed.getReceivers());
+        assertEquals(parsed.getProviders(), indexed.getProviders());
+        assertEquals(parsed.getRequestedPermissions(), indexed.getRequestedPermissions());
+        assertEquals(parsed.getPermissions(), indexed.getPermissions());
+    }
+    
+    @Test
+    public void roundTripsSigningCertificates() throws IOException {
+        ApkManifest parsed = ApkManifestParser.parse(apk.getPath());
+        parsed.addSignature(new byte[] {1, 2, 3});
+        parsed.addSignature(new byte[] {4, 5});
+        parsed.setSigningInfo(new byte[] {6, 7, 8, 9});
+        index.write(apk.getPath(), parsed);
+        
+        ApkManifest indexed = index.read(apk.getPath());
+        assertEquals(2, indexed.getSignatures().size());
+        assertArrayEquals(new byte[] {1, 2, 3}, indexed.getSignatures().get(0));
+        assertArrayEquals(new byte[] {4, 5}, indexed.getSignatures().get(1));
+        assertArrayEquals(new byte[] {6, 7, 8, 9}, indexed.getSigningInfo());
+        assertEquals(2, PackageIndex.buildPackageInfo(indexed, apk.getPath(), null).signatures.length);
+    }
+    
+    @Test
+    public void treatsChangedApkAsMissing() throws IOException {
+        index.write(apk.getPath(), ApkManifestParser.parse(apk.getPath()));
+        try (FileOutputStream out = new FileOutputStream(apk, true)) {
+            out.write(new byte[16]);
+        }
+        assertNull(index.read(apk.getPath()));
+    }
+    
+    @Test
+    public void removesEntries() throws IOException {
+        index.write(apk.getPath(), ApkManifestParser.parse(apk.getPath()));
+        index.remove(apk.getPath());
+        assertNull(index.read(apk.getPath()));
+    }
+    
+    @Test
+    public void buildsPackageInfoFromIndex() throws IOException {
+        index.write(apk.getPath(), ApkManifestParser.parse(apk.getPath()));
+        PackageInfo info = PackageIndex.buildPackageInfo(index.read(apk.getPath()), apk.getPath(), "Fallback");
+        
+        assertEquals("com.example.app", info.packageName);
+        assertEquals(3, info.versionCode);
+        assertEquals("com.example.app.App", info.applicationInfo.className);
+        assertEquals("My App", info.applicationInfo.nonLocalizedLabel);
+        assertEquals(apk.getPath(), info.applicationInfo.sourceDir);
+        assertEquals(2, info.activities.length);
+        assertEquals("com.example.app.MainActivity", info.activities[0].name);
+        assertSame(info.applicationInfo, info.activities[0].applicationInfo);
+        assertEquals("com.example.app.SyncService", info.services[0].name);
+        assertEquals("com.example.app.BootReceiver", info.receivers[0].name);
+        assertEquals("com.example.app.DataProvider", info.providers[0].name);
+        assertArrayEquals(new String[] {"android.permission.INTERNET"}, info.requestedPermissions);
+        assertEquals("com.example.app.permission.SYNC", info.permissions[0].name);
+    }
+}
\ No newline at end of file
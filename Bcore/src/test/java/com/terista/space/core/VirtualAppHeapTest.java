@@ -0,0 +1,90 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.content.pm.PackageInfo;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Retained heap of installed apps, asserted structurally rather than by
+ * measuring the heap: per-user records hold no component metadata, users
+ * share one package record, and only a bounded cache holds PackageInfos.
+ */
+public class VirtualAppHeapTest {
+    
+    private static final int PACKAGES = 500;
+    private static final int USERS = 4;
+    private static final int APPS = PACKAGES * USERS;
+    
+    // Field types an installed app record may hold; anything else would grow with the APK
+    private static final List<Class<?>> SUMMARY_FIELD_TYPES = Arrays.asList(
+            String.class, InstalledPackage.class, InstalledPackage.Decoder.class);
+    
+    private static AppRegistry summaries() {
+        AppRegistry registry = new AppRegistry();
+        List<VirtualApp> apps = new ArrayList<>(APPS);
+        for (int i = 0; i < PACKAGES; i++) {
+            String packageName = "com.example.app" + i;
+            VirtualApp app = new VirtualApp(new InstalledPackage(packageName, "Example App " + i,
+                    "/data/app/" + packageName + "/base.apk", i, "1.0." + i), 0, 1000L);
+            apps.add(app);
+            for (int userId = 1; userId < USERS; userId++) {
+                apps.add(app.forUser(userId));
+            }
+        }
+        registry.putAll(apps);
+        return registry;
+    }
+    
+    @Test
+    public void summaryRecordsHoldNoComponentMetadata() {
+        for (Class<?> type : Arrays.asList(VirtualApp.class, InstalledPackage.class)) {
+            for (Field field : type.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                assertTrue(type.getSimpleName() + "." + field.getName() + " holds a " + field.getType().getName(),
+                        SUMMARY_FIELD_TYPES.contains(field.getType()));
+            }
+        }
+    }
+    
+    @Test
+    public void usersSharePackageData() {
+        AppRegistry registry = summaries();
+        assertEquals(APPS, registry.size());
+        
+        Map<InstalledPackage, Boolean> packages = new IdentityHashMap<>();
+        for (VirtualApp app : registry.getAll()) {
+            packages.put(app.getInstalledPackage(), Boolean.TRUE);
+        }
+        assertEquals(PACKAGES, packages.size());
+        
+        // Installing the same build again reuses the registered record
+        VirtualApp installed = registry.get(0, "com.example.app7");
+        InstalledPackage again = new InstalledPackage("com.example.app7", "Example App 7",
+                "/data/app/com.example.app7/base.apk", 7, "1.0.7");
+        assertSame(installed.getInstalledPackage(), registry.intern(again));
+    }
+    
+    @Test
+    public void metadataCacheIsBounded() {
+        PackageMetadataCache cache = new PackageMetadataCache(16);
+        for (int i = 0; i < PACKAGES; i++) {
+            cache.get("/data/app/app" + i + ".apk", apkPath -> new PackageInfo());
+            assertTrue(cache.size() <= 16);
+        }
+        assertEquals(16, cache.size());
+    }
+}
\ No newline at end of file
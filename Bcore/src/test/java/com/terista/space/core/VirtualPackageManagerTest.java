@@ -0,0 +1,98 @@
+package com.terista.space.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class VirtualPackageManagerTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private static final int[] GIDS = {3003};
+    
+    private VirtualApp app;
+    private PackageInfo indexed;
+    
+    @Before
+    public void setUp() throws IOException {
+        ApkFixtures.Spec spec = new ApkFixtures.Spec().label("My App");
+        spec.packageName = "com.example.app";
+        spec.versionCode = 3;
+        spec.activities = Collections.singletonList(".MainActivity");
+        spec.services = Collections.singletonList(".SyncService");
+        spec.receivers = Collections.singletonList(".BootReceiver");
+        spec.providers = Collections.singletonList(".DataProvider");
+        spec.requestedPermissions = Collections.singletonList("android.permission.INTERNET");
+        spec.permissions = Collections.singletonList("com.example.app.permission.SYNC");
+        File apk = ApkFixtures.write(folder.getRoot(), "base.apk", spec);
+        
+        ApkManifest manifest = ApkManifestParser.parse(apk.getPath());
+        manifest.addSignature(new byte[] {1, 2, 3});
+        indexed = PackageIndex.buildPackageInfo(manifest, apk.getPath(), "My App");
+        app = new VirtualApp("com.example.app", "My App", apk.getPath(), 0, 1000L, 3, "1.3");
+    }
+    
+    @Test
+    public void leavesOutWhatFlagsDoNotAskFor() {
+        PackageInfo info = VirtualPackageManager.buildPackageInfo(app, indexed, 0, GIDS);
+        assertEquals("com.example.app", info.packageName);
+        assertEquals(3, info.versionCode);
+        assertEquals("1.3", info.versionName);
+        assertEquals(1000L, info.firstInstallTime);
+        assertSame(indexed.applicationInfo, info.applicationInfo);
+        for (Object part : Arrays.asList(info.activities, info.receivers, info.services, info.providers,
+                info.permissions, info.requestedPermissions, info.signatures, info.gids)) {
+            assertNull(part);
+        }
+    }
+    
+    @Test
+    public void honoursEachFlag() {
+        assertSame(indexed.activities, build(PackageManager.GET_ACTIVITIES).activities);
+        assertSame(indexed.receivers, build(PackageManager.GET_RECEIVERS).receivers);
+        assertSame(indexed.services, build(PackageManager.GET_SERVICES).services);
+        assertSame(indexed.providers, build(PackageManager.GET_PROVIDERS).providers);
+        assertSame(indexed.signatures, build(PackageManager.GET_SIGNATURES).signatures);
+        assertArrayEquals(GIDS, build(PackageManager.GET_GIDS).gids);
+        
+        PackageInfo permissions = build(PackageManager.GET_PERMISSIONS);
+        assertEquals("com.example.app.permission.SYNC", permissions.permissions[0].name);
+        assertArrayEquals(new String[] {"android.permission.INTERNET"}, permissions.requestedPermissions);
+        assertNull(permissions.activities);
+        
+        // One flag does not bring in the others
+        PackageInfo services = build(PackageManager.GET_SERVICES);
+        assertNull(services.activities);
+        assertNull(services.receivers);
+        assertNull(services.permissions);
+    }
+    
+    @Test
+    public void fallsBackToRegistryWithoutIndexEntry() {
+        PackageInfo info = VirtualPackageManager.buildPackageInfo(app, null, PackageManager.GET_ACTIVITIES, null);
+        assertEquals("com.example.app", info.packageName);
+        assertEquals(3, info.versionCode);
+        assertEquals("My App", info.applicationInfo.nonLocalizedLabel);
+        assertEquals(app.getApkPath(), info.applicationInfo.sourceDir);
+        assertNull(info.activities);
+    }
+    
+    private PackageInfo build(int flags) {
+        return VirtualPackageManager.buildPackageInfo(app, indexed, flags, GIDS);
+    }
+}
\ No newline at end of file
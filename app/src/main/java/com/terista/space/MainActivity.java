@@ -7,10 +7,10 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.terista.space.core.AppEventBus;
 import com.terista.space.core.VirtualEngine;
 import com.terista.space.core.VirtualApp;
-import java.util.ArrayList;
-import java.util.List;
+import com.terista.space.core.VirtualAppEvent;
 
 /**
  * Main Activity for TeristaSpace - Virtual App Manager
@@ -23,7 +23,9 @@ public class MainActivity extends AppCompatActivity {
     private RecyclerView recyclerView;
     private VirtualAppAdapter adapter;
     private FloatingActionButton fabAddApp;
-    private List<VirtualApp> virtualApps = new ArrayList<>();
+    private final VirtualAppEvent.Listener appEventListener = this::onAppEvent;
+    // Sequence number of the last change event reflected in the list
+    private long lastEventSequence = -1;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -36,14 +38,18 @@ public class MainActivity extends AppCompatActivity {
         TeristaApplication app = (TeristaApplication) getApplication();
         virtualEngine = app.getVirtualEngine();
         
-        if (!virtualEngine.isInitialized()) {
-            Toast.makeText(this, "Virtual Engine not initialized", Toast.LENGTH_LONG).show();
-            finish();
-            return;
-        }
-        
         initializeUI();
-        loadVirtualApps();
+        
+        // Render immediately; engine actions are enabled once initialization finishes
+        virtualEngine.whenReady((ready, error) -> {
+            if (isFinishing() || isDestroyed()) return;
+            if (Boolean.TRUE.equals(ready)) {
+                loadVirtualApps(); // Pick up apps restored during startup
+            } else {
+                Toast.makeText(this, "Virtual Engine not initialized", Toast.LENGTH_LONG).show();
+                finish();
+            }
+        });
     }
     
     private void initializeUI() {
@@ -52,11 +58,12 @@ public class MainActivity extends AppCompatActivity {
         
         // Setup RecyclerView
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        adapter = new VirtualAppAdapter(virtualApps, this::onAppClick);
+        adapter = new VirtualAppAdapter(this::onAppClick);
         recyclerView.setAdapter(adapter);
         
         // Setup FAB
         fabAddApp.setOnClickListener(v -> {
+            if (!checkEngineReady()) return;
             // Open app installation dialog/activity
             Toast.makeText(this, "Add Virtual App", Toast.LENGTH_SHORT).show();
             // TODO: Implement app installation UI
@@ -65,43 +72,74 @@ public class MainActivity extends AppCompatActivity {
     
     private void loadVirtualApps() {
         try {
-            List<VirtualApp> apps = virtualEngine.getInstalledApps();
-            virtualApps.clear();
-            virtualApps.addAll(apps);
-            adapter.notifyDataSetChanged();
+            AppEventBus.Snapshot snapshot = virtualEngine.getInstalledAppsSnapshot();
+            adapter.submitList(snapshot.apps);
+            lastEventSequence = snapshot.sequence;
             
-            Log.i(TAG, "Loaded " + apps.size() + " virtual apps");
+            Log.i(TAG, "Loaded " + snapshot.apps.size() + " virtual apps at event " + snapshot.sequence);
         } catch (Exception e) {
             Log.e(TAG, "Failed to load virtual apps", e);
             Toast.makeText(this, "Failed to load virtual apps", Toast.LENGTH_SHORT).show();
         }
     }
     
+    private void onAppEvent(VirtualAppEvent event) {
+        if (event.getSequence() <= lastEventSequence) {
+            return; // Already reflected in the last snapshot
+        }
+        if (event.getSequence() != lastEventSequence + 1) {
+            // Missed events; diff against a fresh snapshot instead
+            loadVirtualApps();
+            return;
+        }
+        adapter.applyEvent(event);
+        lastEventSequence = event.getSequence();
+    }
+    
     private void onAppClick(VirtualApp app) {
         Log.i(TAG, "App clicked: " + app.getPackageName());
+        if (!checkEngineReady()) return;
         
         if (app.isRunning()) {
-            // Stop app
-            if (virtualEngine.stopVirtualApp(app.getPackageName())) {
-                Toast.makeText(this, "App stopped: " + app.getAppName(), Toast.LENGTH_SHORT).show();
-                loadVirtualApps(); // Refresh list
-            } else {
-                Toast.makeText(this, "Failed to stop app", Toast.LENGTH_SHORT).show();
-            }
+            // Stop app off the main thread
+            virtualEngine.stopVirtualApp(app.getPackageName(), app.getUserId(), (stopped, error) -> {
+                if (isFinishing() || isDestroyed()) return;
+                if (Boolean.TRUE.equals(stopped)) {
+                    Toast.makeText(this, "App stopped: " + app.getAppName(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "Failed to stop app", Toast.LENGTH_SHORT).show();
+                }
+            });
         } else {
-            // Launch app
-            if (virtualEngine.launchVirtualApp(app.getPackageName(), app.getUserId())) {
-                Toast.makeText(this, "App launched: " + app.getAppName(), Toast.LENGTH_SHORT).show();
-                loadVirtualApps(); // Refresh list
-            } else {
-                Toast.makeText(this, "Failed to launch app", Toast.LENGTH_SHORT).show();
-            }
+            // Launch app off the main thread
+            virtualEngine.launchVirtualApp(app.getPackageName(), app.getUserId(), (launched, error) -> {
+                if (isFinishing() || isDestroyed()) return;
+                if (Boolean.TRUE.equals(launched)) {
+                    Toast.makeText(this, "App launched: " + app.getAppName(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(this, "Failed to launch app", Toast.LENGTH_SHORT).show();
+                }
+            });
         }
     }
     
+    private boolean checkEngineReady() {
+        if (virtualEngine.isInitialized()) return true;
+        Toast.makeText(this, "Virtual Engine is starting, please wait", Toast.LENGTH_SHORT).show();
+        return false;
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Subscribe before taking the snapshot so no event falls in between
+        virtualEngine.addAppEventListener(appEventListener);
+        loadVirtualApps();
+    }
+    
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadVirtualApps(); // Refresh when returning to activity
+    protected void onStop() {
+        super.onStop();
+        virtualEngine.removeAppEventListener(appEventListener);
     }
 }
\ No newline at end of file
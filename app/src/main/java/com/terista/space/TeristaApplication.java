@@ -1,8 +1,19 @@
 package com.terista.space;
 
+import android.app.ActivityManager;
 import android.app.Application;
+import android.os.Build;
+import android.os.Process;
 import android.util.Log;
 import com.terista.space.core.VirtualEngine;
+import com.terista.space.fs.BlobApkStager;
+import com.terista.space.fs.NativeFileCopier;
+import com.terista.space.fs.NativeMountTable;
+import com.terista.space.fs.VirtualFileSystem;
+import com.terista.space.sandbox.VirtualSandbox;
+
+import java.io.File;
+import java.util.List;
 
 /**
  * TeristaSpace Application class - initializes the virtual engine
@@ -10,6 +21,8 @@ import com.terista.space.core.VirtualEngine;
 public class TeristaApplication extends Application {
     
     private static final String TAG = "TeristaApplication";
+    /** How often app disk usage is re-measured to catch writes made through native redirection */
+    private static final long DISK_USAGE_RESCAN_MILLIS = 15 * 60 * 1000L;
     private VirtualEngine virtualEngine;
     
     @Override
@@ -18,14 +31,27 @@ public class TeristaApplication extends Application {
         
         Log.i(TAG, "Initializing TeristaSpace Application...");
         
-        // Initialize virtual engine
+        // Core stage runs here; native and hook setup continue in the background
         virtualEngine = VirtualEngine.getInstance();
-        
-        if (!virtualEngine.initialize(this)) {
-            Log.e(TAG, "Failed to initialize Virtual Engine");
-        } else {
-            Log.i(TAG, "Virtual Engine initialized successfully");
-        }
+        // Each launched process gets a sandbox for the package it was bound to
+        virtualEngine.setProcessInitializer(process ->
+                new VirtualSandbox(this, process.packageName).initializeSandbox());
+        // Installs share identical APKs through hard links into one store
+        virtualEngine.setApkStager(new BlobApkStager(new File(getFilesDir(), "virtual/staged")));
+        virtualEngine.initializeAsync(this).thenAccept(ready -> {
+            if (ready) {
+                Log.i(TAG, "Virtual Engine initialized successfully");
+                // Installs and clones copy through reflink/copy_file_range once the library is loaded
+                NativeFileCopier.install();
+                // Virtual app processes attach to this table to have their paths redirected
+                if (isEngineProcess()) {
+                    NativeMountTable.create(NativeMountTable.tableFile(this), NativeMountTable.DEFAULT_CAPACITY);
+                    VirtualFileSystem.getDiskUsage().startPeriodicRescan(DISK_USAGE_RESCAN_MILLIS);
+                }
+            } else {
+                Log.e(TAG, "Failed to initialize Virtual Engine");
+            }
+        });
     }
     
     @Override
@@ -34,6 +60,7 @@ public class TeristaApplication extends Application {
         
         if (virtualEngine != null) {
             virtualEngine.shutdown();
+            VirtualFileSystem.getDiskUsage().shutdown();
             Log.i(TAG, "Virtual Engine shutdown completed");
         }
     }
@@ -41,4 +68,27 @@ public class TeristaApplication extends Application {
     public VirtualEngine getVirtualEngine() {
         return virtualEngine;
     }
+    
+    /**
+     * @return true in the main process, false in the :virtual app processes
+     */
+    private boolean isEngineProcess() {
+        String processName = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            processName = Application.getProcessName();
+        } else {
+            ActivityManager activityManager = (ActivityManager) getSystemService(ACTIVITY_SERVICE);
+            List<ActivityManager.RunningAppProcessInfo> processes =
+                    activityManager != null ? activityManager.getRunningAppProcesses() : null;
+            if (processes != null) {
+                for (ActivityManager.RunningAppProcessInfo info : processes) {
+                    if (info.pid == Process.myPid()) {
+                        processName = info.processName;
+                        break;
+                    }
+                }
+            }
+        }
+        return processName == null || processName.equals(getPackageName());
+    }
 }
\ No newline at end of file
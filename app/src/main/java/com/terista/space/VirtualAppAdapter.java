@@ -5,24 +5,98 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 import com.terista.space.core.VirtualApp;
+import com.terista.space.core.VirtualAppEvent;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 /**
- * RecyclerView adapter for displaying virtual apps
+ * RecyclerView adapter for displaying virtual apps.
+ *
+ * Rows capture an app's display state when they are added, because
+ * {@link VirtualApp} run state is mutable and would otherwise compare equal to
+ * itself. Single events are applied as item-level notifications; full lists go
+ * through {@link DiffUtil}.
  */
 public class VirtualAppAdapter extends RecyclerView.Adapter<VirtualAppAdapter.ViewHolder> {
     
-    private final List<VirtualApp> apps;
+    private final List<Row> rows = new ArrayList<>();
     private final Consumer<VirtualApp> onItemClick;
     
-    public VirtualAppAdapter(List<VirtualApp> apps, Consumer<VirtualApp> onItemClick) {
-        this.apps = apps;
+    public VirtualAppAdapter(Consumer<VirtualApp> onItemClick) {
         this.onItemClick = onItemClick;
     }
     
+    /**
+     * Replace the displayed apps, dispatching only the changed rows
+     * @param apps New app list
+     */
+    public void submitList(List<VirtualApp> apps) {
+        List<Row> newRows = new ArrayList<>(apps.size());
+        for (VirtualApp app : apps) {
+            newRows.add(new Row(app));
+        }
+        
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() { return rows.size(); }
+            
+            @Override
+            public int getNewListSize() { return newRows.size(); }
+            
+            @Override
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return rows.get(oldPosition).isSameApp(newRows.get(newPosition));
+            }
+            
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return rows.get(oldPosition).hasSameContents(newRows.get(newPosition));
+            }
+        });
+        
+        rows.clear();
+        rows.addAll(newRows);
+        diff.dispatchUpdatesTo(this);
+    }
+    
+    /**
+     * Apply one change event as an item insert, change or removal. Safe to apply twice.
+     * @param event Event from the virtual engine
+     */
+    public void applyEvent(VirtualAppEvent event) {
+        Row row = new Row(event.getApp());
+        int position = indexOf(row);
+        
+        if (event.getType() == VirtualAppEvent.Type.UNINSTALLED) {
+            if (position >= 0) {
+                rows.remove(position);
+                notifyItemRemoved(position);
+            }
+        } else if (position >= 0) {
+            if (!rows.get(position).hasSameContents(row)) {
+                rows.set(position, row);
+                notifyItemChanged(position);
+            }
+        } else if (event.getType() == VirtualAppEvent.Type.INSTALLED || event.getType() == VirtualAppEvent.Type.UPDATED) {
+            rows.add(row);
+            notifyItemInserted(rows.size() - 1);
+        }
+    }
+    
+    private int indexOf(Row row) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i).isSameApp(row)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
     @NonNull
     @Override
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -33,15 +107,16 @@ public class VirtualAppAdapter extends RecyclerView.Adapter<VirtualAppAdapter.Vi
     
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        VirtualApp app = apps.get(position);
+        Row row = rows.get(position);
+        VirtualApp app = row.app;
         
-        holder.appName.setText(app.getAppName() != null ? app.getAppName() : app.getPackageName());
+        holder.appName.setText(row.appName != null ? row.appName : app.getPackageName());
         holder.packageName.setText(app.getPackageName());
-        holder.status.setText(app.isRunning() ? "Running" : "Stopped");
+        holder.status.setText(row.running ? "Running" : "Stopped");
         holder.userId.setText("User: " + app.getUserId());
         
         // Set status color
-        if (app.isRunning()) {
+        if (row.running) {
             holder.status.setTextColor(holder.itemView.getContext().getColor(android.R.color.holo_green_dark));
         } else {
             holder.status.setTextColor(holder.itemView.getContext().getColor(android.R.color.holo_red_dark));
@@ -57,7 +132,33 @@ public class VirtualAppAdapter extends RecyclerView.Adapter<VirtualAppAdapter.Vi
     
     @Override
     public int getItemCount() {
-        return apps.size();
+        return rows.size();
+    }
+    
+    /**
+     * Display state of one app, captured when the row was created
+     */
+    private static final class Row {
+        final VirtualApp app;
+        final String appName;
+        final boolean running;
+        
+        Row(VirtualApp app) {
+            this.app = app;
+            this.appName = app.getAppName();
+            this.running = app.isRunning();
+        }
+        
+        boolean isSameApp(Row other) {
+            return app.getUserId() == other.app.getUserId()
+                    && app.getPackageName().equals(other.app.getPackageName());
+        }
+        
+        boolean hasSameContents(Row other) {
+            return running == other.running
+                    && Objects.equals(appName, other.appName)
+                    && app.getVersionCode() == other.app.getVersionCode();
+        }
     }
     
     public static class ViewHolder extends RecyclerView.ViewHolder {
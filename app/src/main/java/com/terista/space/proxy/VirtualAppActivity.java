@@ -5,6 +5,11 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
 
+import com.terista.space.core.VirtualEngine;
+import com.terista.space.fs.NativeMountTable;
+import com.terista.space.services.NativeServiceDispatcher;
+import com.terista.space.services.VirtualSystemServices;
+
 /**
  * Activity proxy for virtual apps - handles virtual app activity launches
  */
@@ -12,6 +17,8 @@ public class VirtualAppActivity extends Activity {
     
     private static final String TAG = "VirtualAppActivity";
     
+    public static final String EXTRA_USER_ID = "virtual_user_id";
+    
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -25,6 +32,22 @@ public class VirtualAppActivity extends Activity {
             
             Log.i(TAG, "Proxying to virtual app: " + targetPackage + "/" + targetActivity);
             
+            // Redirect this process's file paths before any of the app's code runs
+            if (targetPackage != null) {
+                int userId = intent.getIntExtra(EXTRA_USER_ID, 0);
+                if (!NativeMountTable.attachWhenReady(NativeMountTable.tableFile(this), userId, targetPackage)) {
+                    Log.w(TAG, "Mount table not ready, retrying attach for " + targetPackage);
+                }
+                
+                // Answer the app's calls to virtualized services in-process once the binder hook is in
+                VirtualEngine.getInstance().getReadyFuture().thenAccept(ready -> {
+                    if (ready) {
+                        VirtualSystemServices.initializeVirtualServices(getApplicationContext());
+                        NativeServiceDispatcher.install(userId, targetPackage);
+                    }
+                });
+            }
+            
             // TODO: Implement actual virtual app activity launching
             // This would involve loading the virtual app's code and creating its activity
         }
@@ -0,0 +1,93 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.ApkFixtures;
+import com.terista.space.core.ApkManifest;
+import com.terista.space.core.ApkManifestParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * {@link ApkManifestParser} on an APK with a resource label, against the
+ * floor of what PackageManager.getPackageArchiveInfo does for the same
+ * answer: open the archive through ZipFile and inflate the manifest and the
+ * resource table. PackageManager itself needs a device; it also builds the
+ * AssetManager and parses every element on top of this baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApkManifestParserBenchmark {
+    
+    /** Size of the dex filler ahead of the manifest */
+    @Param({"65536", "8388608"})
+    public int fillerSize;
+    
+    private File dir;
+    private String apkPath;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("apk-bench").toFile();
+        ApkFixtures.Spec spec = new ApkFixtures.Spec()
+                .resourceLabel("fr", "Mon Appli")
+                .resourceLabel("", "My App");
+        spec.fillerSize = fillerSize;
+        spec.applicationClass = ".App";
+        spec.activities = Arrays.asList(".MainActivity", ".SettingsActivity", ".ShareActivity");
+        spec.services = Arrays.asList(".SyncService");
+        spec.providers = Arrays.asList(".DataProvider");
+        apkPath = ApkFixtures.write(dir, "bench.apk", spec).getPath();
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        new File(apkPath).delete();
+        dir.delete();
+    }
+    
+    @Benchmark
+    public ApkManifest parser() throws IOException {
+        return ApkManifestParser.parse(apkPath);
+    }
+    
+    @Benchmark
+    public long zipFileBaseline() throws IOException {
+        long total = 0;
+        try (ZipFile zip = new ZipFile(apkPath)) {
+            total += inflate(zip, "AndroidManifest.xml");
+            total += inflate(zip, "resources.arsc");
+        }
+        return total;
+    }
+    
+    private static long inflate(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        try (InputStream in = zip.getInputStream(entry)) {
+            return in.readAllBytes().length;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.AppEventBus;
+import com.terista.space.core.AppLifecycle;
+import com.terista.space.core.AppRegistry;
+import com.terista.space.core.EngineMetrics;
+import com.terista.space.core.ProcessIdAllocator;
+import com.terista.space.core.VirtualApp;
+import com.terista.space.core.VirtualProcessManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registry and process table lookups behind VirtualEngine's stop and
+ * process-death paths, through {@link AppLifecycle}. Each operation starts a
+ * process for one installed app and then stops it, so the table stays at its
+ * steady size; the native side is a no-op and events are delivered inline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppLifecycleBenchmark {
+    
+    private static final int CAPACITY = 1024;
+    private static final int USERS = 4;
+    
+    @Param({"50", "500"})
+    public int appsPerUser;
+    
+    private AppRegistry registry;
+    private VirtualProcessManager processManager;
+    private AppLifecycle lifecycle;
+    private String[] packageNames;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        registry = new AppRegistry();
+        processManager = new VirtualProcessManager(new ProcessIdAllocator(CAPACITY), new EngineMetrics(),
+                new VirtualProcessManager.NativeProcesses() {
+                    @Override
+                    public boolean create(String packageName, int userId) {
+                        return true;
+                    }
+                    
+                    @Override
+                    public void kill(int processId) {
+                    }
+                });
+        AppEventBus eventBus = new AppEventBus(Runnable::run);
+        eventBus.addListener(event -> { });
+        lifecycle = new AppLifecycle(registry, processManager, eventBus);
+        
+        packageNames = new String[appsPerUser];
+        List<VirtualApp> apps = new ArrayList<>();
+        for (int i = 0; i < appsPerUser; i++) {
+            packageNames[i] = "com.example.app" + i;
+            for (int userId = 0; userId < USERS; userId++) {
+                apps.add(new VirtualApp(packageNames[i], "/data/app/app" + i + ".apk", userId));
+            }
+        }
+        registry.putAll(apps);
+    }
+    
+    private int launch(String packageName, int userId) {
+        VirtualProcessManager.VirtualProcess process = processManager.startProcess(packageName, userId);
+        registry.markRunning(registry.get(userId, packageName), process.processId);
+        return process.processId;
+    }
+    
+    private String nextPackage() {
+        cursor = (cursor + 1) % packageNames.length;
+        return packageNames[cursor];
+    }
+    
+    @Benchmark
+    public boolean stopForUser() {
+        String packageName = nextPackage();
+        int userId = cursor & (USERS - 1);
+        launch(packageName, userId);
+        return lifecycle.stop(packageName, userId);
+    }
+    
+    @Benchmark
+    public boolean stopAllUsers() {
+        String packageName = nextPackage();
+        launch(packageName, cursor & (USERS - 1));
+        return lifecycle.stop(packageName);
+    }
+    
+    @Benchmark
+    public boolean processDied() {
+        return lifecycle.onProcessDied(launch(nextPackage(), cursor & (USERS - 1)));
+    }
+    
+    @Benchmark
+    public boolean stopNotInstalled() {
+        return lifecycle.stop("com.example.missing", 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.AppRegistry;
+import com.terista.space.core.VirtualApp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups and writes in the engine's installed-app registry, with the
+ * package-keyed ConcurrentHashMap it replaced as a baseline
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppRegistryBenchmark {
+    
+    private static final int USERS = 4;
+    
+    @Param({"50", "500"})
+    public int appsPerUser;
+    
+    private final AppRegistry registry = new AppRegistry();
+    private final ConcurrentHashMap<String, VirtualApp> legacyMap = new ConcurrentHashMap<>();
+    private String[] packageNames;
+    private List<VirtualApp> allApps;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        packageNames = new String[appsPerUser];
+        List<VirtualApp> apps = new ArrayList<>();
+        for (int i = 0; i < appsPerUser; i++) {
+            packageNames[i] = "com.example.app" + i;
+            for (int userId = 0; userId < USERS; userId++) {
+                VirtualApp app = new VirtualApp(packageNames[i], "/data/app/app" + i + ".apk", userId);
+                apps.add(app);
+                legacyMap.put(userId + ":" + packageNames[i], app);
+            }
+        }
+        registry.putAll(apps);
+        allApps = apps;
+    }
+    
+    private String nextPackage() {
+        cursor = (cursor + 1) % packageNames.length;
+        return packageNames[cursor];
+    }
+    
+    @Benchmark
+    public VirtualApp registryGet() {
+        return registry.get(cursor & (USERS - 1), nextPackage());
+    }
+    
+    @Benchmark
+    public List<VirtualApp> registryGetByUser() {
+        return registry.getByUser(++cursor & (USERS - 1));
+    }
+    
+    @Benchmark
+    public List<VirtualApp> registryGetByUserPage() {
+        // A 20-app page resuming after a package name, as the paged package queries do
+        return registry.getByUser(cursor & (USERS - 1), nextPackage(), 20);
+    }
+    
+    @Benchmark
+    public List<VirtualApp> registryGetAll() {
+        return registry.getAll();
+    }
+    
+    @Benchmark
+    public List<VirtualApp> registryGetByPackage() {
+        return registry.getByPackage(nextPackage());
+    }
+    
+    @Benchmark
+    public VirtualApp registryReplace() {
+        // Rebuilds only the touched user's index
+        return registry.put(new VirtualApp(nextPackage(), "/data/app/updated.apk", cursor & (USERS - 1)));
+    }
+    
+    @Benchmark
+    public AppRegistry registryBulkRegister() {
+        // A cold restore of every app, published once
+        AppRegistry fresh = new AppRegistry();
+        fresh.putAll(allApps);
+        return fresh;
+    }
+    
+    @Benchmark
+    public VirtualApp legacyMapGet() {
+        return legacyMap.get((cursor & (USERS - 1)) + ":" + nextPackage());
+    }
+    
+    @Benchmark
+    public List<VirtualApp> legacyMapGetByUser() {
+        int userId = ++cursor & (USERS - 1);
+        List<VirtualApp> result = new ArrayList<>();
+        for (VirtualApp app : legacyMap.values()) {
+            if (app.getUserId() == userId) {
+                result.add(app);
+            }
+        }
+        return result;
+    }
+    
+    @Benchmark
+    public List<VirtualApp> legacyMapGetAll() {
+        return new ArrayList<>(legacyMap.values());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.AppRegistryStore;
+import com.terista.space.core.VirtualApp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup restore of the installed-app list from {@link AppRegistryStore},
+ * against reading the same list back with Java serialization of the
+ * Serializable VirtualApp. The journal holds one superseded record per app,
+ * as after an install followed by a label update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppRegistryStoreBenchmark {
+    
+    @Param({"500"})
+    public int apps;
+    
+    private File dir;
+    private AppRegistryStore store;
+    private File serialized;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("registry-bench").toFile();
+        store = new AppRegistryStore(new File(dir, "installed_apps.reg"));
+        List<VirtualApp> list = new ArrayList<>(apps);
+        for (int i = 0; i < apps; i++) {
+            VirtualApp app = new VirtualApp("com.example.app" + i, "com.example.app" + i,
+                    "/data/app/com.example.app" + i + "/base.apk", i % 4, System.currentTimeMillis(), i, "1.0." + i);
+            store.appendPut(app);
+            VirtualApp labelled = app.withAppName("Example App " + i);
+            store.appendPut(labelled);
+            list.add(labelled);
+        }
+        
+        serialized = new File(dir, "installed_apps.ser");
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(serialized)))) {
+            out.writeObject(list);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+    
+    @Benchmark
+    public List<VirtualApp> registryRestore() {
+        return store.restore();
+    }
+    
+    /**
+     * Restore, then read every field, as a launcher listing all apps would
+     */
+    @Benchmark
+    public int registryRestoreAndDecode() {
+        int hash = 0;
+        for (VirtualApp app : store.restore()) {
+            hash += app.getAppName().length() + app.getApkPath().length() + app.getVersionCode();
+        }
+        return hash;
+    }
+    
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public List<VirtualApp> javaSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(serialized)))) {
+            return (List<VirtualApp>) in.readObject();
+        }
+    }
+}
\ No newline at end of file
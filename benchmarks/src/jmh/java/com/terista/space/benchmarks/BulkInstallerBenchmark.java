@@ -0,0 +1,160 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.ApkFixtures;
+import com.terista.space.core.ApkManifest;
+import com.terista.space.core.ApkManifestParser;
+import com.terista.space.core.AppRegistry;
+import com.terista.space.core.AppRegistryStore;
+import com.terista.space.core.BulkInstaller;
+import com.terista.space.core.InstalledPackage;
+import com.terista.space.core.VirtualApp;
+import com.terista.space.fs.BlobApkStager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * APKs per second through {@link BulkInstaller}, with the engine's manifest
+ * parser, blob-store staging, registry and registry journal behind the steps.
+ * The score is in APKs/s.
+ *
+ * This is not VirtualAppManager's full install path: the manager reaches
+ * NativeBridge through VirtualEngine, so it is not compiled here. Its steps
+ * also write a package index entry per APK, which is not measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkInstallerBenchmark {
+    
+    private static final int APKS = 200;
+    private static final int THREADS = 4;
+    
+    private File dir;
+    private List<String> apkPaths;
+    private ExecutorService executor;
+    private AppRegistry registry;
+    private AppRegistryStore store;
+    private BlobApkStager stager;
+    private BulkInstaller installer;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("bulk-installer-bench").toFile();
+        apkPaths = new ArrayList<>(APKS);
+        for (int i = 0; i < APKS; i++) {
+            ApkFixtures.Spec spec = new ApkFixtures.Spec().resourceLabel("", "App " + i);
+            spec.packageName = "com.example.app" + i;
+            spec.fillerSize = 256 * 1024;
+            spec.activities = Arrays.asList(".MainActivity", ".SettingsActivity");
+            spec.services = Arrays.asList(".SyncService");
+            apkPaths.add(ApkFixtures.write(dir, "app" + i + ".apk", spec).getPath());
+        }
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+    
+    @Setup(Level.Iteration)
+    public void newRegistry() {
+        registry = new AppRegistry();
+        File journal = new File(dir, "installed_apps.reg");
+        journal.delete();
+        store = new AppRegistryStore(journal);
+        // Every iteration stages into an empty store, as a first install would
+        File staged = new File(dir, "staged");
+        delete(staged);
+        stager = new BlobApkStager(staged);
+        installer = new BulkInstaller(executor, new Steps());
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        delete(dir);
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(APKS)
+    public BulkInstaller.Result install() {
+        return installer.install(apkPaths, 0, null);
+    }
+    
+    private final class Steps implements BulkInstaller.Steps {
+        @Override
+        public ApkManifest parse(String apkPath) {
+            try {
+                return ApkManifestParser.parse(apkPath);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        
+        @Override
+        public String stage(String apkPath, ApkManifest manifest) {
+            try {
+                return stager.stage(apkPath, manifest.getPackageName(), manifest.getVersionCode());
+            } catch (IOException e) {
+                return apkPath;
+            }
+        }
+        
+        @Override
+        public String resolveLabel(ApkManifest manifest, String installPath) {
+            // The parser resolved it from resources.arsc, so the PackageManager fallback never runs
+            return manifest.getLabel() != null ? manifest.getLabel() : manifest.getPackageName();
+        }
+        
+        @Override
+        public VirtualApp create(ApkManifest manifest, String installPath, int userId, String label) {
+            InstalledPackage installedPackage = new InstalledPackage(manifest.getPackageName(), label, installPath,
+                    manifest.getVersionCode(), manifest.getVersionName());
+            return new VirtualApp(registry.intern(installedPackage), userId, System.currentTimeMillis());
+        }
+        
+        @Override
+        public void register(List<VirtualApp> apps) {
+            registry.putAll(apps);
+        }
+        
+        @Override
+        public void persist(List<VirtualApp> apps) {
+            for (VirtualApp app : apps) {
+                store.appendPut(app);
+            }
+            store.compactIfNeeded(registry::getAll);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.fs.FileTransfer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FileTransfer} against a heap-buffered stream copy, for one large file
+ * (an APK or data image) and a directory of the same total size.
+ *
+ * The default size keeps a run short; for multi-GB data sets pass
+ * {@code -p totalBytes=4294967296} (the temp directory needs twice that free).
+ * The source stays in the page cache, so this measures copy overhead rather
+ * than the disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FileTransferBenchmark {
+    
+    @Param({"268435456"})
+    public long totalBytes;
+    
+    @Param({"16"})
+    public int directoryFiles;
+    
+    private File workDir;
+    private File sourceFile;
+    private File sourceDir;
+    private File target;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("transfer").toFile();
+        sourceFile = new File(workDir, "source.bin");
+        writeRandom(sourceFile, totalBytes, 1);
+        sourceDir = new File(workDir, "source-dir");
+        sourceDir.mkdirs();
+        for (int i = 0; i < directoryFiles; i++) {
+            writeRandom(new File(sourceDir, "file" + i), totalBytes / directoryFiles, i + 2);
+        }
+    }
+    
+    @Setup(Level.Invocation)
+    public void prepareTarget() {
+        target = new File(workDir, "target-" + System.nanoTime());
+    }
+    
+    @TearDown(Level.Invocation)
+    public void deleteTarget() {
+        deleteTree(target);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        deleteTree(workDir);
+    }
+    
+    @Benchmark
+    public long streamCopyFile() throws IOException {
+        return streamCopy(sourceFile, target);
+    }
+    
+    @Benchmark
+    public long transferCopyFile() throws IOException {
+        return FileTransfer.copyFile(sourceFile, target);
+    }
+    
+    @Benchmark
+    public long streamCopyDirectory() throws IOException {
+        target.mkdirs();
+        long total = 0;
+        for (File file : sourceDir.listFiles()) {
+            total += streamCopy(file, new File(target, file.getName()));
+        }
+        return total;
+    }
+    
+    @Benchmark
+    public long parallelCopyDirectory() throws IOException {
+        return FileTransfer.copyDirectory(sourceDir, target, 4, null);
+    }
+    
+    @Benchmark
+    public byte[] streamSha256() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(sourceFile)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, length);
+            }
+        }
+        return digest.digest();
+    }
+    
+    @Benchmark
+    public byte[] channelSha256() throws IOException {
+        return FileTransfer.digest(sourceFile, "SHA-256");
+    }
+    
+    private static long streamCopy(File source, File target) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        long total = 0;
+        try (InputStream in = new FileInputStream(source); OutputStream out = new FileOutputStream(target)) {
+            int length;
+            while ((length = in.read(buffer)) > 0) {
+                out.write(buffer, 0, length);
+                total += length;
+            }
+        }
+        return total;
+    }
+    
+    private static void writeRandom(File file, long size, long seed) throws IOException {
+        Random random = new Random(seed);
+        byte[] block = new byte[1024 * 1024];
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        }
+    }
+    
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.fs.VirtualFileSystem;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link VirtualFileSystem} virtual-to-real path mapping for hits and misses
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathMappingBenchmark {
+    
+    @Param({"100", "10000"})
+    public int mappings;
+    
+    private String[] hits;
+    private String[] misses;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        hits = new String[mappings];
+        misses = new String[mappings];
+        for (int i = 0; i < mappings; i++) {
+            String app = "com.example.app" + (i % 64);
+            hits[i] = "/data/data/" + app + "/files/item" + i;
+            misses[i] = "/data/data/" + app + "/cache/item" + i;
+            VirtualFileSystem.createVirtualPath(hits[i], "/virtual_fs/0/" + app + "/files/item" + i);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (String path : hits) {
+            // Mapped targets do not exist on disk, so this only drops the entry
+            VirtualFileSystem.delete(path);
+        }
+    }
+    
+    @Benchmark
+    public String mapHit() {
+        cursor = (cursor + 1) % hits.length;
+        return VirtualFileSystem.mapVirtualToReal(hits[cursor]);
+    }
+    
+    @Benchmark
+    public String mapMiss() {
+        cursor = (cursor + 1) % misses.length;
+        return VirtualFileSystem.mapVirtualToReal(misses[cursor]);
+    }
+}
\ No newline at end of file
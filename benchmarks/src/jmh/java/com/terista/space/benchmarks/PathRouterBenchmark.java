@@ -0,0 +1,114 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.fs.PathRouter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PathRouter} longest-prefix lookups with thousands of per-app mounts,
+ * against a linear startsWith scan over the same rules
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathRouterBenchmark {
+    
+    private static final int USERS = 4;
+    
+    // Each app gets a data dir and an external storage dir per user
+    @Param({"250", "2500"})
+    public int apps;
+    
+    private final PathRouter router = new PathRouter();
+    private final List<String[]> linearRules = new ArrayList<>();
+    private String[] packages;
+    private String[] hitPaths;
+    private String[] missPaths;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        packages = new String[apps];
+        hitPaths = new String[apps];
+        missPaths = new String[apps];
+        for (int i = 0; i < apps; i++) {
+            packages[i] = "com.example.app" + i;
+            for (int userId = 0; userId < USERS; userId++) {
+                String dataRoot = "/data/user/" + userId + "/terista/" + packages[i];
+                router.addMount(userId, packages[i], "/data/data/" + packages[i], dataRoot);
+                router.addMount(userId, packages[i], "/sdcard/Android/data/" + packages[i], dataRoot + "/external");
+                if (userId == 0) {
+                    linearRules.add(new String[]{"/data/data/" + packages[i], dataRoot});
+                    linearRules.add(new String[]{"/sdcard/Android/data/" + packages[i], dataRoot + "/external"});
+                }
+            }
+            hitPaths[i] = "/data/data/" + packages[i] + "/shared_prefs/settings.xml";
+            missPaths[i] = "/system/framework/" + packages[i] + "/framework-res.apk";
+        }
+        router.addMount(PathRouter.ALL_USERS, null, "/sdcard", "/storage/emulated/terista");
+    }
+    
+    private int next() {
+        cursor = (cursor + 1) % apps;
+        return cursor;
+    }
+    
+    @Benchmark
+    public String routerResolveHit() {
+        int i = next();
+        return router.resolve(0, packages[i], hitPaths[i]);
+    }
+    
+    @Benchmark
+    public PathRouter.Mount routerFindMountHit() {
+        int i = next();
+        return router.findMount(0, packages[i], hitPaths[i]);
+    }
+    
+    @Benchmark
+    public String routerResolveMiss() {
+        int i = next();
+        return router.resolve(0, packages[i], missPaths[i]);
+    }
+    
+    @Benchmark
+    public String linearScanHit() {
+        return linearScan(hitPaths[next()]);
+    }
+    
+    @Benchmark
+    public String linearScanMiss() {
+        return linearScan(missPaths[next()]);
+    }
+    
+    private String linearScan(String path) {
+        String[] best = null;
+        for (String[] rule : linearRules) {
+            String prefix = rule[0];
+            if (path.startsWith(prefix)
+                    && (path.length() == prefix.length() || path.charAt(prefix.length()) == '/')
+                    && (best == null || prefix.length() > best[0].length())) {
+                best = rule;
+            }
+        }
+        return best != null ? best[1] + path.substring(best[0].length()) : null;
+    }
+}
\ No newline at end of file
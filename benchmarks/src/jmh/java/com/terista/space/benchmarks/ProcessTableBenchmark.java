@@ -0,0 +1,117 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.EngineMetrics;
+import com.terista.space.core.ProcessIdAllocator;
+import com.terista.space.core.VirtualProcessManager;
+import com.terista.space.core.VirtualProcessManager.VirtualProcess;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VirtualProcessManager's process table, slot-indexed by
+ * {@link ProcessIdAllocator} IDs, against a PID-keyed ConcurrentHashMap
+ * baseline. The native side is a no-op, so start/stop measures the table and
+ * allocator plus the metrics spans the manager records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessTableBenchmark {
+    
+    private static final int CAPACITY = 1024;
+    private static final int USERS = 4;
+    
+    @Param({"16", "256"})
+    public int liveProcesses;
+    
+    private VirtualProcessManager manager;
+    private ConcurrentHashMap<Integer, VirtualProcess> legacyTable;
+    private int[] liveIds;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        manager = new VirtualProcessManager(new ProcessIdAllocator(CAPACITY), new EngineMetrics(),
+                new VirtualProcessManager.NativeProcesses() {
+                    @Override
+                    public boolean create(String packageName, int userId) {
+                        return true;
+                    }
+                    
+                    @Override
+                    public void kill(int processId) {
+                    }
+                });
+        legacyTable = new ConcurrentHashMap<>();
+        liveIds = new int[liveProcesses];
+        for (int i = 0; i < liveProcesses; i++) {
+            VirtualProcess process = manager.startProcess("com.example.app" + i, i % USERS);
+            legacyTable.put(process.processId, process);
+            liveIds[i] = process.processId;
+        }
+    }
+    
+    private int nextId() {
+        cursor = (cursor + 1) % liveIds.length;
+        return liveIds[cursor];
+    }
+    
+    @Benchmark
+    public VirtualProcess managerGetProcess() {
+        return manager.getProcess(nextId());
+    }
+    
+    @Benchmark
+    public VirtualProcess legacyLookup() {
+        return legacyTable.get(nextId());
+    }
+    
+    @Benchmark
+    public Set<VirtualProcess> managerGetProcessesForUser() {
+        return manager.getProcesses(++cursor & (USERS - 1));
+    }
+    
+    @Benchmark
+    public int legacyProcessesForUser() {
+        int userId = ++cursor & (USERS - 1);
+        int count = 0;
+        for (VirtualProcess process : legacyTable.values()) {
+            if (process.userId == userId) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public boolean managerStartKill() {
+        VirtualProcess process = manager.startProcess("com.example.transient", 0);
+        return manager.killProcess(process.processId);
+    }
+    
+    @Benchmark
+    public boolean legacyStartStop() {
+        int id = 100_000 + (cursor++ & 0xFFFF);
+        VirtualProcess process = new VirtualProcess(id, "com.example.transient", 0);
+        legacyTable.put(id, process);
+        return legacyTable.remove(id) != null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.terista.space.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call overhead of BR* reflection stubs. {@link BRTarget} reproduces the body
+ * the compiler module generates for a {@code @ReflectionMethod}: look up the
+ * Method, make it accessible and invoke it on every call. Direct, cached
+ * Method and MethodHandle calls are the reference points.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReflectionStubBenchmark {
+    
+    private static final Method CACHED_METHOD;
+    private static final MethodHandle METHOD_HANDLE;
+    
+    static {
+        try {
+            CACHED_METHOD = Target.class.getDeclaredMethod("add", int.class);
+            CACHED_METHOD.setAccessible(true);
+            METHOD_HANDLE = MethodHandles.lookup().findVirtual(Target.class, "add", MethodType.methodType(int.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    
+    private final Target target = new Target();
+    private int value = 1;
+    
+    @Benchmark
+    public int direct() {
+        return target.add(value);
+    }
+    
+    @Benchmark
+    public int generatedStub() {
+        return BRTarget.add(target, value);
+    }
+    
+    @Benchmark
+    public int cachedMethod() throws Exception {
+        return (int) CACHED_METHOD.invoke(target, value);
+    }
+    
+    @Benchmark
+    public int methodHandle() throws Throwable {
+        return (int) METHOD_HANDLE.invokeExact(target, value);
+    }
+    
+    static class Target {
+        private int base = 7;
+        
+        int add(int delta) {
+            return base + delta;
+        }
+    }
+    
+    /**
+     * Shape of a generated stub; see ReflectionProcessor.ClassBuilder#addMethod
+     */
+    static final class BRTarget {
+        public static final Class<?> TYPE = Target.class;
+        
+        public static int add(Target instance, int delta) {
+            try {
+                Method method = TYPE.getDeclaredMethod("add", int.class);
+                method.setAccessible(true);
+                return (int) method.invoke(instance, delta);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
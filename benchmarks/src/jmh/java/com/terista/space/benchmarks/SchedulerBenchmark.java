@@ -0,0 +1,43 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.process.VirtualProcessScheduler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link VirtualProcessScheduler} submission throughput with a no-op task
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+    
+    private final LongAdder completed = new LongAdder();
+    private final Runnable task = completed::increment;
+    
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        VirtualProcessScheduler.shutdown();
+    }
+    
+    @Benchmark
+    public int submit() {
+        return VirtualProcessScheduler.scheduleTask("com.example.app", task);
+    }
+}
\ No newline at end of file
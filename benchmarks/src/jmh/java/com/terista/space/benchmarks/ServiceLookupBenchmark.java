@@ -0,0 +1,92 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.core.VirtualServiceManager;
+import com.terista.space.core.VirtualServiceManager.VirtualService;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Running-service lookups in VirtualServiceManager, which keeps one map per
+ * user, against a single map keyed by "userId:serviceName"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceLookupBenchmark {
+    
+    private static final int USERS = 4;
+    
+    @Param({"32", "512"})
+    public int servicesPerUser;
+    
+    private final VirtualServiceManager manager = new VirtualServiceManager();
+    private final ConcurrentHashMap<String, VirtualService> flat = new ConcurrentHashMap<>();
+    private String[] serviceNames;
+    private int cursor;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        serviceNames = new String[servicesPerUser];
+        for (int i = 0; i < servicesPerUser; i++) {
+            serviceNames[i] = "com.example.app" + i + ".SyncService";
+            for (int userId = 0; userId < USERS; userId++) {
+                manager.startService("com.example.app" + i, serviceNames[i], userId);
+                flat.put(userId + ":" + serviceNames[i], manager.getRunningService(serviceNames[i], userId));
+            }
+        }
+    }
+    
+    @Benchmark
+    public VirtualService managerLookup() {
+        cursor = (cursor + 1) % serviceNames.length;
+        return manager.getRunningService(serviceNames[cursor], cursor & (USERS - 1));
+    }
+    
+    @Benchmark
+    public VirtualService flatLookup() {
+        cursor = (cursor + 1) % serviceNames.length;
+        return flat.get((cursor & (USERS - 1)) + ":" + serviceNames[cursor]);
+    }
+    
+    @Benchmark
+    public Set<String> managerRunningServicesForUser() {
+        // Listing one user's services only walks that user's map
+        return manager.getRunningServices(++cursor & (USERS - 1));
+    }
+    
+    @Benchmark
+    public int flatRunningServicesForUser() {
+        String prefix = (++cursor & (USERS - 1)) + ":";
+        int count = 0;
+        for (String key : flat.keySet()) {
+            if (key.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Benchmark
+    public boolean managerStartStop() {
+        manager.startService("com.example.transient", "com.example.transient.Service", 0);
+        return manager.stopService("com.example.transient.Service", 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package com.terista.space.benchmarks;
+
+import com.terista.space.fs.StatCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup-style file probing: a batch of existing and missing files checked
+ * through {@link StatCache} against plain {@link File} calls
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatCacheBenchmark {
+    
+    @Param({"1000"})
+    public int files;
+    
+    private File directory;
+    private List<String> paths;
+    private StatCache cache;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("statcache").toFile();
+        paths = new ArrayList<>(files);
+        for (int i = 0; i < files; i++) {
+            File file = new File(directory, "file" + i);
+            // Every other file is missing, as with optional config probes
+            if (i % 2 == 0) {
+                Files.write(file.toPath(), new byte[] { 1 });
+            }
+            paths.add(file.getPath());
+        }
+        cache = new StatCache(files * 2, StatCache.DEFAULT_TTL_MILLIS * 1000);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.shutdown();
+        for (String path : paths) {
+            new File(path).delete();
+        }
+        directory.delete();
+    }
+    
+    @Benchmark
+    public int fileExists() {
+        int found = 0;
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.exists() && file.length() > 0) found++;
+        }
+        return found;
+    }
+    
+    @Benchmark
+    public int cachedStat() {
+        int found = 0;
+        for (String path : paths) {
+            StatCache.FileStat stat = cache.stat(path);
+            if (stat.exists && stat.size > 0) found++;
+        }
+        return found;
+    }
+    
+    @Benchmark
+    public int cachedStatAll() {
+        int found = 0;
+        for (Map.Entry<String, StatCache.FileStat> entry : cache.statAll(paths).entrySet()) {
+            if (entry.getValue().exists && entry.getValue().size > 0) found++;
+        }
+        return found;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,20 @@
+package android.os;
+
+/**
+ * Stand-in for android.os.Build on a plain JVM: reports the newest API level
+ */
+public final class Build {
+    
+    private Build() {}
+    
+    public static final class VERSION {
+        public static final int SDK_INT = VERSION_CODES.VANILLA_ICE_CREAM;
+    }
+    
+    public static final class VERSION_CODES {
+        public static final int O = 26;
+        public static final int Q = 29;
+        public static final int R = 30;
+        public static final int VANILLA_ICE_CREAM = 35;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,13 @@
+package android.os;
+
+/**
+ * Stand-in for android.os.Process on a plain JVM
+ */
+public final class Process {
+    
+    private Process() {}
+    
+    public static int myPid() {
+        return (int) ProcessHandle.current().pid();
+    }
+}
\ No newline at end of file
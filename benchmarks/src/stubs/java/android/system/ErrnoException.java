@@ -0,0 +1,11 @@
+package android.system;
+
+/**
+ * Stand-in for android.system.ErrnoException on a plain JVM
+ */
+public class ErrnoException extends Exception {
+    
+    public ErrnoException(String functionName, int errno) {
+        super(functionName + " failed: " + errno);
+    }
+}
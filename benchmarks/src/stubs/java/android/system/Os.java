@@ -0,0 +1,19 @@
+package android.system;
+
+import java.io.FileDescriptor;
+
+/**
+ * No-op stand-in for android.system.Os; directory syncs are skipped on a plain JVM
+ */
+public final class Os {
+    
+    private Os() {}
+    
+    public static FileDescriptor open(String path, int flags, int mode) throws ErrnoException {
+        return new FileDescriptor();
+    }
+    
+    public static void fsync(FileDescriptor fd) throws ErrnoException {}
+    
+    public static void close(FileDescriptor fd) throws ErrnoException {}
+}
@@ -0,0 +1,11 @@
+package android.system;
+
+/**
+ * Stand-in for android.system.OsConstants on a plain JVM
+ */
+public final class OsConstants {
+    
+    private OsConstants() {}
+    
+    public static final int O_RDONLY = 0;
+}
@@ -0,0 +1,17 @@
+package android.util;
+
+/**
+ * No-op stand-in for the Android logger so engine classes run on a plain JVM
+ */
+public final class Log {
+    
+    private Log() {}
+    
+    public static int v(String tag, String msg) { return 0; }
+    public static int d(String tag, String msg) { return 0; }
+    public static int i(String tag, String msg) { return 0; }
+    public static int w(String tag, String msg) { return 0; }
+    public static int w(String tag, String msg, Throwable tr) { return 0; }
+    public static int e(String tag, String msg) { return 0; }
+    public static int e(String tag, String msg, Throwable tr) { return 0; }
+}
\ No newline at end of file
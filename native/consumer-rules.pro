@@ -3,3 +3,8 @@
 # Keep all public APIs
 -keep public class com.terista.space.** { public *; }
 
+# Upcall from ServiceDispatch in native code
+-keepclassmembers class com.terista.space.native.NativeBridge {
+    private static int dispatchTransaction(...);
+    private static void onTransactionReply(...);
+}
@@ -0,0 +1,152 @@
+#include "include/binder_hook.h"
+#include "include/service_dispatch.h"
+
+#include <benchmark/benchmark.h>
+#include <cstring>
+
+/**
+ * Service filter lookup, binder transaction parsing and the in-process
+ * answer path for virtualized services
+ */
+
+static void addFilters(BinderHook& hook, int count) {
+    for (int i = 0; i < count; i++) {
+        hook.setServiceFilter("vendor.service." + std::to_string(i), (i & 1) == 0);
+    }
+}
+
+static void BM_AllowService_Hit(benchmark::State& state) {
+    BinderHook hook;
+    addFilters(hook, state.range(0));
+    const std::string service = "activity";
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(hook.allowService(service));
+    }
+}
+BENCHMARK(BM_AllowService_Hit)->Arg(0)->Arg(64)->Arg(1024);
+
+static void BM_AllowService_Miss(benchmark::State& state) {
+    BinderHook hook;
+    addFilters(hook, state.range(0));
+    const std::string service = "com.example.unfiltered";
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(hook.allowService(service));
+    }
+}
+BENCHMARK(BM_AllowService_Miss)->Arg(0)->Arg(64)->Arg(1024);
+
+static void BM_ProcessTransaction(benchmark::State& state) {
+    BinderHook hook;
+    addFilters(hook, state.range(0));
+    hook.addTransactionFilter("package", [](BinderTransaction& transaction) {
+        return transaction.code != 0;
+    });
+    BinderTransaction transaction;
+    transaction.code = 1;
+    transaction.flags = 0;
+    transaction.target = "package";
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(hook.processTransaction(transaction));
+    }
+}
+BENCHMARK(BM_ProcessTransaction)->Arg(0)->Arg(1024);
+
+static void BM_ParseTransaction(benchmark::State& state) {
+    // Header words followed by an interface token and zero padding
+    std::vector<uint8_t> buffer(state.range(0), 0);
+    uint32_t header[2] = {3, 0};
+    memcpy(buffer.data(), header, sizeof(header));
+    const char* token = "android.content.pm.IPackageManager";
+    memcpy(buffer.data() + 16, token, std::min(strlen(token), buffer.size() - 16));
+
+    BinderHook hook;
+    BinderTransaction transaction;
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(hook.parseBinderTransaction(buffer.data(), buffer.size(), transaction));
+    }
+    state.SetBytesProcessed(state.iterations() * buffer.size());
+}
+BENCHMARK(BM_ParseTransaction)->Arg(64)->Arg(1024)->Arg(16384);
+
+// Interface token as written on Android 11+, then one int argument
+static std::vector<uint8_t> tokenParcel(const std::u16string& descriptor) {
+    std::vector<uint8_t> parcel((4 + 1) * sizeof(int32_t) + ((descriptor.size() + 2) & ~(size_t)1) * sizeof(char16_t));
+    int32_t header[4] = {0, -1, 0x53595354, (int32_t)descriptor.size()};
+    memcpy(parcel.data(), header, sizeof(header));
+    memcpy(parcel.data() + sizeof(header), descriptor.data(), descriptor.size() * sizeof(char16_t));
+    return parcel;
+}
+
+// Descriptor marked as the framework binder device; the driver is never reached
+static const int BINDER_FD = 40;
+
+// A lone BC_TRANSACTION as IPCThreadState queues it, answered (hit) or left for the driver (miss)
+static void runAnswerLocally(benchmark::State& state, const std::u16string& descriptor, bool binderDevice) {
+    static const int serviceId = 7;
+    static const uint32_t code = 42;
+    ServiceDispatch* dispatch = ServiceDispatch::getInstance();
+    dispatch->registerService("activity", u"android.app.IActivityManager", serviceId);
+    const uint8_t cachedReply[8] = {0};
+    dispatch->setCachedReply(serviceId, code, cachedReply, sizeof(cachedReply));
+
+    BinderHook hook;
+    hook.setBinderDevice(BINDER_FD, binderDevice);
+    std::vector<uint8_t> parcel = tokenParcel(descriptor);
+    binder_transaction_data tr;
+    memset(&tr, 0, sizeof(tr));
+    tr.target.handle = 3;
+    tr.code = code;
+    tr.data_size = parcel.size();
+    tr.data.ptr.buffer = (binder_uintptr_t)(uintptr_t)parcel.data();
+    uint8_t returns[256];
+
+    // As in the app, each call carries the free of the previous reply
+    uint8_t commands[2 * sizeof(uint32_t) + sizeof(binder_uintptr_t) + sizeof(tr)];
+    const uint32_t freeBuffer = BC_FREE_BUFFER;
+    const uint32_t transaction = BC_TRANSACTION;
+    binder_uintptr_t previousReply = 0;
+    for (auto _ : state) {
+        size_t length = 0;
+        if (previousReply != 0) {
+            memcpy(commands, &freeBuffer, sizeof(freeBuffer));
+            memcpy(commands + sizeof(freeBuffer), &previousReply, sizeof(previousReply));
+            length = sizeof(freeBuffer) + sizeof(previousReply);
+        }
+        memcpy(commands + length, &transaction, sizeof(transaction));
+        memcpy(commands + length + sizeof(transaction), &tr, sizeof(tr));
+        length += sizeof(transaction) + sizeof(tr);
+
+        binder_write_read bwr;
+        memset(&bwr, 0, sizeof(bwr));
+        bwr.write_buffer = (binder_uintptr_t)(uintptr_t)commands;
+        bwr.write_size = length;
+        bwr.read_buffer = (binder_uintptr_t)(uintptr_t)returns;
+        bwr.read_size = sizeof(returns);
+        bool answered = hook.writeRead(BINDER_FD, &bwr) == 0;
+        previousReply = 0;
+        if (answered) {
+            binder_transaction_data reply;
+            memcpy(&reply, returns + 2 * sizeof(uint32_t), sizeof(reply));
+            previousReply = reply.data.ptr.buffer;
+        }
+        benchmark::DoNotOptimize(answered);
+    }
+    dispatch->unregisterService("activity");
+}
+
+static void BM_AnswerLocally_CachedReply(benchmark::State& state) {
+    runAnswerLocally(state, u"android.app.IActivityManager", true);
+}
+BENCHMARK(BM_AnswerLocally_CachedReply);
+
+static void BM_AnswerLocally_PassThrough(benchmark::State& state) {
+    // Cost the hook adds to calls that still go to the system
+    runAnswerLocally(state, u"android.content.pm.IPackageManager", true);
+}
+BENCHMARK(BM_AnswerLocally_PassThrough);
+
+static void BM_AnswerLocally_OtherDevice(benchmark::State& state) {
+    // hwbinder and vndbinder calls: one cached lookup of the fd, then the driver
+    runAnswerLocally(state, u"android.app.IActivityManager", false);
+}
+BENCHMARK(BM_AnswerLocally_OtherDevice);
\ No newline at end of file
@@ -0,0 +1,72 @@
+#include "include/inline_hook.h"
+
+#include <benchmark/benchmark.h>
+
+/**
+ * Trampoline allocation and hook install/uninstall latency for the
+ * x86-64 backend, plus the cost of calling through an installed hook.
+ */
+
+__attribute__((noinline)) int benchTarget(int value) {
+    int result = value;
+    for (int i = 0; i < (value & 7) + 1; i++) {
+        result = result * 31 + i;
+    }
+    return result;
+}
+
+static int (*originalBenchTarget)(int) = nullptr;
+
+__attribute__((noinline)) int benchReplacement(int value) {
+    return originalBenchTarget(value);
+}
+
+static void BM_AllocateTrampoline(benchmark::State& state) {
+    InlineHook hook;
+    for (auto _ : state) {
+        void* trampoline = hook.allocateTrampoline();
+        benchmark::DoNotOptimize(trampoline);
+        hook.freeTrampoline(trampoline);
+    }
+}
+BENCHMARK(BM_AllocateTrampoline);
+
+static void BM_InstallUninstallHook(benchmark::State& state) {
+    InlineHook hook;
+    for (auto _ : state) {
+        void* backup = nullptr;
+        if (!hook.installHook((void*)benchTarget, (void*)benchReplacement, &backup)) {
+            state.SkipWithError("installHook failed");
+            break;
+        }
+        hook.uninstallHook((void*)benchTarget, backup);
+    }
+}
+BENCHMARK(BM_InstallUninstallHook);
+
+static void BM_DirectCall(benchmark::State& state) {
+    int (*volatile target)(int) = benchTarget;
+    int value = 3;
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(target(value));
+    }
+}
+BENCHMARK(BM_DirectCall);
+
+static void BM_HookedCall(benchmark::State& state) {
+    InlineHook hook;
+    void* backup = nullptr;
+    if (!hook.installHook((void*)benchTarget, (void*)benchReplacement, &backup)) {
+        state.SkipWithError("installHook failed");
+        return;
+    }
+    originalBenchTarget = (int (*)(int))backup;
+
+    int (*volatile target)(int) = benchTarget;
+    int value = 3;
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(target(value));
+    }
+    hook.uninstallHook((void*)benchTarget, backup);
+}
+BENCHMARK(BM_HookedCall);
\ No newline at end of file
@@ -0,0 +1,47 @@
+#include "include/symbol_resolver.h"
+#include "include/elf_utils.h"
+
+#include <benchmark/benchmark.h>
+#include <dlfcn.h>
+
+/**
+ * Symbol resolution through SymbolResolver and ElfUtils against raw dlsym
+ */
+
+static void BM_Dlsym(benchmark::State& state) {
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(dlsym(RTLD_DEFAULT, "malloc"));
+    }
+}
+BENCHMARK(BM_Dlsym);
+
+static void BM_ResolveSymbol_Cached(benchmark::State& state) {
+    SymbolResolver resolver;
+    const std::string symbol = "malloc";
+    resolver.resolveSymbol(symbol);
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(resolver.resolveSymbol(symbol));
+    }
+}
+BENCHMARK(BM_ResolveSymbol_Cached);
+
+static void BM_ResolveSymbol_Uncached(benchmark::State& state) {
+    SymbolResolver resolver;
+    const std::string symbol = "malloc";
+    for (auto _ : state) {
+        resolver.clearCache();
+        benchmark::DoNotOptimize(resolver.resolveSymbol(symbol));
+    }
+}
+BENCHMARK(BM_ResolveSymbol_Uncached);
+
+static void BM_ElfUtils_FindSymbolInAll(benchmark::State& state) {
+    ElfUtils elfUtils;
+    // Host libc soname; the device build loads "libc.so"
+    elfUtils.loadLibrary("libc.so.6");
+    const std::string symbol = "ioctl";
+    for (auto _ : state) {
+        benchmark::DoNotOptimize(elfUtils.findSymbolInAll(symbol));
+    }
+}
+BENCHMARK(BM_ElfUtils_FindSymbolInAll);
\ No newline at end of file
@@ -0,0 +1,124 @@
+#include "include/mount_table.h"
+
+#include <dlfcn.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <sys/stat.h>
+#include <cstdarg>
+#include <cstdlib>
+
+/**
+ * LD_PRELOAD stand-in for PathRedirect on host Linux. Interposes the same libc
+ * entry points and rewrites paths through the same MountTable reader, so the
+ * redirection logic can be exercised in an unmodified process:
+ *
+ *   TERISTA_MOUNT_TABLE=/tmp/table TERISTA_USER_ID=0 TERISTA_PACKAGE=com.example \
+ *   LD_PRELOAD=libterista_redirect_preload.so ./program
+ */
+
+typedef int (*open_fn)(const char*, int, ...);
+typedef int (*openat_fn)(int, const char*, int, ...);
+typedef int (*stat_fn)(const char*, struct stat*);
+typedef int (*stat64_fn)(const char*, struct stat64*);
+typedef int (*access_fn)(const char*, int);
+
+static open_fn real_open = nullptr;
+static open_fn real_open64 = nullptr;
+static openat_fn real_openat = nullptr;
+static openat_fn real_openat64 = nullptr;
+static stat_fn real_stat = nullptr;
+static stat64_fn real_stat64 = nullptr;
+static access_fn real_access = nullptr;
+
+// Heap-allocated and never freed: hooks may run during static destruction
+static MountTable* table = nullptr;
+
+__attribute__((constructor)) static void initialize() {
+    real_open = (open_fn)dlsym(RTLD_NEXT, "open");
+    real_open64 = (open_fn)dlsym(RTLD_NEXT, "open64");
+    real_openat = (openat_fn)dlsym(RTLD_NEXT, "openat");
+    real_openat64 = (openat_fn)dlsym(RTLD_NEXT, "openat64");
+    real_stat = (stat_fn)dlsym(RTLD_NEXT, "stat");
+    real_stat64 = (stat64_fn)dlsym(RTLD_NEXT, "stat64");
+    real_access = (access_fn)dlsym(RTLD_NEXT, "access");
+
+    const char* path = getenv("TERISTA_MOUNT_TABLE");
+    if (!path) return;
+
+    MountTable* attached = new MountTable();
+    if (!attached->attach(path)) {
+        delete attached;
+        return;
+    }
+    const char* userId = getenv("TERISTA_USER_ID");
+    const char* packageName = getenv("TERISTA_PACKAGE");
+    attached->setIdentity(userId ? atoi(userId) : 0, packageName ? packageName : "");
+    table = attached;
+}
+
+static const char* rewrite(const char* path, char* buffer, size_t size) {
+    const char* redirected = table && path ? table->redirect(path, buffer, size) : nullptr;
+    return redirected ? redirected : path;
+}
+
+static mode_t modeArgument(int flags, va_list args) {
+#ifdef O_TMPFILE
+    if ((flags & O_TMPFILE) == O_TMPFILE) return (mode_t)va_arg(args, int);
+#endif
+    return (flags & O_CREAT) ? (mode_t)va_arg(args, int) : 0;
+}
+
+extern "C" {
+
+int open(const char* path, int flags, ...) {
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = modeArgument(flags, args);
+    va_end(args);
+    char buffer[PATH_MAX];
+    return real_open(rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int open64(const char* path, int flags, ...) {
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = modeArgument(flags, args);
+    va_end(args);
+    char buffer[PATH_MAX];
+    return real_open64(rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int openat(int dirfd, const char* path, int flags, ...) {
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = modeArgument(flags, args);
+    va_end(args);
+    char buffer[PATH_MAX];
+    return real_openat(dirfd, rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int openat64(int dirfd, const char* path, int flags, ...) {
+    va_list args;
+    va_start(args, flags);
+    mode_t mode = modeArgument(flags, args);
+    va_end(args);
+    char buffer[PATH_MAX];
+    return real_openat64(dirfd, rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int stat(const char* path, struct stat* buf) {
+    char buffer[PATH_MAX];
+    return real_stat(rewrite(path, buffer, sizeof(buffer)), buf);
+}
+
+int stat64(const char* path, struct stat64* buf) {
+    char buffer[PATH_MAX];
+    return real_stat64(rewrite(path, buffer, sizeof(buffer)), buf);
+}
+
+int access(const char* path, int mode) {
+    char buffer[PATH_MAX];
+    return real_access(rewrite(path, buffer, sizeof(buffer)), mode);
+}
+
+}
\ No newline at end of file
@@ -0,0 +1,49 @@
+#ifndef TERISTA_HOST_ANDROID_LOG_H
+#define TERISTA_HOST_ANDROID_LOG_H
+
+/**
+ * Host stand-in for <android/log.h>.
+ * Messages go to stderr when their priority is at or above TERISTA_LOG_LEVEL
+ * (an android_LogPriority value, default ANDROID_LOG_WARN) so benchmarks do
+ * not measure terminal output.
+ */
+
+#include <cstdarg>
+#include <cstdio>
+#include <cstdlib>
+
+typedef enum android_LogPriority {
+    ANDROID_LOG_UNKNOWN = 0,
+    ANDROID_LOG_DEFAULT,
+    ANDROID_LOG_VERBOSE,
+    ANDROID_LOG_DEBUG,
+    ANDROID_LOG_INFO,
+    ANDROID_LOG_WARN,
+    ANDROID_LOG_ERROR,
+    ANDROID_LOG_FATAL,
+    ANDROID_LOG_SILENT,
+} android_LogPriority;
+
+static inline int terista_host_log_level() {
+    static const int level = [] {
+        const char* value = getenv("TERISTA_LOG_LEVEL");
+        return value ? atoi(value) : (int)ANDROID_LOG_WARN;
+    }();
+    return level;
+}
+
+static inline int __android_log_print(int prio, const char* tag, const char* fmt, ...) {
+    if (prio < terista_host_log_level()) {
+        return 0;
+    }
+    static const char levels[] = "??VDIWEFS";
+    fprintf(stderr, "%c/%s: ", levels[prio <= ANDROID_LOG_SILENT ? prio : 0], tag);
+    va_list args;
+    va_start(args, fmt);
+    int written = vfprintf(stderr, fmt, args);
+    va_end(args);
+    fputc('\n', stderr);
+    return written;
+}
+
+#endif // TERISTA_HOST_ANDROID_LOG_H
\ No newline at end of file
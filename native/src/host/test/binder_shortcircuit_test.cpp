@@ -0,0 +1,270 @@
+#include "include/binder_hook.h"
+#include "include/service_dispatch.h"
+
+#include <atomic>
+#include <cstdio>
+#include <cstring>
+#include <string>
+#include <thread>
+#include <vector>
+
+/**
+ * BinderHook::answerLocally on hand-built binder_write_read buffers: calls to
+ * a virtualized service are answered from a cached reply with the return
+ * commands the driver would write, everything else is left for the driver.
+ * Calls made while a handler runs are never answered again, and only the
+ * framework binder device is answered at all.
+ */
+
+static int failures = 0;
+
+#define EXPECT(condition) \
+    do { \
+        if (!(condition)) { \
+            fprintf(stderr, "%s:%d: expectation failed: %s\n", __FILE__, __LINE__, #condition); \
+            failures++; \
+        } \
+    } while (0)
+
+static const int SERVICE_ID = 7;
+static const uint32_t CODE = 42;
+// Descriptors the tests treat as open binder devices; the driver is never reached
+static const int BINDER_FD = 40;
+static const int OTHER_BINDER_FD = 41;
+
+// Parcel data starting with an interface token as written on Android 11+
+static std::vector<uint8_t> interfaceToken(const std::u16string& descriptor) {
+    std::vector<uint8_t> parcel;
+    auto putInt = [&parcel](int32_t value) {
+        const uint8_t* bytes = (const uint8_t*)&value;
+        parcel.insert(parcel.end(), bytes, bytes + sizeof(value));
+    };
+    putInt(0);
+    putInt(-1);
+    putInt(0x53595354);
+    putInt((int32_t)descriptor.size());
+    const uint8_t* chars = (const uint8_t*)descriptor.data();
+    parcel.insert(parcel.end(), chars, chars + (descriptor.size() + 1) * sizeof(char16_t));
+    parcel.resize((parcel.size() + 3) & ~(size_t)3, 0);
+    return parcel;
+}
+
+static void appendTransaction(std::vector<uint8_t>& commands, uint32_t handle, uint32_t code, uint32_t flags,
+                              const std::vector<uint8_t>& parcel) {
+    binder_transaction_data tr;
+    memset(&tr, 0, sizeof(tr));
+    tr.target.handle = handle;
+    tr.code = code;
+    tr.flags = flags;
+    tr.data_size = parcel.size();
+    tr.data.ptr.buffer = (binder_uintptr_t)(uintptr_t)parcel.data();
+    uint32_t cmd = BC_TRANSACTION;
+    commands.insert(commands.end(), (const uint8_t*)&cmd, (const uint8_t*)&cmd + sizeof(cmd));
+    commands.insert(commands.end(), (const uint8_t*)&tr, (const uint8_t*)&tr + sizeof(tr));
+}
+
+static void appendFree(std::vector<uint8_t>& commands, binder_uintptr_t buffer) {
+    uint32_t cmd = BC_FREE_BUFFER;
+    commands.insert(commands.end(), (const uint8_t*)&cmd, (const uint8_t*)&cmd + sizeof(cmd));
+    commands.insert(commands.end(), (const uint8_t*)&buffer, (const uint8_t*)&buffer + sizeof(buffer));
+}
+
+static binder_write_read writeRead(std::vector<uint8_t>& commands, std::vector<uint8_t>& returns) {
+    binder_write_read bwr;
+    memset(&bwr, 0, sizeof(bwr));
+    bwr.write_buffer = (binder_uintptr_t)(uintptr_t)commands.data();
+    bwr.write_size = commands.size();
+    bwr.read_buffer = (binder_uintptr_t)(uintptr_t)returns.data();
+    bwr.read_size = returns.size();
+    return bwr;
+}
+
+static uint32_t returnAt(const std::vector<uint8_t>& returns, size_t offset) {
+    uint32_t cmd;
+    memcpy(&cmd, returns.data() + offset, sizeof(cmd));
+    return cmd;
+}
+
+int main() {
+    ServiceDispatch* dispatch = ServiceDispatch::getInstance();
+    EXPECT(dispatch->registerService("activity", u"android.app.IActivityManager", SERVICE_ID));
+    // writeNoException() followed by writeBoolean(false)
+    const uint8_t cachedReply[8] = {0};
+    EXPECT(dispatch->setCachedReply(SERVICE_ID, CODE, cachedReply, sizeof(cachedReply)));
+
+    BinderHook hook;
+    hook.setBinderDevice(BINDER_FD, true);
+    hook.setBinderDevice(OTHER_BINDER_FD, true);
+    std::vector<uint8_t> activityCall = interfaceToken(u"android.app.IActivityManager");
+    std::vector<uint8_t> packageCall = interfaceToken(u"android.content.pm.IPackageManager");
+    std::vector<uint8_t> returns(256);
+
+    // Cached reply: BR_TRANSACTION_COMPLETE, then BR_REPLY pointing at a copy of it
+    std::vector<uint8_t> commands;
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    binder_write_read bwr = writeRead(commands, returns);
+    EXPECT(hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(bwr.write_consumed == commands.size());
+    EXPECT(bwr.read_consumed == 2 * sizeof(uint32_t) + sizeof(binder_transaction_data));
+    EXPECT(returnAt(returns, 0) == BR_TRANSACTION_COMPLETE);
+    EXPECT(returnAt(returns, sizeof(uint32_t)) == BR_REPLY);
+    binder_transaction_data reply;
+    memcpy(&reply, returns.data() + 2 * sizeof(uint32_t), sizeof(reply));
+    EXPECT(reply.data_size == sizeof(cachedReply));
+    EXPECT(reply.offsets_size == 0);
+    EXPECT(memcmp((const void*)(uintptr_t)reply.data.ptr.buffer, cachedReply, sizeof(cachedReply)) == 0);
+    EXPECT(hook.isLocalBuffer(reply.data.ptr.buffer));
+
+    // The handle is now known; a free of the last reply may precede the next call
+    commands.clear();
+    appendFree(commands, reply.data.ptr.buffer);
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(bwr.write_consumed == commands.size());
+    EXPECT(!hook.isLocalBuffer(reply.data.ptr.buffer));
+
+    // One-way calls only get BR_TRANSACTION_COMPLETE
+    commands.clear();
+    appendTransaction(commands, 3, CODE, TF_ONE_WAY, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(bwr.read_consumed == sizeof(uint32_t));
+
+    // Left for the driver: other services, codes without a reply, other commands first,
+    // and read buffers too small for the return commands
+    commands.clear();
+    appendTransaction(commands, 4, CODE, 0, packageCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(bwr.write_consumed == 0 && bwr.read_consumed == 0);
+
+    commands.clear();
+    appendTransaction(commands, 3, CODE + 1, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.answerLocally(BINDER_FD, &bwr));
+
+    commands.clear();
+    appendFree(commands, 0x1000);
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.answerLocally(BINDER_FD, &bwr));
+
+    commands.clear();
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    bwr.read_size = sizeof(uint32_t);
+    EXPECT(!hook.answerLocally(BINDER_FD, &bwr));
+
+    // Handles past the lock-free slots are answered the same way
+    commands.clear();
+    appendTransaction(commands, BINDER_HANDLE_SLOTS + 5, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(hook.serviceIdOfHandle(BINDER_FD, BINDER_HANDLE_SLOTS + 5, nullptr, 0) == SERVICE_ID);
+
+    // A handler's own binder call goes to the driver, here the missing original ioctl
+    commands.clear();
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    {
+        BinderHook::DispatchScope scope;
+        {
+            BinderHook::DispatchScope nested;
+        }
+        EXPECT(BinderHook::DispatchScope::isActive());
+        EXPECT(hook.writeRead(BINDER_FD, &bwr) == -1);
+        EXPECT(bwr.write_consumed == 0 && bwr.read_consumed == 0);
+    }
+    EXPECT(!BinderHook::DispatchScope::isActive());
+    EXPECT(hook.writeRead(BINDER_FD, &bwr) == 0);
+    EXPECT(bwr.write_consumed == commands.size());
+
+    // hwbinder, vndbinder and anything else goes to the driver untouched
+    EXPECT(BinderHook::isBinderDevicePath("/dev/binder"));
+    EXPECT(BinderHook::isBinderDevicePath("/dev/binderfs/binder"));
+    EXPECT(!BinderHook::isBinderDevicePath("/dev/hwbinder"));
+    EXPECT(!BinderHook::isBinderDevicePath("/dev/vndbinder"));
+    EXPECT(!BinderHook::isBinderDevicePath("/dev/binderfs/vndbinder"));
+    EXPECT(!BinderHook::isBinderDevicePath("/data/binder.log"));
+    commands.clear();
+    appendTransaction(commands, 3, CODE, 0, activityCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.isBinderDevice(-1));
+    EXPECT(hook.writeRead(-1, &bwr) == -1);
+    EXPECT(bwr.write_consumed == 0 && bwr.read_consumed == 0);
+    hook.setBinderDevice(42, false);
+    EXPECT(hook.writeRead(42, &bwr) == -1);
+    EXPECT(bwr.write_consumed == 0 && bwr.read_consumed == 0);
+
+    // Handles are per binder fd: the same number on another fd is learned on its own
+    commands.clear();
+    appendTransaction(commands, 3, CODE, 0, packageCall);
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.answerLocally(OTHER_BINDER_FD, &bwr));
+    EXPECT(hook.serviceIdOfHandle(OTHER_BINDER_FD, 3, nullptr, 0) == -1);
+    EXPECT(hook.serviceIdOfHandle(BINDER_FD, 3, nullptr, 0) == SERVICE_ID);
+    hook.forgetDevice(BINDER_FD);
+    EXPECT(hook.serviceIdOfHandle(BINDER_FD, 3, nullptr, 0) == -1);
+    hook.setBinderDevice(BINDER_FD, true);
+
+    // Replies larger than the reply buffer are answered whole from a buffer of their own
+    {
+        std::vector<uint8_t> largeReply(VIRTUAL_REPLY_CAPACITY * 3 / 2);
+        for (size_t i = 0; i < largeReply.size(); i++) {
+            largeReply[i] = (uint8_t)(i * 31);
+        }
+        EXPECT(dispatch->setCachedReply(SERVICE_ID, CODE + 2, largeReply.data(), largeReply.size()));
+        commands.clear();
+        appendTransaction(commands, 3, CODE + 2, 0, activityCall);
+        bwr = writeRead(commands, returns);
+        EXPECT(hook.answerLocally(BINDER_FD, &bwr));
+        memcpy(&reply, returns.data() + 2 * sizeof(uint32_t), sizeof(reply));
+        EXPECT(reply.data_size == largeReply.size());
+        EXPECT(memcmp((const void*)(uintptr_t)reply.data.ptr.buffer, largeReply.data(), largeReply.size()) == 0);
+        EXPECT(hook.isLocalBuffer(reply.data.ptr.buffer));
+        EXPECT(dispatch->setCachedReply(SERVICE_ID, CODE + 2, nullptr, 0));
+    }
+
+    // Lookups keep working while services and fixed replies change underneath
+    {
+        std::atomic<bool> done(false);
+        std::thread writer([&] {
+            for (int i = 0; i < 2000; i++) {
+                dispatch->registerService("vendor.service", u"vendor.IService", SERVICE_ID + 1);
+                dispatch->setCachedReply(SERVICE_ID, CODE, cachedReply, sizeof(cachedReply));
+                dispatch->unregisterService("vendor.service");
+            }
+            done = true;
+        });
+        int answered = 0;
+        binder_uintptr_t previousReply = 0;
+        while (!done) {
+            commands.clear();
+            if (previousReply != 0) {
+                appendFree(commands, previousReply);
+            }
+            appendTransaction(commands, 3, CODE, 0, activityCall);
+            bwr = writeRead(commands, returns);
+            if (hook.answerLocally(BINDER_FD, &bwr)) {
+                answered++;
+                memcpy(&reply, returns.data() + 2 * sizeof(uint32_t), sizeof(reply));
+                EXPECT(reply.data_size == sizeof(cachedReply));
+                previousReply = reply.data.ptr.buffer;
+            }
+        }
+        writer.join();
+        EXPECT(answered > 0);
+    }
+
+    // Unregistering the service makes its handle go to the driver again
+    EXPECT(dispatch->unregisterService("activity"));
+    bwr = writeRead(commands, returns);
+    EXPECT(!hook.answerLocally(BINDER_FD, &bwr));
+    EXPECT(hook.serviceIdOfHandle(BINDER_FD, 3, activityCall.data(), activityCall.size()) == -1);
+
+    if (failures == 0) {
+        printf("binder_shortcircuit_test: OK\n");
+    }
+    return failures == 0 ? 0 : 1;
+}
\ No newline at end of file
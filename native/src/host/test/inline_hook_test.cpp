@@ -0,0 +1,78 @@
+#include "include/inline_hook.h"
+
+#include <cstdio>
+
+/**
+ * Smoke test for the x86-64 inline hook backend: install, call through the
+ * trampoline, uninstall, and repeat to check the patched bytes are restored
+ * and the trampoline outlives its hook.
+ */
+
+static int failures = 0;
+
+#define EXPECT(condition) \
+    do { \
+        if (!(condition)) { \
+            fprintf(stderr, "%s:%d: expectation failed: %s\n", __FILE__, __LINE__, #condition); \
+            failures++; \
+        } \
+    } while (0)
+
+__attribute__((noinline)) int hookTarget(int value) {
+    int result = value;
+    for (int i = 0; i < (value & 7) + 1; i++) {
+        result = result * 31 + i;
+    }
+    return result;
+}
+
+static int (*originalTarget)(int) = nullptr;
+
+__attribute__((noinline)) int hookReplacement(int value) {
+    return originalTarget(value) + 1;
+}
+
+__attribute__((noinline)) int shortTarget() {
+    return 1;
+}
+
+int main() {
+    int (*volatile target)(int) = hookTarget;
+    int expected = target(5);
+
+    InlineHook hook;
+    for (int round = 0; round < 3; round++) {
+        void* backup = nullptr;
+        EXPECT(hook.installHook((void*)hookTarget, (void*)hookReplacement, &backup));
+        EXPECT(hook.isHookInstalled((void*)hookTarget));
+        originalTarget = (int (*)(int))backup;
+
+        EXPECT(target(5) == expected + 1);
+        EXPECT(originalTarget(5) == expected);
+
+        EXPECT(hook.uninstallHook((void*)hookTarget, backup));
+        EXPECT(!hook.isHookInstalled((void*)hookTarget));
+        EXPECT(target(5) == expected);
+        // A caller that saved the backup pointer can still use it
+        EXPECT(originalTarget(5) == expected);
+    }
+
+    // Double install is rejected
+    void* backup = nullptr;
+    EXPECT(hook.installHook((void*)hookTarget, (void*)hookReplacement, &backup));
+    EXPECT(!hook.installHook((void*)hookTarget, (void*)hookReplacement, &backup));
+    EXPECT(hook.uninstallHook((void*)hookTarget, backup));
+
+    // A body shorter than the jump must not be patched
+    int (*volatile shortFunction)() = shortTarget;
+    if (!hook.installHook((void*)shortTarget, (void*)hookReplacement, &backup)) {
+        EXPECT(shortFunction() == 1);
+    } else {
+        hook.uninstallHook((void*)shortTarget, backup);
+    }
+
+    if (failures == 0) {
+        printf("inline_hook_test: OK\n");
+    }
+    return failures == 0 ? 0 : 1;
+}
\ No newline at end of file
@@ -0,0 +1,85 @@
+#ifndef MOUNT_TABLE_BUILDER_H
+#define MOUNT_TABLE_BUILDER_H
+
+#include "include/mount_table.h"
+
+#include <cstring>
+#include <map>
+#include <string>
+#include <vector>
+
+/**
+ * Test-side encoder for the mount table payload. Mirrors
+ * com.terista.space.fs.MountTable, which is the encoder used on device.
+ */
+class MountTableBuilder {
+public:
+    MountTableBuilder& mount(int userId, const char* packageName, const std::string& prefix, const std::string& root) {
+        unsigned specificity = (packageName ? 2 : 0) + (userId != MOUNT_TABLE_ALL_USERS ? 1 : 0);
+        rules.push_back({userId, packageName != nullptr, packageName ? packageName : "", prefix, root, specificity});
+        return *this;
+    }
+
+    MountTableBuilder& exact(const std::string& path, const std::string& root) {
+        rules.push_back({MOUNT_TABLE_ALL_USERS, false, "", path, root, MOUNT_TABLE_EXACT});
+        return *this;
+    }
+
+    std::vector<uint8_t> build() const {
+        uint32_t entryCount = rules.size();
+        uint32_t bucketCount = 2;
+        while (bucketCount < entryCount * 2) bucketCount <<= 1;
+
+        size_t stringsStart = 8 + bucketCount * 4 + entryCount * sizeof(MountTableEntry);
+        std::string strings;
+        std::map<std::string, uint32_t> offsets;
+        auto intern = [&](const std::string& value) {
+            auto it = offsets.find(value);
+            if (it != offsets.end()) return it->second;
+            uint32_t offset = stringsStart + strings.size();
+            offsets[value] = offset;
+            strings += value;
+            return offset;
+        };
+
+        std::vector<uint32_t> buckets(bucketCount, 0);
+        std::vector<MountTableEntry> entries(entryCount);
+        for (uint32_t i = 0; i < entryCount; i++) {
+            const Rule& rule = rules[i];
+            MountTableEntry& entry = entries[i];
+            entry.hash = MountTable::hashUpdate(MountTable::HASH_SEED, rule.prefix.data(), rule.prefix.size());
+            entry.next = buckets[entry.hash & (bucketCount - 1)];
+            entry.userId = rule.userId;
+            entry.specificity = rule.specificity;
+            entry.prefixOffset = intern(rule.prefix);
+            entry.prefixLength = rule.prefix.size();
+            entry.rootOffset = intern(rule.root);
+            entry.rootLength = rule.root.size();
+            entry.packageOffset = rule.hasPackage ? intern(rule.packageName) : 0;
+            entry.packageLength = rule.hasPackage ? rule.packageName.size() : MOUNT_TABLE_ANY_PACKAGE;
+            buckets[entry.hash & (bucketCount - 1)] = i + 1;
+        }
+
+        std::vector<uint8_t> payload(stringsStart + strings.size());
+        memcpy(payload.data(), &entryCount, 4);
+        memcpy(payload.data() + 4, &bucketCount, 4);
+        memcpy(payload.data() + 8, buckets.data(), bucketCount * 4);
+        memcpy(payload.data() + 8 + bucketCount * 4, entries.data(), entryCount * sizeof(MountTableEntry));
+        memcpy(payload.data() + stringsStart, strings.data(), strings.size());
+        return payload;
+    }
+
+private:
+    struct Rule {
+        int userId;
+        bool hasPackage;
+        std::string packageName;
+        std::string prefix;
+        std::string root;
+        unsigned specificity;
+    };
+
+    std::vector<Rule> rules;
+};
+
+#endif // MOUNT_TABLE_BUILDER_H
\ No newline at end of file
@@ -0,0 +1,275 @@
+#include "include/mount_table.h"
+#include "mount_table_builder.h"
+
+#include <sys/stat.h>
+#include <sys/wait.h>
+#include <unistd.h>
+#include <atomic>
+#include <cstdio>
+#include <cstdlib>
+#include <cstring>
+#include <string>
+#include <thread>
+#include <vector>
+
+/**
+ * Host test for the shared-memory mount table and the path redirection hooks:
+ * normalization and matching in process, readers racing a republishing writer,
+ * readers surviving a restarted writer, and a child process running under the LD_PRELOAD hook library.
+ *
+ *   path_redirect_test <libterista_redirect_preload.so> <redirect_probe>
+ */
+
+static int failures = 0;
+
+#define EXPECT(condition) \
+    do { \
+        if (!(condition)) { \
+            fprintf(stderr, "%s:%d: expectation failed: %s\n", __FILE__, __LINE__, #condition); \
+            failures++; \
+        } \
+    } while (0)
+
+static std::string normalized(const char* path) {
+    char out[256];
+    return MountTable::normalize(path, out, sizeof(out)) ? out : "<fail>";
+}
+
+static std::string redirected(const MountTable& table, const char* path) {
+    char out[256];
+    const char* result = table.redirect(path, out, sizeof(out));
+    return result ? result : "<none>";
+}
+
+static void testNormalize() {
+    EXPECT(normalized("/") == "/");
+    EXPECT(normalized("//a//b/") == "/a/b");
+    EXPECT(normalized("/a/./b/../c") == "/a/c");
+    EXPECT(normalized("/..") == "/");
+    EXPECT(normalized("/a/b/../../..") == "/");
+    EXPECT(normalized("/a/...") == "/a/...");
+    EXPECT(normalized("relative") == "<fail>");
+}
+
+static void testRedirect(const std::string& tablePath) {
+    MountTable writer;
+    EXPECT(writer.create(tablePath, 64 * 1024));
+    std::vector<uint8_t> payload = MountTableBuilder()
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/data/data", "/real/global")
+        .mount(0, nullptr, "/data/data", "/real/user0")
+        .mount(0, "com.app", "/data/data/com.app", "/real/u0/com.app")
+        .mount(MOUNT_TABLE_ALL_USERS, "com.app", "/data/data/com.app", "/real/any/com.app")
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/sdcard", "/")
+        .exact("/etc/hosts", "/real/hosts")
+        .build();
+    EXPECT(writer.publish(payload.data(), payload.size()));
+
+    MountTable reader;
+    EXPECT(reader.attach(tablePath));
+    reader.setIdentity(0, "com.app");
+    EXPECT(redirected(reader, "/data/data/com.app/files/a") == "/real/u0/com.app/files/a");
+    EXPECT(redirected(reader, "/data/data/com.app") == "/real/u0/com.app");
+    EXPECT(redirected(reader, "/data/data/com.other/x") == "/real/user0/com.other/x");
+    EXPECT(redirected(reader, "/data/data/com.apps/x") == "/real/user0/com.apps/x");
+    EXPECT(redirected(reader, "/data//data/./com.app/../com.app/f") == "/real/u0/com.app/f");
+    EXPECT(redirected(reader, "/data/data/com.app/../../../etc/passwd") == "<none>");
+    EXPECT(redirected(reader, "/sdcard/DCIM/a.jpg") == "/DCIM/a.jpg");
+    EXPECT(redirected(reader, "/sdcard") == "/");
+    EXPECT(redirected(reader, "/etc/hosts") == "/real/hosts");
+    EXPECT(redirected(reader, "/etc/hosts/x") == "<none>");
+    EXPECT(redirected(reader, "/system/lib") == "<none>");
+    EXPECT(redirected(reader, "relative/path") == "<none>");
+
+    reader.setIdentity(10, "com.app");
+    EXPECT(redirected(reader, "/data/data/com.app/f") == "/real/any/com.app/f");
+    EXPECT(redirected(reader, "/data/data/com.other/f") == "/real/global/com.other/f");
+
+    // A root mount applies below every deeper miss
+    std::vector<uint8_t> root = MountTableBuilder()
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/", "/chroot")
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/proc", "/proc")
+        .build();
+    EXPECT(writer.publish(root.data(), root.size()));
+    EXPECT(redirected(reader, "/") == "/chroot");
+    EXPECT(redirected(reader, "/data/x") == "/chroot/data/x");
+    EXPECT(redirected(reader, "/proc/self/maps") == "/proc/self/maps");
+
+    // Oversized payloads are rejected and the previous table stays active
+    std::vector<uint8_t> huge(128 * 1024);
+    EXPECT(!writer.publish(huge.data(), huge.size()));
+    EXPECT(redirected(reader, "/data/x") == "/chroot/data/x");
+
+    // Garbage payloads must not crash the reader
+    std::vector<uint8_t> garbage(4096);
+    for (size_t i = 0; i < garbage.size(); i++) garbage[i] = (uint8_t)(i * 2654435761u >> 13);
+    EXPECT(writer.publish(garbage.data(), garbage.size()));
+    redirected(reader, "/data/data/com.app/f");
+}
+
+static void testConcurrentPublish(const std::string& tablePath) {
+    MountTable writer;
+    EXPECT(writer.create(tablePath, 64 * 1024));
+    std::vector<uint8_t> tables[2];
+    for (int t = 0; t < 2; t++) {
+        MountTableBuilder builder;
+        for (int i = 0; i < 200; i++) {
+            std::string name = "/data/data/com.app" + std::to_string(i);
+            builder.mount(MOUNT_TABLE_ALL_USERS, nullptr, name, "/real" + std::to_string(t) + name);
+        }
+        tables[t] = builder.build();
+    }
+    EXPECT(writer.publish(tables[0].data(), tables[0].size()));
+
+    MountTable reader;
+    EXPECT(reader.attach(tablePath));
+    reader.setIdentity(0, "com.app7");
+
+    std::atomic<bool> running(true);
+    std::atomic<int> bad(0);
+    std::atomic<long> reads(0);
+    std::thread readers[4];
+    for (std::thread& thread : readers) {
+        thread = std::thread([&] {
+            while (running.load(std::memory_order_relaxed)) {
+                std::string result = redirected(reader, "/data/data/com.app7/files/db");
+                if (result != "/real0/data/data/com.app7/files/db" && result != "/real1/data/data/com.app7/files/db") {
+                    bad++;
+                }
+                reads++;
+            }
+        });
+    }
+    for (int i = 0; i < 20000; i++) {
+        EXPECT(writer.publish(tables[i & 1].data(), tables[i & 1].size()));
+    }
+    running = false;
+    for (std::thread& thread : readers) thread.join();
+
+    EXPECT(bad == 0);
+    EXPECT(reads > 0);
+    EXPECT(reader.getGeneration() == 20001);
+}
+
+static void testRecreate(const std::string& tablePath) {
+    std::vector<uint8_t> first = MountTableBuilder()
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/data/data", "/first")
+        .build();
+    std::vector<uint8_t> second = MountTableBuilder()
+        .mount(MOUNT_TABLE_ALL_USERS, nullptr, "/data/data", "/second")
+        .build();
+    MountTable reader;
+    {
+        MountTable writer;
+        EXPECT(writer.create(tablePath, 16 * 1024));
+        EXPECT(writer.publish(first.data(), first.size()));
+        EXPECT(reader.attach(tablePath));
+        reader.setIdentity(0, "com.app");
+    }
+    struct stat before;
+    EXPECT(stat(tablePath.c_str(), &before) == 0);
+
+    // A restarted engine process with the same layout keeps the file and its readers
+    MountTable restarted;
+    EXPECT(restarted.create(tablePath, 16 * 1024));
+    struct stat after;
+    EXPECT(stat(tablePath.c_str(), &after) == 0);
+    EXPECT(after.st_ino == before.st_ino && after.st_size == before.st_size);
+    EXPECT(redirected(reader, "/data/data/x") == "/first/x");
+    EXPECT(restarted.publish(second.data(), second.size()));
+    EXPECT(redirected(reader, "/data/data/x") == "/second/x");
+    EXPECT(reader.getGeneration() == 2);
+
+    // A different layout retires the mapped file instead of truncating it
+    MountTable resized;
+    EXPECT(resized.create(tablePath, 32 * 1024));
+    EXPECT(resized.publish(first.data(), first.size()));
+    EXPECT(stat(tablePath.c_str(), &after) == 0);
+    EXPECT(after.st_ino != before.st_ino);
+    EXPECT(redirected(reader, "/data/data/x") == "<none>");
+
+    MountTable fresh;
+    EXPECT(fresh.attach(tablePath));
+    fresh.setIdentity(0, "com.app");
+    EXPECT(redirected(fresh, "/data/data/x") == "/first/x");
+    EXPECT(access((tablePath + ".tmp").c_str(), F_OK) != 0);
+}
+
+static std::string runProbe(const char* preload, const char* probe, const std::string& tablePath,
+                            const char* userId, const char* packageName, const std::string& path) {
+    int fds[2];
+    if (pipe(fds) != 0) return "<pipe>";
+    pid_t pid = fork();
+    if (pid == 0) {
+        dup2(fds[1], STDOUT_FILENO);
+        close(fds[0]);
+        close(fds[1]);
+        setenv("LD_PRELOAD", preload, 1);
+        setenv("TERISTA_MOUNT_TABLE", tablePath.c_str(), 1);
+        setenv("TERISTA_USER_ID", userId, 1);
+        setenv("TERISTA_PACKAGE", packageName, 1);
+        execl(probe, probe, path.c_str(), (char*)nullptr);
+        _exit(127);
+    }
+    close(fds[1]);
+    std::string output;
+    char buffer[256];
+    ssize_t length;
+    while ((length = read(fds[0], buffer, sizeof(buffer))) > 0) {
+        output.append(buffer, length);
+    }
+    close(fds[0]);
+    int status = 0;
+    waitpid(pid, &status, 0);
+    if (!WIFEXITED(status) || WEXITSTATUS(status) != 0) return "<exit>";
+    if (!output.empty() && output.back() == '\n') output.pop_back();
+    return output;
+}
+
+static void testPreload(const char* preload, const char* probe, const std::string& directory) {
+    std::string real = directory + "/real";
+    std::string appData = real + "/com.app";
+    mkdir(real.c_str(), 0755);
+    mkdir(appData.c_str(), 0755);
+    FILE* file = fopen((appData + "/greeting").c_str(), "w");
+    fputs("hello", file);
+    fclose(file);
+
+    std::string tablePath = directory + "/mounts";
+    MountTable writer;
+    EXPECT(writer.create(tablePath, 16 * 1024));
+    std::vector<uint8_t> payload = MountTableBuilder()
+        .mount(0, "com.app", "/data/data/com.app", appData)
+        .build();
+    EXPECT(writer.publish(payload.data(), payload.size()));
+
+    std::string path = "/data/data/com.app/greeting";
+    EXPECT(runProbe(preload, probe, tablePath, "0", "com.app", path) == path + " open=hello stat=5 access=0");
+    EXPECT(runProbe(preload, probe, tablePath, "1", "com.app", path) == path + " open=-1 stat=-1 access=-1");
+    EXPECT(runProbe(preload, probe, tablePath, "0", "com.other", path) == path + " open=-1 stat=-1 access=-1");
+}
+
+int main(int argc, char** argv) {
+    char directory[] = "/tmp/path_redirect_test.XXXXXX";
+    if (!mkdtemp(directory)) {
+        perror("mkdtemp");
+        return 1;
+    }
+
+    testNormalize();
+    testRedirect(std::string(directory) + "/table");
+    testConcurrentPublish(std::string(directory) + "/concurrent");
+    testRecreate(std::string(directory) + "/recreate");
+    if (argc >= 3) {
+        testPreload(argv[1], argv[2], directory);
+    } else {
+        fprintf(stderr, "path_redirect_test: no preload library given, skipping LD_PRELOAD test\n");
+    }
+
+    std::string cleanup = std::string("rm -rf ") + directory;
+    system(cleanup.c_str());
+
+    if (failures == 0) {
+        printf("path_redirect_test: OK\n");
+    }
+    return failures == 0 ? 0 : 1;
+}
\ No newline at end of file
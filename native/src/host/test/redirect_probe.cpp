@@ -0,0 +1,30 @@
+#include <fcntl.h>
+#include <sys/stat.h>
+#include <unistd.h>
+#include <cstdio>
+
+/**
+ * Child process for path_redirect_test: touches each argument through the
+ * hooked libc calls and prints one line per path.
+ *
+ *   <path> open=<first bytes or -1> stat=<size or -1> access=<0 or -1>
+ */
+int main(int argc, char** argv) {
+    for (int i = 1; i < argc; i++) {
+        const char* path = argv[i];
+
+        char content[64] = "-1";
+        int fd = open(path, O_RDONLY);
+        if (fd >= 0) {
+            ssize_t length = read(fd, content, sizeof(content) - 1);
+            content[length > 0 ? length : 0] = '\0';
+            close(fd);
+        }
+
+        struct stat st;
+        long size = stat(path, &st) == 0 ? (long)st.st_size : -1;
+
+        printf("%s open=%s stat=%ld access=%d\n", path, content, size, access(path, R_OK));
+    }
+    return 0;
+}
\ No newline at end of file
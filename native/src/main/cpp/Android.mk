@@ -10,6 +10,10 @@ LOCAL_SRC_FILES := \
     inline_hook.cpp \
     binder_hook.cpp \
     symbol_resolver.cpp \
+    mount_table.cpp \
+    path_redirect.cpp \
+    file_copy.cpp \
+    service_dispatch.cpp \
     jni_bridge.cpp
 
 LOCAL_C_INCLUDES := \
@@ -1,5 +1,5 @@
 APP_ABI := arm64-v8a armeabi-v7a
-APP_PLATFORM := android-24
+APP_PLATFORM := android-26
 APP_STL := c++_static
 APP_CPPFLAGS := -std=c++17 -fexceptions -frtti
 APP_CFLAGS := -DANDROID -ffunction-sections -fdata-sections
@@ -1,31 +1,113 @@
+#define LOG_TAG "BinderHook"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+
 #include "include/binder_hook.h"
 #include "include/terista_native.h"
+#include "include/service_dispatch.h"
 #include <android/log.h>
 #include <sys/ioctl.h>
 #include <unistd.h>
 #include <fcntl.h>
 #include <cstring>
-
-#define LOG_TAG "BinderHook"
-#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
-#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
-#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
-
-// Binder ioctl commands
-#define BINDER_WRITE_READ _IOWR('b', 1, struct binder_write_read)
-#define BINDER_SET_IDLE_TIMEOUT _IOW('b', 3, __u64)
-#define BINDER_SET_MAX_THREADS _IOW('b', 5, __u32)
-#define BINDER_SET_IDLE_PRIORITY _IOW('b', 6, __s32)
-#define BINDER_SET_CONTEXT_MGR _IOW('b', 7, __s32)
-#define BINDER_THREAD_EXIT _IOW('b', 8, __s32)
-#define BINDER_VERSION _IOWR('b', 9, struct binder_version)
+#include <cstdio>
+#include <algorithm>
+#include <cstdlib>
+#include <ctime>
+#ifdef __ANDROID__
+#include <sys/system_properties.h>
+#endif
 
 // Static member definitions
 int (*BinderHook::original_ioctl)(int fd, unsigned long request, void* arg) = nullptr;
 ssize_t (*BinderHook::original_write)(int fd, const void* buf, size_t count) = nullptr;
 ssize_t (*BinderHook::original_read)(int fd, void* buf, size_t count) = nullptr;
+BinderHook* BinderHook::activeHook = nullptr;
+std::atomic<uint64_t> BinderHook::localCalls(0);
+std::atomic<uint64_t> BinderHook::localNanos(0);
+std::atomic<uint64_t> BinderHook::passThroughCalls(0);
+std::atomic<uint64_t> BinderHook::passThroughNanos(0);
+
+// Start of the pass-through transaction this thread is waiting on, 0 if none
+static thread_local uint64_t pendingTransactionSince = 0;
+
+// Set while this thread runs a Java handler, see BinderHook::DispatchScope
+static thread_local bool dispatching = false;
+
+// Pass-through call whose reply the dispatcher wants to cache, serviceId -1 if none
+struct PendingReply {
+    int serviceId = -1;
+    uint32_t code = 0;
+    binder_uintptr_t data = 0;
+    size_t dataSize = 0;
+};
+static thread_local PendingReply pendingReply;
+
+static uint64_t nowNanos() {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec * 1000000000ULL + (uint64_t)ts.tv_nsec;
+}
+
+// BC_* and BR_* commands encode their payload size like ioctl numbers
+static size_t commandSize(uint32_t cmd) {
+    return sizeof(uint32_t) + _IOC_SIZE(cmd);
+}
+
+// Words written by Parcel::writeInterfaceToken before the descriptor:
+// strict mode policy, then work source uid (Q+) and environment header (R+)
+static size_t interfaceHeaderWords() {
+    static const size_t words = [] {
+        int sdk = 35;
+#ifdef __ANDROID__
+        char value[PROP_VALUE_MAX] = {0};
+        if (__system_property_get("ro.build.version.sdk", value) > 0) {
+            sdk = atoi(value);
+        }
+#endif
+        return (size_t)(1 + (sdk >= 29 ? 1 : 0) + (sdk >= 30 ? 1 : 0));
+    }();
+    return words;
+}
+
+// Handle slot value: generation in the high word, service ID + 2 in the low word, 0 when empty
+static uint64_t handleEntry(uint32_t generation, int serviceId) {
+    return ((uint64_t)generation << 32) | (uint32_t)(serviceId + 2);
+}
+
+static uint64_t handleKey(int fd, uint32_t handle) {
+    return ((uint64_t)(uint32_t)fd << 32) | handle;
+}
+
+// Cached device kind of a descriptor
+enum DeviceKind : uint8_t {
+    DEVICE_UNKNOWN = 0,
+    DEVICE_BINDER = 1,
+    DEVICE_OTHER = 2
+};
+
+BinderHook::DispatchScope::DispatchScope() : outer(!dispatching) {
+    dispatching = true;
+}
+
+BinderHook::DispatchScope::~DispatchScope() {
+    if (outer) {
+        dispatching = false;
+    }
+}
+
+bool BinderHook::DispatchScope::isActive() {
+    return dispatching;
+}
 
-BinderHook::BinderHook() : hooksInstalled(false) {
+BinderHook::BinderHook() : hooksInstalled(false), slotsFd(-1), localBufferCount(0) {
+    for (auto& kind : deviceKinds) {
+        kind.store(DEVICE_UNKNOWN, std::memory_order_relaxed);
+    }
+    for (auto& slot : handleSlots) {
+        slot.store(0, std::memory_order_relaxed);
+    }
     setupDefaultFilters();
     LOGD("BinderHook initialized");
 }
@@ -72,6 +154,7 @@ bool BinderHook::installHooks() {
     }
     original_read = (ssize_t(*)(int, void*, size_t))readBackup;
     
+    activeHook = this;
     hooksInstalled = true;
     LOGI("Binder hooks installed successfully");
     return true;
@@ -87,9 +170,11 @@ void BinderHook::uninstallHooks() {
     native->uninstallHook("write");
     native->uninstallHook("read");
     
-    original_ioctl = nullptr;
-    original_write = nullptr;
-    original_read = nullptr;
+    if (activeHook == this) {
+        activeHook = nullptr;
+    }
+    // The originals stay valid: a thread may still be inside a hook, and
+    // trampolines are never unmapped, so calling through them stays safe
     
     hooksInstalled = false;
     LOGI("Binder hooks uninstalled");
@@ -138,14 +223,14 @@ bool BinderHook::removeTransactionFilter(const std::string& serviceName) {
 }
 
 int BinderHook::hooked_ioctl(int fd, unsigned long request, void* arg) {
-    // Check if this is a binder device
-    if (request == BINDER_WRITE_READ) {
-        LOGD("Intercepted binder ioctl: fd=%d, request=0x%lx", fd, request);
-        
-        // Process binder transaction if needed
-        // For now, just log and pass through
-        
-        // TODO: Parse binder_write_read structure and filter transactions
+    // Every binder call of the process goes through here; keep it free of logging
+    BinderHook* hook = activeHook;
+    if (request == BINDER_WRITE_READ && arg != nullptr && hook != nullptr) {
+        return hook->writeRead(fd, (binder_write_read*)arg);
+    }
+    if (request == BINDER_VERSION && hook != nullptr) {
+        // Binder fds are queried for the version right after open: the number may be reused
+        hook->forgetDevice(fd);
     }
     
     // Call original ioctl
@@ -219,30 +304,403 @@ bool BinderHook::processTransaction(BinderTransaction& transaction) {
     return true;
 }
 
-bool BinderHook::allowService(const std::string& serviceName) {
-    auto it = serviceFilters.find(serviceName);
-    if (it != serviceFilters.end()) {
-        return it->second;
+int BinderHook::writeRead(int fd, binder_write_read* bwr) {
+    if (dispatching || !isBinderDevice(fd)) {
+        // A handler's own binder call, or hwbinder/vndbinder: never dispatch it
+        return original_ioctl ? original_ioctl(fd, BINDER_WRITE_READ, bwr) : -1;
+    }
+    uint64_t start = nowNanos();
+    if (answerLocally(fd, bwr)) {
+        localCalls.fetch_add(1, std::memory_order_relaxed);
+        localNanos.fetch_add(nowNanos() - start, std::memory_order_relaxed);
+        return 0;
+    }
+    if (!original_ioctl) {
+        return -1;
     }
     
-    // Default to allow if no specific filter
+    // Look at the outgoing commands: forget handles the app lets go of, note
+    // whether a reply is awaited, and find frees of replies answered in-process
+    const uint8_t* commands = (const uint8_t*)(uintptr_t)bwr->write_buffer;
+    bool awaitsReply = false;
+    bool freesLocalBuffer = false;
+    for (size_t offset = bwr->write_consumed; offset + sizeof(uint32_t) <= bwr->write_size;) {
+        uint32_t cmd;
+        memcpy(&cmd, commands + offset, sizeof(cmd));
+        size_t size = commandSize(cmd);
+        if (offset + size > bwr->write_size) break;
+        const uint8_t* payload = commands + offset + sizeof(cmd);
+        if (cmd == BC_RELEASE || cmd == BC_DECREFS) {
+            uint32_t handle;
+            memcpy(&handle, payload, sizeof(handle));
+            forgetHandle(fd, handle);
+        } else if (cmd == BC_TRANSACTION || cmd == BC_TRANSACTION_SG) {
+            // binder_transaction_data_sg starts with binder_transaction_data
+            binder_transaction_data tr;
+            memcpy(&tr, payload, sizeof(tr));
+            awaitsReply = (tr.flags & TF_ONE_WAY) == 0;
+            if (pendingReply.data != tr.data.ptr.buffer) {
+                // Not the call answerLocally asked to see the reply of
+                pendingReply.serviceId = -1;
+            }
+        } else if (cmd == BC_FREE_BUFFER) {
+            binder_uintptr_t buffer;
+            memcpy(&buffer, payload, sizeof(buffer));
+            freesLocalBuffer = freesLocalBuffer || isLocalBuffer(buffer);
+        }
+        offset += size;
+    }
+    
+    int result;
+    size_t readStart = bwr->read_consumed;
+    if (!freesLocalBuffer) {
+        result = original_ioctl(fd, BINDER_WRITE_READ, bwr);
+    } else {
+        // The driver never saw those buffers: drop their frees and map what
+        // it consumed of the remaining commands back onto the original buffer
+        std::vector<uint8_t> forwardedCommands;
+        std::vector<std::pair<size_t, size_t>> consumedOffsets;
+        for (size_t offset = bwr->write_consumed; offset + sizeof(uint32_t) <= bwr->write_size;) {
+            uint32_t cmd;
+            memcpy(&cmd, commands + offset, sizeof(cmd));
+            size_t size = std::min(commandSize(cmd), (size_t)bwr->write_size - offset);
+            bool local = false;
+            if (cmd == BC_FREE_BUFFER && size == commandSize(cmd)) {
+                binder_uintptr_t buffer;
+                memcpy(&buffer, commands + offset + sizeof(cmd), sizeof(buffer));
+                local = releaseLocalBuffer(buffer);
+            }
+            if (!local) {
+                forwardedCommands.insert(forwardedCommands.end(), commands + offset, commands + offset + size);
+            }
+            offset += size;
+            consumedOffsets.emplace_back(forwardedCommands.size(), offset);
+        }
+        
+        binder_write_read forwarded = *bwr;
+        forwarded.write_buffer = (binder_uintptr_t)(uintptr_t)forwardedCommands.data();
+        forwarded.write_size = forwardedCommands.size();
+        forwarded.write_consumed = 0;
+        result = original_ioctl(fd, BINDER_WRITE_READ, &forwarded);
+        
+        binder_size_t consumed = bwr->write_consumed;
+        for (const auto& offsets : consumedOffsets) {
+            if (offsets.first > forwarded.write_consumed) break;
+            consumed = offsets.second;
+        }
+        bwr->write_consumed = consumed;
+        bwr->read_consumed = forwarded.read_consumed;
+    }
+    
+    // Pass-through latency runs from sending the transaction to reading its reply
+    if (awaitsReply) {
+        pendingTransactionSince = start;
+    }
+    if (pendingTransactionSince != 0 && result >= 0) {
+        const uint8_t* returns = (const uint8_t*)(uintptr_t)bwr->read_buffer;
+        for (size_t offset = readStart; offset + sizeof(uint32_t) <= bwr->read_consumed;) {
+            uint32_t cmd;
+            memcpy(&cmd, returns + offset, sizeof(cmd));
+            if (cmd == BR_REPLY || cmd == BR_DEAD_REPLY || cmd == BR_FAILED_REPLY) {
+                passThroughCalls.fetch_add(1, std::memory_order_relaxed);
+                passThroughNanos.fetch_add(nowNanos() - pendingTransactionSince, std::memory_order_relaxed);
+                pendingTransactionSince = 0;
+                if (cmd == BR_REPLY && pendingReply.serviceId >= 0 &&
+                    offset + commandSize(cmd) <= bwr->read_consumed) {
+                    storeReply(returns + offset + sizeof(cmd));
+                }
+                pendingReply.serviceId = -1;
+                break;
+            }
+            offset += commandSize(cmd);
+        }
+    }
+    return result;
+}
+
+void BinderHook::storeReply(const uint8_t* payload) {
+    binder_transaction_data tr;
+    memcpy(&tr, payload, sizeof(tr));
+    // Status-only replies and replies carrying binders or fds cannot be replayed
+    if ((tr.flags & TF_STATUS_CODE) != 0 || tr.offsets_size != 0) {
+        return;
+    }
+    DispatchScope scope;
+    ServiceDispatch::getInstance()->storeReply(pendingReply.serviceId, pendingReply.code,
+                                               (const void*)(uintptr_t)pendingReply.data, pendingReply.dataSize,
+                                               (const void*)(uintptr_t)tr.data.ptr.buffer, tr.data_size);
+}
+
+bool BinderHook::answerLocally(int fd, binder_write_read* bwr) {
+    if (bwr->write_size <= bwr->write_consumed || bwr->read_size <= bwr->read_consumed) {
+        return false;
+    }
+    
+    // IPCThreadState queues the transaction last. Frees of replies answered
+    // here may precede it; any other command needs the driver, so let it all through
+    const uint8_t* commands = (const uint8_t*)(uintptr_t)bwr->write_buffer;
+    size_t transactionOffset = 0;
+    bool found = false;
+    for (size_t offset = bwr->write_consumed; offset + sizeof(uint32_t) <= bwr->write_size;) {
+        uint32_t cmd;
+        memcpy(&cmd, commands + offset, sizeof(cmd));
+        size_t size = commandSize(cmd);
+        if (offset + size > bwr->write_size) {
+            return false;
+        }
+        if (cmd == BC_TRANSACTION && offset + size == bwr->write_size) {
+            transactionOffset = offset;
+            found = true;
+            break;
+        }
+        if (cmd != BC_FREE_BUFFER) {
+            return false;
+        }
+        binder_uintptr_t buffer;
+        memcpy(&buffer, commands + offset + sizeof(cmd), sizeof(buffer));
+        if (!isLocalBuffer(buffer)) {
+            return false;
+        }
+        offset += size;
+    }
+    if (!found) {
+        return false;
+    }
+    
+    binder_transaction_data tr;
+    memcpy(&tr, commands + transactionOffset + sizeof(uint32_t), sizeof(tr));
+    bool oneway = (tr.flags & TF_ONE_WAY) != 0;
+    size_t returnSize = sizeof(uint32_t) + (oneway ? 0 : sizeof(uint32_t) + sizeof(binder_transaction_data));
+    if (bwr->read_size - bwr->read_consumed < returnSize) {
+        return false;
+    }
+    
+    const void* data = (const void*)(uintptr_t)tr.data.ptr.buffer;
+    int serviceId = serviceIdOfHandle(fd, tr.target.handle, data, tr.data_size);
+    if (serviceId < 0) {
+        return false;
+    }
+    
+    static thread_local std::vector<uint8_t> reply(VIRTUAL_REPLY_CAPACITY);
+    // Rare replies larger than the per-thread buffer get one of their own for this call
+    std::vector<uint8_t> largeReply;
+    const uint8_t* replyData = reply.data();
+    int length;
+    {
+        DispatchScope scope;
+        length = ServiceDispatch::getInstance()->dispatch(serviceId, tr.code, tr.flags, data, tr.data_size,
+                                                          reply.data(), reply.size());
+        if (length > (int)reply.size() && length <= VIRTUAL_REPLY_LIMIT) {
+            largeReply.resize(length);
+            length = ServiceDispatch::getInstance()->dispatch(serviceId, tr.code, tr.flags, data, tr.data_size,
+                                                              largeReply.data(), largeReply.size());
+            replyData = largeReply.data();
+        }
+    }
+    if (length == SERVICE_DISPATCH_FETCH_REPLY && !oneway) {
+        // Let the call through; its reply is handed back once it arrives
+        pendingReply.serviceId = serviceId;
+        pendingReply.code = tr.code;
+        pendingReply.data = tr.data.ptr.buffer;
+        pendingReply.dataSize = tr.data_size;
+    }
+    if (length < 0 || length > (int)std::max(reply.size(), largeReply.size())) {
+        return false;
+    }
+    
+    // The app hands the reply back with BC_FREE_BUFFER as if the driver owned it
+    void* replyBuffer = nullptr;
+    if (!oneway) {
+        replyBuffer = malloc(length > 0 ? length : 1);
+        if (replyBuffer == nullptr) {
+            return false;
+        }
+        memcpy(replyBuffer, replyData, length);
+    }
+    
+    for (size_t offset = bwr->write_consumed; offset < transactionOffset; offset += commandSize(BC_FREE_BUFFER)) {
+        binder_uintptr_t buffer;
+        memcpy(&buffer, commands + offset + sizeof(uint32_t), sizeof(buffer));
+        releaseLocalBuffer(buffer);
+    }
+    
+    // Return commands as the driver would write them for a completed call
+    uint8_t* returns = (uint8_t*)(uintptr_t)bwr->read_buffer + bwr->read_consumed;
+    uint32_t cmd = BR_TRANSACTION_COMPLETE;
+    memcpy(returns, &cmd, sizeof(cmd));
+    if (!oneway) {
+        binder_transaction_data replyTr;
+        // Like the driver, no sender pid for a reply; IPCThreadState reads only the data
+        memset(&replyTr, 0, sizeof(replyTr));
+        replyTr.data_size = length;
+        replyTr.data.ptr.buffer = (binder_uintptr_t)(uintptr_t)replyBuffer;
+        cmd = BR_REPLY;
+        memcpy(returns + sizeof(uint32_t), &cmd, sizeof(cmd));
+        memcpy(returns + 2 * sizeof(uint32_t), &replyTr, sizeof(replyTr));
+        
+        std::lock_guard<std::mutex> lock(localBuffersMutex);
+        localBuffers.insert(replyTr.data.ptr.buffer);
+        localBufferCount.store(localBuffers.size(), std::memory_order_release);
+    }
+    
+    bwr->write_consumed = bwr->write_size;
+    bwr->read_consumed += returnSize;
     return true;
 }
 
+int BinderHook::serviceIdOfHandle(int fd, uint32_t handle, const void* data, size_t size) {
+    ServiceDispatch* dispatch = ServiceDispatch::getInstance();
+    uint32_t generation = dispatch->getGeneration();
+    // The first binder fd seen owns the lock-free slots
+    int owner = slotsFd.load(std::memory_order_acquire);
+    if (owner < 0 && slotsFd.compare_exchange_strong(owner, fd, std::memory_order_acq_rel)) {
+        owner = fd;
+    }
+    bool slotted = owner == fd && handle < BINDER_HANDLE_SLOTS;
+    // Entries learned before services last changed are stale
+    uint64_t entry = 0;
+    if (slotted) {
+        entry = handleSlots[handle].load(std::memory_order_acquire);
+    } else {
+        std::lock_guard<std::mutex> lock(handlesMutex);
+        auto it = otherHandles.find(handleKey(fd, handle));
+        entry = it != otherHandles.end() ? it->second : 0;
+    }
+    if (entry != 0 && (uint32_t)(entry >> 32) == generation) {
+        return (int)(uint32_t)entry - 2;
+    }
+    
+    // Learn the handle from the interface token of its first parsable call
+    size_t headerSize = interfaceHeaderWords() * sizeof(int32_t);
+    if (data == nullptr || size < headerSize + sizeof(int32_t)) {
+        return -1;
+    }
+    int32_t length;
+    memcpy(&length, (const uint8_t*)data + headerSize, sizeof(length));
+    size_t available = (size - headerSize - sizeof(length)) / sizeof(char16_t);
+    if (length <= 0 || (size_t)length > available) {
+        // Meta transactions (ping, interface query) carry no token
+        return -1;
+    }
+    std::u16string descriptor((size_t)length, u'\0');
+    memcpy(&descriptor[0], (const uint8_t*)data + headerSize + sizeof(length), length * sizeof(char16_t));
+    int serviceId = dispatch->serviceIdOfDescriptor(descriptor);
+    
+    // Tagged with the generation read before the lookup, so a concurrent change leaves it stale
+    if (slotted) {
+        handleSlots[handle].store(handleEntry(generation, serviceId), std::memory_order_release);
+    } else {
+        std::lock_guard<std::mutex> lock(handlesMutex);
+        otherHandles[handleKey(fd, handle)] = handleEntry(generation, serviceId);
+    }
+    return serviceId;
+}
+
+void BinderHook::forgetHandle(int fd, uint32_t handle) {
+    if (handle < BINDER_HANDLE_SLOTS && slotsFd.load(std::memory_order_acquire) == fd) {
+        handleSlots[handle].store(0, std::memory_order_release);
+        return;
+    }
+    std::lock_guard<std::mutex> lock(handlesMutex);
+    otherHandles.erase(handleKey(fd, handle));
+}
+
 bool BinderHook::isBinderDevice(int fd) {
-    // Check if fd points to /dev/binder or similar
+    if (fd >= 0 && fd < BINDER_FD_SLOTS) {
+        uint8_t kind = deviceKinds[fd].load(std::memory_order_acquire);
+        if (kind != DEVICE_UNKNOWN) {
+            return kind == DEVICE_BINDER;
+        }
+    } else if (fd < 0) {
+        return false;
+    }
+    
     char fdPath[64];
     char linkTarget[256];
-    
     snprintf(fdPath, sizeof(fdPath), "/proc/self/fd/%d", fd);
-    
     ssize_t len = readlink(fdPath, linkTarget, sizeof(linkTarget) - 1);
+    bool binder = false;
     if (len > 0) {
         linkTarget[len] = '\0';
-        return strstr(linkTarget, "binder") != nullptr;
+        binder = isBinderDevicePath(linkTarget);
+    }
+    setBinderDevice(fd, binder);
+    return binder;
+}
+
+void BinderHook::setBinderDevice(int fd, bool binder) {
+    if (fd >= 0 && fd < BINDER_FD_SLOTS) {
+        deviceKinds[fd].store(binder ? DEVICE_BINDER : DEVICE_OTHER, std::memory_order_release);
+    }
+}
+
+void BinderHook::forgetDevice(int fd) {
+    if (fd >= 0 && fd < BINDER_FD_SLOTS) {
+        deviceKinds[fd].store(DEVICE_UNKNOWN, std::memory_order_release);
+    }
+    // Handles learned on an earlier open of the same number mean nothing now
+    int owner = fd;
+    if (slotsFd.compare_exchange_strong(owner, -1, std::memory_order_acq_rel)) {
+        for (auto& slot : handleSlots) {
+            slot.store(0, std::memory_order_relaxed);
+        }
+    }
+    std::lock_guard<std::mutex> lock(handlesMutex);
+    for (auto it = otherHandles.begin(); it != otherHandles.end();) {
+        it = (uint32_t)(it->first >> 32) == (uint32_t)fd ? otherHandles.erase(it) : std::next(it);
+    }
+}
+
+bool BinderHook::isBinderDevicePath(const char* path) {
+    // The framework context only: /dev/binder, or its binderfs node on Android 10+
+    return strcmp(path, "/dev/binder") == 0 || strcmp(path, "/dev/binderfs/binder") == 0;
+}
+
+bool BinderHook::isLocalBuffer(binder_uintptr_t buffer) {
+    if (localBufferCount.load(std::memory_order_acquire) == 0) {
+        return false;
+    }
+    std::lock_guard<std::mutex> lock(localBuffersMutex);
+    return localBuffers.count(buffer) > 0;
+}
+
+bool BinderHook::releaseLocalBuffer(binder_uintptr_t buffer) {
+    if (localBufferCount.load(std::memory_order_acquire) == 0) {
+        return false;
+    }
+    std::lock_guard<std::mutex> lock(localBuffersMutex);
+    if (localBuffers.erase(buffer) == 0) {
+        return false;
+    }
+    localBufferCount.store(localBuffers.size(), std::memory_order_release);
+    free((void*)(uintptr_t)buffer);
+    return true;
+}
+
+BinderCallStats BinderHook::getCallStats() {
+    BinderCallStats stats;
+    stats.localCalls = localCalls.load(std::memory_order_relaxed);
+    stats.localNanos = localNanos.load(std::memory_order_relaxed);
+    stats.passThroughCalls = passThroughCalls.load(std::memory_order_relaxed);
+    stats.passThroughNanos = passThroughNanos.load(std::memory_order_relaxed);
+    return stats;
+}
+
+void BinderHook::resetCallStats() {
+    localCalls.store(0, std::memory_order_relaxed);
+    localNanos.store(0, std::memory_order_relaxed);
+    passThroughCalls.store(0, std::memory_order_relaxed);
+    passThroughNanos.store(0, std::memory_order_relaxed);
+}
+
+bool BinderHook::allowService(const std::string& serviceName) {
+    auto it = serviceFilters.find(serviceName);
+    if (it != serviceFilters.end()) {
+        return it->second;
     }
     
-    return false;
+    // Default to allow if no specific filter
+    return true;
 }
 
 std::string BinderHook::getServiceName(const void* data, size_t size) {
@@ -0,0 +1,116 @@
+#include "include/file_copy.h"
+#include <android/log.h>
+#include <errno.h>
+#include <fcntl.h>
+#include <linux/fs.h>
+#include <sys/ioctl.h>
+#include <sys/stat.h>
+#include <sys/syscall.h>
+#include <unistd.h>
+#include <algorithm>
+#include <cstring>
+
+#define LOG_TAG "FileCopy"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+
+#ifndef FICLONE
+#define FICLONE _IOW(0x94, 9, int)
+#endif
+
+// Large requests are split by the kernel anyway; bound each call so a
+// signal never has to wait for gigabytes
+#define COPY_CHUNK_SIZE (64 * 1024 * 1024)
+
+static bool isUnsupported(int error) {
+    // ENOSYS: old kernel, EXDEV: cross-filesystem before 5.3,
+    // EINVAL/EOPNOTSUPP: filesystem or file type cannot do it,
+    // EPERM: refused by a seccomp filter or for a swap file; plain read/write may still work
+    return error == ENOSYS || error == EXDEV || error == EINVAL || error == EOPNOTSUPP || error == EPERM;
+}
+
+int64_t FileCopy::copyRange(int sourceFd, int64_t sourceOffset, int targetFd, int64_t targetOffset, int64_t length) {
+#ifdef __NR_copy_file_range
+    int64_t copied = 0;
+    while (copied < length) {
+        loff_t in = sourceOffset + copied;
+        loff_t out = targetOffset + copied;
+        size_t request = (size_t)std::min<int64_t>(length - copied, COPY_CHUNK_SIZE);
+        long result = syscall(__NR_copy_file_range, sourceFd, &in, targetFd, &out, request, 0);
+        if (result < 0) {
+            if (errno == EINTR) continue;
+            if (copied == 0 && isUnsupported(errno)) {
+                return -1;
+            }
+            LOGE("copy_file_range failed after %lld bytes: %s", (long long)copied, strerror(errno));
+            return -1;
+        }
+        if (result == 0) {
+            break; // Source shorter than expected
+        }
+        copied += result;
+    }
+    return copied;
+#else
+    return -1;
+#endif
+}
+
+int64_t FileCopy::copy(const std::string& source, const std::string& target, Method* method) {
+    if (method) *method = METHOD_NONE;
+
+    int sourceFd = open(source.c_str(), O_RDONLY | O_CLOEXEC);
+    if (sourceFd < 0) {
+        LOGE("Failed to open source: %s", source.c_str());
+        return -1;
+    }
+    struct stat st;
+    if (fstat(sourceFd, &st) != 0 || !S_ISREG(st.st_mode)) {
+        close(sourceFd);
+        return -1;
+    }
+    // No O_TRUNC: the target may be the source itself, and a clone replaces the contents anyway
+    int targetFd = open(target.c_str(), O_WRONLY | O_CREAT | O_CLOEXEC, st.st_mode & 0777);
+    if (targetFd < 0) {
+        LOGE("Failed to open target: %s", target.c_str());
+        close(sourceFd);
+        return -1;
+    }
+    struct stat targetSt;
+    if (fstat(targetFd, &targetSt) != 0) {
+        close(sourceFd);
+        close(targetFd);
+        return -1;
+    }
+    if (targetSt.st_dev == st.st_dev && targetSt.st_ino == st.st_ino) {
+        // Copying a file onto itself: it already has the right contents
+        close(sourceFd);
+        close(targetFd);
+        return st.st_size;
+    }
+
+    int64_t result = -1;
+    if (ioctl(targetFd, FICLONE, sourceFd) == 0) {
+        // The clone leaves any tail of a longer old target in place
+        if (ftruncate(targetFd, st.st_size) == 0) {
+            result = st.st_size;
+            if (method) *method = METHOD_REFLINK;
+        }
+    } else if (ftruncate(targetFd, 0) == 0) {
+        result = copyRange(sourceFd, 0, targetFd, 0, st.st_size);
+        if (result == st.st_size) {
+            if (method) *method = METHOD_COPY_FILE_RANGE;
+        } else {
+            result = -1;
+        }
+    }
+
+    close(sourceFd);
+    close(targetFd);
+    if (result < 0) {
+        // Leave no truncated file behind for the fallback to trip over
+        unlink(target.c_str());
+    }
+    return result;
+}
\ No newline at end of file
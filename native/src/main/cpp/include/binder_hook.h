@@ -1,16 +1,29 @@
 #ifndef BINDER_HOOK_H
 #define BINDER_HOOK_H
 
+#include <atomic>
 #include <string>
 #include <vector>
 #include <map>
+#include <mutex>
 #include <functional>
+#include <unordered_map>
+#include <unordered_set>
+#include <sys/types.h>
 
-// Binder transaction codes
-#define BINDER_TYPE_BINDER 0x73622a85
-#define BINDER_TYPE_WEAK_BINDER 0x77622a85
-#define BINDER_TYPE_HANDLE 0x68622a85
-#define BINDER_TYPE_WEAK_HANDLE 0x77682a85
+// Binder object types and ioctl commands (BINDER_TYPE_*, BINDER_WRITE_READ)
+#include <linux/android/binder.h>
+
+// Reply buffer a virtualized service writes into first
+#define VIRTUAL_REPLY_CAPACITY (64 * 1024)
+// Largest reply a virtualized service may produce in-process; replies answered
+// here never pass through the driver, so they are not held to its buffer size
+#define VIRTUAL_REPLY_LIMIT (16 * 1024 * 1024)
+
+// Handles below this are resolved without locking; larger ones are rare
+#define BINDER_HANDLE_SLOTS 1024
+// Descriptors below this have their device kind cached; the binder fd is opened early
+#define BINDER_FD_SLOTS 1024
 
 struct BinderTransaction {
     uint32_t code;
@@ -22,6 +35,14 @@ struct BinderTransaction {
 
 typedef std::function<bool(BinderTransaction&)> BinderFilter;
 
+// Latency of calls answered in-process versus round trips through the driver
+struct BinderCallStats {
+    uint64_t localCalls;
+    uint64_t localNanos;
+    uint64_t passThroughCalls;
+    uint64_t passThroughNanos;
+};
+
 /**
  * Binder IPC interception and filtering system
  */
@@ -52,21 +73,82 @@ public:
     // Transaction processing
     bool processTransaction(BinderTransaction& transaction);
     bool allowService(const std::string& serviceName);
+    std::string getServiceName(const void* data, size_t size);
+    bool parseBinderTransaction(const void* data, size_t size, BinderTransaction& transaction);
+    
+    // In-process answers for virtualized services (binder short-circuit)
+    int writeRead(int fd, binder_write_read* bwr);
+    bool answerLocally(int fd, binder_write_read* bwr);
+    int serviceIdOfHandle(int fd, uint32_t handle, const void* data, size_t size);
+    bool isLocalBuffer(binder_uintptr_t buffer);
+    
+    /**
+     * Whether fd is the framework binder device. Only its calls can reach the
+     * services answered in-process; hwbinder and vndbinder fds go straight to
+     * the driver. Resolved once per fd and cached until the fd is reopened,
+     * which the hook sees as its BINDER_VERSION ioctl.
+     */
+    bool isBinderDevice(int fd);
+    void setBinderDevice(int fd, bool binder);
+    void forgetDevice(int fd);
+    static bool isBinderDevicePath(const char* path);
+    static BinderCallStats getCallStats();
+    static void resetCallStats();
     
+    /**
+     * Marks the current thread as running a virtualized service's handler.
+     * Its binder calls go straight to the driver instead of being dispatched
+     * again; handlers must not make them, since IPCThreadState is still in
+     * the middle of the call being answered.
+     */
+    class DispatchScope {
+    public:
+        DispatchScope();
+        ~DispatchScope();
+        static bool isActive();
+    private:
+        bool outer;
+    };
+
 private:
     bool hooksInstalled;
     std::map<std::string, bool> serviceFilters;
     std::map<std::string, BinderFilter> transactionFilters;
     
+    // Hook whose ioctl interception is active
+    static BinderHook* activeHook;
+    
+    // Device kind of each descriptor, see deviceKind()
+    std::atomic<uint8_t> deviceKinds[BINDER_FD_SLOTS];
+    
+    // (fd, target handle) -> virtual service ID (-1 for system services), learned from interface
+    // tokens. Handles are only meaningful per binder fd: the lock-free slots belong to the first
+    // binder fd seen, every other pair lives in the map. Each entry holds the ServiceDispatch
+    // generation it was learned in and the ID, see handleEntry()
+    std::atomic<int> slotsFd;
+    std::atomic<uint64_t> handleSlots[BINDER_HANDLE_SLOTS];
+    std::mutex handlesMutex;
+    std::unordered_map<uint64_t, uint64_t> otherHandles;
+    
+    // Reply buffers handed out by answerLocally, until the app frees them
+    std::mutex localBuffersMutex;
+    std::unordered_set<binder_uintptr_t> localBuffers;
+    std::atomic<size_t> localBufferCount;
+    
+    static std::atomic<uint64_t> localCalls;
+    static std::atomic<uint64_t> localNanos;
+    static std::atomic<uint64_t> passThroughCalls;
+    static std::atomic<uint64_t> passThroughNanos;
+    
     // Original function pointers
     static int (*original_ioctl)(int fd, unsigned long request, void* arg);
     static ssize_t (*original_write)(int fd, const void* buf, size_t count);
     static ssize_t (*original_read)(int fd, void* buf, size_t count);
     
     // Binder device handling
-    bool isBinderDevice(int fd);
-    std::string getServiceName(const void* data, size_t size);
-    bool parseBinderTransaction(const void* data, size_t size, BinderTransaction& transaction);
+    bool releaseLocalBuffer(binder_uintptr_t buffer);
+    void forgetHandle(int fd, uint32_t handle);
+    void storeReply(const uint8_t* payload);
     
     // Default filters
     void setupDefaultFilters();
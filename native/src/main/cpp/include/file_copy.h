@@ -0,0 +1,33 @@
+#ifndef FILE_COPY_H
+#define FILE_COPY_H
+
+#include <cstdint>
+#include <string>
+
+/**
+ * In-kernel file copying: a reflink (FICLONE) where the filesystem shares
+ * extents, otherwise copy_file_range(2). Neither moves data through user space.
+ */
+class FileCopy {
+public:
+    enum Method {
+        METHOD_NONE = 0,
+        METHOD_REFLINK = 1,
+        METHOD_COPY_FILE_RANGE = 2
+    };
+
+    /**
+     * Copy a whole regular file, replacing the target
+     * @return Bytes copied, or -1 if neither method is supported here and
+     *         the caller should fall back to a user-space copy
+     */
+    static int64_t copy(const std::string& source, const std::string& target, Method* method = nullptr);
+
+    /**
+     * Copy a byte range between open descriptors with copy_file_range(2)
+     * @return Bytes copied, or -1 if unsupported for these descriptors
+     */
+    static int64_t copyRange(int sourceFd, int64_t sourceOffset, int targetFd, int64_t targetOffset, int64_t length);
+};
+
+#endif // FILE_COPY_H
\ No newline at end of file
@@ -30,11 +30,13 @@ public:
     // Architecture specific
     bool installArm64Hook(void* originalFunction, void* replacementFunction, void** backupFunction);
     bool installArm32Hook(void* originalFunction, void* replacementFunction, void** backupFunction);
+    bool installX86_64Hook(void* originalFunction, void* replacementFunction, void** backupFunction);
     
     // Utility functions
     bool makeMemoryWritable(void* addr, size_t size);
     bool makeMemoryExecutable(void* addr, size_t size);
     void* allocateTrampoline();
+    // Only for trampolines no hook has published yet; installed ones are never freed
     void freeTrampoline(void* trampoline);
     
 private:
@@ -49,6 +51,11 @@ private:
     bool writeArm32Jump(void* addr, void* target);
     size_t getArm32InstructionSize(void* addr);
     
+    // x86-64 specific functions (host builds)
+    bool writeX86_64Jump(void* addr, void* target);
+    size_t getX86_64JumpSize(void* addr, void* target);
+    size_t getX86_64InstructionSize(void* addr);
+    
     // Common utilities
     bool isValidAddress(void* addr);
     void flushInstructionCache(void* addr, size_t size);
@@ -0,0 +1,116 @@
+#ifndef MOUNT_TABLE_H
+#define MOUNT_TABLE_H
+
+#include <atomic>
+#include <cstddef>
+#include <cstdint>
+#include <mutex>
+#include <string>
+
+#define MOUNT_TABLE_MAGIC 0x544D5354 // "TSMT"
+#define MOUNT_TABLE_VERSION 1
+#define MOUNT_TABLE_ALL_USERS (-1)
+#define MOUNT_TABLE_ANY_PACKAGE 0xFFFFFFFFu
+#define MOUNT_TABLE_EXACT 0x80000000u // Specificity flag: the rule maps only the prefix itself
+
+/**
+ * One mount rule. Offsets are relative to the start of the slot payload.
+ */
+struct MountTableEntry {
+    uint32_t hash;          // FNV-1a of the normalized prefix
+    uint32_t next;          // Next entry index + 1 in the bucket chain, 0 = end
+    int32_t userId;         // MOUNT_TABLE_ALL_USERS for every user
+    uint32_t specificity;   // Higher wins between rules on the same prefix
+    uint32_t prefixOffset;
+    uint32_t prefixLength;
+    uint32_t rootOffset;
+    uint32_t rootLength;
+    uint32_t packageOffset;
+    uint32_t packageLength; // MOUNT_TABLE_ANY_PACKAGE for every app
+};
+
+struct MountTableHeader {
+    uint32_t magic;
+    uint32_t version;
+    uint32_t slotCapacity;
+    std::atomic<uint32_t> activeSlot;
+    std::atomic<uint32_t> generation;
+    uint32_t reserved[3];
+};
+
+struct MountTableSlot {
+    std::atomic<uint32_t> sequence; // Odd while the writer is filling the slot
+    uint32_t size;
+    // Followed by slotCapacity payload bytes
+};
+
+/**
+ * Shared-memory mount table for native path redirection.
+ *
+ * The engine process encodes its mount rules in Java (com.terista.space.fs.MountTable)
+ * and publishes them into a file-backed MAP_SHARED region; virtual app processes
+ * map the same file read-only. The region has two slots, each guarded by a
+ * sequence counter: the writer fills the inactive slot and flips the active
+ * index, readers match against the active slot without locks and retry if its
+ * sequence moved underneath them. Every offset read from the region is bounds
+ * checked, so a torn read can only cause a retry.
+ *
+ * An engine process reuses the table of an earlier one when the layout matches,
+ * so attached readers keep working; otherwise it clears the old file's magic
+ * without resizing it and renames a fresh file into place.
+ *
+ * Payload layout (native endianness):
+ *   u32 entryCount, u32 bucketCount (power of two)
+ *   u32 buckets[bucketCount]   head entry index + 1, 0 = empty
+ *   MountTableEntry entries[entryCount]
+ *   u8 strings[]               UTF-8, not NUL-terminated
+ */
+class MountTable {
+public:
+    MountTable();
+    ~MountTable();
+
+    // Writer side (engine process)
+    bool create(const std::string& path, size_t slotCapacity);
+    bool publish(const void* payload, size_t size);
+
+    // Reader side (virtual app process)
+    bool attach(const std::string& path);
+    void setIdentity(int userId, const std::string& packageName);
+
+    void detach();
+    bool isAttached() const;
+    uint32_t getGeneration() const;
+
+    /**
+     * Rewrite an absolute path through the longest matching mount
+     * @return out if the path was rewritten, nullptr if no mount applies
+     */
+    const char* redirect(const char* path, char* out, size_t outSize) const;
+
+    static uint32_t hashUpdate(uint32_t hash, const char* data, size_t length);
+    static size_t normalize(const char* path, char* out, size_t outSize);
+
+    static const uint32_t HASH_SEED = 0x811C9DC5;
+
+private:
+    MountTableHeader* header;
+    size_t mappedSize;
+    bool writable;
+    std::mutex writeLock;
+
+    int userId;
+    char packageName[256];
+    size_t packageLength;
+
+    MountTableSlot* slotAt(uint32_t index) const;
+    bool isValid() const;
+    static void retire(int fd);
+    bool map(int fd, size_t size, bool writable);
+    bool match(const uint8_t* payload, uint32_t size, const char* path, size_t length,
+               char* out, size_t outSize) const;
+    const MountTableEntry* lookup(const uint8_t* payload, uint32_t size, uint32_t hash,
+                                  const char* prefix, size_t prefixLength, bool wholePath) const;
+};
+
+#endif // MOUNT_TABLE_H
\ No newline at end of file
@@ -0,0 +1,55 @@
+#ifndef PATH_REDIRECT_H
+#define PATH_REDIRECT_H
+
+#include <string>
+#include <sys/stat.h>
+#include <sys/types.h>
+#include "mount_table.h"
+
+/**
+ * libc path redirection for virtual app processes.
+ * Hooks open/openat/stat/access and rewrites absolute paths through the
+ * shared mount table published by the engine process.
+ */
+class PathRedirect {
+public:
+    static PathRedirect* getInstance();
+
+    // Mount table (engine side creates/publishes, app side attaches)
+    bool createMountTable(const std::string& path, size_t slotCapacity);
+    bool publishMountTable(const void* payload, size_t size);
+    bool attachMountTable(const std::string& path, int userId, const std::string& packageName);
+
+    // Hook management
+    bool installHooks();
+    void uninstallHooks();
+    bool isHooked();
+
+    // Hook callbacks
+    static int hooked_open(const char* path, int flags, ...);
+    static int hooked_openat(int dirfd, const char* path, int flags, ...);
+    static int hooked_stat(const char* path, struct stat* buf);
+    static int hooked_access(const char* path, int mode);
+
+private:
+    PathRedirect();
+    ~PathRedirect();
+
+    static PathRedirect* instance;
+    static MountTable* activeTable;
+
+    MountTable mountTable;
+    bool hooksInstalled;
+    // Set once hooks have read the table; its mapping must then outlive them
+    bool tableExposed;
+
+    // Original function pointers
+    static int (*original_open)(const char* path, int flags, ...);
+    static int (*original_openat)(int dirfd, const char* path, int flags, ...);
+    static int (*original_stat)(const char* path, struct stat* buf);
+    static int (*original_access)(const char* path, int mode);
+
+    static const char* rewrite(const char* path, char* buffer, size_t size);
+};
+
+#endif // PATH_REDIRECT_H
\ No newline at end of file
@@ -0,0 +1,92 @@
+#ifndef SERVICE_DISPATCH_H
+#define SERVICE_DISPATCH_H
+
+#include <jni.h>
+#include <atomic>
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <string>
+#include <unordered_map>
+#include <vector>
+
+// Returned by dispatch() when no Java handler answered the transaction
+#define SERVICE_DISPATCH_NOT_HANDLED -1
+// Returned by dispatch() when the system should answer and its reply go to storeReply()
+#define SERVICE_DISPATCH_FETCH_REPLY -2
+
+/**
+ * Routes binder transactions addressed to virtualized services into Java.
+ * Each service is registered under the small integer ID interned on the
+ * Java side; a transaction costs one static JNI upcall that hands the
+ * parcel data and a reply buffer over as direct ByteBuffers, without copying.
+ * Calls whose reply does not depend on their arguments can be answered from
+ * a cached reply instead, without entering the VM.
+ *
+ * Lookups on the binder path take no lock: registrations and fixed replies
+ * live in an immutable Registry that every change copies and republishes.
+ * Replaced registries are kept, since a binder thread may still be reading
+ * one; there is one per registration change.
+ */
+class ServiceDispatch {
+public:
+    static ServiceDispatch* getInstance();
+
+    // Resolve the Java entry point; called from JNI_OnLoad
+    bool attach(JNIEnv* env, jclass bridgeClass);
+    void detach(JNIEnv* env);
+    bool isAttached();
+
+    // Service registration; the descriptor identifies calls by their interface token
+    bool registerService(const std::string& serviceName, const std::u16string& descriptor, int serviceId);
+    bool unregisterService(const std::string& serviceName);
+    int serviceIdOfDescriptor(const std::u16string& descriptor);
+
+    // Changes whenever a service is registered or removed
+    uint32_t getGeneration();
+
+    // Fixed replies, answered without an upcall; an empty reply removes the entry
+    bool setCachedReply(int serviceId, uint32_t code, const void* reply, size_t size);
+    void clearCachedReplies(int serviceId);
+
+    /**
+     * Hand one transaction to the Java handler registered for its code
+     * @return Reply length written to reply, SERVICE_DISPATCH_NOT_HANDLED or SERVICE_DISPATCH_FETCH_REPLY.
+     *         A length above replyCapacity means nothing was written: dispatch again with a buffer that large
+     */
+    int dispatch(int serviceId, uint32_t code, uint32_t flags, const void* data, size_t dataSize,
+                 void* reply, size_t replyCapacity);
+
+    // Hand the system's reply to a SERVICE_DISPATCH_FETCH_REPLY transaction to Java for caching
+    void storeReply(int serviceId, uint32_t code, const void* data, size_t dataSize,
+                    const void* reply, size_t replySize);
+
+private:
+    ServiceDispatch();
+    ~ServiceDispatch();
+
+    static ServiceDispatch* instance;
+
+    JavaVM* javaVm;
+    jclass bridgeClass;
+    jmethodID dispatchMethod;
+    jmethodID replyMethod;
+
+    struct Registry {
+        std::unordered_map<std::string, int> services;
+        std::unordered_map<std::u16string, int> descriptors;
+        std::unordered_map<uint64_t, std::vector<uint8_t>> cachedReplies;
+    };
+
+    // Serializes changes; readers load the current registry instead
+    std::mutex servicesMutex;
+    std::atomic<const Registry*> registry;
+    std::vector<std::unique_ptr<Registry>> registries;
+    std::atomic<uint32_t> generation;
+
+    JNIEnv* currentEnv();
+    Registry* copyRegistry();
+    void publish(Registry* next);
+};
+
+#endif // SERVICE_DISPATCH_H
\ No newline at end of file
@@ -78,10 +78,12 @@ struct HookInfo {
         backupFunction(backup), active(true) {}
 };
 
-// Utility macros
+// Utility macros; a source file with its own tag defines LOGD/LOGE/LOGI before including this header
 #define TERISTA_LOG_TAG "TeristaNative"
+#ifndef LOGD
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, TERISTA_LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, TERISTA_LOG_TAG, __VA_ARGS__)
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, TERISTA_LOG_TAG, __VA_ARGS__)
+#endif
 
 #endif // TERISTA_NATIVE_H
\ No newline at end of file
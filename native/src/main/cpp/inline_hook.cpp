@@ -3,6 +3,8 @@
 #include <sys/mman.h>
 #include <unistd.h>
 #include <cstring>
+#include <algorithm>
+#include <cstdint>
 
 #ifdef __aarch64__
 #include <asm/cachectl.h>
@@ -18,18 +20,15 @@ InlineHook::InlineHook() {
 }
 
 InlineHook::~InlineHook() {
-    // Cleanup all hooks
-    for (auto& pair : hooks) {
-        if (pair.second->active) {
-            uninstallHook(pair.first, pair.second->backupFunction);
+    // Cleanup all hooks; uninstallHook erases from the map
+    while (!hooks.empty()) {
+        auto it = hooks.begin();
+        if (!it->second->active || !uninstallHook(it->first, it->second->backupFunction)) {
+            hooks.erase(it);
         }
     }
-    hooks.clear();
     
-    // Free trampolines
-    for (void* trampoline : trampolines) {
-        munmap(trampoline, getpagesize());
-    }
+    // Trampolines stay mapped, as in uninstallHook
     trampolines.clear();
     
     LOGD("InlineHook destroyed");
@@ -55,8 +54,10 @@ bool InlineHook::installHook(void* originalFunction, void* replacementFunction,
         return false;
     }
     
-#ifdef __aarch64__
+#if defined(__aarch64__)
     return installArm64Hook(originalFunction, replacementFunction, backupFunction);
+#elif defined(__x86_64__)
+    return installX86_64Hook(originalFunction, replacementFunction, backupFunction);
 #else
     return installArm32Hook(originalFunction, replacementFunction, backupFunction);
 #endif
@@ -92,6 +93,9 @@ bool InlineHook::uninstallHook(void* originalFunction, void* backupFunction) {
     // Make memory executable again
     makeMemoryExecutable(originalFunction, hook->originalSize);
     
+    // Restoring the prologue is enough. The trampoline stays mapped for good:
+    // a thread may still be executing in it, or about to call through a saved
+    // backup pointer. That costs one page per uninstall.
     hook->active = false;
     hooks.erase(it);
     
@@ -203,6 +207,215 @@ size_t InlineHook::getArm64InstructionSize(void* addr) {
     return 4;
 }
 
+#elif defined(__x86_64__)
+
+bool InlineHook::installX86_64Hook(void* originalFunction, void* replacementFunction, void** backupFunction) {
+    LOGD("Installing x86-64 hook");
+    
+    // Create hook entry
+    auto hook = std::make_shared<HookEntry>();
+    hook->originalFunction = originalFunction;
+    hook->replacementFunction = replacementFunction;
+    hook->active = false;
+    
+    // Relocate whole instructions until the jump fits (5 bytes near, 14 bytes far)
+    size_t jumpSize = getX86_64JumpSize(originalFunction, replacementFunction);
+    size_t hookSize = 0;
+    while (hookSize < jumpSize) {
+        uint8_t* instruction = (uint8_t*)originalFunction + hookSize;
+        if (*instruction == 0xC3 || *instruction == 0xCC) {
+            LOGE("Function too short to hook: %p", originalFunction);
+            return false;
+        }
+        size_t length = getX86_64InstructionSize(instruction);
+        if (length == 0) {
+            LOGE("Cannot relocate instruction at %p", instruction);
+            return false;
+        }
+        hookSize += length;
+    }
+    hook->originalSize = hookSize;
+    
+    // Make memory writable
+    if (!makeMemoryWritable(originalFunction, hookSize)) {
+        LOGE("Failed to make memory writable");
+        return false;
+    }
+    
+    // Backup original bytes
+    memcpy(hook->originalBytes, originalFunction, hookSize);
+    
+    // Allocate trampoline
+    void* trampoline = allocateTrampoline();
+    if (!trampoline) {
+        LOGE("Failed to allocate trampoline");
+        return false;
+    }
+    
+    // Build trampoline: relocated instructions + jump back
+    memcpy(trampoline, originalFunction, hookSize);
+    writeX86_64Jump((uint8_t*)trampoline + hookSize, (uint8_t*)originalFunction + hookSize);
+    
+    // Write jump to replacement, padding the rest of the last relocated instruction
+    if (!writeX86_64Jump(originalFunction, replacementFunction)) {
+        LOGE("Failed to write x86-64 jump");
+        freeTrampoline(trampoline);
+        return false;
+    }
+    memset((uint8_t*)originalFunction + jumpSize, 0x90, hookSize - jumpSize); // NOP
+    
+    makeMemoryExecutable(originalFunction, hookSize);
+    
+    hook->backupFunction = trampoline;
+    hook->active = true;
+    hooks[originalFunction] = hook;
+    
+    if (backupFunction) {
+        *backupFunction = trampoline;
+    }
+    
+    LOGI("x86-64 hook installed successfully");
+    return true;
+}
+
+bool InlineHook::writeX86_64Jump(void* addr, void* target) {
+    uint8_t* code = (uint8_t*)addr;
+    
+    if (getX86_64JumpSize(addr, target) == 5) {
+        // JMP rel32
+        int32_t offset = (int32_t)((intptr_t)target - ((intptr_t)addr + 5));
+        code[0] = 0xE9;
+        memcpy(code + 1, &offset, sizeof(offset));
+    } else {
+        // JMP [RIP+0]
+        // .quad target
+        uint64_t targetAddr = (uint64_t)target;
+        code[0] = 0xFF;
+        code[1] = 0x25;
+        memset(code + 2, 0, 4);
+        memcpy(code + 6, &targetAddr, sizeof(targetAddr));
+    }
+    
+    flushInstructionCache(addr, 14);
+    return true;
+}
+
+size_t InlineHook::getX86_64JumpSize(void* addr, void* target) {
+    intptr_t offset = (intptr_t)target - ((intptr_t)addr + 5);
+    return (offset >= INT32_MIN && offset <= INT32_MAX) ? 5 : 14;
+}
+
+size_t InlineHook::getX86_64InstructionSize(void* addr) {
+    // Length decoder for common function prologue instructions. Returns 0 for
+    // anything that cannot be copied verbatim into a trampoline: relative
+    // branches, RIP-relative operands and unknown opcodes.
+    const uint8_t* code = (const uint8_t*)addr;
+    size_t length = 0;
+    bool operandSize16 = false;
+    
+    // Legacy prefixes
+    for (;;) {
+        uint8_t prefix = code[length];
+        if (prefix == 0x66) {
+            operandSize16 = true;
+        } else if (prefix != 0xF2 && prefix != 0xF3 && prefix != 0x2E && prefix != 0x3E &&
+                   prefix != 0x26 && prefix != 0x36 && prefix != 0x64 && prefix != 0x65 && prefix != 0x67) {
+            break;
+        }
+        length++;
+    }
+    
+    // REX prefix
+    bool rexW = false;
+    if ((code[length] & 0xF0) == 0x40) {
+        rexW = (code[length] & 0x08) != 0;
+        length++;
+    }
+    
+    size_t immz = operandSize16 ? 2 : 4;
+    size_t immediate = 0;
+    bool hasModRM = false;
+    uint8_t opcode = code[length++];
+    
+    if (opcode == 0x0F) {
+        uint8_t opcode2 = code[length++];
+        switch (opcode2) {
+            case 0x05: // SYSCALL
+            case 0x0B: // UD2
+            case 0xA2: // CPUID
+                return length;
+            case 0x10: case 0x11: case 0x1E: case 0x1F: case 0x28: case 0x29: case 0x2E: case 0x2F:
+            case 0x57: case 0x6E: case 0x6F: case 0x7E: case 0x7F: case 0xAF:
+            case 0xB6: case 0xB7: case 0xBE: case 0xBF: case 0xD6: case 0xEF:
+                hasModRM = true;
+                break;
+            default:
+                if ((opcode2 >= 0x40 && opcode2 <= 0x4F) || (opcode2 >= 0x90 && opcode2 <= 0x9F)) {
+                    hasModRM = true; // CMOVcc, SETcc
+                    break;
+                }
+                return 0; // Jcc rel32 and everything else
+        }
+    } else if (opcode < 0x40) {
+        // ALU ops: r/m forms, AL/eAX immediate forms
+        switch (opcode & 0x07) {
+            case 0: case 1: case 2: case 3: hasModRM = true; break;
+            case 4: immediate = 1; break;
+            case 5: immediate = immz; break;
+            default: return 0;
+        }
+    } else if ((opcode >= 0x50 && opcode <= 0x5F) || opcode == 0x90 || opcode == 0x98 || opcode == 0x99 ||
+               opcode == 0xC3 || opcode == 0xC9 || opcode == 0xCC) {
+        // PUSH/POP reg, NOP, CWDE, CDQ, RET, LEAVE, INT3
+    } else if (opcode >= 0xB0 && opcode <= 0xB7) {
+        immediate = 1; // MOV r8, imm8
+    } else if (opcode >= 0xB8 && opcode <= 0xBF) {
+        immediate = rexW ? 8 : immz; // MOV reg, imm
+    } else {
+        switch (opcode) {
+            case 0x63: case 0x84: case 0x85: case 0x86: case 0x87: case 0x88: case 0x89: case 0x8A: case 0x8B:
+            case 0x8D: case 0x8F: case 0xD0: case 0xD1: case 0xD2: case 0xD3: case 0xFE: case 0xFF:
+                hasModRM = true;
+                break;
+            case 0x68: immediate = immz; break;
+            case 0x6A: immediate = 1; break;
+            case 0x69: case 0x81: case 0xC7: hasModRM = true; immediate = immz; break;
+            case 0x6B: case 0x80: case 0x83: case 0xC0: case 0xC1: case 0xC6: hasModRM = true; immediate = 1; break;
+            case 0xF6: case 0xF7:
+                hasModRM = true;
+                // TEST r/m, imm is /0 and /1; the other group 3 ops have no immediate
+                if (((code[length] >> 3) & 0x07) < 2) {
+                    immediate = opcode == 0xF6 ? 1 : immz;
+                }
+                break;
+            default:
+                return 0; // Relative branches (E8/E9/EB/7x) and unknown opcodes
+        }
+    }
+    
+    if (hasModRM) {
+        uint8_t modrm = code[length++];
+        uint8_t mod = modrm >> 6;
+        uint8_t rm = modrm & 0x07;
+        if (mod == 0 && rm == 5) {
+            return 0; // RIP-relative
+        }
+        if (mod != 3 && rm == 4) {
+            uint8_t sib = code[length++];
+            if (mod == 0 && (sib & 0x07) == 5) {
+                length += 4;
+            }
+        }
+        if (mod == 1) {
+            length += 1;
+        } else if (mod == 2) {
+            length += 4;
+        }
+    }
+    
+    return length + immediate;
+}
+
 #else // ARM32
 
 bool InlineHook::installArm32Hook(void* originalFunction, void* replacementFunction, void** backupFunction) {
@@ -1,12 +1,16 @@
-#include "include/terista_native.h"
-#include <android/log.h>
-#include <jni.h>
-
 #define LOG_TAG "JniBridge"
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
 
+#include "include/terista_native.h"
+#include "include/path_redirect.h"
+#include "include/file_copy.h"
+#include "include/service_dispatch.h"
+#include "include/binder_hook.h"
+#include <android/log.h>
+#include <jni.h>
+
 /**
  * JNI bridge implementation for native hooks and utilities
  */
@@ -14,6 +18,14 @@
 // Additional JNI functions beyond what's already in terista_native.cpp
 extern "C" {
 
+// Defined in terista_native.cpp, registered below
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_initialize(JNIEnv* env, jobject thiz, jobject context);
+JNIEXPORT void JNICALL Java_com_terista_space_native_NativeBridge_cleanup(JNIEnv* env, jobject thiz);
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_installHook(JNIEnv* env, jobject thiz, jstring symbol, jlong replacement, jlong backup);
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_uninstallHook(JNIEnv* env, jobject thiz, jstring symbol);
+JNIEXPORT jlong JNICALL Java_com_terista_space_native_NativeBridge_findSymbol(JNIEnv* env, jobject thiz, jstring libname, jstring symbol);
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_hookBinder(JNIEnv* env, jobject thiz);
+
 JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_loadLibrary(JNIEnv* env, jobject thiz, jstring path) {
     const char* pathStr = env->GetStringUTFChars(path, nullptr);
     bool result = TeristaNative::getInstance()->loadLibrary(pathStr);
@@ -55,6 +67,90 @@ JNIEXPORT void JNICALL Java_com_terista_space_native_NativeBridge_unhookBinder(J
     TeristaNative::getInstance()->unhookBinder();
 }
 
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_createMountTable(JNIEnv* env, jobject thiz, jstring path, jint slotCapacity) {
+    const char* pathStr = env->GetStringUTFChars(path, nullptr);
+    bool result = PathRedirect::getInstance()->createMountTable(pathStr, (size_t)slotCapacity);
+    env->ReleaseStringUTFChars(path, pathStr);
+    return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_publishMountTable(JNIEnv* env, jobject thiz, jbyteArray payload) {
+    jsize length = env->GetArrayLength(payload);
+    jbyte* bytes = env->GetByteArrayElements(payload, nullptr);
+    bool result = PathRedirect::getInstance()->publishMountTable(bytes, (size_t)length);
+    env->ReleaseByteArrayElements(payload, bytes, JNI_ABORT);
+    return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_attachMountTable(JNIEnv* env, jobject thiz, jstring path, jint userId, jstring packageName) {
+    const char* pathStr = env->GetStringUTFChars(path, nullptr);
+    const char* packageStr = env->GetStringUTFChars(packageName, nullptr);
+    bool result = PathRedirect::getInstance()->attachMountTable(pathStr, userId, packageStr);
+    env->ReleaseStringUTFChars(packageName, packageStr);
+    env->ReleaseStringUTFChars(path, pathStr);
+    return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_installPathRedirect(JNIEnv* env, jobject thiz) {
+    return PathRedirect::getInstance()->installHooks() ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL Java_com_terista_space_native_NativeBridge_uninstallPathRedirect(JNIEnv* env, jobject thiz) {
+    PathRedirect::getInstance()->uninstallHooks();
+}
+
+JNIEXPORT jlong JNICALL Java_com_terista_space_native_NativeBridge_copyFile(JNIEnv* env, jobject thiz, jstring source, jstring target) {
+    const char* sourceStr = env->GetStringUTFChars(source, nullptr);
+    const char* targetStr = env->GetStringUTFChars(target, nullptr);
+    int64_t result = FileCopy::copy(sourceStr, targetStr);
+    env->ReleaseStringUTFChars(target, targetStr);
+    env->ReleaseStringUTFChars(source, sourceStr);
+    return (jlong)result;
+}
+
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_registerVirtualService(JNIEnv* env, jobject thiz, jstring serviceName, jstring descriptor, jint serviceId) {
+    const char* serviceStr = env->GetStringUTFChars(serviceName, nullptr);
+    // Interface tokens hold the descriptor as UTF-16, like jstring
+    const jchar* descriptorChars = env->GetStringChars(descriptor, nullptr);
+    std::u16string descriptorStr((const char16_t*)descriptorChars, (size_t)env->GetStringLength(descriptor));
+    env->ReleaseStringChars(descriptor, descriptorChars);
+    bool result = ServiceDispatch::getInstance()->registerService(serviceStr, descriptorStr, serviceId);
+    env->ReleaseStringUTFChars(serviceName, serviceStr);
+    return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT void JNICALL Java_com_terista_space_native_NativeBridge_unregisterVirtualService(JNIEnv* env, jobject thiz, jstring serviceName) {
+    const char* serviceStr = env->GetStringUTFChars(serviceName, nullptr);
+    ServiceDispatch::getInstance()->unregisterService(serviceStr);
+    env->ReleaseStringUTFChars(serviceName, serviceStr);
+}
+
+JNIEXPORT jboolean JNICALL Java_com_terista_space_native_NativeBridge_setCachedReply(JNIEnv* env, jobject thiz, jint serviceId, jint code, jbyteArray reply) {
+    if (reply == nullptr) {
+        return ServiceDispatch::getInstance()->setCachedReply(serviceId, (uint32_t)code, nullptr, 0) ? JNI_TRUE : JNI_FALSE;
+    }
+    jsize length = env->GetArrayLength(reply);
+    jbyte* bytes = env->GetByteArrayElements(reply, nullptr);
+    bool result = ServiceDispatch::getInstance()->setCachedReply(serviceId, (uint32_t)code, bytes, (size_t)length);
+    env->ReleaseByteArrayElements(reply, bytes, JNI_ABORT);
+    return result ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jlongArray JNICALL Java_com_terista_space_native_NativeBridge_getBinderCallStats(JNIEnv* env, jobject thiz) {
+    BinderCallStats stats = BinderHook::getCallStats();
+    jlong values[4] = {(jlong)stats.localCalls, (jlong)stats.localNanos,
+                       (jlong)stats.passThroughCalls, (jlong)stats.passThroughNanos};
+    jlongArray result = env->NewLongArray(4);
+    if (result != nullptr) {
+        env->SetLongArrayRegion(result, 0, 4, values);
+    }
+    return result;
+}
+
+JNIEXPORT void JNICALL Java_com_terista_space_native_NativeBridge_resetBinderCallStats(JNIEnv* env, jobject thiz) {
+    BinderHook::resetCallStats();
+}
+
 // JNI method registration
 static const JNINativeMethod methods[] = {
     {"initialize", "(Landroid/content/Context;)Z", (void*)Java_com_terista_space_native_NativeBridge_initialize},
@@ -70,42 +166,63 @@ static const JNINativeMethod methods[] = {
     {"killVirtualProcess", "(I)Z", (void*)Java_com_terista_space_native_NativeBridge_killVirtualProcess},
     {"protectMemory", "(JJI)Z", (void*)Java_com_terista_space_native_NativeBridge_protectMemory},
     {"allocateMemory", "(J)J", (void*)Java_com_terista_space_native_NativeBridge_allocateMemory},
-    {"freeMemory", "(JJ)Z", (void*)Java_com_terista_space_native_NativeBridge_freeMemory}
+    {"freeMemory", "(JJ)Z", (void*)Java_com_terista_space_native_NativeBridge_freeMemory},
+    {"createMountTable", "(Ljava/lang/String;I)Z", (void*)Java_com_terista_space_native_NativeBridge_createMountTable},
+    {"publishMountTable", "([B)Z", (void*)Java_com_terista_space_native_NativeBridge_publishMountTable},
+    {"attachMountTable", "(Ljava/lang/String;ILjava/lang/String;)Z", (void*)Java_com_terista_space_native_NativeBridge_attachMountTable},
+    {"installPathRedirect", "()Z", (void*)Java_com_terista_space_native_NativeBridge_installPathRedirect},
+    {"uninstallPathRedirect", "()V", (void*)Java_com_terista_space_native_NativeBridge_uninstallPathRedirect},
+    {"copyFile", "(Ljava/lang/String;Ljava/lang/String;)J", (void*)Java_com_terista_space_native_NativeBridge_copyFile},
+    {"registerVirtualService", "(Ljava/lang/String;Ljava/lang/String;I)Z", (void*)Java_com_terista_space_native_NativeBridge_registerVirtualService},
+    {"unregisterVirtualService", "(Ljava/lang/String;)V", (void*)Java_com_terista_space_native_NativeBridge_unregisterVirtualService},
+    {"setCachedReply", "(II[B)Z", (void*)Java_com_terista_space_native_NativeBridge_setCachedReply},
+    {"getBinderCallStats", "()[J", (void*)Java_com_terista_space_native_NativeBridge_getBinderCallStats},
+    {"resetBinderCallStats", "()V", (void*)Java_com_terista_space_native_NativeBridge_resetBinderCallStats}
 };
 
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM* vm, void* reserved) {
     LOGI("JNI_OnLoad called");
-    
+
     JNIEnv* env;
     if (vm->GetEnv((void**)&env, JNI_VERSION_1_6) != JNI_OK) {
         LOGE("Failed to get JNI environment");
         return -1;
     }
-    
+
     // Find the class
     jclass clazz = env->FindClass("com/terista/space/native/NativeBridge");
     if (clazz == nullptr) {
         LOGE("Failed to find NativeBridge class");
         return -1;
     }
-    
+
     // Register native methods
     if (env->RegisterNatives(clazz, methods, sizeof(methods) / sizeof(methods[0])) < 0) {
         LOGE("Failed to register native methods");
         return -1;
     }
-    
+
+    // Binder calls to virtualized services are answered through NativeBridge.dispatchTransaction
+    if (!ServiceDispatch::getInstance()->attach(env, clazz)) {
+        LOGE("Service dispatch unavailable, virtualized services fall through to the system");
+    }
+
     LOGI("Native methods registered successfully");
     return JNI_VERSION_1_6;
 }
 
 JNIEXPORT void JNICALL JNI_OnUnload(JavaVM* vm, void* reserved) {
     LOGI("JNI_OnUnload called");
-    
+
     // Cleanup TeristaNative instance
     if (TeristaNative::getInstance()) {
         TeristaNative::getInstance()->cleanup();
     }
+
+    JNIEnv* env;
+    if (vm->GetEnv((void**)&env, JNI_VERSION_1_6) == JNI_OK) {
+        ServiceDispatch::getInstance()->detach(env);
+    }
 }
 
 }
\ No newline at end of file
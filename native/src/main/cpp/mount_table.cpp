@@ -0,0 +1,391 @@
+#include "include/mount_table.h"
+#include <android/log.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <sys/mman.h>
+#include <sys/stat.h>
+#include <unistd.h>
+#include <cstring>
+#include <algorithm>
+
+#define LOG_TAG "MountTable"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+
+// A publish takes microseconds; give up on redirecting rather than spin
+#define MAX_READ_ATTEMPTS 64
+
+MountTable::MountTable() :
+    header(nullptr),
+    mappedSize(0),
+    writable(false),
+    userId(MOUNT_TABLE_ALL_USERS),
+    packageLength(0) {
+    packageName[0] = '\0';
+}
+
+MountTable::~MountTable() {
+    detach();
+}
+
+bool MountTable::create(const std::string& path, size_t slotCapacity) {
+    std::lock_guard<std::mutex> lock(writeLock);
+    detach();
+
+    slotCapacity = (slotCapacity + 7) & ~(size_t)7;
+    size_t size = sizeof(MountTableHeader) + 2 * (sizeof(MountTableSlot) + slotCapacity);
+
+    // Virtual app processes may still map the table of an earlier engine process.
+    // Truncating a mapped file makes their next read fault, so a table of the same
+    // layout is reused in place and any other one is retired and replaced whole.
+    int fd = open(path.c_str(), O_RDWR | O_CLOEXEC);
+    if (fd >= 0) {
+        struct stat st;
+        if (fstat(fd, &st) == 0 && (size_t)st.st_size == size && map(fd, size, true)) {
+            if (__atomic_load_n(&header->magic, __ATOMIC_ACQUIRE) == MOUNT_TABLE_MAGIC &&
+                header->version == MOUNT_TABLE_VERSION && header->slotCapacity == slotCapacity) {
+                close(fd);
+                // Readers keep their mapping and see the next publish
+                LOGI("Mount table reused: %s, %zu bytes per slot", path.c_str(), slotCapacity);
+                return true;
+            }
+            detach();
+        }
+        retire(fd);
+        close(fd);
+    }
+
+    std::string temp = path + ".tmp";
+    fd = open(temp.c_str(), O_RDWR | O_CREAT | O_TRUNC | O_CLOEXEC, 0644);
+    if (fd < 0) {
+        LOGE("Failed to create mount table: %s", temp.c_str());
+        return false;
+    }
+    if (ftruncate(fd, size) != 0) {
+        LOGE("Failed to size mount table: %s", temp.c_str());
+        close(fd);
+        unlink(temp.c_str());
+        return false;
+    }
+    bool mapped = map(fd, size, true);
+    close(fd);
+    if (!mapped) {
+        unlink(temp.c_str());
+        return false;
+    }
+
+    header->version = MOUNT_TABLE_VERSION;
+    header->slotCapacity = (uint32_t)slotCapacity;
+    header->activeSlot.store(0, std::memory_order_relaxed);
+    header->generation.store(0, std::memory_order_relaxed);
+    // Readers check the magic last
+    std::atomic_thread_fence(std::memory_order_release);
+    __atomic_store_n(&header->magic, MOUNT_TABLE_MAGIC, __ATOMIC_RELEASE);
+
+    if (rename(temp.c_str(), path.c_str()) != 0) {
+        LOGE("Failed to replace mount table: %s", path.c_str());
+        detach();
+        unlink(temp.c_str());
+        return false;
+    }
+    LOGI("Mount table created: %s, %zu bytes per slot", path.c_str(), slotCapacity);
+    return true;
+}
+
+void MountTable::retire(int fd) {
+    // Clearing the magic in the old file tells its readers to stop redirecting;
+    // its size is left alone, so their mappings stay valid
+    struct stat st;
+    if (fstat(fd, &st) != 0 || (size_t)st.st_size < sizeof(MountTableHeader)) {
+        return;
+    }
+    void* old = mmap(nullptr, sizeof(MountTableHeader), PROT_READ | PROT_WRITE, MAP_SHARED, fd, 0);
+    if (old == MAP_FAILED) {
+        return;
+    }
+    __atomic_store_n(&((MountTableHeader*)old)->magic, 0u, __ATOMIC_RELEASE);
+    munmap(old, sizeof(MountTableHeader));
+}
+
+bool MountTable::publish(const void* payload, size_t size) {
+    std::lock_guard<std::mutex> lock(writeLock);
+    if (!header || !writable) {
+        LOGE("Mount table not open for writing");
+        return false;
+    }
+    if (size > header->slotCapacity) {
+        LOGE("Mount table payload too large: %zu > %u", size, header->slotCapacity);
+        return false;
+    }
+
+    uint32_t target = 1 - (header->activeSlot.load(std::memory_order_relaxed) & 1);
+    MountTableSlot* slot = slotAt(target);
+    uint32_t sequence = slot->sequence.load(std::memory_order_relaxed);
+    // A reused table may hold a publish its writer died in the middle of
+    sequence += sequence & 1;
+
+    slot->sequence.store(sequence + 1, std::memory_order_relaxed);
+    std::atomic_thread_fence(std::memory_order_release);
+    memcpy((uint8_t*)(slot + 1), payload, size);
+    slot->size = (uint32_t)size;
+    slot->sequence.store(sequence + 2, std::memory_order_release);
+
+    header->activeSlot.store(target, std::memory_order_release);
+    header->generation.fetch_add(1, std::memory_order_release);
+
+    LOGD("Mount table published: %zu bytes, slot %u", size, target);
+    return true;
+}
+
+bool MountTable::attach(const std::string& path) {
+    detach();
+
+    int fd = open(path.c_str(), O_RDONLY | O_CLOEXEC);
+    if (fd < 0) {
+        LOGE("Failed to open mount table: %s", path.c_str());
+        return false;
+    }
+    struct stat st;
+    if (fstat(fd, &st) != 0 || (size_t)st.st_size < sizeof(MountTableHeader)) {
+        LOGE("Invalid mount table: %s", path.c_str());
+        close(fd);
+        return false;
+    }
+    bool mapped = map(fd, st.st_size, false);
+    close(fd);
+    if (!mapped) {
+        return false;
+    }
+
+    if (!isValid()) {
+        LOGE("Mount table header mismatch: %s", path.c_str());
+        detach();
+        return false;
+    }
+
+    LOGI("Mount table attached: %s", path.c_str());
+    return true;
+}
+
+void MountTable::setIdentity(int userId, const std::string& packageName) {
+    this->userId = userId;
+    packageLength = std::min(packageName.size(), sizeof(this->packageName) - 1);
+    memcpy(this->packageName, packageName.data(), packageLength);
+    this->packageName[packageLength] = '\0';
+}
+
+void MountTable::detach() {
+    if (header) {
+        munmap(header, mappedSize);
+        header = nullptr;
+        mappedSize = 0;
+        writable = false;
+    }
+}
+
+bool MountTable::isAttached() const {
+    return header != nullptr;
+}
+
+bool MountTable::isValid() const {
+    // Checked on every lookup: the engine process retires a table whose layout it changes
+    if (__atomic_load_n(&header->magic, __ATOMIC_ACQUIRE) != MOUNT_TABLE_MAGIC) {
+        return false;
+    }
+    size_t expected = sizeof(MountTableHeader) + 2 * (sizeof(MountTableSlot) + (size_t)header->slotCapacity);
+    return header->version == MOUNT_TABLE_VERSION && expected <= mappedSize;
+}
+
+uint32_t MountTable::getGeneration() const {
+    return header ? header->generation.load(std::memory_order_acquire) : 0;
+}
+
+const char* MountTable::redirect(const char* path, char* out, size_t outSize) const {
+    if (!header || !path || path[0] != '/') {
+        return nullptr;
+    }
+    if (!isValid()) {
+        static std::atomic<bool> logged(false);
+        if (!logged.exchange(true, std::memory_order_relaxed)) {
+            LOGE("Mount table retired by the engine process, not redirecting");
+        }
+        return nullptr;
+    }
+
+    char normalized[PATH_MAX];
+    size_t length = normalize(path, normalized, sizeof(normalized));
+    if (length == 0) {
+        return nullptr;
+    }
+
+    for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+        MountTableSlot* slot = slotAt(header->activeSlot.load(std::memory_order_acquire) & 1);
+        uint32_t sequence = slot->sequence.load(std::memory_order_acquire);
+        if (sequence & 1) {
+            continue;
+        }
+        uint32_t size = std::min(slot->size, header->slotCapacity);
+        bool matched = match((const uint8_t*)(slot + 1), size, normalized, length, out, outSize);
+
+        std::atomic_thread_fence(std::memory_order_acquire);
+        if (slot->sequence.load(std::memory_order_relaxed) == sequence) {
+            return matched ? out : nullptr;
+        }
+    }
+
+    LOGE("Mount table busy, not redirecting: %s", path);
+    return nullptr;
+}
+
+uint32_t MountTable::hashUpdate(uint32_t hash, const char* data, size_t length) {
+    for (size_t i = 0; i < length; i++) {
+        hash ^= (uint8_t)data[i];
+        hash *= 0x01000193;
+    }
+    return hash;
+}
+
+size_t MountTable::normalize(const char* path, char* out, size_t outSize) {
+    // Collapse "//", "." and ".."; no trailing slash except for "/"
+    if (!path || path[0] != '/' || outSize < 2) {
+        return 0;
+    }
+    size_t length = 0;
+    const char* p = path;
+    while (*p) {
+        while (*p == '/') p++;
+        if (!*p) break;
+        const char* start = p;
+        while (*p && *p != '/') p++;
+        size_t segment = p - start;
+
+        if (segment == 1 && start[0] == '.') {
+            continue;
+        }
+        if (segment == 2 && start[0] == '.' && start[1] == '.') {
+            while (length > 0 && out[length - 1] != '/') length--;
+            if (length > 0) length--;
+            continue;
+        }
+        if (length + 1 + segment + 1 > outSize) {
+            return 0;
+        }
+        out[length++] = '/';
+        memcpy(out + length, start, segment);
+        length += segment;
+    }
+    if (length == 0) {
+        out[length++] = '/';
+    }
+    out[length] = '\0';
+    return length;
+}
+
+MountTableSlot* MountTable::slotAt(uint32_t index) const {
+    uint8_t* base = (uint8_t*)header + sizeof(MountTableHeader);
+    return (MountTableSlot*)(base + index * (sizeof(MountTableSlot) + header->slotCapacity));
+}
+
+bool MountTable::map(int fd, size_t size, bool writable) {
+    int prot = writable ? PROT_READ | PROT_WRITE : PROT_READ;
+    void* addr = mmap(nullptr, size, prot, MAP_SHARED, fd, 0);
+    if (addr == MAP_FAILED) {
+        LOGE("Failed to map mount table, size: %zu", size);
+        return false;
+    }
+    header = (MountTableHeader*)addr;
+    mappedSize = size;
+    this->writable = writable;
+    return true;
+}
+
+bool MountTable::match(const uint8_t* payload, uint32_t size, const char* path, size_t length,
+                       char* out, size_t outSize) const {
+    // Probe every ancestor of the normalized path, root first; the deepest hit wins
+    const MountTableEntry* best = lookup(payload, size, hashUpdate(HASH_SEED, "/", 1), "/", 1, length == 1);
+    size_t bestLength = 0;
+
+    uint32_t hash = HASH_SEED;
+    size_t previous = 0;
+    for (size_t i = 1; i <= length; i++) {
+        if (i < length && path[i] != '/') {
+            continue;
+        }
+        hash = hashUpdate(hash, path + previous, i - previous);
+        previous = i;
+        const MountTableEntry* entry = lookup(payload, size, hash, path, i, i == length);
+        if (entry) {
+            best = entry;
+            bestLength = i;
+        }
+    }
+    if (!best) {
+        return false;
+    }
+
+    const char* root = (const char*)payload + best->rootOffset;
+    size_t rootLength = best->rootLength;
+    if (rootLength == 1 && root[0] == '/') {
+        rootLength = 0; // Remainder is already absolute
+    }
+    const char* rest = path + bestLength;
+    size_t restLength = length - bestLength;
+    if (restLength == 1 && rest[0] == '/') {
+        restLength = 0; // The path is the root mount itself
+    }
+    if (rootLength + restLength == 0) {
+        rest = "/";
+        restLength = 1;
+    }
+    if (rootLength + restLength + 1 > outSize) {
+        return false;
+    }
+    memcpy(out, root, rootLength);
+    memcpy(out + rootLength, rest, restLength);
+    out[rootLength + restLength] = '\0';
+    return true;
+}
+
+const MountTableEntry* MountTable::lookup(const uint8_t* payload, uint32_t size, uint32_t hash,
+                                          const char* prefix, size_t prefixLength, bool wholePath) const {
+    if (size < 2 * sizeof(uint32_t)) {
+        return nullptr;
+    }
+    const uint32_t* counts = (const uint32_t*)payload;
+    uint32_t entryCount = counts[0];
+    uint32_t bucketCount = counts[1];
+    if (bucketCount == 0 || (bucketCount & (bucketCount - 1)) != 0) {
+        return nullptr;
+    }
+    uint64_t entriesOffset = 2 * sizeof(uint32_t) + (uint64_t)bucketCount * sizeof(uint32_t);
+    if (entriesOffset + (uint64_t)entryCount * sizeof(MountTableEntry) > size) {
+        return nullptr;
+    }
+    const uint32_t* buckets = counts + 2;
+    const MountTableEntry* entries = (const MountTableEntry*)(payload + entriesOffset);
+
+    const MountTableEntry* best = nullptr;
+    uint32_t index = buckets[hash & (bucketCount - 1)];
+    // Bounded by entryCount so a torn chain cannot loop
+    for (uint32_t steps = 0; index != 0 && index <= entryCount && steps < entryCount; steps++) {
+        const MountTableEntry* entry = &entries[index - 1];
+        index = entry->next;
+
+        if (entry->hash != hash || entry->prefixLength != prefixLength) continue;
+        if ((entry->specificity & MOUNT_TABLE_EXACT) && !wholePath) continue;
+        if ((uint64_t)entry->prefixOffset + entry->prefixLength > size) continue;
+        if ((uint64_t)entry->rootOffset + entry->rootLength > size) continue;
+        if (memcmp(payload + entry->prefixOffset, prefix, prefixLength) != 0) continue;
+        if (entry->userId != MOUNT_TABLE_ALL_USERS && entry->userId != userId) continue;
+        if (entry->packageLength != MOUNT_TABLE_ANY_PACKAGE) {
+            if ((uint64_t)entry->packageOffset + entry->packageLength > size) continue;
+            if (entry->packageLength != packageLength ||
+                memcmp(payload + entry->packageOffset, packageName, packageLength) != 0) continue;
+        }
+        if (!best || entry->specificity > best->specificity) {
+            best = entry;
+        }
+    }
+    return best;
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+#define LOG_TAG "PathRedirect"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+
+#include "include/path_redirect.h"
+#include "include/terista_native.h"
+#include <android/log.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <cstdarg>
+
+// open/openat only carry a mode argument when creating a file
+static inline bool hasModeArgument(int flags) {
+#ifdef O_TMPFILE
+    if ((flags & O_TMPFILE) == O_TMPFILE) return true;
+#endif
+    return (flags & O_CREAT) != 0;
+}
+
+// Static member definitions
+PathRedirect* PathRedirect::instance = nullptr;
+MountTable* PathRedirect::activeTable = nullptr;
+int (*PathRedirect::original_open)(const char* path, int flags, ...) = nullptr;
+int (*PathRedirect::original_openat)(int dirfd, const char* path, int flags, ...) = nullptr;
+int (*PathRedirect::original_stat)(const char* path, struct stat* buf) = nullptr;
+int (*PathRedirect::original_access)(const char* path, int mode) = nullptr;
+
+PathRedirect::PathRedirect() : hooksInstalled(false), tableExposed(false) {
+}
+
+PathRedirect::~PathRedirect() {
+    uninstallHooks();
+}
+
+PathRedirect* PathRedirect::getInstance() {
+    if (instance == nullptr) {
+        instance = new PathRedirect();
+    }
+    return instance;
+}
+
+bool PathRedirect::createMountTable(const std::string& path, size_t slotCapacity) {
+    return mountTable.create(path, slotCapacity);
+}
+
+bool PathRedirect::publishMountTable(const void* payload, size_t size) {
+    return mountTable.publish(payload, size);
+}
+
+bool PathRedirect::attachMountTable(const std::string& path, int userId, const std::string& packageName) {
+    if (hooksInstalled || tableExposed) {
+        // Re-attaching unmaps the old table, which a thread still in a hook may be reading
+        LOGE("Cannot re-attach mount table once hooks have used it");
+        return false;
+    }
+    if (!mountTable.attach(path)) {
+        return false;
+    }
+    mountTable.setIdentity(userId, packageName);
+    LOGI("Mount table attached for user %d, package %s", userId, packageName.c_str());
+    return true;
+}
+
+bool PathRedirect::installHooks() {
+    if (hooksInstalled) {
+        LOGD("Path redirect hooks already installed");
+        return true;
+    }
+    if (!mountTable.isAttached()) {
+        LOGE("Mount table not attached");
+        return false;
+    }
+
+    LOGI("Installing path redirect hooks...");
+
+    TeristaNative* native = TeristaNative::getInstance();
+    activeTable = &mountTable;
+    tableExposed = true;
+
+    // Hook open
+    void* openBackup = nullptr;
+    if (!native->installHook("open", (void*)hooked_open, &openBackup)) {
+        LOGE("Failed to hook open");
+        activeTable = nullptr;
+        return false;
+    }
+    original_open = (int(*)(const char*, int, ...))openBackup;
+
+    // Hook openat
+    void* openatBackup = nullptr;
+    if (!native->installHook("openat", (void*)hooked_openat, &openatBackup)) {
+        LOGE("Failed to hook openat");
+        native->uninstallHook("open");
+        activeTable = nullptr;
+        return false;
+    }
+    original_openat = (int(*)(int, const char*, int, ...))openatBackup;
+
+    // Hook stat
+    void* statBackup = nullptr;
+    if (!native->installHook("stat", (void*)hooked_stat, &statBackup)) {
+        LOGE("Failed to hook stat");
+        native->uninstallHook("open");
+        native->uninstallHook("openat");
+        activeTable = nullptr;
+        return false;
+    }
+    original_stat = (int(*)(const char*, struct stat*))statBackup;
+
+    // Hook access
+    void* accessBackup = nullptr;
+    if (!native->installHook("access", (void*)hooked_access, &accessBackup)) {
+        LOGE("Failed to hook access");
+        native->uninstallHook("open");
+        native->uninstallHook("openat");
+        native->uninstallHook("stat");
+        activeTable = nullptr;
+        return false;
+    }
+    original_access = (int(*)(const char*, int))accessBackup;
+
+    hooksInstalled = true;
+    LOGI("Path redirect hooks installed successfully");
+    return true;
+}
+
+void PathRedirect::uninstallHooks() {
+    if (!hooksInstalled) return;
+
+    LOGI("Uninstalling path redirect hooks...");
+
+    TeristaNative* native = TeristaNative::getInstance();
+    native->uninstallHook("open");
+    native->uninstallHook("openat");
+    native->uninstallHook("stat");
+    native->uninstallHook("access");
+
+    // The original_* pointers stay valid: InlineHook never unmaps a trampoline,
+    // and a thread still inside a hook calls through them
+    activeTable = nullptr;
+    hooksInstalled = false;
+    LOGI("Path redirect hooks uninstalled");
+}
+
+bool PathRedirect::isHooked() {
+    return hooksInstalled;
+}
+
+const char* PathRedirect::rewrite(const char* path, char* buffer, size_t size) {
+    MountTable* table = activeTable;
+    if (!table || !path) {
+        return path;
+    }
+    const char* redirected = table->redirect(path, buffer, size);
+    return redirected ? redirected : path;
+}
+
+int PathRedirect::hooked_open(const char* path, int flags, ...) {
+    mode_t mode = 0;
+    if (hasModeArgument(flags)) {
+        va_list args;
+        va_start(args, flags);
+        mode = (mode_t)va_arg(args, int);
+        va_end(args);
+    }
+    char buffer[PATH_MAX];
+    return original_open(rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int PathRedirect::hooked_openat(int dirfd, const char* path, int flags, ...) {
+    mode_t mode = 0;
+    if (hasModeArgument(flags)) {
+        va_list args;
+        va_start(args, flags);
+        mode = (mode_t)va_arg(args, int);
+        va_end(args);
+    }
+    // Relative paths resolve against dirfd, which already points at the real tree
+    char buffer[PATH_MAX];
+    return original_openat(dirfd, rewrite(path, buffer, sizeof(buffer)), flags, mode);
+}
+
+int PathRedirect::hooked_stat(const char* path, struct stat* buf) {
+    char buffer[PATH_MAX];
+    return original_stat(rewrite(path, buffer, sizeof(buffer)), buf);
+}
+
+int PathRedirect::hooked_access(const char* path, int mode) {
+    char buffer[PATH_MAX];
+    return original_access(rewrite(path, buffer, sizeof(buffer)), mode);
+}
\ No newline at end of file
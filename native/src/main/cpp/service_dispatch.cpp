@@ -0,0 +1,246 @@
+#include "include/service_dispatch.h"
+#include <android/log.h>
+#include <cstring>
+
+#define LOG_TAG "ServiceDispatch"
+#define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
+#define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
+#define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
+
+// Static Java entry point on NativeBridge
+static const char* DISPATCH_METHOD_NAME = "dispatchTransaction";
+static const char* DISPATCH_METHOD_SIGNATURE = "(IIILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I";
+static const char* REPLY_METHOD_NAME = "onTransactionReply";
+static const char* REPLY_METHOD_SIGNATURE = "(IILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)V";
+
+// Android's jni.h takes JNIEnv**, the JDK's (host builds) takes void**
+static jint attachCurrentThreadAsDaemon(JavaVM* vm, JNIEnv** env) {
+#ifdef __ANDROID__
+    return vm->AttachCurrentThreadAsDaemon(env, nullptr);
+#else
+    return vm->AttachCurrentThreadAsDaemon((void**)env, nullptr);
+#endif
+}
+
+ServiceDispatch* ServiceDispatch::instance = nullptr;
+
+// Cached replies are keyed by service and transaction code
+static uint64_t replyKey(int serviceId, uint32_t code) {
+    return ((uint64_t)(uint32_t)serviceId << 32) | code;
+}
+
+ServiceDispatch::ServiceDispatch() : javaVm(nullptr), bridgeClass(nullptr), dispatchMethod(nullptr),
+                                     replyMethod(nullptr), generation(0) {
+    registries.emplace_back(new Registry());
+    registry.store(registries.back().get(), std::memory_order_release);
+}
+
+ServiceDispatch::~ServiceDispatch() {
+}
+
+ServiceDispatch* ServiceDispatch::getInstance() {
+    if (instance == nullptr) {
+        instance = new ServiceDispatch();
+    }
+    return instance;
+}
+
+bool ServiceDispatch::attach(JNIEnv* env, jclass clazz) {
+    if (env->GetJavaVM(&javaVm) != JNI_OK) {
+        LOGE("Failed to get JavaVM");
+        return false;
+    }
+    jmethodID method = env->GetStaticMethodID(clazz, DISPATCH_METHOD_NAME, DISPATCH_METHOD_SIGNATURE);
+    if (method == nullptr) {
+        env->ExceptionClear();
+        LOGE("Dispatch method %s%s not found", DISPATCH_METHOD_NAME, DISPATCH_METHOD_SIGNATURE);
+        return false;
+    }
+    // Optional: without it, no system replies are cached
+    replyMethod = env->GetStaticMethodID(clazz, REPLY_METHOD_NAME, REPLY_METHOD_SIGNATURE);
+    if (replyMethod == nullptr) {
+        env->ExceptionClear();
+        LOGE("Reply method %s%s not found", REPLY_METHOD_NAME, REPLY_METHOD_SIGNATURE);
+    }
+    bridgeClass = (jclass)env->NewGlobalRef(clazz);
+    dispatchMethod = method;
+    LOGI("Service dispatch attached");
+    return true;
+}
+
+void ServiceDispatch::detach(JNIEnv* env) {
+    dispatchMethod = nullptr;
+    replyMethod = nullptr;
+    if (bridgeClass != nullptr) {
+        env->DeleteGlobalRef(bridgeClass);
+        bridgeClass = nullptr;
+    }
+}
+
+bool ServiceDispatch::isAttached() {
+    return dispatchMethod != nullptr;
+}
+
+// Callers hold servicesMutex
+ServiceDispatch::Registry* ServiceDispatch::copyRegistry() {
+    registries.emplace_back(new Registry(*registry.load(std::memory_order_relaxed)));
+    return registries.back().get();
+}
+
+void ServiceDispatch::publish(Registry* next) {
+    registry.store(next, std::memory_order_release);
+}
+
+bool ServiceDispatch::registerService(const std::string& serviceName, const std::u16string& descriptor,
+                                      int serviceId) {
+    if (serviceId < 0) {
+        return false;
+    }
+    std::lock_guard<std::mutex> lock(servicesMutex);
+    Registry* next = copyRegistry();
+    next->services[serviceName] = serviceId;
+    if (!descriptor.empty()) {
+        next->descriptors[descriptor] = serviceId;
+    }
+    publish(next);
+    generation++;
+    LOGD("Virtual service registered: %s -> %d", serviceName.c_str(), serviceId);
+    return true;
+}
+
+bool ServiceDispatch::unregisterService(const std::string& serviceName) {
+    std::lock_guard<std::mutex> lock(servicesMutex);
+    const Registry* current = registry.load(std::memory_order_relaxed);
+    auto it = current->services.find(serviceName);
+    if (it == current->services.end()) {
+        return false;
+    }
+    int serviceId = it->second;
+    Registry* next = copyRegistry();
+    next->services.erase(serviceName);
+    for (auto descriptor = next->descriptors.begin(); descriptor != next->descriptors.end();) {
+        descriptor = descriptor->second == serviceId ? next->descriptors.erase(descriptor) : std::next(descriptor);
+    }
+    for (auto reply = next->cachedReplies.begin(); reply != next->cachedReplies.end();) {
+        reply = (int)(reply->first >> 32) == serviceId ? next->cachedReplies.erase(reply) : std::next(reply);
+    }
+    publish(next);
+    generation++;
+    return true;
+}
+
+int ServiceDispatch::serviceIdOfDescriptor(const std::u16string& descriptor) {
+    const Registry* current = registry.load(std::memory_order_acquire);
+    auto it = current->descriptors.find(descriptor);
+    return it != current->descriptors.end() ? it->second : -1;
+}
+
+uint32_t ServiceDispatch::getGeneration() {
+    return generation.load(std::memory_order_acquire);
+}
+
+bool ServiceDispatch::setCachedReply(int serviceId, uint32_t code, const void* reply, size_t size) {
+    if (serviceId < 0) {
+        return false;
+    }
+    std::lock_guard<std::mutex> lock(servicesMutex);
+    Registry* next = copyRegistry();
+    if (reply == nullptr || size == 0) {
+        next->cachedReplies.erase(replyKey(serviceId, code));
+    } else {
+        const uint8_t* bytes = (const uint8_t*)reply;
+        next->cachedReplies[replyKey(serviceId, code)].assign(bytes, bytes + size);
+    }
+    publish(next);
+    return true;
+}
+
+void ServiceDispatch::clearCachedReplies(int serviceId) {
+    std::lock_guard<std::mutex> lock(servicesMutex);
+    Registry* next = copyRegistry();
+    for (auto reply = next->cachedReplies.begin(); reply != next->cachedReplies.end();) {
+        reply = (int)(reply->first >> 32) == serviceId ? next->cachedReplies.erase(reply) : std::next(reply);
+    }
+    publish(next);
+}
+
+JNIEnv* ServiceDispatch::currentEnv() {
+    JNIEnv* env = nullptr;
+    jint status = javaVm->GetEnv((void**)&env, JNI_VERSION_1_6);
+    if (status == JNI_EDETACHED) {
+        // Binder threads started from native code; stay attached for later calls
+        if (attachCurrentThreadAsDaemon(javaVm, &env) != JNI_OK) {
+            return nullptr;
+        }
+    } else if (status != JNI_OK) {
+        return nullptr;
+    }
+    return env;
+}
+
+int ServiceDispatch::dispatch(int serviceId, uint32_t code, uint32_t flags, const void* data, size_t dataSize,
+                              void* reply, size_t replyCapacity) {
+    if (serviceId < 0) {
+        return SERVICE_DISPATCH_NOT_HANDLED;
+    }
+    const Registry* current = registry.load(std::memory_order_acquire);
+    auto cached = current->cachedReplies.find(replyKey(serviceId, code));
+    if (cached != current->cachedReplies.end()) {
+        if (cached->second.size() <= replyCapacity) {
+            memcpy(reply, cached->second.data(), cached->second.size());
+        }
+        return (int)cached->second.size();
+    }
+    if (dispatchMethod == nullptr) {
+        return SERVICE_DISPATCH_NOT_HANDLED;
+    }
+    JNIEnv* env = currentEnv();
+    if (env == nullptr) {
+        LOGE("No JNI environment for dispatch");
+        return SERVICE_DISPATCH_NOT_HANDLED;
+    }
+
+    // Java only reads the data buffer; direct buffers need a non-const address
+    jobject dataBuffer = env->NewDirectByteBuffer(const_cast<void*>(data), (jlong)dataSize);
+    jobject replyBuffer = env->NewDirectByteBuffer(reply, (jlong)replyCapacity);
+    jint result = SERVICE_DISPATCH_NOT_HANDLED;
+    if (dataBuffer != nullptr && replyBuffer != nullptr) {
+        result = env->CallStaticIntMethod(bridgeClass, dispatchMethod, (jint)serviceId, (jint)code, (jint)flags,
+                                          dataBuffer, replyBuffer);
+    }
+    if (env->ExceptionCheck()) {
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+        result = SERVICE_DISPATCH_NOT_HANDLED;
+    }
+    env->DeleteLocalRef(dataBuffer);
+    env->DeleteLocalRef(replyBuffer);
+
+    if (result == SERVICE_DISPATCH_FETCH_REPLY) {
+        return result;
+    }
+    return result < 0 ? SERVICE_DISPATCH_NOT_HANDLED : result;
+}
+
+void ServiceDispatch::storeReply(int serviceId, uint32_t code, const void* data, size_t dataSize,
+                                 const void* reply, size_t replySize) {
+    if (replyMethod == nullptr) {
+        return;
+    }
+    JNIEnv* env = currentEnv();
+    if (env == nullptr) {
+        return;
+    }
+    // The reply lives in the read-only binder mapping; Java only reads it
+    jobject dataBuffer = env->NewDirectByteBuffer(const_cast<void*>(data), (jlong)dataSize);
+    jobject replyBuffer = env->NewDirectByteBuffer(const_cast<void*>(reply), (jlong)replySize);
+    if (dataBuffer != nullptr && replyBuffer != nullptr) {
+        env->CallStaticVoidMethod(bridgeClass, replyMethod, (jint)serviceId, (jint)code, dataBuffer, replyBuffer);
+    }
+    if (env->ExceptionCheck()) {
+        env->ExceptionDescribe();
+        env->ExceptionClear();
+    }
+    env->DeleteLocalRef(dataBuffer);
+    env->DeleteLocalRef(replyBuffer);
+}
\ No newline at end of file
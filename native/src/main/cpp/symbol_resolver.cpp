@@ -8,6 +8,8 @@
 #include <cstring>
 #include <regex>
 #include <fstream>
+#include <set>
+#include <algorithm>
 
 #define LOG_TAG "SymbolResolver"
 #define LOGD(...) __android_log_print(ANDROID_LOG_DEBUG, LOG_TAG, __VA_ARGS__)
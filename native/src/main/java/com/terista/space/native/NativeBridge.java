@@ -2,6 +2,8 @@ package com.terista.space.native;
 
 import android.content.Context;
 
+import java.nio.ByteBuffer;
+
 /**
  * JNI bridge to the native TeristaSpace hooking engine.
  * Provides interface to native hooking, memory management, and process control.
@@ -11,6 +13,7 @@ public class NativeBridge {
     private static final String NATIVE_LIB_NAME = "teristanative";
     private static boolean isLoaded = false;
     private static NativeBridge instance;
+    private static volatile TransactionDispatcher transactionDispatcher;
     
     static {
         try {
@@ -35,6 +38,65 @@ public class NativeBridge {
         return isLoaded;
     }
     
+    /**
+     * Answers intercepted binder transactions for virtualized services
+     */
+    public interface TransactionDispatcher {
+        /**
+         * @param data Parcel data of the transaction; read-only, valid only during the call
+         * @param reply Buffer to write the reply parcel into, valid only during the call
+         * @return Reply length in bytes, -1 to let the transaction through to the system,
+         *         or -2 to let it through and receive the system's reply in {@link #onReply}.
+         *         A length above the reply buffer's capacity asks to be called again with a
+         *         buffer that large
+         */
+        int dispatch(int serviceId, int code, int flags, ByteBuffer data, ByteBuffer reply);
+        
+        /**
+         * The system's reply to a transaction {@link #dispatch} returned -2 for
+         * @param data Parcel data of the transaction; read-only, valid only during the call
+         * @param reply Reply parcel; read-only, valid only during the call
+         */
+        default void onReply(int serviceId, int code, ByteBuffer data, ByteBuffer reply) {}
+    }
+    
+    public static void setTransactionDispatcher(TransactionDispatcher dispatcher) {
+        transactionDispatcher = dispatcher;
+    }
+    
+    /**
+     * Single upcall from the native binder hook, once per intercepted transaction
+     */
+    @SuppressWarnings("unused")
+    private static int dispatchTransaction(int serviceId, int code, int flags, ByteBuffer data, ByteBuffer reply) {
+        TransactionDispatcher dispatcher = transactionDispatcher;
+        if (dispatcher == null) {
+            return -1;
+        }
+        try {
+            return dispatcher.dispatch(serviceId, code, flags, data, reply);
+        } catch (RuntimeException e) {
+            android.util.Log.e("NativeBridge", "Transaction dispatch failed for service " + serviceId, e);
+            return -1;
+        }
+    }
+    
+    /**
+     * Upcall with the system's reply to a transaction the dispatcher asked to see
+     */
+    @SuppressWarnings("unused")
+    private static void onTransactionReply(int serviceId, int code, ByteBuffer data, ByteBuffer reply) {
+        TransactionDispatcher dispatcher = transactionDispatcher;
+        if (dispatcher == null) {
+            return;
+        }
+        try {
+            dispatcher.onReply(serviceId, code, data, reply);
+        } catch (RuntimeException e) {
+            android.util.Log.e("NativeBridge", "Reply handling failed for service " + serviceId, e);
+        }
+    }
+    
     // Native method declarations
     
     /**
@@ -138,6 +200,86 @@ public class NativeBridge {
      */
     public native boolean freeMemory(long addr, long size);
     
+    /**
+     * Create the shared mount table file and map it for publishing (engine process)
+     * @param path Mount table file path, readable by virtual app processes
+     * @param slotCapacity Maximum encoded table size in bytes
+     * @return true if the table was created
+     */
+    public native boolean createMountTable(String path, int slotCapacity);
+    
+    /**
+     * Publish a new mount table; readers switch over without locking
+     * @param payload Table encoded by com.terista.space.fs.MountTable
+     * @return true if the table fit and was published
+     */
+    public native boolean publishMountTable(byte[] payload);
+    
+    /**
+     * Map the shared mount table read-only (virtual app process)
+     * @param path Mount table file path
+     * @param userId Virtual user ID of this process
+     * @param packageName Package running in this process
+     * @return true if the table was attached
+     */
+    public native boolean attachMountTable(String path, int userId, String packageName);
+    
+    /**
+     * Install open/openat/stat/access hooks that redirect paths through the attached mount table
+     * @return true if hooks installed successfully
+     */
+    public native boolean installPathRedirect();
+    
+    /**
+     * Uninstall path redirection hooks
+     */
+    public native void uninstallPathRedirect();
+    
+    /**
+     * Copy a regular file in the kernel (reflink, else copy_file_range) without
+     * moving the bytes through the Java heap
+     * @param source Source file path
+     * @param target Target file path, replaced if it exists
+     * @return Bytes copied, or -1 if unsupported and the caller should copy itself
+     */
+    public native long copyFile(String source, String target);
+    
+    /**
+     * Route binder transactions for a service to {@link TransactionDispatcher}.
+     * Once the binder hook is installed, calls carrying the service's interface
+     * token are answered in-process and never reach the driver.
+     * @param serviceName Service manager name, e.g. "package"
+     * @param descriptor AIDL interface name, matched against interface tokens
+     * @param serviceId Interned ID passed back to the dispatcher
+     * @return true if registered
+     */
+    public native boolean registerVirtualService(String serviceName, String descriptor, int serviceId);
+    
+    /**
+     * Let transactions for a service through to the system again
+     * @param serviceName Service manager name
+     */
+    public native void unregisterVirtualService(String serviceName);
+    
+    /**
+     * Answer a transaction code with a fixed reply parcel, without calling into Java
+     * @param serviceId Interned ID the service was registered with
+     * @param reply Marshalled reply, or null to remove it
+     * @return true if stored
+     */
+    public native boolean setCachedReply(int serviceId, int code, byte[] reply);
+    
+    /**
+     * Latency of binder calls answered in-process versus passed through to the driver
+     * @return {local calls, local nanos, pass-through calls, pass-through nanos}
+     */
+    public native long[] getBinderCallStats();
+    
+    /**
+     * Start binder call latency counting over
+     */
+    public native void resetBinderCallStats();
+    
     // Helper methods
     
     /**
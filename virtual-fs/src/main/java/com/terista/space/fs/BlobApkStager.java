@@ -0,0 +1,64 @@
+package com.terista.space.fs;
+
+import android.util.Log;
+
+import com.terista.space.core.ApkStager;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link ApkStager} that links installed APKs out of a {@link BlobStore}.
+ *
+ * APKs land in apps/&lt;package&gt;/base-&lt;hash&gt;.apk under the given root,
+ * so reinstalling an APK already held for any app or user is a hash and a
+ * hard link. Releasing a staged APK deletes the link and collects blobs that
+ * are no longer referenced.
+ */
+public final class BlobApkStager implements ApkStager {
+    
+    private static final String TAG = "BlobApkStager";
+    
+    private final BlobStore store;
+    private final File appsRoot;
+    
+    public BlobApkStager(File root) {
+        this(new BlobStore(new File(root, "store")), new File(root, "apps"));
+    }
+    
+    public BlobApkStager(BlobStore store, File appsRoot) {
+        this.store = store;
+        this.appsRoot = appsRoot;
+    }
+    
+    public BlobStore getStore() { return store; }
+    
+    @Override
+    public String stage(String apkPath, String packageName, int versionCode) throws IOException {
+        String hash = store.stage(new File(apkPath), h -> targetFor(packageName, h));
+        return targetFor(packageName, hash).getAbsolutePath();
+    }
+    
+    private File targetFor(String packageName, String hash) {
+        return new File(new File(appsRoot, packageName), "base-" + hash.substring(0, 16) + ".apk");
+    }
+    
+    @Override
+    public void release(String stagedPath) {
+        File staged = new File(stagedPath);
+        File packageDir = staged.getParentFile();
+        if (packageDir == null || !appsRoot.getAbsoluteFile().equals(packageDir.getParentFile())) {
+            // Installed in place, not ours to delete
+            return;
+        }
+        if (!staged.delete() && staged.exists()) {
+            Log.w(TAG, "Failed to delete staged APK: " + stagedPath);
+            return;
+        }
+        String[] remaining = packageDir.list();
+        if (remaining != null && remaining.length == 0) {
+            packageDir.delete();
+        }
+        store.collectGarbage();
+    }
+}
\ No newline at end of file
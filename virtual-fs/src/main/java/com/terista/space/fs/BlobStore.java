@@ -0,0 +1,269 @@
+package com.terista.space.fs;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for APKs and native libraries shared between apps.
+ *
+ * Each distinct file is kept once under blobs/ab/abcdef... (its SHA-256) and
+ * hard-linked into app directories, so installing a file the store already
+ * holds costs a hash and a link. The link count of a blob is its reference
+ * count: deleting an app's copy drops a reference and {@link #collectGarbage}
+ * removes blobs nobody links to. Where hard links are not possible (another
+ * filesystem) the blob is copied out instead, through the native reflink
+ * copier when one is installed; such copies are not counted as references.
+ */
+public final class BlobStore {
+    
+    private static final String TAG = "BlobStore";
+    private static final String BLOBS_DIR = "blobs";
+    private static final String TEMP_DIR = "tmp";
+    /** Source hashes remembered for re-staging; enough for a bulk install's lib/ trees */
+    private static final int MAX_SOURCE_HASHES = 1024;
+    
+    private final File blobsRoot;
+    private final File tempRoot;
+    // Hashes of recently stored sources, keyed by path, size and mtime
+    private final Map<String, String> sourceHashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_SOURCE_HASHES;
+        }
+    };
+    // put/link take the read lock; GC takes the write lock so it never drops a blob mid-link.
+    // Staging holds the read lock across both, so a blob nobody links yet survives until it is linked.
+    private final ReadWriteLock gcLock = new ReentrantReadWriteLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+    
+    public BlobStore(File root) {
+        this.blobsRoot = new File(root, BLOBS_DIR);
+        this.tempRoot = new File(root, TEMP_DIR);
+    }
+    
+    /**
+     * Add a file to the store unless identical content is already there
+     * @return SHA-256 of the content in hex
+     */
+    public String put(File source) throws IOException {
+        String hash = hashOf(source);
+        File blob = getBlob(hash);
+        gcLock.readLock().lock();
+        try {
+            if (blob.isFile()) {
+                hits.increment();
+                bytesSaved.add(blob.length());
+                return hash;
+            }
+            misses.increment();
+            
+            // Copy beside the store and link into place, so a blob is never seen partially written
+            Files.createDirectories(blob.getParentFile().toPath());
+            Files.createDirectories(tempRoot.toPath());
+            Path temp = Files.createTempFile(tempRoot.toPath(), hash.substring(0, 16), ".tmp");
+            try {
+                FileTransfer.copyFile(source, temp.toFile());
+                temp.toFile().setReadOnly();
+                publish(temp, blob.toPath());
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            return hash;
+        } finally {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Make target a reference to a stored blob, replacing any existing file
+     * @return true if target is a hard link, false if it had to be copied
+     */
+    public boolean link(String hash, File target) throws IOException {
+        File blob = getBlob(hash);
+        Path targetPath = target.toPath();
+        gcLock.readLock().lock();
+        try {
+            if (!blob.isFile()) {
+                throw new IOException("No such blob: " + hash);
+            }
+            if (Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS) && Files.isSameFile(targetPath, blob.toPath())) {
+                return true;
+            }
+            Files.createDirectories(targetPath.getParent());
+            Path temp = targetPath.resolveSibling(target.getName() + ".link");
+            Files.deleteIfExists(temp);
+            try {
+                Files.createLink(temp, blob.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                Log.d(TAG, "Hard link failed, copying " + hash + ": " + e.getMessage());
+                FileTransfer.copyFile(blob, temp.toFile());
+                replace(temp, targetPath);
+                return false;
+            }
+            replace(temp, targetPath);
+            return true;
+        } finally {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Store a file and link it to target in one step
+     * @return SHA-256 of the content in hex
+     */
+    public String stage(File source, File target) throws IOException {
+        return stage(source, hash -> target);
+    }
+    
+    /**
+     * Store a file and link it to a target named after its hash, without
+     * letting garbage collection run in between
+     * @param targetForHash Target for the content's SHA-256 in hex
+     * @return SHA-256 of the content in hex
+     */
+    public String stage(File source, Function<String, File> targetForHash) throws IOException {
+        gcLock.readLock().lock();
+        try {
+            String hash = put(source);
+            link(hash, targetForHash.apply(hash));
+            return hash;
+        } finally {
+            gcLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Stage every regular file under a directory, e.g. an app's extracted lib/ tree
+     * @return Number of files staged
+     */
+    public int stageDirectory(File sourceDir, File targetDir) throws IOException {
+        Path sourceRoot = sourceDir.toPath();
+        int staged = 0;
+        try (Stream<Path> entries = Files.walk(sourceRoot)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    stage(entry.toFile(), new File(targetDir, sourceRoot.relativize(entry).toString()));
+                    staged++;
+                }
+            }
+        }
+        return staged;
+    }
+    
+    public File getBlob(String hash) {
+        return new File(new File(blobsRoot, hash.substring(0, 2)), hash);
+    }
+    
+    public boolean contains(String hash) {
+        return getBlob(hash).isFile();
+    }
+    
+    /**
+     * @return Hard links to the blob outside the store, or -1 if it is missing or unknown
+     */
+    public int getReferenceCount(String hash) {
+        try {
+            return linkCount(getBlob(hash).toPath()) - 1;
+        } catch (IOException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Delete blobs that are no longer linked from any app
+     * @return Bytes freed
+     */
+    public long collectGarbage() {
+        if (!blobsRoot.isDirectory()) {
+            return 0;
+        }
+        long freed = 0;
+        int removed = 0;
+        gcLock.writeLock().lock();
+        try (Stream<Path> entries = Files.walk(blobsRoot.toPath())) {
+            for (Path blob : (Iterable<Path>) entries::iterator) {
+                if (!Files.isRegularFile(blob, LinkOption.NOFOLLOW_LINKS) || linkCount(blob) > 1) {
+                    continue;
+                }
+                long size = Files.size(blob);
+                Files.delete(blob);
+                freed += size;
+                removed++;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Garbage collection failed", e);
+        } catch (UnsupportedOperationException e) {
+            // Without link counts every blob looks unreferenced; keep them all
+            Log.w(TAG, "Link counts unavailable, skipping garbage collection");
+        } finally {
+            gcLock.writeLock().unlock();
+        }
+        Log.i(TAG, "Collected " + removed + " blobs, " + freed + " bytes");
+        return freed;
+    }
+    
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    /** Bytes not written because the content was already stored */
+    public long getBytesSaved() { return bytesSaved.sum(); }
+    
+    private String hashOf(File source) throws IOException {
+        // Re-staging the same unchanged file skips the hash
+        String key = source.getAbsolutePath() + '|' + source.length() + '|' + source.lastModified();
+        String hash;
+        synchronized (sourceHashes) {
+            hash = sourceHashes.get(key);
+        }
+        if (hash == null) {
+            hash = FileTransfer.sha256Hex(source);
+            synchronized (sourceHashes) {
+                sourceHashes.put(key, hash);
+            }
+        }
+        return hash;
+    }
+    
+    private static void publish(Path temp, Path blob) throws IOException {
+        try {
+            // Fails if another thread stored the same content first, which is fine
+            Files.createLink(blob, temp);
+        } catch (FileAlreadyExistsException e) {
+            // Already stored
+        } catch (IOException | UnsupportedOperationException e) {
+            try {
+                Files.move(temp, blob);
+            } catch (FileAlreadyExistsException ignored) {
+                // Already stored
+            }
+        }
+    }
+    
+    private static void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    private static int linkCount(Path path) throws IOException {
+        return (Integer) Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+    }
+}
\ No newline at end of file
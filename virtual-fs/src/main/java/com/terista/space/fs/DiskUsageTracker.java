@@ -0,0 +1,373 @@
+package com.terista.space.fs;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-app disk usage accounting with soft and hard quotas.
+ *
+ * Usage is a baseline from the last background scan plus the byte deltas
+ * reported for writes since that scan started, so reading it never touches
+ * the disk. Scans run on a fork-join pool, one task per directory, and are
+ * repeated periodically to correct for writes that bypassed the counters.
+ * Writes made while a scan is running may be counted twice until the next
+ * scan; usage errs high rather than low. Setting a hard quota starts the
+ * first scan, and writes checked against it wait for that scan to finish.
+ */
+public final class DiskUsageTracker {
+    
+    private static final String TAG = "DiskUsageTracker";
+    
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+    private static final int MAX_SCAN_THREADS = 4;
+    
+    /**
+     * Real directories holding an app's data
+     */
+    public interface RootProvider {
+        List<String> getRoots(int userId, String packageName);
+    }
+    
+    /**
+     * Notified when an app first goes over its soft quota; called on the writing thread
+     */
+    public interface QuotaListener {
+        void onSoftQuotaExceeded(int userId, String packageName, long usedBytes, long softLimit);
+    }
+    
+    private final RootProvider roots;
+    private final Map<String, AppUsage> apps = new ConcurrentHashMap<>();
+    private final Map<String, ForkJoinTask<Long>> scans = new ConcurrentHashMap<>();
+    private final ForkJoinPool scanPool = new ForkJoinPool(
+            Math.min(MAX_SCAN_THREADS, Runtime.getRuntime().availableProcessors()));
+    private final Object schedulerLock = new Object();
+    private ScheduledExecutorService scheduler;
+    private volatile QuotaListener quotaListener;
+    
+    public DiskUsageTracker(RootProvider roots) {
+        this.roots = roots;
+    }
+    
+    public void setQuotaListener(QuotaListener listener) {
+        this.quotaListener = listener;
+    }
+    
+    /**
+     * @param softLimit Bytes above which the listener is notified, or {@link #NO_LIMIT}
+     * @param hardLimit Bytes above which writes are refused, or {@link #NO_LIMIT}
+     */
+    public void setQuota(int userId, String packageName, long softLimit, long hardLimit) {
+        AppUsage usage = usageOf(userId, packageName);
+        usage.softLimit = softLimit;
+        usage.hardLimit = hardLimit;
+        if (hardLimit != NO_LIMIT && usage.baseline.scannedAtMillis == 0) {
+            // Seed the baseline now, so the first checked write has one to compare against
+            rescan(userId, packageName);
+        }
+    }
+    
+    public void clearQuota(int userId, String packageName) {
+        setQuota(userId, packageName, NO_LIMIT, NO_LIMIT);
+    }
+    
+    /**
+     * Non-blocking usage lookup; an app that was never scanned gets a scan
+     * started and reports only the writes counted so far
+     */
+    public Usage getUsage(String packageName, int userId) {
+        AppUsage usage = usageOf(userId, packageName);
+        if (usage.baseline.scannedAtMillis == 0) {
+            rescan(userId, packageName);
+        }
+        return usage.snapshot(scans.containsKey(keyOf(userId, packageName)));
+    }
+    
+    /**
+     * Count bytes written (positive) or freed (negative) by an app
+     */
+    public void recordWrite(int userId, String packageName, long deltaBytes) {
+        if (deltaBytes == 0) return;
+        AppUsage usage = usageOf(userId, packageName);
+        usage.written.addAndGet(deltaBytes);
+        usage.checkSoftLimit(quotaListener);
+    }
+    
+    /**
+     * Refuse a write that would take the app over its hard quota. Before the
+     * app's first scan completes this waits for it.
+     * @param extraBytes Bytes the write is about to add
+     * @throws IOException if the hard quota would be exceeded
+     */
+    public void checkWrite(int userId, String packageName, long extraBytes) throws IOException {
+        AppUsage usage = apps.get(keyOf(userId, packageName));
+        if (usage == null || usage.hardLimit == NO_LIMIT) {
+            return;
+        }
+        if (usage.baseline.scannedAtMillis == 0) {
+            awaitScan(userId, packageName);
+        }
+        long used = usage.current();
+        if (used + extraBytes > usage.hardLimit) {
+            throw new IOException("Disk quota exceeded for " + packageName + " (user " + userId + "): writing "
+                    + extraBytes + " bytes with " + used + " of " + usage.hardLimit + " bytes used");
+        }
+    }
+    
+    private void awaitScan(int userId, String packageName) throws IOException {
+        try {
+            rescan(userId, packageName).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the disk usage of " + packageName, e);
+        } catch (ExecutionException e) {
+            // Check against the writes counted so far; the next write retries the scan
+            Log.w(TAG, "Disk usage scan failed for " + packageName, e.getCause());
+        }
+    }
+    
+    /**
+     * Recompute an app's usage in the background; joins a scan already in progress
+     * @return Future completing with the scanned byte count
+     */
+    public Future<Long> rescan(int userId, String packageName) {
+        String key = keyOf(userId, packageName);
+        ForkJoinTask<Long> running = scans.get(key);
+        if (running != null) {
+            return running;
+        }
+        AppUsage usage = usageOf(userId, packageName);
+        ForkJoinTask<Long> task = new RecursiveTask<Long>() {
+            @Override
+            protected Long compute() {
+                try {
+                    long writtenAtStart = usage.written.get();
+                    long total = 0;
+                    List<DirectoryScan> subtasks = new ArrayList<>();
+                    for (String root : roots.getRoots(userId, packageName)) {
+                        subtasks.add(new DirectoryScan(Paths.get(root)));
+                    }
+                    for (DirectoryScan subtask : ForkJoinTask.invokeAll(subtasks)) {
+                        total += subtask.join();
+                    }
+                    usage.baseline = new Baseline(total, writtenAtStart, System.currentTimeMillis());
+                    usage.checkSoftLimit(quotaListener);
+                    return total;
+                } finally {
+                    scans.remove(key, this);
+                }
+            }
+        };
+        ForkJoinTask<Long> existing = scans.putIfAbsent(key, task);
+        if (existing != null) {
+            return existing;
+        }
+        scanPool.execute(task);
+        return task;
+    }
+    
+    /**
+     * Rescan every tracked app
+     */
+    public void rescanAll() {
+        for (AppUsage usage : apps.values()) {
+            rescan(usage.userId, usage.packageName);
+        }
+    }
+    
+    /**
+     * Rescan every tracked app at a fixed delay on a background thread
+     */
+    public void startPeriodicRescan(long intervalMillis) {
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "DiskUsage-Rescan");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::rescanAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    public void stopPeriodicRescan() {
+        synchronized (schedulerLock) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+    
+    /**
+     * Stop tracking an app, e.g. when it is uninstalled
+     */
+    public void forget(int userId, String packageName) {
+        apps.remove(keyOf(userId, packageName));
+    }
+    
+    public void shutdown() {
+        stopPeriodicRescan();
+        scanPool.shutdownNow();
+    }
+    
+    private AppUsage usageOf(int userId, String packageName) {
+        return apps.computeIfAbsent(keyOf(userId, packageName), k -> new AppUsage(userId, packageName));
+    }
+    
+    private static String keyOf(int userId, String packageName) {
+        return userId + ":" + packageName;
+    }
+    
+    /**
+     * Sums one directory's files and forks a task per subdirectory
+     */
+    private static final class DirectoryScan extends RecursiveTask<Long> {
+        private final Path directory;
+        
+        DirectoryScan(Path directory) {
+            this.directory = directory;
+        }
+        
+        @Override
+        protected Long compute() {
+            if (!Files.isDirectory(directory)) {
+                return 0L;
+            }
+            long[] total = new long[1];
+            List<DirectoryScan> subtasks = new ArrayList<>();
+            try {
+                // Depth 1: entries arrive with their attributes; subdirectories are handed to other workers
+                Files.walkFileTree(directory, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isDirectory()) {
+                            subtasks.add(new DirectoryScan(file));
+                        } else if (attrs.isRegularFile()) {
+                            total[0] += attrs.size();
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to scan " + directory, e);
+            }
+            for (DirectoryScan subtask : ForkJoinTask.invokeAll(subtasks)) {
+                total[0] += subtask.join();
+            }
+            return total[0];
+        }
+    }
+    
+    private static final class Baseline {
+        static final Baseline NONE = new Baseline(0, 0, 0);
+        
+        final long scannedBytes;
+        final long writtenAtScan;
+        final long scannedAtMillis;
+        
+        Baseline(long scannedBytes, long writtenAtScan, long scannedAtMillis) {
+            this.scannedBytes = scannedBytes;
+            this.writtenAtScan = writtenAtScan;
+            this.scannedAtMillis = scannedAtMillis;
+        }
+    }
+    
+    private static final class AppUsage {
+        final int userId;
+        final String packageName;
+        // Running total of all recorded deltas; usage is the baseline plus what was written since
+        final AtomicLong written = new AtomicLong();
+        volatile Baseline baseline = Baseline.NONE;
+        volatile long softLimit = NO_LIMIT;
+        volatile long hardLimit = NO_LIMIT;
+        volatile boolean overSoftLimit;
+        
+        AppUsage(int userId, String packageName) {
+            this.userId = userId;
+            this.packageName = packageName;
+        }
+        
+        long current() {
+            Baseline base = baseline;
+            return Math.max(0, base.scannedBytes + written.get() - base.writtenAtScan);
+        }
+        
+        void checkSoftLimit(QuotaListener listener) {
+            long used = current();
+            boolean over = used > softLimit;
+            if (over == overSoftLimit) return;
+            overSoftLimit = over;
+            if (over) {
+                Log.w(TAG, packageName + " (user " + userId + ") is over its soft quota: " + used + " bytes");
+                if (listener != null) {
+                    listener.onSoftQuotaExceeded(userId, packageName, used, softLimit);
+                }
+            }
+        }
+        
+        Usage snapshot(boolean scanning) {
+            return new Usage(current(), softLimit, hardLimit, baseline.scannedAtMillis, scanning);
+        }
+    }
+    
+    /**
+     * Point-in-time usage of one app
+     */
+    public static final class Usage {
+        public final long usedBytes;
+        public final long softLimit;
+        public final long hardLimit;
+        /** Wall-clock time of the last completed scan, 0 if there was none */
+        public final long scannedAtMillis;
+        public final boolean scanning;
+        
+        Usage(long usedBytes, long softLimit, long hardLimit, long scannedAtMillis, boolean scanning) {
+            this.usedBytes = usedBytes;
+            this.softLimit = softLimit;
+            this.hardLimit = hardLimit;
+            this.scannedAtMillis = scannedAtMillis;
+            this.scanning = scanning;
+        }
+        
+        public boolean isOverSoftLimit() { return usedBytes > softLimit; }
+        public boolean isOverHardLimit() { return usedBytes > hardLimit; }
+        
+        @Override
+        public String toString() {
+            return "Usage{usedBytes=" + usedBytes +
+                    (softLimit != NO_LIMIT ? ", softLimit=" + softLimit : "") +
+                    (hardLimit != NO_LIMIT ? ", hardLimit=" + hardLimit : "") +
+                    ", scannedAtMillis=" + scannedAtMillis +
+                    (scanning ? ", scanning" : "") + '}';
+        }
+    }
+}
\ No newline at end of file
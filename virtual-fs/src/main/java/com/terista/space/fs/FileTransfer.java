@@ -0,0 +1,274 @@
+package com.terista.space.fs;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * File copying and hashing that keeps file contents off the Java heap.
+ *
+ * Copies go through the kernel: a {@link NativeCopier} (reflink or
+ * copy_file_range) when one is installed, otherwise
+ * {@link FileChannel#transferTo}. Hashing reads through a direct buffer.
+ * Directory copies run files in parallel and split large files into chunks.
+ */
+public final class FileTransfer {
+    
+    private static final String TAG = "FileTransfer";
+    
+    /** Files above this size are split into chunks of this size for parallel copies */
+    public static final long CHUNK_SIZE = 64L * 1024 * 1024;
+    /** Largest single transferTo call, so progress is reported at least this often */
+    private static final long TRANSFER_STEP = 8L * 1024 * 1024;
+    /** Read size when hashing */
+    private static final int DIGEST_BUFFER = 1024 * 1024;
+    
+    private static volatile NativeCopier nativeCopier;
+    
+    private FileTransfer() {}
+    
+    /**
+     * Receives cumulative progress; for directory copies it is called from worker threads
+     */
+    public interface Progress {
+        void onProgress(long bytesCopied, long bytesTotal);
+    }
+    
+    /**
+     * In-kernel whole-file copy, e.g. {@link NativeFileCopier}
+     */
+    public interface NativeCopier {
+        /**
+         * @return Bytes copied, or -1 to fall back to {@link FileChannel#transferTo}
+         */
+        long copy(String source, String target);
+    }
+    
+    public static void setNativeCopier(NativeCopier copier) {
+        nativeCopier = copier;
+    }
+    
+    public static long copyFile(File source, File target) throws IOException {
+        return copyFile(source, target, null);
+    }
+    
+    /**
+     * Copy a regular file, replacing the target
+     * @return Bytes copied
+     */
+    public static long copyFile(File source, File target, Progress progress) throws IOException {
+        long size = source.length();
+        ProgressTracker tracker = new ProgressTracker(progress, size);
+        copyWhole(source.toPath(), target.toPath(), tracker);
+        return size;
+    }
+    
+    /**
+     * Copy a directory tree in parallel, preserving modification times and symlinks
+     * @param threads Worker threads; 1 copies sequentially on the caller's thread
+     * @return Bytes copied
+     */
+    public static long copyDirectory(File source, File target, int threads, Progress progress) throws IOException {
+        Path sourceRoot = source.toPath();
+        Path targetRoot = target.toPath();
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        
+        // Create the directory skeleton first so file tasks never race on parents
+        try (Stream<Path> entries = Files.walk(sourceRoot)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                Path destination = targetRoot.resolve(sourceRoot.relativize(entry).toString());
+                if (Files.isSymbolicLink(entry)) {
+                    Files.deleteIfExists(destination);
+                    Files.createSymbolicLink(destination, Files.readSymbolicLink(entry));
+                } else if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    Files.createDirectories(destination);
+                } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    files.add(entry);
+                    total += Files.size(entry);
+                }
+            }
+        }
+        
+        ProgressTracker tracker = new ProgressTracker(progress, total);
+        List<Task> tasks = new ArrayList<>();
+        boolean splitLargeFiles = nativeCopier == null && threads > 1;
+        for (Path file : files) {
+            Path destination = targetRoot.resolve(sourceRoot.relativize(file).toString());
+            long size = Files.size(file);
+            if (splitLargeFiles && size > CHUNK_SIZE) {
+                // Size the target up front; each chunk writes its own range
+                try (RandomAccessFile raf = new RandomAccessFile(destination.toFile(), "rw")) {
+                    raf.setLength(size);
+                }
+                for (long position = 0; position < size; position += CHUNK_SIZE) {
+                    long offset = position;
+                    tasks.add(() -> copyRange(file, destination, offset, Math.min(CHUNK_SIZE, size - offset), tracker));
+                }
+            } else {
+                tasks.add(() -> copyWhole(file, destination, tracker));
+            }
+        }
+        runAll(tasks, threads);
+        
+        for (Path file : files) {
+            Path destination = targetRoot.resolve(sourceRoot.relativize(file).toString());
+            Files.setLastModifiedTime(destination, Files.getLastModifiedTime(file));
+        }
+        return total;
+    }
+    
+    /**
+     * Hash a file through a direct buffer, so neither the heap nor the
+     * address space holds more than one read of it
+     * @param algorithm MessageDigest algorithm, e.g. "SHA-256"
+     */
+    public static byte[] digest(File file, String algorithm) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Unsupported digest: " + algorithm, e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest.digest();
+    }
+    
+    public static String sha256Hex(File file) throws IOException {
+        byte[] hash = digest(file, "SHA-256");
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+    
+    private static void copyWhole(Path source, Path target, ProgressTracker tracker) throws IOException {
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            // Truncating the target would destroy the source
+            tracker.add(Files.size(source));
+            return;
+        }
+        NativeCopier copier = nativeCopier;
+        if (copier != null) {
+            long copied = copier.copy(source.toString(), target.toString());
+            if (copied >= 0) {
+                tracker.add(copied);
+                return;
+            }
+        }
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transfer(in, 0, in.size(), out, tracker);
+        }
+    }
+    
+    private static void copyRange(Path source, Path target, long position, long count, ProgressTracker tracker) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            transfer(in, position, count, out, tracker);
+        }
+    }
+    
+    private static void transfer(FileChannel in, long position, long count, FileChannel out, ProgressTracker tracker) throws IOException {
+        long done = 0;
+        while (done < count) {
+            out.position(position + done);
+            long transferred = in.transferTo(position + done, Math.min(TRANSFER_STEP, count - done), out);
+            if (transferred <= 0) {
+                throw new IOException("Source truncated during copy at " + (position + done));
+            }
+            done += transferred;
+            tracker.add(transferred);
+        }
+    }
+    
+    private interface Task {
+        void run() throws IOException;
+    }
+    
+    private static void runAll(List<Task> tasks, int threads) throws IOException {
+        if (threads <= 1 || tasks.size() <= 1) {
+            for (Task task : tasks) {
+                task.run();
+            }
+            return;
+        }
+        
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), r -> {
+            Thread thread = new Thread(r, "FileTransfer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(executor.submit(() -> {
+                    task.run();
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted during copy", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static final class ProgressTracker {
+        private final Progress progress;
+        private final long total;
+        private final AtomicLong copied = new AtomicLong();
+        
+        ProgressTracker(Progress progress, long total) {
+            this.progress = progress;
+            this.total = total;
+        }
+        
+        void add(long bytes) {
+            long now = copied.addAndGet(bytes);
+            if (progress != null) {
+                try {
+                    progress.onProgress(now, total);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Progress callback failed", e);
+                }
+            }
+        }
+    }
+}
\ No newline at end of file
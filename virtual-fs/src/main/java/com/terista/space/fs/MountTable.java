@@ -0,0 +1,130 @@
+package com.terista.space.fs;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes mount rules into the flat, hash-bucketed table read by the native
+ * path redirection hooks (native/src/main/cpp/include/mount_table.h).
+ *
+ * Each rule is keyed by the FNV-1a hash of its normalized prefix, so the
+ * native side can match a path with one bucket probe per path segment and
+ * no allocation. Strings are UTF-8 and shared between rules.
+ */
+public final class MountTable {
+    
+    static final int HASH_SEED = 0x811C9DC5;
+    private static final int HASH_PRIME = 0x01000193;
+    
+    /** Specificity flag: the rule maps only the prefix itself, not its subtree */
+    static final int EXACT = 0x80000000;
+    private static final int ANY_PACKAGE = 0xFFFFFFFF;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 40;
+    
+    private final List<Rule> rules = new ArrayList<>();
+    
+    /**
+     * Add a subtree mount
+     */
+    public void addMount(PathRouter.Mount mount) {
+        rules.add(new Rule(mount.userId, mount.packageName, mount.virtualPrefix, mount.realRoot, mount.specificity()));
+    }
+    
+    /**
+     * Add a single-path mapping that takes precedence over mounts, for every user and app
+     */
+    public void addExact(String virtualPath, String realPath) {
+        rules.add(new Rule(PathRouter.ALL_USERS, null, PathRouter.normalize(virtualPath), realPath, EXACT));
+    }
+    
+    public int size() { return rules.size(); }
+    
+    /**
+     * @return Table payload in native byte order
+     */
+    public byte[] encode() {
+        int entryCount = rules.size();
+        int bucketCount = Integer.highestOneBit(Math.max(1, entryCount * 2 - 1)) << 1;
+        
+        // Lay out the string pool first so entries can refer to it
+        Map<ByteBuffer, Integer> stringOffsets = new HashMap<>();
+        List<byte[]> strings = new ArrayList<>();
+        int stringsStart = HEADER_SIZE + bucketCount * 4 + entryCount * ENTRY_SIZE;
+        int cursor = stringsStart;
+        for (Rule rule : rules) {
+            for (byte[] value : new byte[][] { rule.prefix, rule.root, rule.packageName }) {
+                if (value == null || stringOffsets.putIfAbsent(ByteBuffer.wrap(value), cursor) != null) continue;
+                strings.add(value);
+                cursor += value.length;
+            }
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocate(cursor).order(ByteOrder.nativeOrder());
+        buffer.putInt(0, entryCount);
+        buffer.putInt(4, bucketCount);
+        
+        for (int i = 0; i < entryCount; i++) {
+            Rule rule = rules.get(i);
+            int hash = hash(rule.prefix);
+            int bucket = HEADER_SIZE + (hash & (bucketCount - 1)) * 4;
+            
+            int entry = HEADER_SIZE + bucketCount * 4 + i * ENTRY_SIZE;
+            buffer.putInt(entry, hash);
+            buffer.putInt(entry + 4, buffer.getInt(bucket));
+            buffer.putInt(entry + 8, rule.userId);
+            buffer.putInt(entry + 12, rule.specificity);
+            buffer.putInt(entry + 16, stringOffsets.get(ByteBuffer.wrap(rule.prefix)));
+            buffer.putInt(entry + 20, rule.prefix.length);
+            buffer.putInt(entry + 24, stringOffsets.get(ByteBuffer.wrap(rule.root)));
+            buffer.putInt(entry + 28, rule.root.length);
+            if (rule.packageName != null) {
+                buffer.putInt(entry + 32, stringOffsets.get(ByteBuffer.wrap(rule.packageName)));
+                buffer.putInt(entry + 36, rule.packageName.length);
+            } else {
+                buffer.putInt(entry + 32, 0);
+                buffer.putInt(entry + 36, ANY_PACKAGE);
+            }
+            buffer.putInt(bucket, i + 1);
+        }
+        
+        buffer.position(stringsStart);
+        for (byte[] bytes : strings) {
+            buffer.put(bytes);
+        }
+        return buffer.array();
+    }
+    
+    /**
+     * FNV-1a over UTF-8 bytes, matching MountTable::hashUpdate
+     */
+    static int hash(byte[] bytes) {
+        int hash = HASH_SEED;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= HASH_PRIME;
+        }
+        return hash;
+    }
+    
+    private static final class Rule {
+        final int userId;
+        final byte[] packageName;
+        final byte[] prefix;
+        final byte[] root;
+        final int specificity;
+        
+        Rule(int userId, String packageName, String prefix, String root, int specificity) {
+            this.userId = userId;
+            this.packageName = packageName != null ? packageName.getBytes(StandardCharsets.UTF_8) : null;
+            this.prefix = prefix.getBytes(StandardCharsets.UTF_8);
+            this.root = root.getBytes(StandardCharsets.UTF_8);
+            this.specificity = specificity;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,32 @@
+package com.terista.space.fs;
+
+import com.terista.space.native.NativeBridge;
+
+/**
+ * {@link FileTransfer.NativeCopier} backed by the native reflink/copy_file_range helper
+ */
+public final class NativeFileCopier implements FileTransfer.NativeCopier {
+    
+    private final NativeBridge bridge;
+    
+    private NativeFileCopier(NativeBridge bridge) {
+        this.bridge = bridge;
+    }
+    
+    /**
+     * Route {@link FileTransfer} copies through the kernel when the native library is loaded
+     * @return true if installed
+     */
+    public static boolean install() {
+        if (!NativeBridge.isNativeLibraryLoaded()) {
+            return false;
+        }
+        FileTransfer.setNativeCopier(new NativeFileCopier(NativeBridge.getInstance()));
+        return true;
+    }
+    
+    @Override
+    public long copy(String source, String target) {
+        return bridge.copyFile(source, target);
+    }
+}
\ No newline at end of file
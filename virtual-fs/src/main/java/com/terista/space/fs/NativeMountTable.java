@@ -0,0 +1,166 @@
+package com.terista.space.fs;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.terista.space.native.NativeBridge;
+
+import java.io.File;
+
+/**
+ * Publishes the {@link VirtualFileSystem} mounts to native code, so libc
+ * open/openat/stat/access calls in virtual app processes are redirected
+ * without a JNI upcall.
+ *
+ * The engine process calls {@link #create(File, int)} once; every later mount
+ * change is republished automatically. Each virtual app process calls
+ * {@link #attach(File, int, String)} once, with its own identity, or
+ * {@link #attachWhenReady(File, int, String)} when it may start first. Both sides
+ * find the file through {@link #tableFile(Context)}.
+ */
+public final class NativeMountTable {
+    
+    private static final String TAG = "NativeMountTable";
+    
+    public static final int DEFAULT_CAPACITY = 256 * 1024;
+    
+    private static final long ATTACH_RETRY_INITIAL_MS = 20;
+    private static final long ATTACH_RETRY_MAX_MS = 500;
+    private static final long ATTACH_TIMEOUT_MS = 10_000;
+    
+    private static final Object publishLock = new Object();
+    private static volatile boolean created = false;
+    // Identity of the attached process; the native side keeps its mapping for the life of the process
+    private static String attachedPackage;
+    private static int attachedUserId;
+    
+    private NativeMountTable() {}
+    
+    /**
+     * @return Shared table file location, the same in every process of the app
+     */
+    public static File tableFile(Context context) {
+        return new File(context.getFilesDir(), "virtual/mount_table");
+    }
+    
+    /**
+     * Create the shared table file and publish the current mounts (engine process)
+     * @param file Table file, readable by virtual app processes
+     * @param capacity Maximum encoded table size in bytes
+     * @return true if the table was created and published
+     */
+    public static boolean create(File file, int capacity) {
+        if (!NativeBridge.isNativeLibraryLoaded()) {
+            Log.e(TAG, "Native library not loaded");
+            return false;
+        }
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            Log.e(TAG, "Failed to create mount table directory: " + dir);
+            return false;
+        }
+        synchronized (publishLock) {
+            if (!NativeBridge.getInstance().createMountTable(file.getAbsolutePath(), capacity)) {
+                Log.e(TAG, "Failed to create mount table: " + file);
+                return false;
+            }
+            created = true;
+        }
+        VirtualFileSystem.setMountsChangedListener(NativeMountTable::publish);
+        return publish();
+    }
+    
+    /**
+     * Encode and publish the current mounts
+     * @return true if the table was published
+     */
+    public static boolean publish() {
+        synchronized (publishLock) {
+            if (!created) return false;
+            
+            // Encode under the lock so concurrent changes publish in order
+            byte[] payload = VirtualFileSystem.encodeMountTable();
+            if (!NativeBridge.getInstance().publishMountTable(payload)) {
+                Log.e(TAG, "Failed to publish mount table, " + payload.length + " bytes");
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Map the shared table and install the libc redirection hooks (virtual app process)
+     * @param file Table file created by the engine process
+     * @param userId Virtual user ID of this process
+     * @param packageName Package running in this process
+     * @return true if redirection is active
+     */
+    public static synchronized boolean attach(File file, int userId, String packageName) {
+        if (attachedPackage != null && (attachedUserId != userId || !attachedPackage.equals(packageName))) {
+            Log.e(TAG, "Process already attached as " + attachedPackage + " (user " + attachedUserId + ")");
+            return false;
+        }
+        if (!NativeBridge.isNativeLibraryLoaded()) {
+            Log.e(TAG, "Native library not loaded");
+            return false;
+        }
+        NativeBridge bridge = NativeBridge.getInstance();
+        if (attachedPackage == null && !bridge.attachMountTable(file.getAbsolutePath(), userId, packageName)) {
+            Log.e(TAG, "Failed to attach mount table: " + file);
+            return false;
+        }
+        attachedUserId = userId;
+        attachedPackage = packageName;
+        if (!bridge.installPathRedirect()) {
+            Log.e(TAG, "Failed to install path redirect hooks");
+            return false;
+        }
+        Log.i(TAG, "Path redirect active for " + packageName + " (user " + userId + ")");
+        return true;
+    }
+    
+    /**
+     * Attach as {@link #attach(File, int, String)} does, retrying in the background
+     * while the engine process has not created the table yet
+     * @param file Table file created by the engine process
+     * @param userId Virtual user ID of this process
+     * @param packageName Package running in this process
+     * @return true if redirection is active already, false if it is retried
+     */
+    public static boolean attachWhenReady(File file, int userId, String packageName) {
+        if (attach(file, userId, packageName)) {
+            return true;
+        }
+        Thread retry = new Thread(() -> {
+            long delay = ATTACH_RETRY_INITIAL_MS;
+            long deadline = System.currentTimeMillis() + ATTACH_TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                if (attach(file, userId, packageName)) {
+                    return;
+                }
+                delay = Math.min(delay * 2, ATTACH_RETRY_MAX_MS);
+            }
+            Log.e(TAG, "Gave up attaching mount table after " + ATTACH_TIMEOUT_MS + "ms, paths of "
+                + packageName + " are not redirected: " + file);
+        }, "NativeMountTable-attach");
+        retry.setDaemon(true);
+        retry.start();
+        return false;
+    }
+    
+    /**
+     * Remove the redirection hooks. The table stays mapped, so only the same
+     * identity can attach again.
+     */
+    public static void detach() {
+        if (NativeBridge.isNativeLibraryLoaded()) {
+            NativeBridge.getInstance().uninstallPathRedirect();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,356 @@
+package com.terista.space.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Copy-on-write union of a shared read-only lower layer and a per-clone upper layer.
+ *
+ * Reads fall through to the lower layer until a file is first written, at
+ * which point it is copied up. Deleting a file that exists below leaves an
+ * AUFS-style whiteout (".wh.name") in the upper layer; recreating a deleted
+ * directory marks it opaque (".wh..wh..opq") so the lower contents stay
+ * hidden. Only regular files and directories are supported.
+ *
+ * Lookups go through a {@link StatCache}, so resolving a path d segments
+ * deep costs one batched cache probe rather than 2d+2 stats. Changes made
+ * through the overlay invalidate the entries they touch.
+ *
+ * Paths passed in are relative to the layer roots, e.g. "/files/db.sqlite".
+ */
+public final class Overlay {
+    
+    static final String WHITEOUT_PREFIX = ".wh.";
+    static final String OPAQUE_MARKER = ".wh..wh..opq";
+    
+    private final Path lowerRoot;
+    private final Path upperRoot;
+    private final StatCache statCache;
+    private final Object copyUpLock = new Object();
+    
+    public Overlay(String lowerRoot, String upperRoot, StatCache statCache) {
+        this.lowerRoot = Paths.get(lowerRoot);
+        this.upperRoot = Paths.get(upperRoot);
+        this.statCache = statCache;
+    }
+    
+    public String getLowerRoot() { return lowerRoot.toString(); }
+    public String getUpperRoot() { return upperRoot.toString(); }
+    
+    /**
+     * @return Real path to read the file from, or null if it does not exist in the union
+     */
+    public String resolveForRead(String path) {
+        String[] segments = segmentsOf(path);
+        Map<String, StatCache.FileStat> stats = probe(segments);
+        Path upper = upperRoot;
+        boolean lowerVisible = true;
+        for (String segment : segments) {
+            if (exists(stats, upper.resolve(WHITEOUT_PREFIX + segment))) {
+                return null;
+            }
+            upper = upper.resolve(segment);
+            if (lowerVisible && exists(stats, upper.resolve(OPAQUE_MARKER))) {
+                lowerVisible = false;
+            }
+        }
+        if (exists(stats, upper)) {
+            return upper.toString();
+        }
+        if (lowerVisible) {
+            Path lower = resolve(lowerRoot, segments);
+            if (exists(stats, lower)) {
+                return lower.toString();
+            }
+        }
+        return null;
+    }
+    
+    public boolean exists(String path) {
+        return resolveForRead(path) != null;
+    }
+    
+    /**
+     * Prepare a file for writing, copying it up from the lower layer on first write
+     * @return Real path in the upper layer; its parent directory exists
+     */
+    public String resolveForWrite(String path) throws IOException {
+        String[] segments = segmentsOf(path);
+        if (segments.length == 0) {
+            throw new IOException("Cannot write the overlay root");
+        }
+        Path upper = resolve(upperRoot, segments);
+        StatCache.FileStat cached = statCache.stat(upper.toString());
+        if (cached.exists && !cached.isDirectory) {
+            return upper.toString();
+        }
+        
+        synchronized (copyUpLock) {
+            if (Files.exists(upper, LinkOption.NOFOLLOW_LINKS)) {
+                return upper.toString();
+            }
+            String source = resolveForRead(path);
+            copyUpParents(segments);
+            deleteIfExists(whiteoutOf(upper));
+            if (source != null && Files.isRegularFile(Paths.get(source))) {
+                copyUp(Paths.get(source), upper);
+            }
+            // The caller is about to create or replace the file
+            changed(upper);
+        }
+        return upper.toString();
+    }
+    
+    /**
+     * Create a directory in the union, hiding any lower directory deleted earlier
+     * @return true if the directory exists afterwards
+     */
+    public boolean mkdirs(String path) throws IOException {
+        String[] segments = segmentsOf(path);
+        if (segments.length == 0) {
+            return true;
+        }
+        synchronized (copyUpLock) {
+            String existing = resolveForRead(path);
+            if (existing != null) {
+                return Files.isDirectory(Paths.get(existing));
+            }
+            copyUpParents(segments);
+            Path upper = resolve(upperRoot, segments);
+            boolean wasWhitedOut = deleteIfExists(whiteoutOf(upper));
+            Files.createDirectories(upper);
+            changed(upper);
+            if (wasWhitedOut) {
+                createFile(upper.resolve(OPAQUE_MARKER));
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Remove a file or empty directory from the union
+     * @return true if something was removed
+     */
+    public boolean delete(String path) throws IOException {
+        String[] segments = segmentsOf(path);
+        synchronized (copyUpLock) {
+            String existing = segments.length > 0 ? resolveForRead(path) : null;
+            if (existing == null) {
+                return false;
+            }
+            if (Files.isDirectory(Paths.get(existing)) && !list(path).isEmpty()) {
+                throw new IOException("Directory not empty: " + path);
+            }
+            Path upper = resolve(upperRoot, segments);
+            if (Files.isDirectory(upper, LinkOption.NOFOLLOW_LINKS)) {
+                deleteTree(upper);
+            } else {
+                deleteIfExists(upper);
+            }
+            if (isInLower(segments)) {
+                copyUpParents(segments);
+                createFile(whiteoutOf(upper));
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * @return Sorted names in a directory of the union, without whiteouts
+     */
+    public List<String> list(String path) throws IOException {
+        String[] segments = segmentsOf(path);
+        TreeSet<String> names = new TreeSet<>();
+        TreeSet<String> hidden = new TreeSet<>();
+        Path upper = resolve(upperRoot, segments);
+        boolean lowerVisible = isInLower(segments);
+        
+        if (Files.isDirectory(upper, LinkOption.NOFOLLOW_LINKS)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(upper)) {
+                for (Path entry : stream) {
+                    String name = entry.getFileName().toString();
+                    if (name.equals(OPAQUE_MARKER)) {
+                        lowerVisible = false;
+                    } else if (name.startsWith(WHITEOUT_PREFIX)) {
+                        hidden.add(name.substring(WHITEOUT_PREFIX.length()));
+                    } else {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        Path lower = resolve(lowerRoot, segments);
+        if (lowerVisible && Files.isDirectory(lower)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(lower)) {
+                for (Path entry : stream) {
+                    String name = entry.getFileName().toString();
+                    if (!hidden.contains(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+    
+    /**
+     * @return Bytes held by the upper layer, i.e. what this clone costs on disk
+     */
+    public long getUpperUsage() throws IOException {
+        if (!Files.isDirectory(upperRoot)) {
+            return 0;
+        }
+        long total = 0;
+        try (Stream<Path> entries = Files.walk(upperRoot)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                File file = entry.toFile();
+                if (file.isFile()) {
+                    total += file.length();
+                }
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * @return true if the path exists in the lower layer and is not hidden by the upper one
+     */
+    private boolean isInLower(String[] segments) {
+        Map<String, StatCache.FileStat> stats = probe(segments);
+        Path upper = upperRoot;
+        for (String segment : segments) {
+            if (exists(stats, upper.resolve(WHITEOUT_PREFIX + segment))) {
+                return false;
+            }
+            upper = upper.resolve(segment);
+            if (exists(stats, upper.resolve(OPAQUE_MARKER))) {
+                return false;
+            }
+        }
+        return exists(stats, resolve(lowerRoot, segments));
+    }
+    
+    /**
+     * Stat every path that decides where a path resolves, in one cache batch:
+     * the whiteout and opaque marker at each level, the upper path and the lower path
+     */
+    private Map<String, StatCache.FileStat> probe(String[] segments) {
+        List<String> paths = new ArrayList<>(segments.length * 2 + 2);
+        Path upper = upperRoot;
+        for (String segment : segments) {
+            paths.add(upper.resolve(WHITEOUT_PREFIX + segment).toString());
+            upper = upper.resolve(segment);
+            paths.add(upper.resolve(OPAQUE_MARKER).toString());
+        }
+        paths.add(upper.toString());
+        paths.add(resolve(lowerRoot, segments).toString());
+        return statCache.statAll(paths);
+    }
+    
+    private static boolean exists(Map<String, StatCache.FileStat> stats, Path path) {
+        StatCache.FileStat stat = stats.get(path.toString());
+        return stat != null && stat.exists;
+    }
+    
+    private void changed(Path path) {
+        statCache.invalidate(path.toString());
+    }
+    
+    private boolean deleteIfExists(Path path) throws IOException {
+        boolean deleted = Files.deleteIfExists(path);
+        changed(path);
+        return deleted;
+    }
+    
+    private void createFile(Path path) throws IOException {
+        Files.createFile(path);
+        changed(path);
+    }
+    
+    /**
+     * Create the upper-layer parents of a path, clearing whiteouts on the way
+     */
+    private void copyUpParents(String[] segments) throws IOException {
+        Path upper = upperRoot;
+        Files.createDirectories(upper);
+        for (int i = 0; i < segments.length - 1; i++) {
+            Path next = upper.resolve(segments[i]);
+            if (!Files.isDirectory(next, LinkOption.NOFOLLOW_LINKS)) {
+                boolean wasWhitedOut = deleteIfExists(upper.resolve(WHITEOUT_PREFIX + segments[i]));
+                Files.createDirectory(next);
+                changed(next);
+                if (wasWhitedOut) {
+                    createFile(next.resolve(OPAQUE_MARKER));
+                }
+            }
+            upper = next;
+        }
+    }
+    
+    private static void copyUp(Path source, Path target) throws IOException {
+        // Copy to a fresh temp file beside the target and rename, so readers never
+        // see a partial file and no existing file can be overwritten by the copy
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".copyup");
+        try {
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+    
+    private void deleteTree(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path entry : stream) {
+                // Only whiteouts and the opaque marker remain in an empty union directory
+                Files.delete(entry);
+                changed(entry);
+            }
+        }
+        Files.delete(directory);
+        changed(directory);
+    }
+    
+    private static Path whiteoutOf(Path upper) {
+        return upper.resolveSibling(WHITEOUT_PREFIX + upper.getFileName());
+    }
+    
+    private static Path resolve(Path root, String[] segments) {
+        Path path = root;
+        for (String segment : segments) {
+            path = path.resolve(segment);
+        }
+        return path;
+    }
+    
+    private static String[] segmentsOf(String path) {
+        String normalized = PathRouter.normalize(path.startsWith("/") ? path : "/" + path);
+        if (normalized.length() == 1) {
+            return new String[0];
+        }
+        String[] segments = normalized.substring(1).split("/");
+        for (String segment : segments) {
+            if (segment.startsWith(WHITEOUT_PREFIX)) {
+                throw new IllegalArgumentException("Reserved overlay name: " + segment);
+            }
+        }
+        return segments;
+    }
+}
\ No newline at end of file
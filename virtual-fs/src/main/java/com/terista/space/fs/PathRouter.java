@@ -0,0 +1,488 @@
+package com.terista.space.fs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Longest-prefix router from virtual paths to real directories.
+ *
+ * Mount rules live in a trie keyed by path segment, so "/data/data/com.a"
+ * never matches "/data/data/com.ab". Lookups walk the path in place, hashing
+ * each segment by index range, which makes resolving a path O(path length)
+ * with no allocation besides the returned string. Writers copy the nodes along
+ * the changed branch and publish a new root with one volatile write; readers
+ * never lock.
+ *
+ * A rule can be global, per user, per app, or per app and user. At the same
+ * depth the most specific applicable rule wins.
+ */
+public final class PathRouter {
+    
+    /** Rule user ID that applies to every user */
+    public static final int ALL_USERS = -1;
+    
+    private final Object writeLock = new Object();
+    private volatile Node root = Node.ROOT;
+    private volatile int size;
+    
+    /**
+     * Add or replace a mount rule
+     * @param userId Virtual user ID, or {@link #ALL_USERS}
+     * @param packageName Package the rule applies to, or null for every app
+     * @param virtualPrefix Absolute virtual directory, e.g. "/data/data/com.example"
+     * @param realRoot Real directory the prefix maps onto
+     */
+    public void addMount(int userId, String packageName, String virtualPrefix, String realRoot) {
+        String[] segments = segmentsOf(virtualPrefix);
+        Mount mount = new Mount(userId, packageName, joinSegments(segments), segments.length, stripTrailingSlash(realRoot));
+        synchronized (writeLock) {
+            Node node = findNode(segments);
+            boolean replaced = node != null && node.indexOf(userId, packageName) >= 0;
+            root = insert(root, segments, 0, mount);
+            if (!replaced) {
+                size++;
+            }
+        }
+    }
+    
+    /**
+     * Remove one mount rule
+     * @return true if the rule existed
+     */
+    public boolean removeMount(int userId, String packageName, String virtualPrefix) {
+        String[] segments = segmentsOf(virtualPrefix);
+        synchronized (writeLock) {
+            Node node = findNode(segments);
+            if (node == null || node.indexOf(userId, packageName) < 0) {
+                return false;
+            }
+            root = remove(root, segments, 0, userId, packageName);
+            size--;
+            return true;
+        }
+    }
+    
+    /**
+     * Remove every rule owned by an app in one user, e.g. on uninstall
+     * @return Number of rules removed
+     */
+    public int removeMounts(int userId, String packageName) {
+        synchronized (writeLock) {
+            int[] removed = new int[1];
+            Node pruned = removeAll(root, userId, packageName, removed);
+            root = pruned != null ? pruned : Node.ROOT;
+            size -= removed[0];
+            return removed[0];
+        }
+    }
+    
+    public void clear() {
+        synchronized (writeLock) {
+            root = Node.ROOT;
+            size = 0;
+        }
+    }
+    
+    public int size() { return size; }
+    
+    /**
+     * @return All rules, in trie order
+     */
+    public List<Mount> getMounts() {
+        List<Mount> mounts = new ArrayList<>(size);
+        collect(root, mounts);
+        return mounts;
+    }
+    
+    /**
+     * Find the rule that applies to a path without building the real path
+     * @param userId Calling app's virtual user ID
+     * @param packageName Calling app's package name, or null
+     * @param path Absolute virtual path
+     * @return Longest matching applicable rule, or null
+     */
+    public Mount findMount(int userId, String packageName, String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        if (hasParentSegment(path)) {
+            // ".." could climb out of a mount; match the normalized path instead
+            path = normalize(path);
+        }
+        
+        Node node = root;
+        Mount best = node.find(userId, packageName);
+        int length = path.length();
+        int i = 0;
+        
+        while (node != null && i < length) {
+            while (i < length && path.charAt(i) == '/') {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            int start = i;
+            int hash = 0;
+            char c;
+            while (i < length && (c = path.charAt(i)) != '/') {
+                hash = 31 * hash + c;
+                i++;
+            }
+            int segmentLength = i - start;
+            if (segmentLength == 1 && path.charAt(start) == '.') {
+                continue;
+            }
+            node = node.child(path, start, segmentLength, hash);
+            if (node != null) {
+                Mount mount = node.find(userId, packageName);
+                if (mount != null) {
+                    best = mount;
+                }
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Map a virtual path to its real path through the longest matching rule
+     * @param userId Calling app's virtual user ID
+     * @param packageName Calling app's package name, or null
+     * @param path Absolute virtual path
+     * @return Real path, or null if no rule applies
+     */
+    public String resolve(int userId, String packageName, String path) {
+        Mount mount = findMount(userId, packageName, path);
+        if (mount == null) {
+            return null;
+        }
+        String rest = relativePath(mount, path);
+        if (mount.realRoot.length() == 1) {
+            // Mounted onto "/": the remainder is already absolute
+            return rest.isEmpty() ? "/" : rest;
+        }
+        return rest.isEmpty() ? mount.realRoot : mount.realRoot + rest;
+    }
+    
+    /**
+     * @param mount Rule returned by {@link #findMount(int, String, String)} for this path
+     * @return Part of the path below the rule's prefix, e.g. "/files/a", or "" for the prefix itself
+     */
+    public static String relativePath(Mount mount, String path) {
+        if (hasParentSegment(path)) {
+            path = normalize(path);
+        }
+        return path.substring(prefixEnd(path, mount.depth));
+    }
+    
+    /**
+     * Collapse repeated slashes, "." and ".." segments
+     * @param path Absolute path
+     * @return Normalized absolute path without a trailing slash
+     */
+    public static String normalize(String path) {
+        return joinSegments(segmentsOf(path));
+    }
+    
+    private static boolean hasParentSegment(String path) {
+        for (int i = path.indexOf(".."); i >= 0; i = path.indexOf("..", i + 1)) {
+            boolean segmentStart = path.charAt(i - 1) == '/';
+            boolean segmentEnd = i + 2 == path.length() || path.charAt(i + 2) == '/';
+            if (segmentStart && segmentEnd) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return Index just past the first depth segments of a path without ".."
+     */
+    private static int prefixEnd(String path, int depth) {
+        int length = path.length();
+        int seen = 0;
+        int i = 0;
+        while (seen < depth && i < length) {
+            while (i < length && path.charAt(i) == '/') {
+                i++;
+            }
+            int start = i;
+            while (i < length && path.charAt(i) != '/') {
+                i++;
+            }
+            int segmentLength = i - start;
+            if (segmentLength == 0 || (segmentLength == 1 && path.charAt(start) == '.')) {
+                continue;
+            }
+            seen++;
+        }
+        return i;
+    }
+    
+    private Node findNode(String[] segments) {
+        Node node = root;
+        for (String segment : segments) {
+            node = node.child(segment, 0, segment.length(), segment.hashCode());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+    
+    private static Node insert(Node node, String[] segments, int depth, Mount mount) {
+        if (depth == segments.length) {
+            return node.withMount(mount);
+        }
+        String segment = segments[depth];
+        Node child = node.child(segment, 0, segment.length(), segment.hashCode());
+        if (child == null) {
+            child = new Node(segment, Node.NO_MOUNTS, Node.NO_CHILDREN, 0);
+        }
+        return node.withChild(insert(child, segments, depth + 1, mount));
+    }
+    
+    private static Node remove(Node node, String[] segments, int depth, int userId, String packageName) {
+        if (depth == segments.length) {
+            return node.withoutMount(userId, packageName);
+        }
+        String segment = segments[depth];
+        Node child = node.child(segment, 0, segment.length(), segment.hashCode());
+        Node updated = remove(child, segments, depth + 1, userId, packageName);
+        return updated.isEmpty() ? node.withoutChild(child) : node.withChild(updated);
+    }
+    
+    private static Node removeAll(Node node, int userId, String packageName, int[] removed) {
+        Node updated = node;
+        int index = node.indexOf(userId, packageName);
+        if (index >= 0) {
+            updated = updated.withoutMount(userId, packageName);
+            removed[0]++;
+        }
+        for (Node child : node.children) {
+            if (child == null) continue;
+            Node updatedChild = removeAll(child, userId, packageName, removed);
+            if (updatedChild != child) {
+                updated = updatedChild.isEmpty() ? updated.withoutChild(child) : updated.withChild(updatedChild);
+            }
+        }
+        return updated;
+    }
+    
+    private static void collect(Node node, List<Mount> mounts) {
+        mounts.addAll(Arrays.asList(node.mounts));
+        for (Node child : node.children) {
+            if (child != null) {
+                collect(child, mounts);
+            }
+        }
+    }
+    
+    private static String[] segmentsOf(String path) {
+        if (path == null || path.isEmpty() || path.charAt(0) != '/') {
+            throw new IllegalArgumentException("Path must be absolute: " + path);
+        }
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) continue;
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+                continue;
+            }
+            segments.add(segment);
+        }
+        return segments.toArray(new String[0]);
+    }
+    
+    private static String joinSegments(String[] segments) {
+        if (segments.length == 0) {
+            return "/";
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String segment : segments) {
+            builder.append('/').append(segment);
+        }
+        return builder.toString();
+    }
+    
+    private static String stripTrailingSlash(String path) {
+        int end = path.length();
+        while (end > 1 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+    
+    /**
+     * A mount rule: virtualPrefix and everything below it map onto realRoot
+     */
+    public static final class Mount {
+        public final int userId;
+        public final String packageName;
+        public final String virtualPrefix;
+        public final String realRoot;
+        final int depth;
+        
+        Mount(int userId, String packageName, String virtualPrefix, int depth, String realRoot) {
+            this.userId = userId;
+            this.packageName = packageName;
+            this.virtualPrefix = virtualPrefix;
+            this.depth = depth;
+            this.realRoot = realRoot;
+        }
+        
+        boolean appliesTo(int userId, String packageName) {
+            return (this.userId == ALL_USERS || this.userId == userId)
+                    && (this.packageName == null || this.packageName.equals(packageName));
+        }
+        
+        boolean sameScope(int userId, String packageName) {
+            return this.userId == userId
+                    && (this.packageName == null ? packageName == null : this.packageName.equals(packageName));
+        }
+        
+        int specificity() {
+            return (packageName != null ? 2 : 0) + (userId != ALL_USERS ? 1 : 0);
+        }
+        
+        @Override
+        public String toString() {
+            return "Mount{" + virtualPrefix + " -> " + realRoot +
+                    ", userId=" + userId + ", package=" + packageName + '}';
+        }
+    }
+    
+    /**
+     * Immutable trie node. Children sit in an open-addressed table indexed by
+     * segment hash so lookups can compare against a range of the query path.
+     */
+    private static final class Node {
+        static final Mount[] NO_MOUNTS = new Mount[0];
+        static final Node[] NO_CHILDREN = new Node[0];
+        static final Node ROOT = new Node("", NO_MOUNTS, NO_CHILDREN, 0);
+        
+        final String segment;
+        final int hash;
+        // Sorted by specificity, most specific first
+        final Mount[] mounts;
+        final Node[] children;
+        final int childCount;
+        
+        Node(String segment, Mount[] mounts, Node[] children, int childCount) {
+            this.segment = segment;
+            this.hash = segment.hashCode();
+            this.mounts = mounts;
+            this.children = children;
+            this.childCount = childCount;
+        }
+        
+        boolean isEmpty() {
+            return mounts.length == 0 && childCount == 0;
+        }
+        
+        Node child(String path, int start, int length, int hash) {
+            Node[] table = children;
+            if (table.length == 0) {
+                return null;
+            }
+            int mask = table.length - 1;
+            for (int i = hash & mask; ; i = (i + 1) & mask) {
+                Node child = table[i];
+                if (child == null) {
+                    return null;
+                }
+                if (child.hash == hash && child.segment.length() == length
+                        && child.segment.regionMatches(0, path, start, length)) {
+                    return child;
+                }
+            }
+        }
+        
+        Mount find(int userId, String packageName) {
+            for (Mount mount : mounts) {
+                if (mount.appliesTo(userId, packageName)) {
+                    return mount;
+                }
+            }
+            return null;
+        }
+        
+        int indexOf(int userId, String packageName) {
+            for (int i = 0; i < mounts.length; i++) {
+                if (mounts[i].sameScope(userId, packageName)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        Node withMount(Mount mount) {
+            int index = indexOf(mount.userId, mount.packageName);
+            Mount[] updated;
+            if (index >= 0) {
+                updated = mounts.clone();
+                updated[index] = mount;
+            } else {
+                updated = Arrays.copyOf(mounts, mounts.length + 1);
+                int i = mounts.length;
+                while (i > 0 && updated[i - 1].specificity() < mount.specificity()) {
+                    updated[i] = updated[i - 1];
+                    i--;
+                }
+                updated[i] = mount;
+            }
+            return new Node(segment, updated, children, childCount);
+        }
+        
+        Node withoutMount(int userId, String packageName) {
+            int index = indexOf(userId, packageName);
+            if (index < 0) {
+                return this;
+            }
+            Mount[] updated = new Mount[mounts.length - 1];
+            System.arraycopy(mounts, 0, updated, 0, index);
+            System.arraycopy(mounts, index + 1, updated, index, mounts.length - index - 1);
+            return new Node(segment, updated, children, childCount);
+        }
+        
+        Node withChild(Node child) {
+            boolean replacing = this.child(child.segment, 0, child.segment.length(), child.hash) != null;
+            int count = replacing ? childCount : childCount + 1;
+            int capacity = Math.max(children.length, 2);
+            while (count * 2 > capacity) {
+                capacity <<= 1;
+            }
+            Node[] table = new Node[capacity];
+            for (Node existing : children) {
+                if (existing != null && !existing.segment.equals(child.segment)) {
+                    place(table, existing);
+                }
+            }
+            place(table, child);
+            return new Node(segment, mounts, table, count);
+        }
+        
+        Node withoutChild(Node child) {
+            Node[] table = new Node[children.length];
+            for (Node existing : children) {
+                if (existing != null && !existing.segment.equals(child.segment)) {
+                    place(table, existing);
+                }
+            }
+            int count = childCount - 1;
+            return new Node(segment, mounts, count == 0 ? NO_CHILDREN : table, count);
+        }
+        
+        private static void place(Node[] table, Node node) {
+            int mask = table.length - 1;
+            int i = node.hash & mask;
+            while (table[i] != null) {
+                i = (i + 1) & mask;
+            }
+            table[i] = node;
+        }
+    }
+}
\ No newline at end of file
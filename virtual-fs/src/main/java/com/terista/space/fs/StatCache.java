@@ -0,0 +1,341 @@
+package com.terista.space.fs;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of file metadata for real paths.
+ *
+ * Entries expire after a TTL and are dropped early when a WatchService
+ * (inotify on Linux) reports a change in their parent directory, so an app
+ * probing thousands of files on startup stats each one once. Watching needs
+ * API 26; below that, and for directories beyond the watch limit, the TTL
+ * alone bounds staleness. Every invalidation bumps a generation counter, and
+ * a load that raced with one is returned but not cached.
+ */
+public final class StatCache {
+    
+    private static final String TAG = "StatCache";
+    
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final long DEFAULT_TTL_MILLIS = 2000;
+    private static final int MAX_WATCHED_DIRECTORIES = 256;
+    
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, FileStat> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    // Bumped under the entries lock by every invalidation, matched or not
+    private long generation;
+    
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    private final Object watchLock = new Object();
+    private volatile WatchService watchService;
+    private volatile boolean watchEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O;
+    
+    public StatCache() {
+        this(DEFAULT_CAPACITY, DEFAULT_TTL_MILLIS);
+    }
+    
+    public StatCache(int capacity, long ttlMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.entries = new LinkedHashMap<String, FileStat>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, FileStat> eldest) {
+                return size() > StatCache.this.capacity;
+            }
+        };
+    }
+    
+    /**
+     * @param realPath Absolute real path
+     * @return Cached or freshly loaded metadata, never null
+     */
+    public FileStat stat(String realPath) {
+        long now = System.nanoTime();
+        long loadGeneration;
+        synchronized (entries) {
+            FileStat cached = entries.get(realPath);
+            if (cached != null && now - cached.loadedNanos < ttlNanos) {
+                hits.increment();
+                return cached;
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        
+        // Watch before loading, so changes after the load are reported
+        watchParent(realPath);
+        FileStat loaded = FileStat.load(realPath, now);
+        synchronized (entries) {
+            // An invalidation during the load may describe a change the load missed
+            if (generation == loadGeneration) {
+                entries.put(realPath, loaded);
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Stat a batch of real paths, taking the cache lock twice for the whole batch
+     * @return Metadata keyed by path, in iteration order of the input
+     */
+    public Map<String, FileStat> statAll(Collection<String> realPaths) {
+        long now = System.nanoTime();
+        Map<String, FileStat> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        long loadGeneration;
+        
+        synchronized (entries) {
+            loadGeneration = generation;
+            for (String realPath : realPaths) {
+                FileStat cached = entries.get(realPath);
+                if (cached != null && now - cached.loadedNanos < ttlNanos) {
+                    result.put(realPath, cached);
+                } else {
+                    result.put(realPath, null);
+                    missing.add(realPath);
+                }
+            }
+        }
+        hits.add(realPaths.size() - missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+        misses.add(missing.size());
+        
+        List<FileStat> loaded = new ArrayList<>(missing.size());
+        for (String realPath : missing) {
+            watchParent(realPath);
+            FileStat stat = FileStat.load(realPath, now);
+            loaded.add(stat);
+            result.put(realPath, stat);
+        }
+        synchronized (entries) {
+            if (generation == loadGeneration) {
+                for (FileStat stat : loaded) {
+                    entries.put(stat.path, stat);
+                }
+            }
+        }
+        return result;
+    }
+    
+    public void invalidate(String realPath) {
+        synchronized (entries) {
+            generation++;
+            if (entries.remove(realPath) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+    
+    /**
+     * Drop the directory's own entry and every cached entry directly inside it
+     */
+    public void invalidateDirectory(String directory) {
+        String prefix = directory.endsWith("/") ? directory : directory + "/";
+        synchronized (entries) {
+            generation++;
+            Iterator<String> iterator = entries.keySet().iterator();
+            while (iterator.hasNext()) {
+                String path = iterator.next();
+                if (path.equals(directory) || (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0)) {
+                    iterator.remove();
+                    invalidations.increment();
+                }
+            }
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getInvalidationCount() { return invalidations.sum(); }
+    public int getWatchedDirectoryCount() { return watchedDirectories.size(); }
+    
+    /**
+     * @return Fraction of lookups served from memory, 0 if there were none
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total > 0 ? (double) hitCount / total : 0;
+    }
+    
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+    }
+    
+    /**
+     * Enable or disable change watching; disabling stops the watcher thread
+     */
+    public void setWatchEnabled(boolean enabled) {
+        if (enabled && Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        watchEnabled = enabled;
+        if (!enabled) {
+            shutdown();
+        }
+    }
+    
+    /**
+     * Stop the watcher thread and release all watches
+     */
+    public void shutdown() {
+        synchronized (watchLock) {
+            WatchService service = watchService;
+            watchService = null;
+            watchedDirectories.clear();
+            if (service != null) {
+                try {
+                    service.close();
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to close watch service", e);
+                }
+            }
+        }
+    }
+    
+    private void watchParent(String realPath) {
+        if (!watchEnabled) return;
+        
+        String parent = new File(realPath).getParent();
+        if (parent == null) return;
+        Path directory = Paths.get(parent);
+        if (watchedDirectories.containsKey(directory)) return;
+        
+        synchronized (watchLock) {
+            if (watchedDirectories.containsKey(directory) || watchedDirectories.size() >= MAX_WATCHED_DIRECTORIES) {
+                return;
+            }
+            try {
+                WatchService service = watchService;
+                if (service == null) {
+                    service = FileSystems.getDefault().newWatchService();
+                    watchService = service;
+                    startWatcher(service);
+                }
+                WatchKey key = directory.register(service,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirectories.put(directory, key);
+            } catch (IOException | UnsupportedOperationException e) {
+                // Missing directory or no watch support: rely on the TTL
+                Log.d(TAG, "Not watching " + directory + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    private void startWatcher(WatchService service) {
+        Thread watcher = new Thread(() -> runWatcher(service), "StatCache-Watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+    
+    private void runWatcher(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path directory = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateDirectory(directory.toString());
+                        continue;
+                    }
+                    invalidate(directory.resolve((Path) event.context()).toString());
+                }
+                // Creating or deleting an entry also changes the directory itself
+                invalidate(directory.toString());
+                
+                if (!key.reset()) {
+                    watchedDirectories.remove(directory);
+                    invalidateDirectory(directory.toString());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Log.d(TAG, "Watcher stopped");
+        }
+    }
+    
+    /**
+     * Point-in-time metadata of one real path
+     */
+    public static final class FileStat {
+        public final String path;
+        public final boolean exists;
+        public final boolean isDirectory;
+        public final long size;
+        public final long lastModified;
+        final long loadedNanos;
+        
+        FileStat(String path, boolean exists, boolean isDirectory, long size, long lastModified, long loadedNanos) {
+            this.path = path;
+            this.exists = exists;
+            this.isDirectory = isDirectory;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.loadedNanos = loadedNanos;
+        }
+        
+        /**
+         * Two stats for a missing file (lastModified, then exists), three for
+         * an existing one (lastModified, isDirectory, length). Only a file
+         * whose modification time reads as 0 needs the exists() check to
+         * count as present.
+         */
+        static FileStat load(String path, long nowNanos) {
+            File file = new File(path);
+            long lastModified = file.lastModified();
+            boolean exists = lastModified != 0 || file.exists();
+            if (!exists) {
+                return new FileStat(path, false, false, 0, 0, nowNanos);
+            }
+            boolean isDirectory = file.isDirectory();
+            return new FileStat(path, true, isDirectory, isDirectory ? 0 : file.length(), lastModified, nowNanos);
+        }
+        
+        @Override
+        public String toString() {
+            return "FileStat{" + path + (exists ? ", size=" + size + ", lastModified=" + lastModified : ", missing") + '}';
+        }
+    }
+}
\ No newline at end of file
@@ -2,13 +2,29 @@ package com.terista.space.fs;
 
 import com.terista.space.reflection.ReflectionClass;
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 @ReflectionClass
 public class VirtualFileSystem {
     
     private static final ConcurrentHashMap<String, VirtualFile> virtualFiles = new ConcurrentHashMap<>();
+    private static final PathRouter mounts = new PathRouter();
+    private static final StatCache statCache = new StatCache();
+    private static final ConcurrentHashMap<String, Overlay> overlays = new ConcurrentHashMap<>();
+    private static final DiskUsageTracker diskUsage = new DiskUsageTracker(VirtualFileSystem::appRoots);
     private static final String VIRTUAL_ROOT = "/virtual_fs";
+    private static volatile Runnable mountsChangedListener;
     
     public static class VirtualFile {
         public String virtualPath;
@@ -26,13 +42,14 @@ public class VirtualFileSystem {
     }
     
     public static boolean createVirtualPath(String virtualPath, String realPath) {
-        File realFile = new File(realPath);
-        VirtualFile vFile = new VirtualFile(virtualPath, realPath, realFile.isDirectory());
-        if (realFile.exists()) {
-            vFile.size = realFile.length();
-            vFile.lastModified = realFile.lastModified();
+        StatCache.FileStat stat = statCache.stat(realPath);
+        VirtualFile vFile = new VirtualFile(virtualPath, realPath, stat.isDirectory);
+        if (stat.exists) {
+            vFile.size = stat.size;
+            vFile.lastModified = stat.lastModified;
         }
         virtualFiles.put(virtualPath, vFile);
+        notifyMountsChanged();
         return true;
     }
     
@@ -40,23 +57,348 @@ public class VirtualFileSystem {
         return virtualFiles.get(virtualPath);
     }
     
+    /**
+     * Map a whole virtual directory subtree onto a real directory
+     * @param userId Virtual user ID, or {@link PathRouter#ALL_USERS}
+     * @param packageName Package the mount applies to, or null for every app
+     * @param virtualPrefix Absolute virtual directory, e.g. "/data/data/com.example"
+     * @param realRoot Real directory backing the subtree
+     */
+    public static void addMount(int userId, String packageName, String virtualPrefix, String realRoot) {
+        mounts.addMount(userId, packageName, virtualPrefix, realRoot);
+        notifyMountsChanged();
+    }
+    
+    public static boolean removeMount(int userId, String packageName, String virtualPrefix) {
+        boolean removed = mounts.removeMount(userId, packageName, virtualPrefix);
+        if (removed) {
+            notifyMountsChanged();
+        }
+        return removed;
+    }
+    
+    /**
+     * Drop every mount of an app in one user, e.g. when it is uninstalled
+     * @return Number of mounts removed
+     */
+    public static int removeMounts(int userId, String packageName) {
+        int removed = mounts.removeMounts(userId, packageName);
+        diskUsage.forget(userId, packageName);
+        if (removed > 0) {
+            notifyMountsChanged();
+        }
+        return removed;
+    }
+    
+    public static PathRouter getMounts() {
+        return mounts;
+    }
+    
+    /**
+     * Mount a copy-on-write overlay: reads fall through to a shared lower directory,
+     * writes land in a per-clone upper directory. Cloning an app then only needs
+     * an empty upper directory instead of a copy of its data.
+     * Native path redirection sees the upper directory only.
+     * @param userId Virtual user ID, or {@link PathRouter#ALL_USERS}
+     * @param packageName Package the overlay applies to, or null for every app
+     * @param virtualPrefix Absolute virtual directory, e.g. "/data/data/com.example"
+     * @param lowerRoot Shared read-only directory
+     * @param upperRoot Writable directory owned by this clone
+     */
+    public static Overlay addOverlay(int userId, String packageName, String virtualPrefix,
+                                     String lowerRoot, String upperRoot) {
+        Overlay overlay = new Overlay(lowerRoot, upperRoot, statCache);
+        overlays.put(overlay.getUpperRoot(), overlay);
+        addMount(userId, packageName, virtualPrefix, overlay.getUpperRoot());
+        return overlay;
+    }
+    
+    public static boolean removeOverlay(int userId, String packageName, String virtualPrefix) {
+        String prefix = PathRouter.normalize(virtualPrefix);
+        for (PathRouter.Mount mount : mounts.getMounts()) {
+            if (mount.userId == userId && mount.virtualPrefix.equals(prefix)
+                    && (mount.packageName == null ? packageName == null : mount.packageName.equals(packageName))) {
+                overlays.remove(mount.realRoot);
+                return removeMount(userId, packageName, virtualPrefix);
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @return Overlay serving the path for this app, or null if it is not under an overlay
+     */
+    public static Overlay getOverlay(int userId, String packageName, String virtualPath) {
+        if (overlays.isEmpty()) return null;
+        PathRouter.Mount mount = mounts.findMount(userId, packageName, virtualPath);
+        return mount != null ? overlays.get(mount.realRoot) : null;
+    }
+    
+    /**
+     * Called after every mount or file mapping change, e.g. to republish the native mount table
+     */
+    public static void setMountsChangedListener(Runnable listener) {
+        mountsChangedListener = listener;
+    }
+    
+    /**
+     * Encode all mounts and exact file mappings for the native path redirection hooks
+     */
+    public static byte[] encodeMountTable() {
+        MountTable table = new MountTable();
+        for (PathRouter.Mount mount : mounts.getMounts()) {
+            table.addMount(mount);
+        }
+        for (VirtualFile vFile : virtualFiles.values()) {
+            table.addExact(vFile.virtualPath, vFile.realPath);
+        }
+        return table.encode();
+    }
+    
+    private static void notifyMountsChanged() {
+        Runnable listener = mountsChangedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+    
+    /**
+     * Map a path using exact file mappings and global mounts
+     */
     public static String mapVirtualToReal(String virtualPath) {
-        VirtualFile vFile = virtualFiles.get(virtualPath);
-        return vFile != null ? vFile.realPath : null;
+        return mapVirtualToReal(PathRouter.ALL_USERS, null, virtualPath);
     }
     
-    public static boolean exists(String virtualPath) {
+    /**
+     * Map a path for one app: an exact file mapping wins, otherwise the longest matching mount
+     * @param userId Calling app's virtual user ID
+     * @param packageName Calling app's package name
+     * @param virtualPath Absolute virtual path
+     * @return Real path, or null if the path is not virtualized
+     */
+    public static String mapVirtualToReal(int userId, String packageName, String virtualPath) {
         VirtualFile vFile = virtualFiles.get(virtualPath);
         if (vFile != null) {
-            return new File(vFile.realPath).exists();
+            return vFile.realPath;
         }
-        return false;
+        if (overlays.isEmpty()) {
+            return mounts.resolve(userId, packageName, virtualPath);
+        }
+        
+        PathRouter.Mount mount = mounts.findMount(userId, packageName, virtualPath);
+        if (mount == null) {
+            return null;
+        }
+        String relativePath = PathRouter.relativePath(mount, virtualPath);
+        Overlay overlay = overlays.get(mount.realRoot);
+        if (overlay != null) {
+            String realPath = overlay.resolveForRead(relativePath);
+            if (realPath != null) {
+                return realPath;
+            }
+        }
+        // Not in the union yet: point at where it would be created
+        return mounts.resolve(userId, packageName, virtualPath);
+    }
+    
+    /**
+     * Map a path that is about to be written; under an overlay the file is copied up first
+     * @param bytesToWrite Bytes the caller is about to write, checked against the app's hard quota
+     * @return Writable real path, or null if the path is not virtualized
+     * @throws IOException if the write or the copy-up would exceed the hard quota
+     */
+    public static String mapVirtualToRealForWrite(int userId, String packageName, String virtualPath,
+                                                  long bytesToWrite) throws IOException {
+        PathRouter.Mount mount = mounts.findMount(userId, packageName, virtualPath);
+        Overlay overlay = mount != null ? overlays.get(mount.realRoot) : null;
+        if (overlay == null) {
+            if (packageName != null) {
+                diskUsage.checkWrite(userId, packageName, bytesToWrite);
+            }
+            return mapVirtualToReal(userId, packageName, virtualPath);
+        }
+        String relativePath = PathRouter.relativePath(mount, virtualPath);
+        String before = packageName != null ? overlay.resolveForRead(relativePath) : null;
+        // Still in the lower layer: the copy-up is charged to the app too
+        long copyUpBytes = before != null && !before.startsWith(overlay.getUpperRoot() + "/")
+                && new File(before).isFile() ? new File(before).length() : 0;
+        if (packageName != null) {
+            diskUsage.checkWrite(userId, packageName, bytesToWrite + copyUpBytes);
+        }
+        String realPath = overlay.resolveForWrite(relativePath);
+        if (copyUpBytes > 0) {
+            diskUsage.recordWrite(userId, packageName, copyUpBytes);
+        }
+        statCache.invalidate(realPath);
+        return realPath;
+    }
+    
+    /**
+     * Open a file for an app to write, under its quota: every write is checked
+     * against the hard limit before it lands and charged to the app after.
+     * Writes that bypass this, e.g. through native path redirection, are only
+     * counted by the periodic rescan.
+     * @param append false to truncate the file first
+     */
+    public static OutputStream openForWrite(int userId, String packageName, String virtualPath,
+                                            boolean append) throws IOException {
+        String realPath = mapVirtualToRealForWrite(userId, packageName, virtualPath, 0);
+        if (realPath == null) {
+            throw new FileNotFoundException("Not virtualized: " + virtualPath);
+        }
+        File file = new File(realPath);
+        long truncated = !append && file.isFile() ? file.length() : 0;
+        FileOutputStream stream = new FileOutputStream(file, append);
+        diskUsage.recordWrite(userId, packageName, -truncated);
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                diskUsage.checkWrite(userId, packageName, len);
+                out.write(b, off, len);
+                diskUsage.recordWrite(userId, packageName, len);
+            }
+            
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    statCache.invalidate(realPath);
+                }
+            }
+        };
+    }
+    
+    public static boolean exists(String virtualPath) {
+        String realPath = mapVirtualToReal(virtualPath);
+        return realPath != null && statCache.stat(realPath).exists;
+    }
+    
+    /**
+     * @return Cached metadata of the mapped real file, or null if the path is not virtualized
+     */
+    public static StatCache.FileStat stat(String virtualPath) {
+        String realPath = mapVirtualToReal(virtualPath);
+        return realPath != null ? statCache.stat(realPath) : null;
+    }
+    
+    /**
+     * Stat many virtual paths in one pass, e.g. an app probing its files on startup
+     * @return Metadata keyed by virtual path; paths that are not virtualized are left out
+     */
+    public static Map<String, StatCache.FileStat> statAll(Collection<String> virtualPaths) {
+        List<String> mapped = new ArrayList<>(virtualPaths.size());
+        List<String> realPaths = new ArrayList<>(virtualPaths.size());
+        for (String virtualPath : virtualPaths) {
+            String realPath = mapVirtualToReal(virtualPath);
+            if (realPath != null) {
+                mapped.add(virtualPath);
+                realPaths.add(realPath);
+            }
+        }
+        
+        Map<String, StatCache.FileStat> stats = statCache.statAll(realPaths);
+        Map<String, StatCache.FileStat> result = new LinkedHashMap<>();
+        for (int i = 0; i < mapped.size(); i++) {
+            result.put(mapped.get(i), stats.get(realPaths.get(i)));
+        }
+        return result;
+    }
+    
+    public static StatCache getStatCache() {
+        return statCache;
+    }
+    
+    /**
+     * Disk usage of one app across its own mounts; never blocks on the disk
+     */
+    public static DiskUsageTracker.Usage getUsage(String packageName, int userId) {
+        return diskUsage.getUsage(packageName, userId);
+    }
+    
+    /**
+     * Limit an app's disk usage; writes through {@link #openForWrite} or checked by
+     * {@link #mapVirtualToRealForWrite} fail once they would pass the hard limit
+     */
+    public static void setQuota(int userId, String packageName, long softLimit, long hardLimit) {
+        diskUsage.setQuota(userId, packageName, softLimit, hardLimit);
+    }
+    
+    /**
+     * Account bytes an app wrote (positive) or truncated (negative) through a mapped path
+     */
+    public static void recordWrite(int userId, String packageName, long deltaBytes) {
+        diskUsage.recordWrite(userId, packageName, deltaBytes);
+    }
+    
+    public static DiskUsageTracker getDiskUsage() {
+        return diskUsage;
+    }
+    
+    /**
+     * Real roots of an app's own mounts, without roots nested in other roots
+     */
+    private static List<String> appRoots(int userId, String packageName) {
+        List<String> roots = new ArrayList<>();
+        for (PathRouter.Mount mount : mounts.getMounts()) {
+            if (mount.userId == userId && packageName.equals(mount.packageName)) {
+                roots.add(mount.realRoot);
+            }
+        }
+        // Shorter roots sort first, so a nested root always meets its parent already kept
+        Collections.sort(roots);
+        List<String> outermost = new ArrayList<>(roots.size());
+        for (String root : roots) {
+            boolean nested = false;
+            for (String kept : outermost) {
+                if (root.equals(kept) || root.startsWith(kept + "/")) {
+                    nested = true;
+                    break;
+                }
+            }
+            if (!nested) {
+                outermost.add(root);
+            }
+        }
+        return outermost;
+    }
+    
+    /**
+     * Delete a file or empty directory as seen by one app; under an overlay this leaves a whiteout
+     */
+    public static boolean delete(int userId, String packageName, String virtualPath) throws IOException {
+        PathRouter.Mount mount = mounts.findMount(userId, packageName, virtualPath);
+        if (mount == null) {
+            return delete(virtualPath);
+        }
+        String realPath = mapVirtualToReal(userId, packageName, virtualPath);
+        Overlay overlay = overlays.get(mount.realRoot);
+        // Files still in the lower layer are not charged to the app
+        File file = new File(realPath);
+        long freed = file.isFile() && (overlay == null || realPath.startsWith(overlay.getUpperRoot() + "/"))
+                ? file.length() : 0;
+        boolean deleted = overlay != null
+                ? overlay.delete(PathRouter.relativePath(mount, virtualPath))
+                : file.delete();
+        statCache.invalidate(realPath);
+        if (deleted && packageName != null) {
+            diskUsage.recordWrite(userId, packageName, -freed);
+        }
+        return deleted;
     }
     
     public static boolean delete(String virtualPath) {
         VirtualFile vFile = virtualFiles.remove(virtualPath);
         if (vFile != null) {
-            return new File(vFile.realPath).delete();
+            notifyMountsChanged();
+            boolean deleted = new File(vFile.realPath).delete();
+            statCache.invalidate(vFile.realPath);
+            return deleted;
         }
         return false;
     }
@@ -0,0 +1,74 @@
+package com.terista.space.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BlobStoreTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private BlobStore store;
+    private File source;
+    
+    @Before
+    public void setUp() throws IOException {
+        store = new BlobStore(folder.newFolder("store"));
+        source = folder.newFile("base.apk");
+        Files.write(source.toPath(), "apk contents".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void stagingTwiceSharesOneBlob() throws IOException {
+        File first = new File(folder.getRoot(), "apps/a/base.apk");
+        File second = new File(folder.getRoot(), "apps/b/base.apk");
+        String hash = store.stage(source, first);
+        assertEquals(hash, store.stage(source, second));
+        
+        assertEquals(2, store.getReferenceCount(hash));
+        assertEquals(1, store.getHitCount());
+        assertTrue(first.delete());
+        store.collectGarbage();
+        assertTrue(store.contains(hash));
+        
+        assertTrue(second.delete());
+        store.collectGarbage();
+        assertFalse(store.contains(hash));
+    }
+    
+    @Test
+    public void collectionNeverDropsABlobBeingStaged() throws Exception {
+        // Each install releases right away, so the blob is unreferenced between installs
+        AtomicBoolean done = new AtomicBoolean();
+        Thread collector = new Thread(() -> {
+            while (!done.get()) {
+                store.collectGarbage();
+            }
+        });
+        collector.start();
+        try {
+            for (int i = 0; i < 300; i++) {
+                File target = new File(folder.getRoot(), "apps/" + i);
+                store.stage(source, hash -> new File(target, "base-" + hash.substring(0, 16) + ".apk"));
+                File[] staged = target.listFiles();
+                assertEquals(1, staged.length);
+                assertTrue(staged[0].delete());
+            }
+        } finally {
+            done.set(true);
+            collector.join();
+        }
+    }
+}
\ No newline at end of file
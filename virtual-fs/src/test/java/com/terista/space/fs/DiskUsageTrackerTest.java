@@ -0,0 +1,75 @@
+package com.terista.space.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+
+public class DiskUsageTrackerTest {
+    
+    private static final String PACKAGE = "com.example";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private DiskUsageTracker tracker;
+    
+    @Before
+    public void setUp() throws IOException {
+        File root = folder.newFolder("data");
+        Files.write(new File(root, "db").toPath(), new byte[6000]);
+        new File(root, "cache").mkdirs();
+        Files.write(new File(root, "cache/blob").toPath(), new byte[4000]);
+        tracker = new DiskUsageTracker((userId, packageName) -> Collections.singletonList(root.getPath()));
+    }
+    
+    @After
+    public void tearDown() {
+        tracker.shutdown();
+    }
+    
+    @Test
+    public void hardQuotaHoldsBeforeAnyUsageLookup() {
+        // Nothing has asked for usage yet, so only setQuota can have started a scan
+        tracker.setQuota(0, PACKAGE, DiskUsageTracker.NO_LIMIT, 8000);
+        try {
+            tracker.checkWrite(0, PACKAGE, 1);
+            fail("Write admitted with 10000 of 8000 bytes on disk");
+        } catch (IOException expected) {
+            assertEquals(10000, tracker.getUsage(PACKAGE, 0).usedBytes);
+        }
+    }
+    
+    @Test
+    public void checksTheSizeBeingWritten() throws IOException {
+        tracker.setQuota(0, PACKAGE, DiskUsageTracker.NO_LIMIT, 12000);
+        tracker.checkWrite(0, PACKAGE, 2000);
+        try {
+            tracker.checkWrite(0, PACKAGE, 2001);
+            fail("Write admitted past the hard quota");
+        } catch (IOException expected) {
+            // Usage itself is still under the limit
+            assertTrue(tracker.getUsage(PACKAGE, 0).usedBytes < 12000);
+        }
+        
+        tracker.recordWrite(0, PACKAGE, -4000);
+        tracker.checkWrite(0, PACKAGE, 6000);
+    }
+    
+    @Test
+    public void appsWithoutQuotaAreNeverChecked() throws IOException {
+        tracker.checkWrite(0, PACKAGE, Long.MAX_VALUE / 2);
+        tracker.setQuota(0, PACKAGE, 1, DiskUsageTracker.NO_LIMIT);
+        tracker.checkWrite(0, PACKAGE, Long.MAX_VALUE / 2);
+    }
+}
\ No newline at end of file
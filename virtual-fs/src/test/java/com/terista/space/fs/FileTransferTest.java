@@ -0,0 +1,71 @@
+package com.terista.space.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+public class FileTransferTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @After
+    public void tearDown() {
+        FileTransfer.setNativeCopier(null);
+    }
+    
+    private File file(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+    
+    @Test
+    public void copyReplacesLongerTarget() throws IOException {
+        File source = file("source", 1000);
+        File target = file("target", 5000);
+        
+        assertEquals(1000, FileTransfer.copyFile(source, target));
+        assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(target.toPath()));
+    }
+    
+    @Test
+    public void copyOntoItselfKeepsContents() throws IOException {
+        File source = file("source", 100000);
+        byte[] before = Files.readAllBytes(source.toPath());
+        File link = new File(folder.getRoot(), "link");
+        Files.createLink(link.toPath(), source.toPath());
+        // A copier that would truncate must never be reached
+        FileTransfer.setNativeCopier((from, to) -> {
+            throw new AssertionError("Copied " + from + " onto itself");
+        });
+        
+        assertEquals(before.length, FileTransfer.copyFile(source, source));
+        assertEquals(before.length, FileTransfer.copyFile(source, link));
+        assertArrayEquals(before, Files.readAllBytes(source.toPath()));
+    }
+    
+    @Test
+    public void digestMatchesWholeFileHash() throws IOException, NoSuchAlgorithmException {
+        // Spans several reads and ends mid-buffer
+        File file = file("blob", 3 * 1024 * 1024 + 7);
+        byte[] expected = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(file.toPath()));
+        
+        assertArrayEquals(expected, FileTransfer.digest(file, "SHA-256"));
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(new byte[0]),
+                FileTransfer.digest(file("empty", 0), "SHA-256"));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,134 @@
+package com.terista.space.fs;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class OverlayTest {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File lower;
+    private File upper;
+    private Overlay overlay;
+    
+    @Before
+    public void setUp() throws IOException {
+        lower = folder.newFolder("lower");
+        upper = new File(folder.getRoot(), "upper");
+        overlay = new Overlay(lower.getPath(), upper.getPath(), new StatCache());
+        write(new File(lower, "files/db.sqlite"), "lower db");
+        write(new File(lower, "files/prefs.xml"), "lower prefs");
+        write(new File(lower, "cache/blob"), "lower blob");
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(new File(path).toPath()), StandardCharsets.UTF_8);
+    }
+    
+    @Test
+    public void readsFallThroughToLower() throws IOException {
+        assertEquals(new File(lower, "files/db.sqlite").getPath(), overlay.resolveForRead("/files/db.sqlite"));
+        assertNull(overlay.resolveForRead("/files/missing"));
+        assertEquals(Arrays.asList("db.sqlite", "prefs.xml"), overlay.list("/files"));
+    }
+    
+    @Test
+    public void writeCopiesUpAndLeavesLowerUntouched() throws IOException {
+        String path = overlay.resolveForWrite("/files/db.sqlite");
+        assertEquals(new File(upper, "files/db.sqlite").getPath(), path);
+        assertEquals("lower db", read(path));
+        
+        write(new File(path), "upper db");
+        assertEquals(path, overlay.resolveForRead("/files/db.sqlite"));
+        assertEquals("upper db", read(overlay.resolveForRead("/files/db.sqlite")));
+        assertEquals("lower db", read(new File(lower, "files/db.sqlite").getPath()));
+    }
+    
+    @Test
+    public void copyUpKeepsFilesNamedLikeItsTempFile() throws IOException {
+        // An app file that happens to use the old fixed temp name
+        write(new File(upper, "files/db.sqlite.copyup"), "user data");
+        
+        overlay.resolveForWrite("/files/db.sqlite");
+        assertEquals("user data", read(new File(upper, "files/db.sqlite.copyup").getPath()));
+        // No temp file is left behind
+        String[] names = new File(upper, "files").list();
+        Arrays.sort(names);
+        assertArrayEquals(new String[] {"db.sqlite", "db.sqlite.copyup"}, names);
+    }
+    
+    @Test
+    public void deleteLeavesWhiteout() throws IOException {
+        assertTrue(overlay.delete("/files/prefs.xml"));
+        
+        assertNull(overlay.resolveForRead("/files/prefs.xml"));
+        assertFalse(overlay.exists("/files/prefs.xml"));
+        assertEquals(Collections.singletonList("db.sqlite"), overlay.list("/files"));
+        assertTrue(new File(upper, "files/" + Overlay.WHITEOUT_PREFIX + "prefs.xml").exists());
+        assertTrue(new File(lower, "files/prefs.xml").exists());
+        assertFalse(overlay.delete("/files/prefs.xml"));
+    }
+    
+    @Test
+    public void writeAfterDeleteStartsEmpty() throws IOException {
+        overlay.delete("/files/prefs.xml");
+        
+        String path = overlay.resolveForWrite("/files/prefs.xml");
+        assertFalse(new File(path).exists());
+        assertFalse(new File(upper, "files/" + Overlay.WHITEOUT_PREFIX + "prefs.xml").exists());
+        
+        write(new File(path), "new prefs");
+        assertEquals(path, overlay.resolveForRead("/files/prefs.xml"));
+    }
+    
+    @Test
+    public void recreatedDirectoryHidesLowerContents() throws IOException {
+        assertTrue(overlay.delete("/cache/blob"));
+        assertTrue(overlay.delete("/cache"));
+        assertNull(overlay.resolveForRead("/cache"));
+        
+        assertTrue(overlay.mkdirs("/cache"));
+        assertTrue(new File(upper, "cache/" + Overlay.OPAQUE_MARKER).exists());
+        assertTrue(overlay.list("/cache").isEmpty());
+        assertNull(overlay.resolveForRead("/cache/blob"));
+    }
+    
+    @Test
+    public void refusesToDeleteNonEmptyDirectory() {
+        try {
+            overlay.delete("/files");
+            throw new AssertionError("Deleted a non-empty directory");
+        } catch (IOException expected) {
+            assertTrue(overlay.exists("/files/db.sqlite"));
+        }
+    }
+    
+    @Test
+    public void upperUsageCountsOnlyCopiedFiles() throws IOException {
+        assertEquals(0, overlay.getUpperUsage());
+        overlay.resolveForWrite("/files/db.sqlite");
+        assertEquals("lower db".length(), overlay.getUpperUsage());
+        assertArrayEquals(new String[] {"files"}, upper.list());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.terista.space.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+public class VirtualFileSystemQuotaTest {
+    
+    private static final String PACKAGE = "com.example.quota";
+    private static final String PREFIX = "/data/data/" + PACKAGE;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File lower;
+    
+    @Before
+    public void setUp() throws IOException {
+        lower = folder.newFolder("lower");
+        Files.write(new File(lower, "db").toPath(), new byte[3000]);
+        VirtualFileSystem.addOverlay(0, PACKAGE, PREFIX, lower.getPath(), new File(folder.getRoot(), "upper").getPath());
+        VirtualFileSystem.setQuota(0, PACKAGE, DiskUsageTracker.NO_LIMIT, 5000);
+    }
+    
+    @After
+    public void tearDown() {
+        VirtualFileSystem.removeOverlay(0, PACKAGE, PREFIX);
+        VirtualFileSystem.removeMounts(0, PACKAGE);
+    }
+    
+    @Test
+    public void writesAreChargedAndRefusedPastTheHardQuota() throws IOException {
+        try (OutputStream out = VirtualFileSystem.openForWrite(0, PACKAGE, PREFIX + "/log", false)) {
+            out.write(new byte[4000]);
+            try {
+                out.write(new byte[1001]);
+                fail("Write admitted past the hard quota");
+            } catch (IOException expected) {
+                // The refused write never reached the file
+            }
+            out.write(new byte[1000]);
+        }
+        assertEquals(5000, VirtualFileSystem.getUsage(PACKAGE, 0).usedBytes);
+        assertEquals(5000, new File(folder.getRoot(), "upper/log").length());
+    }
+    
+    @Test
+    public void copyUpCountsAgainstTheQuota() throws IOException {
+        // Copying the 3000-byte lower file up plus this write would pass 5000
+        try {
+            VirtualFileSystem.mapVirtualToRealForWrite(0, PACKAGE, PREFIX + "/db", 2001);
+            fail("Copy-up admitted past the hard quota");
+        } catch (IOException expected) {
+            assertEquals(0, VirtualFileSystem.getUsage(PACKAGE, 0).usedBytes);
+        }
+        VirtualFileSystem.mapVirtualToRealForWrite(0, PACKAGE, PREFIX + "/db", 2000);
+        assertEquals(3000, VirtualFileSystem.getUsage(PACKAGE, 0).usedBytes);
+    }
+}
\ No newline at end of file
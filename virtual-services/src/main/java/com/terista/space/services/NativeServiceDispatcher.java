@@ -0,0 +1,113 @@
+package com.terista.space.services;
+
+import com.terista.space.native.NativeBridge;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Connects {@link VirtualSystemServices} to the native binder hook. Calls to
+ * a virtualized service are answered inside the app's process: from a cached
+ * reply, or from the Java handler in a single upcall. Only calls no handler
+ * answers make the round trip to the system, and for cacheable methods the
+ * system's reply is kept to answer the next identical call.
+ */
+public final class NativeServiceDispatcher {
+    
+    private NativeServiceDispatcher() {}
+    
+    /**
+     * Route transactions for every registered service through the dispatcher.
+     * Call again after registering more services.
+     * @param userId Virtual user of the app running in this process
+     * @param packageName Package running in this process
+     * @return true if installed
+     */
+    public static boolean install(int userId, String packageName) {
+        if (!NativeBridge.isNativeLibraryLoaded()) {
+            return false;
+        }
+        ServiceDispatcher dispatcher = VirtualSystemServices.getDispatcher();
+        dispatcher.setCallingIdentity(userId, packageName);
+        NativeBridge.setTransactionDispatcher(new NativeBridge.TransactionDispatcher() {
+            @Override
+            public int dispatch(int serviceId, int code, int flags, ByteBuffer data, ByteBuffer reply) {
+                return dispatcher.dispatch(serviceId, code, flags, data, reply);
+            }
+            
+            @Override
+            public void onReply(int serviceId, int code, ByteBuffer data, ByteBuffer reply) {
+                dispatcher.onReply(serviceId, code, data, reply);
+            }
+        });
+        NativeBridge bridge = NativeBridge.getInstance();
+        for (ServiceStub service : dispatcher.getAll()) {
+            int serviceId = ServiceIds.idOf(service.getServiceName());
+            bridge.registerVirtualService(service.getServiceName(), service.getDescriptor(), serviceId);
+            for (Map.Entry<Integer, byte[]> reply : service.getCachedReplies().entrySet()) {
+                bridge.setCachedReply(serviceId, reply.getKey(), reply.getValue());
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Let all transactions through to the system again
+     */
+    public static void uninstall() {
+        NativeBridge bridge = NativeBridge.getInstance();
+        for (ServiceStub service : VirtualSystemServices.getDispatcher().getAll()) {
+            bridge.unregisterVirtualService(service.getServiceName());
+        }
+        NativeBridge.setTransactionDispatcher(null);
+    }
+    
+    /**
+     * Latency of calls answered in-process versus those passed through to the system
+     * @return Stats since the last reset, or null if the native library is not loaded
+     */
+    public static CallStats getCallStats() {
+        if (!NativeBridge.isNativeLibraryLoaded()) {
+            return null;
+        }
+        long[] values = NativeBridge.getInstance().getBinderCallStats();
+        return values != null ? new CallStats(values[0], values[1], values[2], values[3]) : null;
+    }
+    
+    public static void resetCallStats() {
+        if (NativeBridge.isNativeLibraryLoaded()) {
+            NativeBridge.getInstance().resetBinderCallStats();
+        }
+    }
+    
+    /**
+     * Binder call counts and total latency in nanoseconds
+     */
+    public static final class CallStats {
+        public final long localCalls;
+        public final long localNanos;
+        public final long passThroughCalls;
+        public final long passThroughNanos;
+        
+        CallStats(long localCalls, long localNanos, long passThroughCalls, long passThroughNanos) {
+            this.localCalls = localCalls;
+            this.localNanos = localNanos;
+            this.passThroughCalls = passThroughCalls;
+            this.passThroughNanos = passThroughNanos;
+        }
+        
+        public long getAverageLocalNanos() {
+            return localCalls > 0 ? localNanos / localCalls : 0;
+        }
+        
+        public long getAveragePassThroughNanos() {
+            return passThroughCalls > 0 ? passThroughNanos / passThroughCalls : 0;
+        }
+        
+        @Override
+        public String toString() {
+            return "CallStats{local=" + localCalls + " avg " + getAverageLocalNanos() + "ns"
+                    + ", passThrough=" + passThroughCalls + " avg " + getAveragePassThroughNanos() + "ns}";
+        }
+    }
+}
\ No newline at end of file
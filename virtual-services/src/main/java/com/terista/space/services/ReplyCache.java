@@ -0,0 +1,322 @@
+package com.terista.space.services;
+
+import com.terista.space.core.EngineMetrics;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Replies of idempotent service queries, keyed by virtual user, service,
+ * transaction code and the call's arguments (the parcel after its interface
+ * token, so per-call header values such as the strict mode policy do not
+ * split entries).
+ *
+ * Least recently used entries are evicted once the cached bytes exceed the
+ * budget. Entries also expire after a maximum age, because replies that
+ * came from the system can go stale without any event telling us.
+ *
+ * A reply fetched from the system is only kept if no invalidation happened
+ * while it was in flight: {@link #beginFetch} records the generation under
+ * the call's key and {@link #completeFetch} checks it, so the check does not
+ * depend on which thread, or which nested call, delivers the reply.
+ *
+ * Changes made in another process are picked up through a shared change
+ * count, see {@link #setChangeSource}: every entry is dropped when it moves.
+ */
+public final class ReplyCache {
+    
+    public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    
+    // Approximate heap cost of an entry besides its arguments and reply
+    private static final int ENTRY_OVERHEAD = 96;
+    // Fetches whose reply never arrives (the call failed) are dropped oldest first
+    private static final int MAX_PENDING_FETCHES = 64;
+    
+    private final long maxBytes;
+    private final long maxAgeNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // Generation each outstanding system fetch started in; guarded by entries
+    private final LinkedHashMap<Key, Long> fetches = new LinkedHashMap<>();
+    private long bytes;
+    private volatile long generation;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile EngineMetrics metrics;
+    private volatile LongSupplier changeSource;
+    private volatile long seenChanges;
+    
+    public ReplyCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_MAX_AGE_MILLIS);
+    }
+    
+    public ReplyCache(long maxBytes, long maxAgeMillis) {
+        this.maxBytes = maxBytes;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+    
+    /**
+     * Also count hits, misses and evictions as "services.reply_cache.*" engine metrics
+     */
+    public void setMetrics(EngineMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Invalidate everything whenever a count shared with other processes changes
+     * @param changeSource e.g. the engine's package change counter, or null
+     */
+    public void setChangeSource(LongSupplier changeSource) {
+        if (changeSource != null) {
+            seenChanges = changeSource.getAsLong();
+        }
+        this.changeSource = changeSource;
+    }
+    
+    private void checkChanges() {
+        LongSupplier source = changeSource;
+        if (source == null) {
+            return;
+        }
+        long changes = source.getAsLong();
+        if (changes != seenChanges) {
+            seenChanges = changes;
+            invalidateAll();
+        }
+    }
+    
+    /**
+     * @param arguments Call arguments, see {@link Transaction#copyArguments}
+     * @return Cached reply, or null
+     */
+    public byte[] get(int userId, int serviceId, int code, byte[] arguments) {
+        checkChanges();
+        Key key = new Key(userId, serviceId, code, arguments);
+        byte[] reply = null;
+        boolean expired = false;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.storedAtNanos <= maxAgeNanos) {
+                    reply = entry.reply;
+                } else {
+                    remove(key, entry);
+                    expired = true;
+                }
+            }
+        }
+        count(reply != null ? hits : misses, reply != null ? "services.reply_cache.hit" : "services.reply_cache.miss");
+        if (expired) {
+            count(evictions, "services.reply_cache.evict");
+        }
+        return reply;
+    }
+    
+    /**
+     * @return Changes on every invalidation; read it before producing a reply to {@link #put}
+     */
+    public long getGeneration() {
+        checkChanges();
+        return generation;
+    }
+    
+    /**
+     * @param generation {@link #getGeneration()} from before the reply was produced;
+     *                   the reply is dropped if the cache was invalidated since
+     */
+    public void put(int userId, int serviceId, int code, byte[] arguments, byte[] reply, long generation) {
+        Key key = new Key(userId, serviceId, code, arguments);
+        Entry entry = new Entry(reply, arguments.length + reply.length + ENTRY_OVERHEAD);
+        if (entry.weight > maxBytes / 4) {
+            // One large reply would push out many small ones
+            return;
+        }
+        int evicted = 0;
+        synchronized (entries) {
+            if (generation != this.generation) {
+                return;
+            }
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.weight;
+            }
+            bytes += entry.weight;
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= eldest.next().getValue().weight;
+                eldest.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            evictions.add(evicted);
+            EngineMetrics recorder = metrics;
+            if (recorder != null) recorder.add("services.reply_cache.evict", evicted);
+        }
+    }
+    
+    /**
+     * Note that the system is about to be asked for a reply to cache
+     * @param arguments Call arguments, see {@link Transaction#copyArguments}
+     */
+    public void beginFetch(int userId, int serviceId, int code, byte[] arguments) {
+        checkChanges();
+        Key key = new Key(userId, serviceId, code, arguments);
+        synchronized (entries) {
+            // An identical call already in flight keeps the older generation
+            if (fetches.containsKey(key)) {
+                return;
+            }
+            fetches.put(key, generation);
+            if (fetches.size() > MAX_PENDING_FETCHES) {
+                Iterator<Key> eldest = fetches.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+    
+    /**
+     * Cache the system's reply to a call passed to {@link #beginFetch}; dropped
+     * if the cache was invalidated since, or if no fetch is outstanding
+     */
+    public void completeFetch(int userId, int serviceId, int code, byte[] arguments, byte[] reply) {
+        Long fetchGeneration;
+        synchronized (entries) {
+            fetchGeneration = fetches.remove(new Key(userId, serviceId, code, arguments));
+        }
+        if (fetchGeneration != null) {
+            put(userId, serviceId, code, arguments, reply, fetchGeneration);
+        }
+    }
+    
+    /**
+     * Drop one virtual user's replies, e.g. after its set of apps changed
+     */
+    public void invalidate(int userId) {
+        synchronized (entries) {
+            Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Key, Entry> next = iterator.next();
+                if (next.getKey().userId == userId) {
+                    bytes -= next.getValue().weight;
+                    iterator.remove();
+                }
+            }
+            generation++;
+        }
+        invalidations.increment();
+    }
+    
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+            generation++;
+        }
+        invalidations.increment();
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    /**
+     * @return Approximate heap bytes held by cached entries
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+    
+    public long getMaxBytes() { return maxBytes; }
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+    public long getEvictionCount() { return evictions.sum(); }
+    public long getInvalidationCount() { return invalidations.sum(); }
+    
+    /**
+     * @return Fraction of lookups answered from the cache, 0 if there were none
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total > 0 ? (double) hitCount / total : 0;
+    }
+    
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        invalidations.reset();
+    }
+    
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.weight;
+    }
+    
+    private void count(LongAdder counter, String metric) {
+        counter.increment();
+        EngineMetrics recorder = metrics;
+        if (recorder != null) recorder.increment(metric);
+    }
+    
+    @Override
+    public String toString() {
+        return "ReplyCache{entries=" + size() + ", bytes=" + getBytes() + "/" + maxBytes
+                + ", hitRate=" + getHitRate() + '}';
+    }
+    
+    private static final class Key {
+        final int userId;
+        final int serviceId;
+        final int code;
+        final byte[] arguments;
+        final int hash;
+        
+        Key(int userId, int serviceId, int code, byte[] arguments) {
+            this.userId = userId;
+            this.serviceId = serviceId;
+            this.code = code;
+            this.arguments = arguments;
+            this.hash = ((userId * 31 + serviceId) * 31 + code) * 31 + Arrays.hashCode(arguments);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return hash == other.hash && userId == other.userId && serviceId == other.serviceId
+                    && code == other.code && Arrays.equals(arguments, other.arguments);
+        }
+    }
+    
+    private static final class Entry {
+        final byte[] reply;
+        final int weight;
+        final long storedAtNanos = System.nanoTime();
+        
+        Entry(byte[] reply, int weight) {
+            this.reply = reply;
+            this.weight = weight;
+        }
+    }
+}
\ No newline at end of file
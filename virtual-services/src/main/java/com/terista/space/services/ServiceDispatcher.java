@@ -0,0 +1,183 @@
+package com.terista.space.services;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dispatch table of virtualized services, indexed by interned service ID.
+ *
+ * A transaction costs two array loads to find its handler and reuses a
+ * per-thread {@link Transaction}, so the hot path neither hashes strings
+ * nor allocates. Calls to methods marked cacheable are answered from a
+ * {@link ReplyCache} when possible, whether the reply first came from a
+ * handler or from the system.
+ */
+public final class ServiceDispatcher {
+    
+    private static final String TAG = "ServiceDispatcher";
+    
+    /** Returned by {@link #dispatch} when the call should go to the system */
+    public static final int NOT_HANDLED = -1;
+    
+    /**
+     * Returned by {@link #dispatch} when the system should answer and its
+     * reply be passed to {@link #onReply} for caching
+     */
+    public static final int FETCH_REPLY = -2;
+    
+    // Copy-on-write, indexed by ServiceIds
+    private volatile ServiceStub[] services = new ServiceStub[0];
+    private final ThreadLocal<Transaction> transactions = ThreadLocal.withInitial(Transaction::new);
+    private volatile int callingUserId;
+    private volatile String callingPackage;
+    private volatile ReplyCache replyCache;
+    
+    /**
+     * @return Interned ID of the service
+     */
+    public synchronized int register(ServiceStub service) {
+        int serviceId = ServiceIds.intern(service.getServiceName());
+        ServiceStub[] grown = Arrays.copyOf(services, Math.max(services.length, serviceId + 1));
+        grown[serviceId] = service;
+        services = grown;
+        return serviceId;
+    }
+    
+    public synchronized boolean unregister(String serviceName) {
+        int serviceId = ServiceIds.idOf(serviceName);
+        if (serviceId < 0 || serviceId >= services.length || services[serviceId] == null) {
+            return false;
+        }
+        ServiceStub[] copy = services.clone();
+        copy[serviceId] = null;
+        services = copy;
+        return true;
+    }
+    
+    public ServiceStub get(int serviceId) {
+        ServiceStub[] current = services;
+        return serviceId >= 0 && serviceId < current.length ? current[serviceId] : null;
+    }
+    
+    public ServiceStub get(String serviceName) {
+        return get(ServiceIds.idOf(serviceName));
+    }
+    
+    public List<ServiceStub> getAll() {
+        List<ServiceStub> all = new ArrayList<>();
+        for (ServiceStub service : services) {
+            if (service != null) {
+                all.add(service);
+            }
+        }
+        return all;
+    }
+    
+    /**
+     * Identity of the virtual app this process runs, passed to every handler
+     */
+    public void setCallingIdentity(int userId, String packageName) {
+        this.callingUserId = userId;
+        this.callingPackage = packageName;
+    }
+    
+    /**
+     * Cache replies of methods marked with {@link ServiceStub#setCacheable}; null disables caching
+     */
+    public void setReplyCache(ReplyCache replyCache) {
+        this.replyCache = replyCache;
+    }
+    
+    public ReplyCache getReplyCache() {
+        return replyCache;
+    }
+    
+    /**
+     * Run the handler registered for a transaction
+     * @return Reply length written to reply, {@link #NOT_HANDLED} or {@link #FETCH_REPLY}.
+     *         A length above the reply's capacity means nothing was written: call again
+     *         with a reply buffer that large
+     */
+    public int dispatch(int serviceId, int code, int flags, ByteBuffer data, ByteBuffer reply) {
+        ServiceStub service = get(serviceId);
+        if (service == null) {
+            return NOT_HANDLED;
+        }
+        TransactionHandler handler = service.getHandler(code);
+        ReplyCache cache = replyCache;
+        boolean cacheable = cache != null && service.isCacheable(code) && (flags & Transaction.FLAG_ONEWAY) == 0;
+        if (handler == null && !cacheable) {
+            return NOT_HANDLED;
+        }
+        Transaction transaction = transactions.get().reset(serviceId, code, flags, data, reply,
+                callingUserId, callingPackage);
+        
+        byte[] arguments = cacheable ? Transaction.copyArguments(transaction.getData()) : null;
+        long generation = 0;
+        if (arguments != null) {
+            generation = cache.getGeneration();
+            byte[] cached = cache.get(transaction.getCallingUserId(), serviceId, code, arguments);
+            if (cached != null) {
+                if (cached.length <= reply.capacity()) {
+                    transaction.writeRaw(cached);
+                }
+                return cached.length;
+            }
+        }
+        try {
+            if (handler != null && handler.onTransact(transaction)) {
+                int length = transaction.getReplyLength();
+                if (arguments != null) {
+                    byte[] written = new byte[length];
+                    ByteBuffer view = reply.duplicate();
+                    view.flip();
+                    view.get(written);
+                    cache.put(transaction.getCallingUserId(), serviceId, code, arguments, written, generation);
+                }
+                return length;
+            }
+            if (transaction.getRequiredReplyLength() > reply.capacity()) {
+                return transaction.getRequiredReplyLength();
+            }
+        } catch (RuntimeException e) {
+            // Malformed parcel or reply overflow: let the system answer instead
+            Log.w(TAG, service.getServiceName() + " failed on code " + code, e);
+        }
+        if (arguments == null) {
+            return NOT_HANDLED;
+        }
+        cache.beginFetch(transaction.getCallingUserId(), serviceId, code, arguments);
+        return FETCH_REPLY;
+    }
+    
+    /**
+     * Cache the system's reply to a call {@link #dispatch} returned
+     * {@link #FETCH_REPLY} for. Replies carrying an exception are not kept.
+     * @param data Parcel data of the call
+     * @param reply Reply parcel from the system
+     */
+    public void onReply(int serviceId, int code, ByteBuffer data, ByteBuffer reply) {
+        ReplyCache cache = replyCache;
+        if (cache == null) {
+            return;
+        }
+        data.order(ByteOrder.nativeOrder());
+        reply.order(ByteOrder.nativeOrder());
+        // AIDL status header: 0 for a normal return
+        if (reply.remaining() < 4 || reply.getInt(reply.position()) != 0) {
+            return;
+        }
+        byte[] arguments = Transaction.copyArguments(data);
+        if (arguments == null) {
+            return;
+        }
+        byte[] bytes = new byte[reply.remaining()];
+        reply.duplicate().get(bytes);
+        cache.completeFetch(callingUserId, serviceId, code, arguments, bytes);
+    }
+}
\ No newline at end of file
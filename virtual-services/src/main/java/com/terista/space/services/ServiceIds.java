@@ -0,0 +1,54 @@
+package com.terista.space.services;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns service names to small dense IDs, so dispatch indexes an array
+ * instead of hashing a name on every transaction. IDs are never reused and
+ * are shared with the native binder hook.
+ */
+public final class ServiceIds {
+    
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[0];
+    
+    private ServiceIds() {}
+    
+    /**
+     * @return ID of the service name, assigned on first use
+     */
+    public static int intern(String serviceName) {
+        Integer id = ids.get(serviceName);
+        return id != null ? id : assign(serviceName);
+    }
+    
+    /**
+     * @return ID of the service name, or -1 if it was never interned
+     */
+    public static int idOf(String serviceName) {
+        Integer id = ids.get(serviceName);
+        return id != null ? id : -1;
+    }
+    
+    /**
+     * @return Service name of an interned ID, or null
+     */
+    public static String nameOf(int serviceId) {
+        String[] current = names;
+        return serviceId >= 0 && serviceId < current.length ? current[serviceId] : null;
+    }
+    
+    private static synchronized int assign(String serviceName) {
+        Integer existing = ids.get(serviceName);
+        if (existing != null) {
+            return existing;
+        }
+        int id = names.length;
+        String[] grown = Arrays.copyOf(names, id + 1);
+        grown[id] = serviceName;
+        names = grown;
+        ids.put(serviceName, id);
+        return id;
+    }
+}
\ No newline at end of file
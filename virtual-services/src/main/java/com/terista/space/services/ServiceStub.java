@@ -0,0 +1,181 @@
+package com.terista.space.services;
+
+import android.util.Log;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Base class of a virtualized system service: a table of handlers indexed
+ * by transaction code. Codes are generated from the AIDL method order and
+ * differ between Android releases, so handlers are usually registered by
+ * method name and resolved against the platform's Stub class.
+ */
+public abstract class ServiceStub {
+    
+    private static final String TAG = "ServiceStub";
+    
+    /** Largest transaction code a handler can be registered for */
+    public static final int MAX_CODE = 0xFFFF;
+    
+    private final String serviceName;
+    private final String descriptor;
+    // Copy-on-write; dispatch reads it without locking
+    private volatile TransactionHandler[] handlers = new TransactionHandler[0];
+    // Fixed replies by transaction code, also copy-on-write
+    private volatile Map<Integer, byte[]> cachedReplies = Collections.emptyMap();
+    // Codes whose replies may be kept in the dispatcher's ReplyCache
+    private volatile boolean[] cacheable = new boolean[0];
+    
+    /**
+     * @param serviceName Name the service is published under in service manager
+     * @param descriptor AIDL interface name, e.g. "android.content.pm.IPackageManager"
+     */
+    protected ServiceStub(String serviceName, String descriptor) {
+        this.serviceName = serviceName;
+        this.descriptor = descriptor;
+    }
+    
+    public final String getServiceName() { return serviceName; }
+    public final String getDescriptor() { return descriptor; }
+    
+    public synchronized void register(int code, TransactionHandler handler) {
+        if (code < 0 || code > MAX_CODE) {
+            throw new IllegalArgumentException("Transaction code out of range: " + code);
+        }
+        TransactionHandler[] grown = Arrays.copyOf(handlers, Math.max(handlers.length, code + 1));
+        grown[code] = handler;
+        handlers = grown;
+        setCachedReply(code, null);
+    }
+    
+    /**
+     * Register a handler for an AIDL method of this service's interface
+     * @return false if the method does not exist on this Android release
+     */
+    public boolean register(String method, TransactionHandler handler) {
+        int code = resolveCode(descriptor, method);
+        if (code < 0) {
+            Log.d(TAG, serviceName + ": no transaction code for " + method);
+            return false;
+        }
+        register(code, handler);
+        return true;
+    }
+    
+    /**
+     * Register an AIDL method whose reply depends neither on its arguments nor
+     * on the caller. The reply is written once, and the binder hook answers
+     * the method from it without calling into Java.
+     * @param writer Writes the reply, starting with writeNoException()
+     * @return false if the method does not exist on this Android release
+     */
+    public boolean registerCachedReply(String method, Consumer<Transaction> writer) {
+        int code = resolveCode(descriptor, method);
+        if (code < 0) {
+            Log.d(TAG, serviceName + ": no transaction code for " + method);
+            return false;
+        }
+        byte[] reply = Transaction.marshal(writer);
+        synchronized (this) {
+            register(code, transaction -> {
+                if (!transaction.enforceInterface(descriptor)) return false;
+                transaction.writeRaw(reply);
+                return true;
+            });
+            setCachedReply(code, reply);
+        }
+        return true;
+    }
+    
+    public synchronized void unregister(int code) {
+        if (code >= 0 && code < handlers.length) {
+            TransactionHandler[] copy = handlers.clone();
+            copy[code] = null;
+            handlers = copy;
+            setCachedReply(code, null);
+        }
+    }
+    
+    /**
+     * @return Handler for a transaction code, or null to let the call through
+     */
+    public final TransactionHandler getHandler(int code) {
+        TransactionHandler[] current = handlers;
+        return code >= 0 && code < current.length ? current[code] : null;
+    }
+    
+    /**
+     * Mark an AIDL method as an idempotent query: its reply depends only on
+     * its arguments and on the installed apps, so the dispatcher may answer
+     * repeated calls from its {@link ReplyCache}. Methods without a handler
+     * are answered by the system once and cached from then on.
+     * @return false if the method does not exist on this Android release
+     */
+    public boolean setCacheable(String method) {
+        int code = resolveCode(descriptor, method);
+        if (code < 0) {
+            Log.d(TAG, serviceName + ": no transaction code for " + method);
+            return false;
+        }
+        setCacheable(code, true);
+        return true;
+    }
+    
+    public synchronized void setCacheable(int code, boolean cacheable) {
+        if (code < 0 || code > MAX_CODE) {
+            throw new IllegalArgumentException("Transaction code out of range: " + code);
+        }
+        boolean[] grown = Arrays.copyOf(this.cacheable, Math.max(this.cacheable.length, code + 1));
+        grown[code] = cacheable;
+        this.cacheable = grown;
+    }
+    
+    public final boolean isCacheable(int code) {
+        boolean[] current = cacheable;
+        return code >= 0 && code < current.length && current[code];
+    }
+    
+    /**
+     * @return Marshalled replies of the methods registered with
+     *         {@link #registerCachedReply}, by transaction code
+     */
+    public final Map<Integer, byte[]> getCachedReplies() {
+        return cachedReplies;
+    }
+    
+    private void setCachedReply(int code, byte[] reply) {
+        if (reply == null && !cachedReplies.containsKey(code)) {
+            return;
+        }
+        Map<Integer, byte[]> copy = new HashMap<>(cachedReplies);
+        if (reply != null) {
+            copy.put(code, reply);
+        } else {
+            copy.remove(code);
+        }
+        cachedReplies = Collections.unmodifiableMap(copy);
+    }
+    
+    /**
+     * @return Value of the AIDL Stub's TRANSACTION_&lt;method&gt; constant, or -1
+     */
+    public static int resolveCode(String descriptor, String method) {
+        try {
+            Field field = Class.forName(descriptor + "$Stub").getDeclaredField("TRANSACTION_" + method);
+            field.setAccessible(true);
+            return field.getInt(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + serviceName + '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,242 @@
+package com.terista.space.services;
+
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * One intercepted binder transaction: the raw parcel data of the call and
+ * a buffer for the reply parcel, both in the binder wire format (host byte
+ * order, every value padded to four bytes, strings as UTF-16).
+ *
+ * Instances are reused per thread; the buffers are only valid while the
+ * handler runs.
+ */
+public final class Transaction {
+    
+    /** IBinder.FLAG_ONEWAY: the caller does not wait for a reply */
+    public static final int FLAG_ONEWAY = 0x01;
+    
+    /** Reply buffer a handler writes into first; matches the native reply buffer */
+    public static final int MAX_REPLY_SIZE = 64 * 1024;
+    
+    private static final ByteBuffer NO_DATA = ByteBuffer.allocate(0);
+    
+    // Interface token words before the descriptor: strict mode policy,
+    // then work source uid (Q+) and environment header (R+)
+    private static final int INTERFACE_HEADER_SIZE = 4 * (1
+            + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? 1 : 0)
+            + (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? 1 : 0));
+    
+    private int serviceId;
+    private int code;
+    private int flags;
+    private ByteBuffer data;
+    private ByteBuffer reply;
+    private int callingUserId;
+    private String callingPackage;
+    private int requiredReplyLength;
+    
+    Transaction reset(int serviceId, int code, int flags, ByteBuffer data, ByteBuffer reply,
+                      int callingUserId, String callingPackage) {
+        this.serviceId = serviceId;
+        this.code = code;
+        this.flags = flags;
+        this.data = data.order(ByteOrder.nativeOrder());
+        this.data.position(0);
+        this.reply = reply.order(ByteOrder.nativeOrder());
+        this.reply.clear();
+        this.callingUserId = callingUserId;
+        this.callingPackage = callingPackage;
+        this.requiredReplyLength = 0;
+        return this;
+    }
+    
+    public int getServiceId() { return serviceId; }
+    public int getCode() { return code; }
+    public int getFlags() { return flags; }
+    public boolean isOneway() { return (flags & FLAG_ONEWAY) != 0; }
+    /** Virtual user of the app making the call */
+    public int getCallingUserId() { return callingUserId; }
+    public String getCallingPackage() { return callingPackage; }
+    public ByteBuffer getData() { return data; }
+    public ByteBuffer getReply() { return reply; }
+    public int getReplyLength() { return reply.position(); }
+    
+    /**
+     * Skip the interface token header written by Parcel.writeInterfaceToken
+     * @return true if the call is addressed to this interface
+     */
+    public boolean enforceInterface(String descriptor) {
+        data.position(INTERFACE_HEADER_SIZE);
+        int length = data.getInt();
+        if (length != descriptor.length()) {
+            return false;
+        }
+        // Compare in place rather than decoding a String per call
+        int start = data.position();
+        for (int i = 0; i < length; i++) {
+            if (data.getChar(start + i * 2) != descriptor.charAt(i)) {
+                return false;
+            }
+        }
+        data.position(align(start + (length + 1) * 2));
+        return true;
+    }
+    
+    // Reading call arguments
+    
+    public int readInt() {
+        return data.getInt();
+    }
+    
+    public long readLong() {
+        return data.getLong();
+    }
+    
+    public boolean readBoolean() {
+        return data.getInt() != 0;
+    }
+    
+    public String readString() {
+        int length = data.getInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = data.getChar();
+        }
+        // Skip the NUL terminator and padding
+        data.position(align(data.position() + 2));
+        return new String(chars);
+    }
+    
+    // Writing the reply
+    
+    /**
+     * Status header of a successful AIDL reply; write it before any return value
+     */
+    public void writeNoException() {
+        reply.putInt(0);
+    }
+    
+    public void writeInt(int value) {
+        reply.putInt(value);
+    }
+    
+    public void writeLong(long value) {
+        reply.putLong(value);
+    }
+    
+    public void writeBoolean(boolean value) {
+        reply.putInt(value ? 1 : 0);
+    }
+    
+    public void writeString(String value) {
+        if (value == null) {
+            reply.putInt(-1);
+            return;
+        }
+        reply.putInt(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            reply.putChar(value.charAt(i));
+        }
+        reply.putChar('\0');
+        while ((reply.position() & 3) != 0) {
+            reply.put((byte) 0);
+        }
+    }
+    
+    /**
+     * Append an already marshalled parcel, e.g. from android.os.Parcel.marshall()
+     */
+    public void writeRaw(byte[] bytes) {
+        reply.put(bytes);
+    }
+    
+    /**
+     * Check the reply buffer has room for more bytes. If not, the handler
+     * should return false: the call is then dispatched once more with a
+     * reply buffer large enough.
+     * @return true if the bytes fit
+     */
+    public boolean ensureReplyCapacity(int bytes) {
+        if (reply.remaining() >= bytes) {
+            return true;
+        }
+        requiredReplyLength = Math.max(requiredReplyLength, reply.position() + bytes);
+        return false;
+    }
+    
+    /**
+     * @return Reply length the handler asked for through {@link #ensureReplyCapacity}, or 0
+     */
+    int getRequiredReplyLength() {
+        return requiredReplyLength;
+    }
+    
+    /**
+     * Arguments of a call: its parcel data after the interface token. The
+     * header values before the descriptor vary from call to call and are left out.
+     * @param data Parcel data in native byte order; its position is not changed
+     * @return Copy of the arguments, or null if the data holds no interface token
+     */
+    static byte[] copyArguments(ByteBuffer data) {
+        int limit = data.limit();
+        if (limit < INTERFACE_HEADER_SIZE + 4) {
+            return null;
+        }
+        int length = data.getInt(INTERFACE_HEADER_SIZE);
+        if (length < 0 || length > limit / 2) {
+            return null;
+        }
+        int start = align(INTERFACE_HEADER_SIZE + 4 + (length + 1) * 2);
+        if (start > limit) {
+            return null;
+        }
+        byte[] arguments = new byte[limit - start];
+        ByteBuffer view = data.duplicate();
+        view.position(start);
+        view.get(arguments);
+        return arguments;
+    }
+    
+    /**
+     * Write an interface token as Parcel.writeInterfaceToken does on this OS
+     * release, in the header layout {@link #enforceInterface} expects
+     * @param data Parcel data in native byte order, written at its position
+     */
+    static void writeInterfaceToken(ByteBuffer data, String descriptor) {
+        // Strict mode policy, work source uid, environment header ('SYST')
+        int[] header = {0, -1, 0x53595354};
+        for (int i = 0; i < INTERFACE_HEADER_SIZE / 4; i++) {
+            data.putInt(header[i]);
+        }
+        data.putInt(descriptor.length());
+        for (int i = 0; i < descriptor.length(); i++) {
+            data.putChar(descriptor.charAt(i));
+        }
+        data.putChar('\0');
+        while ((data.position() & 3) != 0) {
+            data.put((byte) 0);
+        }
+    }
+    
+    /**
+     * Write a reply outside of any call, e.g. to answer later calls from it
+     */
+    static byte[] marshal(Consumer<Transaction> writer) {
+        ByteBuffer reply = ByteBuffer.allocate(MAX_REPLY_SIZE);
+        Transaction transaction = new Transaction().reset(-1, -1, 0, NO_DATA.duplicate(), reply, -1, null);
+        writer.accept(transaction);
+        return Arrays.copyOf(reply.array(), transaction.getReplyLength());
+    }
+    
+    private static int align(int position) {
+        return (position + 3) & ~3;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.terista.space.services;
+
+/**
+ * Handles one transaction code of a virtualized service.
+ *
+ * Handlers run inside the app's own binder call, before it reaches the
+ * driver, and must not make binder calls themselves: those skip
+ * virtualization and go straight to the system while the thread is still
+ * in the middle of the call being answered.
+ */
+public interface TransactionHandler {
+    
+    /**
+     * @return true if a reply was written, false to let the call through to the system
+     */
+    boolean onTransact(Transaction transaction);
+}
\ No newline at end of file
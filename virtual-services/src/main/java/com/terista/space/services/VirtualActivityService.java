@@ -0,0 +1,19 @@
+package com.terista.space.services;
+
+/**
+ * Virtual "activity" service
+ */
+public class VirtualActivityService extends ServiceStub {
+    
+    public static final String SERVICE_NAME = "activity";
+    public static final String DESCRIPTOR = "android.app.IActivityManager";
+    
+    public VirtualActivityService() {
+        super(SERVICE_NAME, DESCRIPTOR);
+        // boolean isUserAMonkey()
+        registerCachedReply("isUserAMonkey", reply -> {
+            reply.writeNoException();
+            reply.writeBoolean(false);
+        });
+    }
+}
\ No newline at end of file
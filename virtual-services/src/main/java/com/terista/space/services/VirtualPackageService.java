@@ -0,0 +1,100 @@
+package com.terista.space.services;
+
+import android.content.pm.PackageInfo;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.terista.space.core.VirtualApp;
+import com.terista.space.core.VirtualEngine;
+import com.terista.space.core.VirtualPackageManager;
+
+import java.util.List;
+
+/**
+ * Virtual "package" service: answers package queries about virtual apps
+ * in-process; queries about host packages go through to the system.
+ */
+public class VirtualPackageService extends ServiceStub {
+    
+    public static final String SERVICE_NAME = "package";
+    public static final String DESCRIPTOR = "android.content.pm.IPackageManager";
+    
+    private static final String TAG = "VirtualPackageService";
+    
+    // Queries apps repeat at startup; their replies are cached per user
+    private static final String[] CACHEABLE_METHODS = {
+            "getPackageInfo",
+            "getApplicationInfo",
+            "getInstalledPackages",
+            "getInstalledApplications",
+            "getPackageUid",
+            "isPackageAvailable"
+    };
+    
+    public VirtualPackageService() {
+        super(SERVICE_NAME, DESCRIPTOR);
+        register("isPackageAvailable", this::isPackageAvailable);
+        register("getInstalledPackages", this::getInstalledPackages);
+        for (String method : CACHEABLE_METHODS) {
+            setCacheable(method);
+        }
+    }
+    
+    // boolean isPackageAvailable(String packageName, int userId)
+    private boolean isPackageAvailable(Transaction transaction) {
+        if (!transaction.enforceInterface(DESCRIPTOR)) return false;
+        String packageName = transaction.readString();
+        if (packageName == null || !isVirtualPackage(transaction.getCallingUserId(), packageName)) {
+            return false;
+        }
+        transaction.writeNoException();
+        transaction.writeBoolean(true);
+        return true;
+    }
+    
+    // ParceledListSlice<PackageInfo> getInstalledPackages(long flags, int userId); int flags before T
+    private boolean getInstalledPackages(Transaction transaction) {
+        if (!transaction.enforceInterface(DESCRIPTOR)) return false;
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                ? (int) transaction.readLong() : transaction.readInt();
+        VirtualEngine engine = VirtualEngine.getInstance();
+        VirtualPackageManager packageManager = engine.getPackageManager();
+        List<VirtualApp> apps = engine.getAppRegistry().getByUser(transaction.getCallingUserId());
+        
+        // ParceledListSlice writes (1, item) per item until the reply reaches the
+        // binder buffer size, then a binder the reader pulls the rest through. This
+        // reply never passes through the driver, so every item goes inline.
+        Parcel items = Parcel.obtain();
+        try {
+            for (VirtualApp app : apps) {
+                items.writeInt(1);
+                packageManager.getVirtualPackageInfo(app, flags)
+                        .writeToParcel(items, Parcelable.PARCELABLE_WRITE_RETURN_VALUE);
+            }
+            byte[] marshalled = items.marshall();
+            String itemClass = PackageInfo.class.getName();
+            // Status, non-null marker, count and item class come before the items
+            int header = 12 + ((4 + (itemClass.length() + 1) * 2 + 3) & ~3);
+            if (!transaction.ensureReplyCapacity(header + marshalled.length)) {
+                Log.d(TAG, apps.size() + " installed packages need a larger reply");
+                return false;
+            }
+            transaction.writeNoException();
+            transaction.writeInt(1);
+            transaction.writeInt(apps.size());
+            if (!apps.isEmpty()) {
+                transaction.writeString(itemClass);
+                transaction.writeRaw(marshalled);
+            }
+            return true;
+        } finally {
+            items.recycle();
+        }
+    }
+    
+    private static boolean isVirtualPackage(int userId, String packageName) {
+        return VirtualEngine.getInstance().getAppRegistry().get(userId, packageName) != null;
+    }
+}
\ No newline at end of file
@@ -1,46 +1,112 @@
 package com.terista.space.services;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import com.terista.space.core.VirtualAppEvent;
+import com.terista.space.core.VirtualEngine;
 import com.terista.space.reflection.ReflectionClass;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Registry of virtualized system services. Binder calls intercepted by the
+ * native hook reach them through {@link #getDispatcher()}, routed by
+ * interned service ID and transaction code.
+ */
 @ReflectionClass
 public class VirtualSystemServices {
     
-    private static final ConcurrentHashMap<String, Object> serviceMap = new ConcurrentHashMap<>();
+    private static final ServiceDispatcher dispatcher = new ServiceDispatcher();
+    private static final ReplyCache replyCache = new ReplyCache();
+    
+    // Package queries depend on the installed apps: drop a user's replies when they change.
+    // Only fires in the process that made the change; others watch the shared change counter
+    private static final VirtualAppEvent.Listener replyInvalidator = event -> {
+        switch (event.getType()) {
+            case INSTALLED:
+            case UPDATED:
+            case UNINSTALLED:
+                replyCache.invalidate(event.getUserId());
+                break;
+            default:
+                break;
+        }
+    };
+    
+    // Replies fetched from the system also describe host packages, which no app event covers
+    private static final BroadcastReceiver hostPackageInvalidator = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            replyCache.invalidateAll();
+        }
+    };
     
-    public static void registerService(String serviceName, Object service) {
-        serviceMap.put(serviceName, service);
+    private static boolean initialized;
+    
+    static {
+        dispatcher.setReplyCache(replyCache);
     }
     
-    public static Object getService(String serviceName) {
-        return serviceMap.get(serviceName);
+    /**
+     * @return Interned service ID, see {@link ServiceIds}
+     */
+    public static int registerService(ServiceStub service) {
+        return dispatcher.register(service);
     }
     
-    public static boolean hasService(String serviceName) {
-        return serviceMap.containsKey(serviceName);
+    public static ServiceStub getService(String serviceName) {
+        return dispatcher.get(serviceName);
     }
     
-    public static void unregisterService(String serviceName) {
-        serviceMap.remove(serviceName);
+    public static ServiceStub getService(int serviceId) {
+        return dispatcher.get(serviceId);
     }
     
-    public static void initializeVirtualServices() {
-        // Initialize virtual versions of system services
-        registerService("package", new VirtualPackageService());
-        registerService("activity", new VirtualActivityService());
-        registerService("telephony", new VirtualTelephonyService());
+    public static boolean hasService(String serviceName) {
+        return dispatcher.get(serviceName) != null;
+    }
+    
+    public static void unregisterService(String serviceName) {
+        dispatcher.unregister(serviceName);
     }
     
-    // Stub service implementations
-    public static class VirtualPackageService {
-        // Virtual package manager service implementation
+    public static ServiceDispatcher getDispatcher() {
+        return dispatcher;
     }
     
-    public static class VirtualActivityService {
-        // Virtual activity manager service implementation
+    /**
+     * @return Cache of idempotent query replies, with its hit rate
+     */
+    public static ReplyCache getReplyCache() {
+        return replyCache;
     }
     
-    public static class VirtualTelephonyService {
-        // Virtual telephony service implementation (returns safe/fake data)
+    /**
+     * Register the virtual versions of system services; later calls do nothing
+     * @param context Used to watch host package changes
+     */
+    public static synchronized void initializeVirtualServices(Context context) {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        registerService(new VirtualPackageService());
+        registerService(new VirtualActivityService());
+        registerService(new VirtualTelephonyService());
+        
+        VirtualEngine engine = VirtualEngine.getInstance();
+        replyCache.setMetrics(engine.getMetricsRecorder());
+        engine.getEventBus().addListener(replyInvalidator);
+        // Installs happen in the engine process, not in the virtual app processes answering calls
+        replyCache.setChangeSource(engine.getAppManager().getChangeCounter()::get);
+        
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(hostPackageInvalidator, filter);
     }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+package com.terista.space.services;
+
+import com.terista.space.device.VirtualDeviceInfo;
+
+/**
+ * Virtual telephony service: device identifiers come from {@link VirtualDeviceInfo}
+ * instead of the real modem. ITelephony is published as "phone".
+ */
+public class VirtualTelephonyService extends ServiceStub {
+    
+    public static final String SERVICE_NAME = "phone";
+    public static final String DESCRIPTOR = "com.android.internal.telephony.ITelephony";
+    
+    public VirtualTelephonyService() {
+        super(SERVICE_NAME, DESCRIPTOR);
+        // getDeviceId was replaced by getImeiForSlot; register whichever this release has
+        register("getDeviceId", this::replyImei);
+        register("getImeiForSlot", this::replyImei);
+    }
+    
+    private boolean replyImei(Transaction transaction) {
+        if (!transaction.enforceInterface(DESCRIPTOR)) return false;
+        transaction.writeNoException();
+        transaction.writeString(VirtualDeviceInfo.getIMEI());
+        return true;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package com.terista.space.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ReplyCacheTest {
+    
+    private static final byte[] ARGUMENTS = {1, 2, 3};
+    private static final byte[] OTHER_ARGUMENTS = {4, 5};
+    private static final byte[] REPLY = {9, 9};
+    
+    private final ReplyCache cache = new ReplyCache();
+    
+    @Test
+    public void fetchedReplyIsCached() {
+        cache.beginFetch(0, 1, 7, ARGUMENTS);
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        assertArrayEquals(REPLY, cache.get(0, 1, 7, ARGUMENTS));
+    }
+    
+    @Test
+    public void invalidationDuringFetchDropsReply() {
+        cache.beginFetch(0, 1, 7, ARGUMENTS);
+        cache.invalidateAll();
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        assertNull(cache.get(0, 1, 7, ARGUMENTS));
+    }
+    
+    @Test
+    public void nestedFetchKeepsOuterGeneration() {
+        cache.beginFetch(0, 1, 7, ARGUMENTS);
+        cache.invalidate(0);
+        // A call made while the outer one is in flight starts after the invalidation
+        cache.beginFetch(0, 1, 7, OTHER_ARGUMENTS);
+        cache.completeFetch(0, 1, 7, OTHER_ARGUMENTS, REPLY);
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        
+        assertArrayEquals(REPLY, cache.get(0, 1, 7, OTHER_ARGUMENTS));
+        assertNull(cache.get(0, 1, 7, ARGUMENTS));
+    }
+    
+    @Test
+    public void replyWithoutFetchIsIgnored() {
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        assertNull(cache.get(0, 1, 7, ARGUMENTS));
+    }
+    
+    @Test
+    public void changeInAnotherProcessDropsReplies() {
+        AtomicLong changes = new AtomicLong(5);
+        cache.setChangeSource(changes::get);
+        cache.beginFetch(0, 1, 7, ARGUMENTS);
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        assertArrayEquals(REPLY, cache.get(0, 1, 7, ARGUMENTS));
+        
+        changes.incrementAndGet();
+        assertNull(cache.get(0, 1, 7, ARGUMENTS));
+        
+        // A fetch in flight across the change is not cached either
+        cache.beginFetch(0, 1, 7, ARGUMENTS);
+        changes.incrementAndGet();
+        cache.completeFetch(0, 1, 7, ARGUMENTS, REPLY);
+        assertNull(cache.get(0, 1, 7, ARGUMENTS));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.terista.space.services;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class ServiceDispatcherTest {
+    
+    private static final String DESCRIPTOR = "com.example.ITest";
+    private static final int CODE = 1;
+    private static final int LARGE_CODE = 2;
+    private static final int LARGE_REPLY = Transaction.MAX_REPLY_SIZE * 2;
+    
+    private final ServiceDispatcher dispatcher = new ServiceDispatcher();
+    private final ByteBuffer data = ByteBuffer.allocate(256).order(ByteOrder.nativeOrder());
+    private int serviceId;
+    
+    @Before
+    public void setUp() {
+        ServiceStub service = new ServiceStub("test.dispatcher", DESCRIPTOR) {};
+        service.register(CODE, transaction -> {
+            transaction.writeNoException();
+            transaction.writeInt(7);
+            return true;
+        });
+        service.register(LARGE_CODE, transaction -> {
+            if (!transaction.ensureReplyCapacity(LARGE_REPLY)) {
+                return false;
+            }
+            transaction.writeRaw(new byte[LARGE_REPLY]);
+            return true;
+        });
+        serviceId = dispatcher.register(service);
+        
+        // Header words depend on the OS release; SDK_INT is 0 in unit tests
+        Transaction.writeInterfaceToken(data, DESCRIPTOR);
+        data.flip();
+    }
+    
+    @Test
+    public void writesReplyThatFits() {
+        ByteBuffer reply = ByteBuffer.allocate(Transaction.MAX_REPLY_SIZE);
+        assertEquals(8, dispatcher.dispatch(serviceId, CODE, 0, data, reply));
+        assertEquals(7, reply.getInt(4));
+    }
+    
+    @Test
+    public void asksForLargerReplyBuffer() {
+        ByteBuffer reply = ByteBuffer.allocate(Transaction.MAX_REPLY_SIZE);
+        int length = dispatcher.dispatch(serviceId, LARGE_CODE, 0, data, reply);
+        assertEquals(LARGE_REPLY, length);
+        assertEquals(0, reply.position());
+        
+        // Dispatched again with a buffer that large, as the binder hook does
+        assertEquals(LARGE_REPLY, dispatcher.dispatch(serviceId, LARGE_CODE, 0, data, ByteBuffer.allocate(length)));
+    }
+    
+    @Test
+    public void largeCachedReplyAsksForLargerBuffer() {
+        ReplyCache cache = new ReplyCache(LARGE_REPLY * 8, ReplyCache.DEFAULT_MAX_AGE_MILLIS);
+        dispatcher.setReplyCache(cache);
+        dispatcher.get(serviceId).setCacheable(LARGE_CODE, true);
+        assertEquals(LARGE_REPLY, dispatcher.dispatch(serviceId, LARGE_CODE, 0, data,
+                ByteBuffer.allocate(LARGE_REPLY)));
+        assertEquals(1, cache.size());
+        
+        assertEquals(LARGE_REPLY, dispatcher.dispatch(serviceId, LARGE_CODE, 0, data,
+                ByteBuffer.allocate(Transaction.MAX_REPLY_SIZE)));
+        assertEquals(1, cache.getHitCount());
+    }
+}
\ No newline at end of file